@@ -1,29 +1,52 @@
 package com.vasanth.attachfile;
 
 import android.Manifest;
-import android.app.ProgressDialog;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
+import android.widget.ProgressBar;
 import android.widget.ScrollView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.model.MemoryPressureEvent;
+import com.vasanth.attachfile.attachment.service.AttachmentOutboxService;
+import com.vasanth.attachfile.attachment.ui.activity.AttachmentPreviewActivity;
 import com.vasanth.attachfile.attachment.ui.component.Attachment;
+import com.vasanth.attachfile.attachment.util.AttachmentDeadlineConfig;
+import com.vasanth.attachfile.attachment.util.AttachmentDraftStore;
+import com.vasanth.attachfile.attachment.util.AttachmentMemoryGovernor;
+import com.vasanth.attachfile.attachment.util.AttachmentOutbox;
+import com.vasanth.attachfile.attachment.util.AttachmentPipeline;
+import com.vasanth.attachfile.attachment.util.AttachmentProviderThumbnailLoader;
+import com.vasanth.attachfile.attachment.util.AttachmentThumbnailCache;
 import com.vasanth.attachfile.attachment.util.AttachmentUtil;
 import com.vasanth.attachfile.attachment.util.FileAttachmentUtil;
+import com.vasanth.attachfile.attachment.util.FolderAttachmentWalker;
+import com.vasanth.attachfile.core.index.AttachmentIndex;
+import com.vasanth.attachfile.core.util.AttachmentQuota;
+import com.vasanth.attachfile.core.walk.ParallelTreeWalker;
 import com.vasanth.attachfile.util.SnackBarHelper;
 import com.vasanth.attachfile.util.UserPermissionHelper;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Main Activity.
@@ -34,18 +57,67 @@ import java.util.List;
  * @author Vasanth
  */
 public class MainActivity extends AppCompatActivity implements View.OnClickListener, UserPermissionHelper.UserPermissionCallback,
-        FileAttachmentUtil.FileAttachmentCallback, Attachment.AttachmentListener {
+        FileAttachmentUtil.FileAttachmentCallback, Attachment.AttachmentListener, AttachmentPipeline.AttachmentPipelineListener,
+        FolderAttachmentWalker.FolderAttachmentListener, AttachmentMemoryGovernor.MemoryPressureListener,
+        ViewTreeObserver.OnScrollChangedListener {
 
     private static final String TAG = "MainActivity";
     private static final int REQUEST_CODE_USER_PERMISSIONS_WRITE_STORAGE = 1;
 
+    // Attachment quota - No limits for now, tune these to restrict what user can attach.
+    private static final long MAX_ATTACHMENT_COUNT = AttachmentQuota.NO_LIMIT;
+    private static final long MAX_ATTACHMENT_SIZE = AttachmentQuota.NO_LIMIT;
+    private static final long MAX_TOTAL_ATTACHMENT_SIZE = AttachmentQuota.NO_LIMIT;
+
+    // Draft - Keep attachments across restarts, needs persistable access to attached files (API 19). Opt-in, picker then is
+    // ACTION_OPEN_DOCUMENT instead of ACTION_GET_CONTENT.
+    private static final boolean IS_ATTACHMENT_DRAFT_PERSISTED = false;
+    // Outbox - Stage attached files in a background service which outlives the screen, needs a persisted draft. Opt-in on its own,
+    // enabling the draft doesn't start background work.
+    private static final boolean IS_ATTACHMENT_OUTBOX_ENABLED = false;
+
+    // Folder attachment limits - Sub folders listed in parallel, how deep we go & how much of the folder we attach.
+    private static final int FOLDER_WALK_PARALLELISM = 4;
+    private static final int MAX_FOLDER_DEPTH = 8;
+    private static final long MAX_FOLDER_FILE_COUNT = 500;
+    private static final long MAX_FOLDER_TOTAL_SIZE = 1024L * 1024L * 1024L;
+
     private ScrollView scrollViewRoot;
     private Button buttonAttachFile;
+    private Button buttonAttachFolder;
     private ViewGroup viewGroupAttachmentHolder;
-    private ProgressDialog progressDialog;
-
-    private List<Attachment> attachments;
+    private ViewGroup viewGroupAttachmentProgress;
+    private TextView textViewAttachmentProgressMessage;
+    private ProgressBar progressBarAttachmentProgress;
+    private Button buttonCancelAttachment;
+
+    // Attachments in added order, with their aggregates & sorted views - Looked up by detail & counted by uri in O(1).
+    private AttachmentIndex<Attachment> attachments = new AttachmentIndex<>();
+    private Map<AttachmentFileDetail, Attachment> attachmentsByDetail = new HashMap<>();
+    private Map<Uri, Integer> attachmentCountsByUri = new HashMap<>();
     private FileAttachmentUtil fileAttachmentUtil;
+    private AttachmentPipeline attachmentPipeline;
+    private AttachmentDraftStore attachmentDraftStore;
+    // Stages content of draft attachments in background, so that it outlives this screen.
+    private AttachmentOutbox attachmentOutbox;
+    private FolderAttachmentWalker folderAttachmentWalker;
+    private int folderAttachmentFoundCount;
+    // Attachments shown while still being resolved, they take quota only once resolved.
+    private Map<AttachmentFileDetail, Attachment> resolvingAttachments = new HashMap<>();
+    private int submittedAttachmentCount;
+    private int processedAttachmentCount;
+    private int failedAttachmentCount;
+    private int timedOutAttachmentCount;
+    private int quotaExceededAttachmentCount;
+    // Memory pressure - Attachments whose released thumbnail is being decoded again.
+    private AttachmentMemoryGovernor attachmentMemoryGovernor;
+    private Set<AttachmentFileDetail> reloadingThumbnails = new HashSet<>();
+    // Progressive thumbnails - Attachments showing preview whose thumbnail is being decoded / whose decode was cancelled off screen.
+    private Set<AttachmentFileDetail> refiningThumbnails = new HashSet<>();
+    private Set<AttachmentFileDetail> unrefinedThumbnails = new HashSet<>();
+    private Rect visibleRect = new Rect();
+    private AttachmentDeadlineConfig attachmentDeadlineConfig = new AttachmentDeadlineConfig();
+    private AttachmentQuota attachmentQuota = new AttachmentQuota(MAX_ATTACHMENT_COUNT, MAX_ATTACHMENT_SIZE, MAX_TOTAL_ATTACHMENT_SIZE);
 
     /**
      * ACTIVITY METHODS.
@@ -57,9 +129,52 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         scrollViewRoot = (ScrollView) findViewById(R.id.scrollView_activityMain_root);
         buttonAttachFile = (Button) findViewById(R.id.button_activityMain_attachFile);
+        buttonAttachFolder = (Button) findViewById(R.id.button_activityMain_attachFolder);
         viewGroupAttachmentHolder = (ViewGroup) findViewById(R.id.linearLayout_activityMain_attachmentHolder);
+        viewGroupAttachmentProgress = (ViewGroup) findViewById(R.id.linearLayout_activityMain_attachmentProgress);
+        textViewAttachmentProgressMessage = (TextView) findViewById(R.id.textView_activityMain_attachmentProgressMessage);
+        progressBarAttachmentProgress = (ProgressBar) findViewById(R.id.progressBar_activityMain_attachmentProgress);
+        buttonCancelAttachment = (Button) findViewById(R.id.button_activityMain_cancelAttachment);
 
         buttonAttachFile.setOnClickListener(this);
+        buttonAttachFolder.setOnClickListener(this);
+        buttonCancelAttachment.setOnClickListener(this);
+        buttonAttachFolder.setVisibility(FileAttachmentUtil.isFolderAttachmentSupported() ? View.VISIBLE : View.GONE);
+
+        // Memory pressure.
+        attachmentMemoryGovernor = AttachmentMemoryGovernor.getInstance(this);
+        attachmentMemoryGovernor.addMemoryPressureListener(this);
+        scrollViewRoot.getViewTreeObserver().addOnScrollChangedListener(this);
+
+        // Restore draft.
+        fileAttachmentUtil = new FileAttachmentUtil(this, this, IS_ATTACHMENT_DRAFT_PERSISTED);
+        if (fileAttachmentUtil.isPersistableAccess()) {
+            attachmentDraftStore = new AttachmentDraftStore(this);
+            new RestoreAttachmentDraft().execute();
+
+            // Resume staging left pending by previous run.
+            if (IS_ATTACHMENT_OUTBOX_ENABLED) {
+                attachmentOutbox = AttachmentOutbox.getInstance(this);
+                AttachmentOutboxService.start(this);
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        attachmentMemoryGovernor.removeMemoryPressureListener(this);
+        if (scrollViewRoot.getViewTreeObserver().isAlive()) {
+            scrollViewRoot.getViewTreeObserver().removeOnScrollChangedListener(this);
+        }
+
+        if (attachmentPipeline != null) {
+            attachmentPipeline.shutdown();
+        }
+        if (folderAttachmentWalker != null) {
+            folderAttachmentWalker.cancel();
+        }
     }
 
     /**
@@ -68,6 +183,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         switch (requestCode) {
             case FileAttachmentUtil.ATTACH_FILE_REQUEST_CODE:
+            case FileAttachmentUtil.ATTACH_FOLDER_REQUEST_CODE:
                 processAttachFileResult(requestCode, resultCode, data);
                 break;
         }
@@ -90,6 +206,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     public void onClick(View view) {
         if (view.getId() == R.id.button_activityMain_attachFile) {
             checkIfWeHavePermissionToWriteStorage(false);
+        } else if (view.getId() == R.id.button_activityMain_attachFolder) {
+            fileAttachmentUtil.attachFolder();
+        } else if (view.getId() == R.id.button_activityMain_cancelAttachment) {
+            cancelGettingAttachmentFileDetails();
         }
     }
 
@@ -100,8 +220,34 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     public void removeAttachment(Attachment attachment) {
         // Remove attachment.
         if (attachment != null) {
-            attachments.remove(attachment);
-            viewGroupAttachmentHolder.removeView(attachment.getAttachmentView());
+            // Attachment still being resolved hasn't taken quota yet.
+            if (resolvingAttachments.remove(attachment.getAttachmentFileDetail()) == null) {
+                attachmentQuota.release(attachment.getAttachmentFileDetail());
+            }
+            removeAttachmentView(attachment);
+
+            // Remove from draft.
+            saveAttachmentDraft();
+            if (!attachmentCountsByUri.containsKey(attachment.getAttachmentFileDetail().getUri())) {
+                fileAttachmentUtil.releasePersistableAccess(attachment.getAttachmentFileDetail().getUri());
+                if (attachmentOutbox != null) {
+                    attachmentOutbox.cancelStaging(attachment.getAttachmentFileDetail().getUri());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void openAttachment(Attachment attachment) {
+        // Preview image attachments.
+        AttachmentFileDetail attachmentFileDetail = attachment != null ? attachment.getAttachmentFileDetail() : null;
+        if (attachmentFileDetail != null && attachmentFileDetail.getMimeType() != null
+                && attachmentFileDetail.getMimeType().matches("image/.*")) {
+            Intent previewIntent = new Intent(this, AttachmentPreviewActivity.class);
+            previewIntent.setData(attachmentFileDetail.getUri());
+            previewIntent.putExtra(AttachmentPreviewActivity.EXTRA_ATTACHMENT_NAME, attachmentFileDetail.getName());
+            previewIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivity(previewIntent);
         }
     }
 
@@ -109,9 +255,6 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      * ATTACH FILE STUFF.
      */
     private void attachFile() {
-        if (fileAttachmentUtil == null) {
-            fileAttachmentUtil = new FileAttachmentUtil(this, this);
-        }
         fileAttachmentUtil.attachFile(getString(R.string.attach_file));
     }
 
@@ -126,8 +269,26 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     @Override
     public void onFileAttachmentSuccess(List<Uri> attachedFileUris) {
-        // Get attachments & populate.
-        new GetAttachmentFileDetailsAndPopulate(attachedFileUris).execute();
+        // Get attachments & populate, each attachment is shown as soon as it is classified.
+        if (attachedFileUris != null && attachedFileUris.size() > 0) {
+            submittedAttachmentCount += attachedFileUris.size();
+            showAttachmentProgress();
+            getAttachmentPipeline().submit(attachedFileUris);
+        }
+    }
+
+    @Override
+    public void onFolderAttachmentSuccess(Uri attachedFolderTreeUri) {
+        // Walk folder, its files are populated as they are found.
+        if (folderAttachmentWalker != null) {
+            folderAttachmentWalker.cancel();
+        }
+        folderAttachmentFoundCount = 0;
+        folderAttachmentWalker = new FolderAttachmentWalker(this, attachedFolderTreeUri, FOLDER_WALK_PARALLELISM, MAX_FOLDER_DEPTH,
+                MAX_FOLDER_FILE_COUNT, MAX_FOLDER_TOTAL_SIZE, this);
+        showAttachmentProgress();
+        updateAttachmentProgress(0L);
+        folderAttachmentWalker.walk();
     }
 
     @Override
@@ -145,94 +306,428 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     }
 
     /**
-     * Used to get AttachmentFileDetails & Populate View.
+     * AttachmentPipeline.AttachmentPipelineListener Methods.
      */
-    private class GetAttachmentFileDetailsAndPopulate extends AsyncTask<Void, Void, Void> {
+    // Show attachment right away, its size & thumbnail follow.
+    @Override
+    public void onAttachmentClassified(AttachmentFileDetail attachmentFileDetail) {
+        Attachment attachment = new Attachment(this, attachmentFileDetail, this, attachmentDeadlineConfig, true);
+        addAttachmentView(attachment);
+        resolvingAttachments.put(attachmentFileDetail, attachment);
+    }
+
+    @Override
+    public void onAttachmentProgress(AttachmentFileDetail attachmentFileDetail, long bytesRead) {
+        updateAttachmentProgress(bytesRead);
+    }
 
-        private List<Uri> attachedFileUris;
-        private List<AttachmentFileDetail> attachmentFileDetails;
-        private List<Uri> failedAttachmentFileUris;
+    // Attachment resolved - Keep it if it fits in quota.
+    @Override
+    public void onAttachmentResolved(AttachmentFileDetail attachmentFileDetail) {
+        processedAttachmentCount++;
+        updateAttachmentProgress(0L);
 
-        /**
-         * Constructor.
-         *
-         * @param attachedFileUris AttachedFileUri's for which we need to get its details.
-         */
-        public GetAttachmentFileDetailsAndPopulate(final List<Uri> attachedFileUris) {
-            this.attachedFileUris = attachedFileUris;
+        Attachment attachment = resolvingAttachments.remove(attachmentFileDetail);
+        if (attachment != null) {
+            if (attachmentQuota.reserve(attachmentFileDetail) != AttachmentQuota.QUOTA_OK) {
+                quotaExceededAttachmentCount++;
+                removeAttachmentView(attachment);
+            } else {
+                attachment.updateAttachmentFileSize();
+                attachments.update(attachment, attachmentFileDetail);
+                saveAttachmentDraft();
+                stageAttachment(attachmentFileDetail);
+            }
         }
+    }
 
-        // Show Progress to get the attachment details.
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
+    @Override
+    public void onAttachmentThumbnailDecoded(AttachmentFileDetail attachmentFileDetail, Bitmap thumbnail) {
+        reloadingThumbnails.remove(attachmentFileDetail);
+        refiningThumbnails.remove(attachmentFileDetail);
+        unrefinedThumbnails.remove(attachmentFileDetail);
+        Attachment attachment = findAttachment(attachmentFileDetail);
+        if (attachment != null) {
+            attachment.setThumbnail(thumbnail);
+            if (attachmentMemoryGovernor.isDropOffscreenThumbnails() && !isOnScreen(attachment)) {
+                attachment.releaseThumbnail();
+            }
 
-            showProgressDialog();
+            // Cache thumbnail, so that restored draft doesn't decode it again.
+            if (attachmentDraftStore != null && thumbnail != null) {
+                attachmentDraftStore.saveThumbnail(attachmentFileDetail, thumbnail);
+                if (!resolvingAttachments.containsKey(attachmentFileDetail)) {
+                    saveAttachmentDraft();
+                }
+            }
         }
+    }
 
-        // Get attachment file details from its uri.
-        @Override
-        protected Void doInBackground(Void... voids) {
-            if (attachedFileUris != null && attachedFileUris.size() > 0) {
-                attachmentFileDetails = new ArrayList<>();
-                failedAttachmentFileUris = new ArrayList<>();
-                for (Uri attachmentFileUri : attachedFileUris) {
-                    if (attachmentFileUri != null) {
-                        AttachmentFileDetail attachmentFileDetail = AttachmentUtil.getAttachmentFileDetailFromUri(MainActivity.this, attachmentFileUri);
-                        if (attachmentFileDetail != null) {
-                            attachmentFileDetails.add(attachmentFileDetail);
-                        } else {
-                            failedAttachmentFileUris.add(attachmentFileUri);
+    // Preview shown until thumbnail is decoded - Decode is cancelled if attachment is already off screen.
+    @Override
+    public void onAttachmentThumbnailPreviewDecoded(AttachmentFileDetail attachmentFileDetail, Bitmap preview) {
+        Attachment attachment = findAttachment(attachmentFileDetail);
+        if (attachment != null) {
+            attachment.setThumbnail(preview);
+            unrefinedThumbnails.remove(attachmentFileDetail);
+            refiningThumbnails.add(attachmentFileDetail);
+            if (isLaidOutOffScreen(attachment)) {
+                cancelThumbnailRefinement(attachmentFileDetail);
+            }
+        }
+    }
+
+    @Override
+    public void onAttachmentThumbnailRefinementCancelled(AttachmentFileDetail attachmentFileDetail) {
+        reloadingThumbnails.remove(attachmentFileDetail);
+        if (findAttachment(attachmentFileDetail) != null) {
+            unrefinedThumbnails.add(attachmentFileDetail);
+        }
+    }
+
+    // Burst shot or same image at another resolution - Let user drop the new one.
+    @Override
+    public void onAttachmentNearDuplicateFound(AttachmentFileDetail attachmentFileDetail, AttachmentFileDetail nearDuplicateOf) {
+        final Attachment attachment = findAttachment(attachmentFileDetail);
+        if (attachment == null || findAttachment(nearDuplicateOf) == null) {
+            return;
+        }
+        String message = getString(R.string.attachment_nearDuplicateMessage, attachmentFileDetail.getName(), nearDuplicateOf.getName());
+        SnackBarHelper.getInstance(this).getSnackBar(scrollViewRoot, message, Snackbar.LENGTH_LONG, true,
+                getString(R.string.attachment_remove), new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        if (findAttachment(attachment.getAttachmentFileDetail()) == attachment) {
+                            removeAttachment(attachment);
                         }
                     }
-                }
+                }).show();
+    }
+
+    // ZIP attachment inspected - Show its entry count & unpacked size along with its size.
+    @Override
+    public void onAttachmentArchiveInspected(AttachmentFileDetail attachmentFileDetail) {
+        Attachment attachment = findAttachment(attachmentFileDetail);
+        if (attachment != null) {
+            attachment.updateArchiveSummary();
+        }
+    }
+
+    @Override
+    public void onAttachmentFailed(Uri uri, AttachmentFileDetail attachmentFileDetail) {
+        failedAttachmentCount++;
+        onAttachmentNotResolved(attachmentFileDetail);
+    }
+
+    @Override
+    public void onAttachmentTimedOut(Uri uri, AttachmentFileDetail attachmentFileDetail) {
+        timedOutAttachmentCount++;
+        onAttachmentNotResolved(attachmentFileDetail);
+    }
+
+    @Override
+    public void onAttachmentCancelled(Uri uri, AttachmentFileDetail attachmentFileDetail) {
+        onAttachmentNotResolved(attachmentFileDetail);
+    }
+
+    // All attachments processed - Hide progress & notify user about the ones which couldn't be attached.
+    @Override
+    public void onAttachmentsResolved() {
+        Log.i(TAG, "Attachments resolved " + attachmentPipeline.getRetryMetrics() + ", authority limits "
+                + AttachmentUtil.AUTHORITY_LIMITERS.getLimiters() + ", provider thumbnails "
+                + AttachmentProviderThumbnailLoader.HIT_RATE_METRICS);
+        if (folderAttachmentWalker == null) {
+            hideAttachmentProgress();
+            notifyAttachmentErrors();
+        }
+    }
+
+    /**
+     * Used to notify user about the attachments which couldn't be attached, since last notification.
+     */
+    private void notifyAttachmentErrors() {
+        // Notify user if there is any failed uri.
+        if (failedAttachmentCount > 0) {
+            Toast.makeText(this, getResources().getQuantityString(R.plurals.attachment_error_failedToAttachFileErrorMessage,
+                    failedAttachmentCount), Toast.LENGTH_SHORT).show();
+        }
+
+        // Notify user if there is any attachment which didn't fit in quota.
+        if (quotaExceededAttachmentCount > 0) {
+            Toast.makeText(this, getResources().getQuantityString(R.plurals.attachment_error_quotaExceededErrorMessage,
+                    quotaExceededAttachmentCount, quotaExceededAttachmentCount), Toast.LENGTH_SHORT).show();
+        }
+
+        // Notify user if there is any timed out uri.
+        if (timedOutAttachmentCount > 0) {
+            Toast.makeText(this, getResources().getQuantityString(R.plurals.attachment_error_timedOutAttachFileErrorMessage,
+                    timedOutAttachmentCount, timedOutAttachmentCount), Toast.LENGTH_LONG).show();
+        }
+
+        submittedAttachmentCount = 0;
+        processedAttachmentCount = 0;
+        failedAttachmentCount = 0;
+        timedOutAttachmentCount = 0;
+        quotaExceededAttachmentCount = 0;
+    }
+
+    /**
+     * FolderAttachmentWalker.FolderAttachmentListener Methods.
+     */
+    // Files of a folder found - Files whose provider told name, size & mimeType are attached right away, rest are resolved.
+    @Override
+    public void onFolderAttachmentsFound(List<AttachmentFileDetail> attachmentFileDetails) {
+        folderAttachmentFoundCount += attachmentFileDetails.size();
+        List<Uri> unresolvedUris = new ArrayList<>();
+        for (AttachmentFileDetail attachmentFileDetail : attachmentFileDetails) {
+            if (attachmentFileDetail.getSize() <= 0 || attachmentFileDetail.getMimeType() == null) {
+                unresolvedUris.add(attachmentFileDetail.getUri());
+            } else {
+                addResolvedAttachment(attachmentFileDetail, null);
             }
-            return null;
         }
+        saveAttachmentDraft();
+        if (unresolvedUris.size() > 0) {
+            submittedAttachmentCount += unresolvedUris.size();
+            getAttachmentPipeline().submit(unresolvedUris);
+        }
+        updateAttachmentProgress(0L);
+    }
 
-        // Hide progress & create & populate attachments.
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
-
-            hideProgressDialog();
-
-            // Create attachments view.
-            List<Attachment> attachments = null;
-            if (attachmentFileDetails != null) {
-                attachments = new ArrayList<>();
-                for (AttachmentFileDetail attachmentFileDetail : attachmentFileDetails) {
-                    if (attachmentFileDetail != null) {
-                        Attachment attachment = new Attachment(MainActivity.this, attachmentFileDetail, MainActivity.this);
-                        attachments.add(attachment);
-                    }
-                }
+    @Override
+    public void onFolderWalkFinished(ParallelTreeWalker.WalkSummary walkSummary) {
+        folderAttachmentWalker = null;
+        if (attachmentPipeline == null || attachmentPipeline.getPendingCount() == 0) {
+            hideAttachmentProgress();
+            notifyAttachmentErrors();
+        } else {
+            showAttachmentProgress();
+        }
+
+        // Notify user if only part of the folder was attached.
+        if (walkSummary.isLimitReached()) {
+            int attachedCount = (int) walkSummary.getFileCount();
+            Toast.makeText(this, getResources().getQuantityString(R.plurals.attachment_error_folderLimitReachedErrorMessage,
+                    attachedCount, attachedCount), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * User cancelled - Attachments resolved so far are kept, rest are removed.
+     */
+    private void cancelGettingAttachmentFileDetails() {
+        if (folderAttachmentWalker != null) {
+            folderAttachmentWalker.cancel();
+        }
+        if (attachmentPipeline != null) {
+            attachmentPipeline.cancel();
+        }
+    }
+
+    /**
+     * Used to add attachment whose detail is already resolved (Like restored from draft or found in folder).
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     * @param thumbnail            Thumbnail if already known, else image attachments get their thumbnail decoded.
+     */
+    private void addResolvedAttachment(final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail) {
+        if (attachmentQuota.reserve(attachmentFileDetail) != AttachmentQuota.QUOTA_OK) {
+            quotaExceededAttachmentCount++;
+            return;
+        }
+        Attachment attachment = new Attachment(this, attachmentFileDetail, this, attachmentDeadlineConfig, true);
+        attachment.updateAttachmentFileSize();
+        if (thumbnail != null) {
+            attachment.setThumbnail(thumbnail);
+        } else if (attachmentFileDetail.getMimeType() != null && attachmentFileDetail.getMimeType().matches("image/.*")) {
+            getAttachmentPipeline().decodeThumbnail(attachmentFileDetail);
+        }
+        addAttachmentView(attachment);
+        stageAttachment(attachmentFileDetail);
+    }
+
+    private void stageAttachment(final AttachmentFileDetail attachmentFileDetail) {
+        if (attachmentOutbox != null) {
+            attachmentOutbox.enqueueStaging(attachmentFileDetail.getUri());
+        }
+    }
+
+    private void onAttachmentNotResolved(final AttachmentFileDetail attachmentFileDetail) {
+        processedAttachmentCount++;
+        updateAttachmentProgress(0L);
+
+        Attachment attachment = attachmentFileDetail != null ? resolvingAttachments.remove(attachmentFileDetail) : null;
+        if (attachment != null) {
+            removeAttachmentView(attachment);
+        }
+    }
+
+    private void addAttachmentView(final Attachment attachment) {
+        AttachmentFileDetail attachmentFileDetail = attachment.getAttachmentFileDetail();
+        viewGroupAttachmentHolder.addView(attachment.getAttachmentView());
+        attachments.add(attachment, attachmentFileDetail);
+        attachmentsByDetail.put(attachmentFileDetail, attachment);
+        Integer attachmentCount = attachmentCountsByUri.get(attachmentFileDetail.getUri());
+        attachmentCountsByUri.put(attachmentFileDetail.getUri(), attachmentCount != null ? attachmentCount + 1 : 1);
+    }
+
+    private void removeAttachmentView(final Attachment attachment) {
+        AttachmentFileDetail attachmentFileDetail = attachment.getAttachmentFileDetail();
+        attachments.remove(attachment);
+        attachmentsByDetail.remove(attachmentFileDetail);
+        Integer attachmentCount = attachmentCountsByUri.remove(attachmentFileDetail.getUri());
+        if (attachmentCount != null && attachmentCount > 1) {
+            attachmentCountsByUri.put(attachmentFileDetail.getUri(), attachmentCount - 1);
+        } else {
+            // Last attachment of the uri - Nobody shows its thumbnails anymore.
+            AttachmentThumbnailCache.getInstance(this).remove(attachmentFileDetail.getUri());
+        }
+        reloadingThumbnails.remove(attachmentFileDetail);
+        unrefinedThumbnails.remove(attachmentFileDetail);
+        if (refiningThumbnails.contains(attachmentFileDetail)) {
+            cancelThumbnailRefinement(attachmentFileDetail);
+        }
+        viewGroupAttachmentHolder.removeView(attachment.getAttachmentView());
+        if (attachmentDraftStore != null) {
+            attachmentDraftStore.removeThumbnail(attachmentFileDetail);
+        }
+        if (attachmentPipeline != null) {
+            attachmentPipeline.removeNearDuplicateCandidate(attachmentFileDetail);
+        }
+    }
+
+    private AttachmentPipeline getAttachmentPipeline() {
+        if (attachmentPipeline == null) {
+            attachmentPipeline = new AttachmentPipeline(this, attachmentDeadlineConfig, Attachment.THUMBNAIL_IMAGE_SIZE_DP, this);
+        }
+        return attachmentPipeline;
+    }
+
+    /**
+     * DRAFT STUFF.
+     */
+    /**
+     * Used to journal resolved attachments, attachments still being resolved are journaled once resolved.
+     */
+    private void saveAttachmentDraft() {
+        if (attachmentDraftStore == null) {
+            return;
+        }
+        List<AttachmentFileDetail> attachmentFileDetails = new ArrayList<>();
+        for (Attachment attachment : attachments) {
+            if (!resolvingAttachments.containsKey(attachment.getAttachmentFileDetail())) {
+                attachmentFileDetails.add(attachment.getAttachmentFileDetail());
             }
+        }
+        attachmentDraftStore.save(attachmentFileDetails);
+    }
 
-            // Populate attachments view.
-            if (attachments != null) {
-                for (Attachment attachment : attachments) {
-                    if (attachment != null) {
-                        viewGroupAttachmentHolder.addView(attachment.getAttachmentView());
-                    }
-                }
+    /**
+     * Used to restore draft from its journal & populate view.
+     * <p>
+     * 1. Attachments are restored with their journaled detail & cached thumbnail, without querying their providers.
+     * 2. Only image attachments whose thumbnail wasn't cached get decoded again.
+     */
+    private class RestoreAttachmentDraft extends AsyncTask<Void, Void, List<AttachmentDraftStore.RestoredAttachment>> {
+
+        @Override
+        protected List<AttachmentDraftStore.RestoredAttachment> doInBackground(Void... voids) {
+            return attachmentDraftStore.restore();
+        }
+
+        @Override
+        protected void onPostExecute(List<AttachmentDraftStore.RestoredAttachment> restoredAttachments) {
+            super.onPostExecute(restoredAttachments);
+
+            if (isFinishing()) {
+                return;
+            }
+            attachmentDraftStore.registerRestoredAttachments(restoredAttachments);
+            for (AttachmentDraftStore.RestoredAttachment restoredAttachment : restoredAttachments) {
+                addResolvedAttachment(restoredAttachment.getAttachmentFileDetail(), restoredAttachment.getThumbnail());
             }
+        }
+    }
 
-            // Add attachments to the parent list
-            if (attachments != null) {
-                if (MainActivity.this.attachments == null) {
-                    MainActivity.this.attachments = new ArrayList<>();
-                }
-                MainActivity.this.attachments.addAll(attachments);
+    private Attachment findAttachment(final AttachmentFileDetail attachmentFileDetail) {
+        return attachmentsByDetail.get(attachmentFileDetail);
+    }
+
+    /**
+     * MEMORY STUFF.
+     */
+    /**
+     * AttachmentMemoryGovernor.MemoryPressureListener Methods.
+     */
+    @Override
+    public void onMemoryPressureChanged(MemoryPressureEvent memoryPressureEvent) {
+        updateThumbnailsForMemoryPressure();
+    }
+
+    /**
+     * ViewTreeObserver.OnScrollChangedListener Methods.
+     */
+    @Override
+    public void onScrollChanged() {
+        if (attachmentMemoryGovernor.isDropOffscreenThumbnails()) {
+            updateThumbnailsForMemoryPressure();
+        }
+        updateThumbnailRefinement();
+    }
+
+    /**
+     * Used to cancel thumbnail decode of attachments which went off screen, they keep their preview - & to decode thumbnail again once
+     * they are back on screen.
+     */
+    private void updateThumbnailRefinement() {
+        if (refiningThumbnails.isEmpty() && unrefinedThumbnails.isEmpty()) {
+            return;
+        }
+        for (AttachmentFileDetail attachmentFileDetail : new ArrayList<>(refiningThumbnails)) {
+            Attachment attachment = findAttachment(attachmentFileDetail);
+            if (attachment != null && isLaidOutOffScreen(attachment)) {
+                cancelThumbnailRefinement(attachmentFileDetail);
             }
+        }
+        for (AttachmentFileDetail attachmentFileDetail : new ArrayList<>(unrefinedThumbnails)) {
+            Attachment attachment = findAttachment(attachmentFileDetail);
+            if (attachment != null && isOnScreen(attachment)) {
+                unrefinedThumbnails.remove(attachmentFileDetail);
+                refiningThumbnails.add(attachmentFileDetail);
+                getAttachmentPipeline().refineThumbnail(attachmentFileDetail);
+            }
+        }
+    }
+
+    private void cancelThumbnailRefinement(final AttachmentFileDetail attachmentFileDetail) {
+        refiningThumbnails.remove(attachmentFileDetail);
+        getAttachmentPipeline().cancelThumbnailRefinement(attachmentFileDetail);
+    }
 
-            // Notify user if there is any failed uri.
-            if (failedAttachmentFileUris != null && failedAttachmentFileUris.size() > 0) {
-                Toast.makeText(MainActivity.this, getResources().getQuantityString(R.plurals.attachment_error_failedToAttachFileErrorMessage,
-                        failedAttachmentFileUris.size()), Toast.LENGTH_SHORT).show();
+    /**
+     * Used to release thumbnails of attachments which are off screen while memory pressure is high, & to decode released thumbnails
+     * again once their attachment is on screen or pressure eases.
+     */
+    private void updateThumbnailsForMemoryPressure() {
+        boolean isDropOffscreenThumbnails = attachmentMemoryGovernor.isDropOffscreenThumbnails();
+        for (Attachment attachment : attachments) {
+            AttachmentFileDetail attachmentFileDetail = attachment.getAttachmentFileDetail();
+            if (isDropOffscreenThumbnails && !isOnScreen(attachment)) {
+                attachment.releaseThumbnail();
+            } else if (attachment.isThumbnailReleased() && !reloadingThumbnails.contains(attachmentFileDetail)) {
+                reloadingThumbnails.add(attachmentFileDetail);
+                getAttachmentPipeline().decodeThumbnail(attachmentFileDetail);
             }
         }
+    }
 
+    private boolean isOnScreen(final Attachment attachment) {
+        return attachment.getAttachmentView().getLocalVisibleRect(visibleRect);
+    }
+
+    // Attachment just added isn't laid out yet, it is not known to be off screen.
+    private boolean isLaidOutOffScreen(final Attachment attachment) {
+        return attachment.getAttachmentView().getHeight() > 0 && !isOnScreen(attachment);
     }
 
     /**
@@ -309,16 +804,37 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     /**
      * HELPER METHODS.
      */
-    private void showProgressDialog() {
-        progressDialog = new ProgressDialog(this);
-        progressDialog.setMessage(getString(R.string.attachment_loaderMessageWhileGettingAttachmentContent));
-        progressDialog.setCancelable(false);
-        progressDialog.show();
+    /**
+     * Used to show progress while getting attachment content, attachments are shown below it as they get ready.
+     */
+    private void showAttachmentProgress() {
+        viewGroupAttachmentProgress.setVisibility(View.VISIBLE);
+        progressBarAttachmentProgress.setIndeterminate(folderAttachmentWalker != null);
+        progressBarAttachmentProgress.setMax(submittedAttachmentCount);
+        progressBarAttachmentProgress.setProgress(processedAttachmentCount);
     }
 
-    private void hideProgressDialog() {
-        if (progressDialog != null && progressDialog.isShowing()) {
-            progressDialog.dismiss();
+    /**
+     * Used to update progress.
+     *
+     * @param bytesRead Bytes read so far for the attachment being read.
+     */
+    private void updateAttachmentProgress(final long bytesRead) {
+        progressBarAttachmentProgress.setMax(submittedAttachmentCount);
+        progressBarAttachmentProgress.setProgress(processedAttachmentCount);
+        if (folderAttachmentWalker != null) {
+            textViewAttachmentProgressMessage.setText(getString(R.string.attachment_loaderMessageWhileScanningFolder,
+                    folderAttachmentFoundCount));
+        } else if (bytesRead > 0) {
+            textViewAttachmentProgressMessage.setText(getString(R.string.attachment_loaderMessageWhileGettingAttachmentContentWithProgress,
+                    AttachmentUtil.getDisplayFileSize(bytesRead)));
+        } else {
+            textViewAttachmentProgressMessage.setText(R.string.attachment_loaderMessageWhileGettingAttachmentContent);
         }
     }
+
+    private void hideAttachmentProgress() {
+        viewGroupAttachmentProgress.setVisibility(View.GONE);
+        textViewAttachmentProgressMessage.setText(R.string.attachment_loaderMessageWhileGettingAttachmentContent);
+    }
 }
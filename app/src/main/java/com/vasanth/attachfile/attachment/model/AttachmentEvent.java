@@ -0,0 +1,106 @@
+package com.vasanth.attachfile.attachment.model;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+/**
+ * Attachment Event.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold a single event of an attached uri, as emitted by AttachmentStream.
+ * <p>
+ * 2. Event Types.
+ * 2.a. EVENT_TYPE_RESOLVED - Name & mimeType are known, size may not be known yet.
+ * 2.b. EVENT_TYPE_SIZE_KNOWN - Size is known, uri is completely resolved.
+ * 2.c. EVENT_TYPE_THUMBNAIL_READY - Thumbnail is decoded, for image uri's - Thumbnail is NULL if it couldn't be decoded.
+ * 2.d. EVENT_TYPE_FAILED - Uri couldn't be resolved or timed out.
+ * 2.e. EVENT_TYPE_DONE - Last event of the uri.
+ *
+ * @author Vasanth
+ */
+public class AttachmentEvent {
+
+    public static final int EVENT_TYPE_RESOLVED = 1;
+    public static final int EVENT_TYPE_SIZE_KNOWN = 2;
+    public static final int EVENT_TYPE_THUMBNAIL_READY = 3;
+    public static final int EVENT_TYPE_FAILED = 4;
+    public static final int EVENT_TYPE_DONE = 5;
+
+    private int eventType;
+    private Uri uri;
+    private AttachmentFileDetail attachmentFileDetail;
+    private Bitmap thumbnail;
+    private boolean isTimedOut;
+
+    /**
+     * Constructor.
+     *
+     * @param eventType            One of EVENT_TYPE_*.
+     * @param uri                  Uri.
+     * @param attachmentFileDetail Attachment file detail, NULL if uri failed before it was resolved.
+     * @param thumbnail            Thumbnail, only for EVENT_TYPE_THUMBNAIL_READY.
+     * @param isTimedOut           TRUE if uri failed because it missed its deadline, only for EVENT_TYPE_FAILED.
+     */
+    public AttachmentEvent(final int eventType, final Uri uri, final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail,
+                           final boolean isTimedOut) {
+        this.eventType = eventType;
+        this.uri = uri;
+        this.attachmentFileDetail = attachmentFileDetail;
+        this.thumbnail = thumbnail;
+        this.isTimedOut = isTimedOut;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public int getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(int eventType) {
+        this.eventType = eventType;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public void setUri(Uri uri) {
+        this.uri = uri;
+    }
+
+    public AttachmentFileDetail getAttachmentFileDetail() {
+        return attachmentFileDetail;
+    }
+
+    public void setAttachmentFileDetail(AttachmentFileDetail attachmentFileDetail) {
+        this.attachmentFileDetail = attachmentFileDetail;
+    }
+
+    public Bitmap getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(Bitmap thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    public boolean isTimedOut() {
+        return isTimedOut;
+    }
+
+    public void setTimedOut(boolean timedOut) {
+        isTimedOut = timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return "AttachmentEvent{" +
+                "eventType=" + eventType +
+                ", uri=" + uri +
+                ", attachmentFileDetail=" + attachmentFileDetail +
+                ", thumbnail=" + thumbnail +
+                ", isTimedOut=" + isTimedOut +
+                '}';
+    }
+}
@@ -2,20 +2,23 @@ package com.vasanth.attachfile.attachment.model;
 
 import android.net.Uri;
 
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.ZipInspection;
+
 /**
  * Attachment File Detail.
  * <p>
  * 1. Responsibility.
  * 1.a. Model used to hold details about attachment file.
+ * 1.b. Adds the user device Uri to the platform independent {@link AttachmentDetail}.
+ * 1.c. ZIP attachments also hold what inspecting the archive told, once it is resolved.
  *
  * @author Vasanth
  */
-public class AttachmentFileDetail {
+public class AttachmentFileDetail extends AttachmentDetail {
 
-    private String name;
-    private long size;
     private Uri uri;
-    private String mimeType;
+    private ZipInspection zipInspection;
 
     /**
      * Constructor.
@@ -26,31 +29,13 @@ public class AttachmentFileDetail {
      * @param uri      User Device Attachment file uri.
      */
     public AttachmentFileDetail(final String name, final long size, final String mimeType, final Uri uri) {
-        this.name = name;
-        this.size = size;
+        super(name, size, mimeType);
         this.uri = uri;
-        this.mimeType = mimeType;
     }
 
     /**
      * Getter's & Setter's.
      */
-    public String getName() {
-        return name;
-    }
-
-    public void setName(String name) {
-        this.name = name;
-    }
-
-    public long getSize() {
-        return size;
-    }
-
-    public void setSize(long size) {
-        this.size = size;
-    }
-
     public Uri getUri() {
         return uri;
     }
@@ -59,12 +44,12 @@ public class AttachmentFileDetail {
         this.uri = uri;
     }
 
-    public String getMimeType() {
-        return mimeType;
+    public ZipInspection getZipInspection() {
+        return zipInspection;
     }
 
-    public void setMimeType(String mimeType) {
-        this.mimeType = mimeType;
+    public void setZipInspection(ZipInspection zipInspection) {
+        this.zipInspection = zipInspection;
     }
 
     /**
@@ -73,10 +58,10 @@ public class AttachmentFileDetail {
     @Override
     public String toString() {
         return "AttachmentFileDetail{" +
-                "name='" + name + '\'' +
-                ", size=" + size +
+                "name='" + getName() + '\'' +
+                ", size=" + getSize() +
                 ", uri=" + uri +
-                ", mimeType='" + mimeType + '\'' +
+                ", mimeType='" + getMimeType() + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,65 @@
+package com.vasanth.attachfile.attachment.model;
+
+/**
+ * Document Tree Node.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold a single document (Directory or File) of a document tree, with the details read while listing its parent.
+ *
+ * @author Vasanth
+ */
+public class DocumentTreeNode {
+
+    private String documentId;
+    private boolean isDirectory;
+    private AttachmentFileDetail attachmentFileDetail;
+
+    /**
+     * Constructor.
+     *
+     * @param documentId           Document id within the tree.
+     * @param isDirectory          TRUE if document is a directory.
+     * @param attachmentFileDetail Detail of the document, uri is the document uri within the tree.
+     */
+    public DocumentTreeNode(final String documentId, final boolean isDirectory, final AttachmentFileDetail attachmentFileDetail) {
+        this.documentId = documentId;
+        this.isDirectory = isDirectory;
+        this.attachmentFileDetail = attachmentFileDetail;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    public void setDirectory(boolean directory) {
+        isDirectory = directory;
+    }
+
+    public AttachmentFileDetail getAttachmentFileDetail() {
+        return attachmentFileDetail;
+    }
+
+    public void setAttachmentFileDetail(AttachmentFileDetail attachmentFileDetail) {
+        this.attachmentFileDetail = attachmentFileDetail;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentTreeNode{" +
+                "documentId='" + documentId + '\'' +
+                ", isDirectory=" + isDirectory +
+                ", attachmentFileDetail=" + attachmentFileDetail +
+                '}';
+    }
+}
@@ -0,0 +1,102 @@
+package com.vasanth.attachfile.attachment.model;
+
+/**
+ * Memory Pressure Event.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold a single transition of memory pressure level, for monitoring (See AttachmentMemoryGovernor).
+ *
+ * @author Vasanth
+ */
+public class MemoryPressureEvent {
+
+    public static final int TRIGGER_LOW_RAM_DEVICE = 1;
+    public static final int TRIGGER_TRIM_MEMORY = 2;
+    public static final int TRIGGER_LOW_MEMORY = 3;
+    public static final int TRIGGER_RECOVERED = 4;
+
+    private int previousLevel;
+    private int level;
+    private int trigger;
+    private int trimMemoryLevel;
+    private long timestampMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param previousLevel   Pressure level before the transition.
+     * @param level           Pressure level after the transition.
+     * @param trigger         What caused the transition (One of TRIGGER_*).
+     * @param trimMemoryLevel Level passed to onTrimMemory, 0 for other triggers.
+     * @param timestampMillis Time of the transition (SystemClock.elapsedRealtime).
+     */
+    public MemoryPressureEvent(final int previousLevel, final int level, final int trigger, final int trimMemoryLevel,
+                               final long timestampMillis) {
+        this.previousLevel = previousLevel;
+        this.level = level;
+        this.trigger = trigger;
+        this.trimMemoryLevel = trimMemoryLevel;
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public int getPreviousLevel() {
+        return previousLevel;
+    }
+
+    public void setPreviousLevel(int previousLevel) {
+        this.previousLevel = previousLevel;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getTrigger() {
+        return trigger;
+    }
+
+    public void setTrigger(int trigger) {
+        this.trigger = trigger;
+    }
+
+    public int getTrimMemoryLevel() {
+        return trimMemoryLevel;
+    }
+
+    public void setTrimMemoryLevel(int trimMemoryLevel) {
+        this.trimMemoryLevel = trimMemoryLevel;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * @return TRUE if pressure went up.
+     */
+    public boolean isRising() {
+        return level > previousLevel;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryPressureEvent{" +
+                "previousLevel=" + previousLevel +
+                ", level=" + level +
+                ", trigger=" + trigger +
+                ", trimMemoryLevel=" + trimMemoryLevel +
+                ", timestampMillis=" + timestampMillis +
+                '}';
+    }
+}
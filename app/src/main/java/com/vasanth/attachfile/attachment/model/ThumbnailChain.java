@@ -0,0 +1,105 @@
+package com.vasanth.attachfile.attachment.model;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thumbnail Chain.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold thumbnails of one image at several sizes (Levels), all created from a single decode - Each level is
+ * downscaled from the level above it (See AttachmentUtil.createThumbnailChain).
+ * <p>
+ * 2. Methods.
+ * 2.a. getNearest - Used to get the level best suited to a size.
+ * 2.b. getLargest / getLevels / getByteCount.
+ * <p>
+ * 3. Note.
+ * 3.a. Levels are ordered largest first & never upscaled, hence an image smaller than a requested size has fewer levels.
+ * 3.b. Chain built from a provider thumbnail (See AttachmentProviderThumbnailLoader) may be smaller than the image allows - Then a
+ * size above its largest level is decoded from the image itself.
+ *
+ * @author Vasanth
+ */
+public class ThumbnailChain {
+
+    private List<Bitmap> levels = new ArrayList<>();
+    private boolean isProviderThumbnail;
+
+    /**
+     * Used to add the next (Smaller) level.
+     *
+     * @param level Level bitmap.
+     */
+    public void addLevel(final Bitmap level) {
+        levels.add(level);
+    }
+
+    /**
+     * Used to get the level best suited to a size - Smallest level at least that size, so that it is only ever scaled down when
+     * shown, else the largest level.
+     *
+     * @param sizeInPx Size in pixels, of the longer side.
+     * @return Level bitmap, NULL if chain is empty.
+     */
+    public Bitmap getNearest(final float sizeInPx) {
+        Bitmap nearest = null;
+        for (Bitmap level : levels) {
+            if (nearest != null && getSize(level) < sizeInPx) {
+                break;
+            }
+            nearest = level;
+        }
+        return nearest;
+    }
+
+    /**
+     * @return Largest level, NULL if chain is empty.
+     */
+    public Bitmap getLargest() {
+        return levels.isEmpty() ? null : levels.get(0);
+    }
+
+    /**
+     * @return Size in bytes of all levels.
+     */
+    public int getByteCount() {
+        int byteCount = 0;
+        for (Bitmap level : levels) {
+            byteCount += level.getRowBytes() * level.getHeight();
+        }
+        return byteCount;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static int getSize(final Bitmap bitmap) {
+        return Math.max(bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public List<Bitmap> getLevels() {
+        return levels;
+    }
+
+    public boolean isProviderThumbnail() {
+        return isProviderThumbnail;
+    }
+
+    public void setProviderThumbnail(boolean providerThumbnail) {
+        isProviderThumbnail = providerThumbnail;
+    }
+
+    @Override
+    public String toString() {
+        return "ThumbnailChain{" +
+                "levels=" + levels.size() +
+                ", isProviderThumbnail=" + isProviderThumbnail +
+                '}';
+    }
+}
@@ -0,0 +1,307 @@
+package com.vasanth.attachfile.attachment.provider;
+
+import android.content.ClipDescription;
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.webkit.MimeTypeMap;
+
+import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.util.AttachmentOutbox;
+import com.vasanth.attachfile.attachment.util.AttachmentUtil;
+import com.vasanth.attachfile.core.crypto.ChunkedCipher;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Attachment Share Provider.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Provider used to hand staged attachments to other apps & processes, straight from their stored file - Without reading the
+ * original uri again (Its grant may already be gone) & without copying the content into a new file.
+ * <p>
+ * 2. Methods.
+ * 2.a. getShareUri - Used to get share uri of a staged attachment, to be granted to the other app (FLAG_GRANT_READ_URI_PERMISSION).
+ * 2.b. query - Gives DISPLAY_NAME & exact SIZE (Plaintext size, known without reading the content), hence consumers never need to
+ * read the content to size it.
+ * 2.c. openFile - Gives a file descriptor on the stored file itself when it is plaintext. Encrypted content is decrypted into a pipe
+ * as the consumer reads it.
+ * 2.d. openTypedAssetFile - With {@link ContentResolver#EXTRA_SIZE} on an image, gives a JPEG thumbnail of about that size, decoded
+ * on demand (Embedded EXIF thumbnail if large enough).
+ * <p>
+ * 3. Uri.
+ * 3.a. content://[package].attachments/staged/[contentHash]/[displayName] - Content hash is the one of the content store (See
+ * {@link AttachmentOutbox}), hence share uri keeps working as long as the content is stored, whatever uri it was attached from.
+ * <p>
+ * 4. Note.
+ * 4.a. Provider is not exported, other apps reach it only through uri's granted to them.
+ * 4.b. Encrypted content can't be seeked - A file descriptor which seeks through decryption needs
+ * StorageManager.openProxyFileDescriptor (API 26), above our compile SDK.
+ *
+ * @author Vasanth
+ */
+public class AttachmentShareProvider extends ContentProvider {
+
+    private static final String AUTHORITY_SUFFIX = ".attachments";
+    private static final String PATH_STAGED = "staged";
+    private static final String THUMBNAIL_MIME_TYPE = "image/jpeg";
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final String[] DEFAULT_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+    private static final int THUMBNAIL_COMPRESS_QUALITY = 90;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Pipe writers - One thread per open pipe, as each blocks till its consumer reads.
+    private ExecutorService transferExecutor = Executors.newCachedThreadPool();
+
+    /**
+     * Pipe Writer.
+     */
+    private interface PipeWriter {
+
+        void write(OutputStream outputStream) throws IOException;
+
+    }
+
+    /**
+     * Used to get share uri of a staged attachment.
+     * <p>
+     * 1. Reads content store from disk on first use, hence make sure to call this method in separate thread.
+     *
+     * @param context              Context.
+     * @param attachmentFileDetail Attachment file detail.
+     * @return Share uri, NULL if attachment is not staged (yet).
+     * @throws IOException If content store couldn't be opened.
+     */
+    public static Uri getShareUri(final Context context, final AttachmentFileDetail attachmentFileDetail) throws IOException {
+        String contentHash = AttachmentOutbox.getInstance(context).getStagedContentHash(attachmentFileDetail.getUri());
+        if (contentHash == null) {
+            return null;
+        }
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .appendPath(PATH_STAGED)
+                .appendPath(contentHash)
+                .appendPath(attachmentFileDetail.getName() != null ? attachmentFileDetail.getName() : contentHash)
+                .build();
+    }
+
+    /**
+     * CONTENT PROVIDER METHODS.
+     */
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        long size;
+        try {
+            size = getAttachmentOutbox().getStoredContentSize(getContentHash(uri));
+        } catch (IOException exp) {
+            exp.printStackTrace();
+            return null;
+        }
+        if (size < 0) {
+            return null;
+        }
+
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (String column : projection != null ? projection : DEFAULT_PROJECTION) {
+            if (OpenableColumns.DISPLAY_NAME.equals(column)) {
+                columns.add(column);
+                values.add(uri.getLastPathSegment());
+            } else if (OpenableColumns.SIZE.equals(column)) {
+                columns.add(column);
+                values.add(size);
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(columns.toArray(new String[columns.size()]), 1);
+        cursor.addRow(values.toArray());
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        String displayName = uri.getLastPathSegment();
+        int extensionIndex = displayName != null ? displayName.lastIndexOf('.') : -1;
+        if (extensionIndex >= 0) {
+            String extension = displayName.substring(extensionIndex + 1).toLowerCase(Locale.US);
+            String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+            if (mimeType != null) {
+                return mimeType;
+            }
+        }
+        return DEFAULT_MIME_TYPE;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("No external inserts");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("No external deletes");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("No external updates");
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Read only " + uri);
+        }
+        final String contentHash = getContentHash(uri);
+        try {
+            File storedFile = getAttachmentOutbox().getStoredFile(contentHash);
+            if (storedFile == null) {
+                throw new FileNotFoundException("Not stored " + uri);
+            }
+            // Plaintext - Consumer reads the stored file itself.
+            if (!ChunkedCipher.isEncrypted(storedFile)) {
+                return ParcelFileDescriptor.open(storedFile, ParcelFileDescriptor.MODE_READ_ONLY);
+            }
+        } catch (FileNotFoundException fileNotFoundException) {
+            throw fileNotFoundException;
+        } catch (IOException exp) {
+            throw toFileNotFoundException(uri, exp);
+        }
+        return openPipe(uri, new PipeWriter() {
+            @Override
+            public void write(final OutputStream outputStream) throws IOException {
+                InputStream inputStream = getAttachmentOutbox().openStoredContent(contentHash);
+                if (inputStream == null) {
+                    throw new FileNotFoundException("Not stored " + contentHash);
+                }
+                try {
+                    byte[] bytes = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = inputStream.read(bytes)) >= 0) {
+                        outputStream.write(bytes, 0, read);
+                    }
+                } finally {
+                    inputStream.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts) throws FileNotFoundException {
+        Point size = opts != null ? (Point) opts.getParcelable(ContentResolver.EXTRA_SIZE) : null;
+        if (size != null && getType(uri).startsWith("image/") && ClipDescription.compareMimeTypes(THUMBNAIL_MIME_TYPE, mimeTypeFilter)) {
+            return new AssetFileDescriptor(openThumbnail(uri, size), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+        }
+        return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private AttachmentOutbox getAttachmentOutbox() {
+        return AttachmentOutbox.getInstance(getContext());
+    }
+
+    /**
+     * Used to get content hash of share uri ("staged/[contentHash]/[displayName]").
+     */
+    private static String getContentHash(final Uri uri) throws FileNotFoundException {
+        List<String> pathSegments = uri.getPathSegments();
+        if (pathSegments.size() != 3 || !PATH_STAGED.equals(pathSegments.get(0))) {
+            throw new FileNotFoundException("Unknown uri " + uri);
+        }
+        return pathSegments.get(1);
+    }
+
+    /**
+     * Used to decode thumbnail on demand, into a pipe - Decoded from the share uri itself, hence from the stored content.
+     */
+    private ParcelFileDescriptor openThumbnail(final Uri uri, final Point size) throws FileNotFoundException {
+        final int thumbnailSizeInDp = (int) Math.ceil(Math.max(size.x, size.y) / getContext().getResources().getDisplayMetrics().density);
+        return openPipe(uri, new PipeWriter() {
+            @Override
+            public void write(final OutputStream outputStream) throws IOException {
+                Bitmap thumbnail = AttachmentUtil.createThumbnail(getContext(), uri, thumbnailSizeInDp);
+                if (thumbnail == null) {
+                    throw new IOException("Unable to decode " + uri);
+                }
+                try {
+                    thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_COMPRESS_QUALITY, outputStream);
+                } finally {
+                    thumbnail.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Used to give consumer the read end of a pipe, written by the writer on a transfer thread.
+     */
+    private ParcelFileDescriptor openPipe(final Uri uri, final PipeWriter pipeWriter) throws FileNotFoundException {
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException exp) {
+            throw toFileNotFoundException(uri, exp);
+        }
+        transferExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ParcelFileDescriptor.AutoCloseOutputStream outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
+                try {
+                    pipeWriter.write(outputStream);
+                    outputStream.close();
+                } catch (IOException exp) {
+                    // Consumer closed its end early, or content couldn't be read - Let consumer see the failure, not a short read.
+                    exp.printStackTrace();
+                    closeWithError(pipe[1], exp);
+                }
+            }
+        });
+        return pipe[0];
+    }
+
+    private static void closeWithError(final ParcelFileDescriptor parcelFileDescriptor, final IOException exception) {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                parcelFileDescriptor.closeWithError(exception.getMessage());
+            } else {
+                parcelFileDescriptor.close();
+            }
+        } catch (IOException exp) {
+            exp.printStackTrace();
+        }
+    }
+
+    private static FileNotFoundException toFileNotFoundException(final Uri uri, final IOException exception) {
+        FileNotFoundException fileNotFoundException = new FileNotFoundException("Unable to open " + uri);
+        fileNotFoundException.initCause(exception);
+        return fileNotFoundException;
+    }
+}
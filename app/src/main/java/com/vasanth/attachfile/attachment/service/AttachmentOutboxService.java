@@ -0,0 +1,118 @@
+package com.vasanth.attachfile.attachment.service;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.vasanth.attachfile.attachment.util.AttachmentOutbox;
+
+import java.io.IOException;
+
+/**
+ * Attachment Outbox Service.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Service used to run pending jobs of {@link AttachmentOutbox} on a background thread, independent of any screen.
+ * <p>
+ * 2. Methods.
+ * 2.a. start - Used to start the service, like once a job is enqueued or on app start to resume jobs left pending.
+ * <p>
+ * 3. Note.
+ * 3.a. Service is sticky - If the process is killed while jobs are running, system starts it again & jobs resume from their last
+ * checkpoint.
+ * 3.b. Service stops itself once there is nothing more to run, jobs enqueued meanwhile start another run.
+ *
+ * @author Vasanth
+ */
+public class AttachmentOutboxService extends Service {
+
+    private static final String TAG = "AttachmentOutboxService";
+
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Thread workerThread;
+    private int lastStartId;
+    private int workerStartId;
+
+    /**
+     * Used to start the service.
+     *
+     * @param context Context.
+     */
+    public static void start(final Context context) {
+        context.startService(new Intent(context, AttachmentOutboxService.class));
+    }
+
+    /**
+     * SERVICE METHODS.
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        lastStartId = startId;
+        if (workerThread == null) {
+            startWorker();
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (workerThread != null) {
+            workerThread.interrupt();
+            workerThread = null;
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void startWorker() {
+        workerStartId = lastStartId;
+        final AttachmentOutbox attachmentOutbox = AttachmentOutbox.getInstance(this);
+        workerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    int pendingJobCount = attachmentOutbox.processPendingJobs();
+                    Log.i(TAG, "Outbox processed, " + pendingJobCount + " jobs pending " + attachmentOutbox.getRetryMetrics());
+                } catch (IOException exp) {
+                    exp.printStackTrace();
+                }
+                final Thread finishedThread = Thread.currentThread();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onWorkerFinished(finishedThread);
+                    }
+                });
+            }
+        }, "attachment-outbox");
+        workerThread.start();
+    }
+
+    /**
+     * Used to stop the service, unless it was started again while the worker was running.
+     */
+    private void onWorkerFinished(final Thread finishedThread) {
+        if (workerThread != finishedThread) {
+            return;
+        }
+        workerThread = null;
+        if (lastStartId != workerStartId) {
+            startWorker();
+        } else {
+            stopSelf(lastStartId);
+        }
+    }
+}
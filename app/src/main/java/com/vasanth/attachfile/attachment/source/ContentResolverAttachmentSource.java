@@ -0,0 +1,144 @@
+package com.vasanth.attachfile.attachment.source;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.webkit.MimeTypeMap;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.util.FileDetailUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * ContentResolver Attachment Source.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Attachment source backed by an Android Uri, read through ContentResolver.
+ * <p>
+ * 2. Supported Schemes.
+ * 2.a. File Scheme - Metadata from the File & content through its FileChannel.
+ * 2.b. Content Scheme - Metadata from OpenableColumns & content through ContentResolver.
+ * <p>
+ * 3. Note.
+ * 3.a. Name & size, and mimeType are queried separately & kept once queried, hence querying metadata again after a failure
+ * (Like a retry) only queries what is still missing.
+ *
+ * @author Vasanth
+ */
+public class ContentResolverAttachmentSource implements AttachmentSource {
+
+    private static final String[] METADATA_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+    private Context context;
+    private Uri uri;
+
+    // Metadata queried so far.
+    private boolean isNameAndSizeQueried;
+    private String queriedName;
+    private long queriedSize = AttachmentDetail.UNKNOWN_SIZE;
+    private boolean isMimeTypeQueried;
+    private String queriedMimeType;
+
+    /**
+     * Constructor.
+     *
+     * @param context Context.
+     * @param uri     Attachment file uri.
+     */
+    public ContentResolverAttachmentSource(final Context context, final Uri uri) {
+        this.context = context;
+        this.uri = uri;
+    }
+
+    @Override
+    public String getLocation() {
+        return uri.toString();
+    }
+
+    @Override
+    public AttachmentDetail queryMetadata() throws IOException {
+        String fileName = null;
+        long fileSize = AttachmentDetail.UNKNOWN_SIZE;
+        String fileMimeType = null;
+
+        // File Scheme.
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            File file = new File(uri.getPath());
+            fileName = file.getName();
+            fileSize = file.length();
+            fileMimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(FileDetailUtil.getFileExtension(fileName));
+        }
+
+        // Content Scheme.
+        else if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            if (!isNameAndSizeQueried) {
+                queryNameAndSize();
+            }
+            if (!isMimeTypeQueried) {
+                queriedMimeType = context.getContentResolver().getType(uri);
+                isMimeTypeQueried = true;
+            }
+            fileName = queriedName;
+            fileSize = queriedSize;
+            fileMimeType = queriedMimeType;
+        }
+
+        return new AttachmentDetail(fileName, fileSize, fileMimeType);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return context.getContentResolver().openInputStream(uri);
+    }
+
+    @Override
+    public FileChannel openFileChannel() throws IOException {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            return new FileInputStream(new File(uri.getPath())).getChannel();
+        }
+        return null;
+    }
+
+    /**
+     * Getter's.
+     */
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void queryNameAndSize() {
+        String fileName = null;
+        long fileSize = AttachmentDetail.UNKNOWN_SIZE;
+        Cursor returnCursor = context.getContentResolver().query(uri, METADATA_PROJECTION, null, null, null);
+        if (returnCursor != null) {
+            try {
+                if (returnCursor.moveToFirst()) {
+                    int nameIndex = returnCursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                    int sizeIndex = returnCursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (nameIndex != -1) {
+                        fileName = returnCursor.getString(nameIndex);
+                    }
+                    if (sizeIndex != -1 && !returnCursor.isNull(sizeIndex)) {
+                        fileSize = returnCursor.getLong(sizeIndex);
+                    }
+                }
+            } finally {
+                returnCursor.close();
+            }
+        }
+        queriedName = fileName;
+        queriedSize = fileSize;
+        isNameAndSizeQueried = true;
+    }
+}
@@ -0,0 +1,114 @@
+package com.vasanth.attachfile.attachment.source;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+
+import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.model.DocumentTreeNode;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.walk.ParallelTreeWalker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document Tree Source.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Tree source backed by a document tree uri (ACTION_OPEN_DOCUMENT_TREE), listed through DocumentsContract child queries.
+ * 1.b. Each child query also fetches name, mimeType & size, hence files found are already resolved & need no further query.
+ * <p>
+ * 2. Note.
+ * 2.a. Requires API 21.
+ *
+ * @author Vasanth
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class DocumentTreeSource implements ParallelTreeWalker.TreeSource<DocumentTreeNode> {
+
+    private static final String[] CHILD_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE
+    };
+
+    private Context context;
+    private Uri treeUri;
+
+    /**
+     * Constructor.
+     *
+     * @param context Context.
+     * @param treeUri Tree uri, as returned by ACTION_OPEN_DOCUMENT_TREE.
+     */
+    public DocumentTreeSource(final Context context, final Uri treeUri) {
+        this.context = context;
+        this.treeUri = treeUri;
+    }
+
+    /**
+     * Used to get root directory of the tree.
+     *
+     * @return Root directory.
+     */
+    public DocumentTreeNode getRootDirectory() {
+        String rootDocumentId = DocumentsContract.getTreeDocumentId(treeUri);
+        Uri rootDocumentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, rootDocumentId);
+        return new DocumentTreeNode(rootDocumentId, true, new AttachmentFileDetail(null, AttachmentDetail.UNKNOWN_SIZE,
+                DocumentsContract.Document.MIME_TYPE_DIR, rootDocumentUri));
+    }
+
+    @Override
+    public List<DocumentTreeNode> listChildren(final DocumentTreeNode directory) throws IOException {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, directory.getDocumentId());
+        Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(childrenUri, CHILD_PROJECTION, null, null, null);
+        } catch (RuntimeException runtimeException) {
+            // Provider failures (Like SecurityException or provider crash) surface as runtime exceptions.
+            throw new IOException("Unable to list " + childrenUri, runtimeException);
+        }
+        if (cursor == null) {
+            throw new IOException("Unable to list " + childrenUri);
+        }
+
+        List<DocumentTreeNode> children = new ArrayList<>();
+        try {
+            int documentIdIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID);
+            int nameIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DISPLAY_NAME);
+            int mimeTypeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE);
+            int sizeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE);
+            while (cursor.moveToNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Interrupted while listing " + childrenUri);
+                }
+                String documentId = cursor.getString(documentIdIndex);
+                String name = nameIndex != -1 ? cursor.getString(nameIndex) : null;
+                String mimeType = mimeTypeIndex != -1 ? cursor.getString(mimeTypeIndex) : null;
+                long size = sizeIndex != -1 && !cursor.isNull(sizeIndex) ? cursor.getLong(sizeIndex) : AttachmentDetail.UNKNOWN_SIZE;
+                boolean isDirectory = DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+                Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+                children.add(new DocumentTreeNode(documentId, isDirectory, new AttachmentFileDetail(name, size, mimeType, documentUri)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return children;
+    }
+
+    @Override
+    public boolean isDirectory(final DocumentTreeNode node) {
+        return node.isDirectory();
+    }
+
+    @Override
+    public long getSize(final DocumentTreeNode node) {
+        return node.getAttachmentFileDetail().getSize();
+    }
+}
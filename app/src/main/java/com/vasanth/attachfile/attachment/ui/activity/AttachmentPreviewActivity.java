@@ -0,0 +1,216 @@
+package com.vasanth.attachfile.attachment.ui.activity;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.support.v7.app.AppCompatActivity;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.Toast;
+
+import com.vasanth.attachfile.R;
+import com.vasanth.attachfile.attachment.ui.component.TiledImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+/**
+ * Attachment Preview Activity.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Activity used to show full resolution preview of an image attachment, with zoom & pan.
+ * <p>
+ * 2. Input.
+ * 2.a. Intent data - Uri of the image attachment, caller must grant read permission for it.
+ * 2.b. EXTRA_ATTACHMENT_NAME - Name of the attachment, shown as title.
+ * <p>
+ * 3. Note.
+ * 3.a. Image is never decoded as a whole at full resolution, only the visible tiles are (See {@link TiledImageView}).
+ *
+ * @author Vasanth
+ */
+public class AttachmentPreviewActivity extends AppCompatActivity {
+
+    public static final String EXTRA_ATTACHMENT_NAME = "com.vasanth.attachfile.extra.ATTACHMENT_NAME";
+
+    private TiledImageView tiledImageViewPreview;
+    private ProgressBar progressBarLoading;
+    private ParcelFileDescriptor parcelFileDescriptor;
+    private OpenAttachmentPreview openAttachmentPreview;
+
+    /**
+     * ACTIVITY METHODS.
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_attachment_preview);
+
+        tiledImageViewPreview = (TiledImageView) findViewById(R.id.tiledImageView_attachmentPreview_image);
+        progressBarLoading = (ProgressBar) findViewById(R.id.progressBar_attachmentPreview_loading);
+
+        String attachmentName = getIntent().getStringExtra(EXTRA_ATTACHMENT_NAME);
+        if (attachmentName != null) {
+            setTitle(attachmentName);
+        }
+
+        Uri attachmentUri = getIntent().getData();
+        if (attachmentUri == null) {
+            finish();
+            return;
+        }
+        openAttachmentPreview = new OpenAttachmentPreview(this, attachmentUri);
+        openAttachmentPreview.execute();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (openAttachmentPreview != null) {
+            openAttachmentPreview.cancel(false);
+        }
+        tiledImageViewPreview.recycle();
+        closeParcelFileDescriptor(parcelFileDescriptor);
+        super.onDestroy();
+    }
+
+    /**
+     * HELPER METHODS.
+     */
+    private void onAttachmentPreviewOpened(final PreviewImage previewImage) {
+        progressBarLoading.setVisibility(View.GONE);
+        if (previewImage != null) {
+            parcelFileDescriptor = previewImage.parcelFileDescriptor;
+            tiledImageViewPreview.setImage(previewImage.bitmapRegionDecoder, previewImage.baseBitmap, previewImage.baseSampleSize);
+        } else {
+            Toast.makeText(this, getString(R.string.attachment_error_unableToPreviewAttachmentErrorMessage), Toast.LENGTH_SHORT).show();
+            finish();
+        }
+    }
+
+    private static void closeParcelFileDescriptor(final ParcelFileDescriptor parcelFileDescriptor) {
+        if (parcelFileDescriptor != null) {
+            try {
+                parcelFileDescriptor.close();
+            } catch (IOException ioException) {
+                ioException.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Decoder & base bitmap of the image.
+     */
+    private static class PreviewImage {
+
+        private BitmapRegionDecoder bitmapRegionDecoder;
+        private Bitmap baseBitmap;
+        private int baseSampleSize;
+        private ParcelFileDescriptor parcelFileDescriptor;
+    }
+
+    /**
+     * Used to open region decoder for the attachment & decode its base bitmap.
+     * <p>
+     * 1. Prefer opening the decoder over a file descriptor, so that compressed content is read on demand.
+     * 2. Else open the decoder over a stream.
+     * 3. Decode whole image subsampled to fit screen, as base bitmap.
+     */
+    private static class OpenAttachmentPreview extends AsyncTask<Void, Void, PreviewImage> {
+
+        private WeakReference<AttachmentPreviewActivity> activityWeakReference;
+        private Uri attachmentUri;
+        private int screenWidth;
+        private int screenHeight;
+
+        /**
+         * Constructor.
+         *
+         * @param activity      Activity.
+         * @param attachmentUri Attachment uri.
+         */
+        public OpenAttachmentPreview(final AttachmentPreviewActivity activity, final Uri attachmentUri) {
+            this.activityWeakReference = new WeakReference<>(activity);
+            this.attachmentUri = attachmentUri;
+            DisplayMetrics displayMetrics = activity.getResources().getDisplayMetrics();
+            this.screenWidth = displayMetrics.widthPixels;
+            this.screenHeight = displayMetrics.heightPixels;
+        }
+
+        @Override
+        protected PreviewImage doInBackground(Void... voids) {
+            AttachmentPreviewActivity activity = activityWeakReference.get();
+            if (activity == null) {
+                return null;
+            }
+            PreviewImage previewImage = new PreviewImage();
+            try {
+                try {
+                    previewImage.parcelFileDescriptor = activity.getContentResolver().openFileDescriptor(attachmentUri, "r");
+                    previewImage.bitmapRegionDecoder = BitmapRegionDecoder.newInstance(previewImage.parcelFileDescriptor.getFileDescriptor(), false);
+                } catch (IOException fileDescriptorException) {
+                    closeParcelFileDescriptor(previewImage.parcelFileDescriptor);
+                    previewImage.parcelFileDescriptor = null;
+                    InputStream inputStream = activity.getContentResolver().openInputStream(attachmentUri);
+                    try {
+                        previewImage.bitmapRegionDecoder = BitmapRegionDecoder.newInstance(inputStream, false);
+                    } finally {
+                        if (inputStream != null) {
+                            inputStream.close();
+                        }
+                    }
+                }
+
+                int imageWidth = previewImage.bitmapRegionDecoder.getWidth();
+                int imageHeight = previewImage.bitmapRegionDecoder.getHeight();
+                float ratio = Math.max((float) imageWidth / screenWidth, (float) imageHeight / screenHeight);
+                int sampleSize = Integer.highestOneBit((int) Math.floor(ratio));
+                previewImage.baseSampleSize = sampleSize == 0 ? 1 : sampleSize;
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = previewImage.baseSampleSize;
+                previewImage.baseBitmap = previewImage.bitmapRegionDecoder.decodeRegion(new Rect(0, 0, imageWidth, imageHeight), options);
+                if (previewImage.baseBitmap == null) {
+                    throw new IOException("Unable to decode " + attachmentUri);
+                }
+                return previewImage;
+            } catch (Exception exp) {
+                exp.printStackTrace();
+                if (previewImage.bitmapRegionDecoder != null) {
+                    previewImage.bitmapRegionDecoder.recycle();
+                }
+                closeParcelFileDescriptor(previewImage.parcelFileDescriptor);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(PreviewImage previewImage) {
+            super.onPostExecute(previewImage);
+
+            AttachmentPreviewActivity activity = activityWeakReference.get();
+            if (activity != null && !activity.isFinishing()) {
+                activity.onAttachmentPreviewOpened(previewImage);
+            } else if (previewImage != null) {
+                previewImage.bitmapRegionDecoder.recycle();
+                closeParcelFileDescriptor(previewImage.parcelFileDescriptor);
+            }
+        }
+
+        @Override
+        protected void onCancelled(PreviewImage previewImage) {
+            super.onCancelled(previewImage);
+
+            if (previewImage != null) {
+                previewImage.bitmapRegionDecoder.recycle();
+                closeParcelFileDescriptor(previewImage.parcelFileDescriptor);
+            }
+        }
+    }
+}
@@ -5,15 +5,22 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.util.Log;
 import android.view.View;
-import android.widget.ImageView;
-import android.widget.TextView;
 
 import com.vasanth.attachfile.R;
 import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.util.AttachmentDeadlineConfig;
+import com.vasanth.attachfile.attachment.util.AttachmentDeadlineExecutor;
+import com.vasanth.attachfile.attachment.util.AttachmentMemoryGovernor;
+import com.vasanth.attachfile.attachment.util.AttachmentThumbnailCache;
 import com.vasanth.attachfile.attachment.util.AttachmentUtil;
+import com.vasanth.attachfile.core.model.AttachmentProbeResult;
+import com.vasanth.attachfile.core.model.ZipInspection;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -26,23 +33,27 @@ import java.lang.ref.WeakReference;
  * 2. Methods.
  * 2.a. getAttachmentView - Used to get attachment view.
  * 2.b. getAttachmentFileDetail - Used to get attachment file detail.
+ * 2.c. setThumbnail - Used to set thumbnail decoded by caller, for attachment created while it is still being resolved.
+ * 2.d. updateAttachmentFileSize - Used to show size, once attachment created while it is still being resolved gets its size.
+ * 2.e. releaseThumbnail - Used to drop thumbnail under memory pressure, caller sets it again once pressure eases.
+ * 2.f. updateArchiveSummary - Used to show entry count & unpacked size (Or zip bomb warning) of ZIP attachment, once it is inspected.
  * <p>
  * 3. Output.
- * 3.a. AttachmentListener - Is used to notify if user has performed action to remove attachment.
+ * 3.a. AttachmentListener - Is used to notify if user has performed action to remove or open attachment.
  *
  * @author Vasanth
  */
-public class Attachment implements View.OnClickListener {
+public class Attachment implements AttachmentTileView.AttachmentTileListener {
 
     private static final String TAG = "Attachment";
+    public static final int THUMBNAIL_IMAGE_SIZE_DP = AttachmentThumbnailCache.SIZE_LIST_ROW_DP;
     private Activity activity;
     private AttachmentFileDetail attachmentFileDetail;
     private AttachmentListener attachmentListener;
-    private View attachmentView;
-    private ImageView imageViewAttachmentThumbnail;
-    private TextView textViewAttachmentName;
-    private TextView textViewAttachmentSize;
-    private ImageView imageViewRemoveAttachment;
+    private AttachmentDeadlineConfig attachmentDeadlineConfig;
+    private boolean isResolving;
+    private boolean isThumbnailReleased;
+    private AttachmentTileView attachmentTileView;
 
     /**
      * Attachment Listener.
@@ -58,6 +69,15 @@ public class Attachment implements View.OnClickListener {
          */
         void removeAttachment(final Attachment attachment);
 
+        /**
+         * Open Attachment.
+         * <p/>
+         * 1. Gets called when user taps the attachment thumbnail, to preview it.
+         *
+         * @param attachment Attachment to be opened.
+         */
+        void openAttachment(final Attachment attachment);
+
     }
 
     /**
@@ -68,22 +88,54 @@ public class Attachment implements View.OnClickListener {
      * @param attachmentListener   Attachment Listener.
      */
     public Attachment(final Activity activity, final AttachmentFileDetail attachmentFileDetail, final AttachmentListener attachmentListener) {
+        this(activity, attachmentFileDetail, attachmentListener, new AttachmentDeadlineConfig());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param activity                 Activity.
+     * @param attachmentFileDetail     Attachment file detail.
+     * @param attachmentListener       Attachment Listener.
+     * @param attachmentDeadlineConfig Deadlines used while decoding thumbnail.
+     */
+    public Attachment(final Activity activity, final AttachmentFileDetail attachmentFileDetail, final AttachmentListener attachmentListener,
+                      final AttachmentDeadlineConfig attachmentDeadlineConfig) {
+        this(activity, attachmentFileDetail, attachmentListener, attachmentDeadlineConfig, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param activity                 Activity.
+     * @param attachmentFileDetail     Attachment file detail.
+     * @param attachmentListener       Attachment Listener.
+     * @param attachmentDeadlineConfig Deadlines used while decoding thumbnail.
+     * @param isResolving              TRUE if attachment is still being resolved, then caller sets its size & thumbnail once known
+     *                                 (See {@link #updateAttachmentFileSize()} & {@link #setThumbnail(Bitmap)}).
+     */
+    public Attachment(final Activity activity, final AttachmentFileDetail attachmentFileDetail, final AttachmentListener attachmentListener,
+                      final AttachmentDeadlineConfig attachmentDeadlineConfig, final boolean isResolving) {
         this.activity = activity;
         this.attachmentFileDetail = attachmentFileDetail;
         this.attachmentListener = attachmentListener;
+        this.attachmentDeadlineConfig = attachmentDeadlineConfig;
+        this.isResolving = isResolving;
 
         createAttachmentView();
     }
 
     /**
-     * View.OnClickListener Methods.
+     * AttachmentTileView.AttachmentTileListener Methods.
      */
     @Override
-    public void onClick(View v) {
-        // Remove Attachment.
-        if (v.getId() == R.id.attachment_imageView_removeAttachment) {
-            removeAttachment();
-        }
+    public void onThumbnailClicked() {
+        openAttachment();
+    }
+
+    @Override
+    public void onRemoveClicked() {
+        removeAttachment();
     }
 
     /**
@@ -92,7 +144,7 @@ public class Attachment implements View.OnClickListener {
      * @return Attachment view.
      */
     public View getAttachmentView() {
-        return attachmentView;
+        return attachmentTileView;
     }
 
     /**
@@ -104,6 +156,50 @@ public class Attachment implements View.OnClickListener {
         return attachmentFileDetail;
     }
 
+    /**
+     * Used to set thumbnail decoded by caller.
+     *
+     * @param thumbnail Thumbnail, NULL to show default thumbnail.
+     */
+    public void setThumbnail(final Bitmap thumbnail) {
+        isThumbnailReleased = false;
+        attachmentTileView.setThumbnail(thumbnail);
+    }
+
+    /**
+     * Used to drop thumbnail (Showing default thumbnail instead), so that its bitmap can be reclaimed under memory pressure.
+     */
+    public void releaseThumbnail() {
+        if (attachmentTileView.hasThumbnail()) {
+            attachmentTileView.setThumbnail(null);
+            isThumbnailReleased = true;
+        }
+    }
+
+    /**
+     * @return TRUE if thumbnail was dropped by {@link #releaseThumbnail()} & not set again.
+     */
+    public boolean isThumbnailReleased() {
+        return isThumbnailReleased;
+    }
+
+    /**
+     * Used to show size, once attachment gets its size.
+     */
+    public void updateAttachmentFileSize() {
+        isResolving = false;
+        attachmentTileView.setFileSize(getDisplayFileSize());
+    }
+
+    /**
+     * Used to show archive summary along with size, once ZIP attachment is inspected - Size alone is shown until it is known.
+     */
+    public void updateArchiveSummary() {
+        if (!isResolving || attachmentFileDetail.getSize() > 0) {
+            attachmentTileView.setFileSize(getDisplayFileSize());
+        }
+    }
+
     private void createAttachmentView() {
         initializeAttachmentView();
 
@@ -113,29 +209,56 @@ public class Attachment implements View.OnClickListener {
     }
 
     private void initializeAttachmentView() {
-        attachmentView = activity.getLayoutInflater().inflate(R.layout.view_attachment, null);
-        imageViewAttachmentThumbnail = (ImageView) attachmentView.findViewById(R.id.attachment_imageView_thumbnailImage);
-        textViewAttachmentName = (TextView) attachmentView.findViewById(R.id.attachment_textView_attachmentDetailFileName);
-        textViewAttachmentSize = (TextView) attachmentView.findViewById(R.id.attachment_textView_attachmentDetailFileSize);
-        imageViewRemoveAttachment = (ImageView) attachmentView.findViewById(R.id.attachment_imageView_removeAttachment);
+        attachmentTileView = new AttachmentTileView(activity);
     }
 
     private void populateAttachmentView() {
         if (attachmentFileDetail != null) {
-            textViewAttachmentName.setText(attachmentFileDetail.getName());
-            textViewAttachmentSize.setText(AttachmentUtil.getDisplayFileSize(attachmentFileDetail.getSize()));
-            // Only for MimeType is "images/.*" - We will get thumbnail & set it.
-            // Else we will show default thumbnail.
-            if (attachmentFileDetail.getMimeType() != null && attachmentFileDetail.getMimeType().matches("image/.*")) {
-                new GetThumbnailForImageAttachment(activity, imageViewAttachmentThumbnail, attachmentFileDetail.getUri()).execute();
+            attachmentTileView.setFileName(attachmentFileDetail.getName());
+            if (isResolving && attachmentFileDetail.getSize() <= 0) {
+                attachmentTileView.setFileSize(activity.getString(R.string.attachment_fileSizeResolving));
             } else {
-                imageViewAttachmentThumbnail.setImageResource(R.drawable.ic_attachment_defaultthumbnail);
+                attachmentTileView.setFileSize(getDisplayFileSize());
+            }
+            // Only for MimeType is "images/.*" - We will get thumbnail (From cache, if its chain is cached) & set it, unless caller
+            // decodes it. Else we will show default thumbnail.
+            if (!isResolving && attachmentFileDetail.getMimeType() != null && attachmentFileDetail.getMimeType().matches("image/.*")) {
+                AttachmentThumbnailCache attachmentThumbnailCache = AttachmentThumbnailCache.getInstance(activity);
+                Bitmap cachedThumbnail = attachmentThumbnailCache.get(attachmentFileDetail.getUri(), THUMBNAIL_IMAGE_SIZE_DP);
+                if (cachedThumbnail != null) {
+                    attachmentTileView.setThumbnail(cachedThumbnail);
+                } else {
+                    new GetThumbnailForImageAttachment(activity, attachmentTileView, attachmentFileDetail.getUri(),
+                            attachmentDeadlineConfig.getThumbnailDecodeDeadlineMillis(),
+                            AttachmentMemoryGovernor.getInstance(activity).getBitmapConfig(), attachmentThumbnailCache).execute();
+                }
             }
         }
     }
 
+    /**
+     * Used to get size to be shown, with archive summary if ZIP attachment is inspected.
+     */
+    private String getDisplayFileSize() {
+        String fileSize = AttachmentUtil.getDisplayFileSize(attachmentFileDetail.getSize());
+        ZipInspection zipInspection = attachmentFileDetail.getZipInspection();
+        if (zipInspection == null) {
+            return fileSize;
+        }
+        if (zipInspection.isZipBomb()) {
+            return activity.getString(R.string.attachment_archiveZipBombMessage, fileSize,
+                    AttachmentUtil.getDisplayFileSize(zipInspection.getTotalSize()));
+        }
+        int fileCount = (int) Math.min(zipInspection.getFileCount(), Integer.MAX_VALUE);
+        if (!zipInspection.isComplete()) {
+            return activity.getString(R.string.attachment_archivePartialSummary, fileSize, fileCount);
+        }
+        return activity.getResources().getQuantityString(R.plurals.attachment_archiveSummary, fileCount, fileSize, fileCount,
+                AttachmentUtil.getDisplayFileSize(zipInspection.getTotalSize()));
+    }
+
     private void addListenerForAttachmentView() {
-        imageViewRemoveAttachment.setOnClickListener(this);
+        attachmentTileView.setAttachmentTileListener(this);
     }
 
     private void removeAttachment() {
@@ -144,37 +267,67 @@ public class Attachment implements View.OnClickListener {
         }
     }
 
+    private void openAttachment() {
+        if (attachmentListener != null) {
+            attachmentListener.openAttachment(this);
+        }
+    }
+
     /**
      * Used to get Thumbnail for the given uri & set it to view.
      * <p>
-     * 1. Gets thumbnail for the given uri in background & sets it to view.
+     * 1. Gets thumbnail for the given uri in background & sets it to view - Decoding its whole chain once, so that other sizes of
+     * the same uri are served from cache.
+     * 2. If decoding doesn't complete within its deadline, we give up & show default thumbnail.
      */
     private static class GetThumbnailForImageAttachment extends AsyncTask<Void, Void, Bitmap> {
 
-        private static final int THUMBNAIL_IMAGE_SIZE_DP = 90;
         private WeakReference<Context> contextWeakReference;
-        private WeakReference<ImageView> imageViewAttachmentThumbnailWeakReference;
+        private WeakReference<AttachmentTileView> attachmentTileViewWeakReference;
         private Uri attachmentImageFileUri;
+        private long decodeDeadlineMillis;
+        private Bitmap.Config bitmapConfig;
+        private AttachmentThumbnailCache attachmentThumbnailCache;
 
         /**
          * Constructor.
          *
-         * @param context                      Context.
-         * @param imageViewAttachmentThumbnail ImageView Attachment Thumbnail.
-         * @param attachmentImageFileUri       Attachment ImageFile Uri.
+         * @param context                  Context.
+         * @param attachmentTileView       Attachment Tile View.
+         * @param attachmentImageFileUri   Attachment ImageFile Uri.
+         * @param decodeDeadlineMillis     Max time to decode thumbnail.
+         * @param bitmapConfig             Config to decode thumbnail with.
+         * @param attachmentThumbnailCache Cache to keep decoded thumbnail chain in.
          */
-        public GetThumbnailForImageAttachment(final Context context, final ImageView imageViewAttachmentThumbnail, final Uri attachmentImageFileUri) {
+        public GetThumbnailForImageAttachment(final Context context, final AttachmentTileView attachmentTileView, final Uri attachmentImageFileUri,
+                                              final long decodeDeadlineMillis, final Bitmap.Config bitmapConfig,
+                                              final AttachmentThumbnailCache attachmentThumbnailCache) {
             contextWeakReference = new WeakReference<Context>(context);
-            imageViewAttachmentThumbnailWeakReference = new WeakReference<ImageView>(imageViewAttachmentThumbnail);
+            attachmentTileViewWeakReference = new WeakReference<AttachmentTileView>(attachmentTileView);
             this.attachmentImageFileUri = attachmentImageFileUri;
+            this.decodeDeadlineMillis = decodeDeadlineMillis;
+            this.bitmapConfig = bitmapConfig;
+            this.attachmentThumbnailCache = attachmentThumbnailCache;
         }
 
         @Override
         protected Bitmap doInBackground(Void... voids) {
             Bitmap thumbnail = null;
-            if (contextWeakReference != null && contextWeakReference.get() != null) {
+            final Context context = contextWeakReference != null ? contextWeakReference.get() : null;
+            if (context != null) {
                 try {
-                    thumbnail = AttachmentUtil.createThumbnail(contextWeakReference.get(), attachmentImageFileUri, THUMBNAIL_IMAGE_SIZE_DP);
+                    AttachmentDeadlineExecutor attachmentDeadlineExecutor = new AttachmentDeadlineExecutor(decodeDeadlineMillis,
+                            AttachmentDeadlineConfig.NO_DEADLINE);
+                    thumbnail = attachmentDeadlineExecutor.execute(new Callable<Bitmap>() {
+                        @Override
+                        public Bitmap call() throws Exception {
+                            return attachmentThumbnailCache.getOrCreate(attachmentImageFileUri, THUMBNAIL_IMAGE_SIZE_DP, bitmapConfig,
+                                    AttachmentProbeResult.UNKNOWN_DIMENSION, AttachmentProbeResult.UNKNOWN_DIMENSION);
+                        }
+                    });
+                } catch (TimeoutException timeoutException) {
+                    Log.i(TAG, "Thumbnail decode timed out for " + attachmentImageFileUri);
+                    thumbnail = null;
                 } catch (Exception exp) {
                     exp.printStackTrace();
                     thumbnail = null;
@@ -187,13 +340,8 @@ public class Attachment implements View.OnClickListener {
         protected void onPostExecute(Bitmap thumbnail) {
             super.onPostExecute(thumbnail);
 
-            if (imageViewAttachmentThumbnailWeakReference != null && imageViewAttachmentThumbnailWeakReference.get() != null) {
-                ImageView imageViewThumbnail = imageViewAttachmentThumbnailWeakReference.get();
-                if (thumbnail != null) {
-                    imageViewThumbnail.setImageBitmap(thumbnail);
-                } else {
-                    imageViewThumbnail.setImageResource(R.drawable.ic_attachment_defaultthumbnail);
-                }
+            if (attachmentTileViewWeakReference != null && attachmentTileViewWeakReference.get() != null) {
+                attachmentTileViewWeakReference.get().setThumbnail(thumbnail);
             }
         }
     }
@@ -0,0 +1,299 @@
+package com.vasanth.attachfile.attachment.ui.component;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.vasanth.attachfile.R;
+
+/**
+ * Attachment Tile View.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Single view which draws an attachment tile - Thumbnail, file name (Ellipsized in middle), file size & remove button.
+ * 1.b. Replaces the inflated layout of nested LinearLayout's, so that each tile is measured once & drawn without any child views.
+ * <p>
+ * 2. Methods.
+ * 2.a. setThumbnail - Used to set thumbnail bitmap, NULL shows default thumbnail.
+ * 2.b. setFileName - Used to set file name.
+ * 2.c. setFileSize - Used to set display file size.
+ * 2.d. setAttachmentTileListener - Used to listen for taps on thumbnail & remove button.
+ * <p>
+ * 3. Note.
+ * 3.a. Tile has fixed size, hence text is ellipsized & positioned only when it or the tile size changes, not on every draw.
+ *
+ * @author Vasanth
+ */
+public class AttachmentTileView extends View {
+
+    private static final int TILE_PADDING_DP = 10;
+    private static final int TILE_SIZE_DP = 120;
+    private static final int DETAILS_PADDING_DP = 2;
+    private static final int FILE_NAME_MARGIN_BOTTOM_DP = 2;
+
+    private static final int TOUCH_TARGET_NONE = 0;
+    private static final int TOUCH_TARGET_THUMBNAIL = 1;
+    private static final int TOUCH_TARGET_REMOVE = 2;
+
+    private Drawable defaultThumbnailDrawable;
+    private Drawable thumbnailDrawable;
+    private Drawable removeDrawable;
+    private TextPaint fileNamePaint;
+    private TextPaint fileSizePaint;
+    private Paint detailsBackgroundPaint;
+
+    private String fileName = "";
+    private String fileSize = "";
+    private String displayFileName = "";
+    private String displayFileSize = "";
+    private AttachmentTileListener attachmentTileListener;
+
+    private int tilePadding;
+    private int tileSize;
+    private int detailsPadding;
+    private int fileNameMarginBottom;
+
+    private Rect thumbnailRect = new Rect();
+    private Rect detailsRect = new Rect();
+    private Rect removeRect = new Rect();
+    private int textWidth;
+    private float fileNameBaseline;
+    private float fileSizeBaseline;
+    private int touchDownTarget;
+
+    /**
+     * Attachment Tile Listener.
+     */
+    public interface AttachmentTileListener {
+
+        /**
+         * Gets called when user taps the thumbnail.
+         */
+        void onThumbnailClicked();
+
+        /**
+         * Gets called when user taps the remove button.
+         */
+        void onRemoveClicked();
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context Context.
+     */
+    public AttachmentTileView(final Context context) {
+        this(context, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context      Context.
+     * @param attributeSet AttributeSet.
+     */
+    public AttachmentTileView(final Context context, final AttributeSet attributeSet) {
+        super(context, attributeSet);
+
+        tilePadding = convertDpToPixel(TILE_PADDING_DP);
+        tileSize = convertDpToPixel(TILE_SIZE_DP);
+        detailsPadding = convertDpToPixel(DETAILS_PADDING_DP);
+        fileNameMarginBottom = convertDpToPixel(FILE_NAME_MARGIN_BOTTOM_DP);
+
+        float textSize = getResources().getDimension(R.dimen.textSizeSmall);
+        fileNamePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        fileNamePaint.setTextSize(textSize);
+        fileNamePaint.setColor(ContextCompat.getColor(context, R.color.attachment_textColorDark));
+        fileSizePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        fileSizePaint.setTextSize(textSize);
+        fileSizePaint.setColor(ContextCompat.getColor(context, R.color.attachment_textColorLight));
+        detailsBackgroundPaint = new Paint();
+        detailsBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.attachment_backgroundColorLight));
+
+        defaultThumbnailDrawable = ContextCompat.getDrawable(context, R.drawable.ic_attachment_defaultthumbnail);
+        removeDrawable = ContextCompat.getDrawable(context, R.drawable.ic_close_black_24dp);
+        thumbnailDrawable = defaultThumbnailDrawable;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    /**
+     * Used to set thumbnail bitmap.
+     *
+     * @param thumbnail Thumbnail, NULL to show default thumbnail.
+     */
+    public void setThumbnail(final Bitmap thumbnail) {
+        thumbnailDrawable = thumbnail != null ? new BitmapDrawable(getResources(), thumbnail) : defaultThumbnailDrawable;
+        layoutThumbnail();
+        invalidate();
+    }
+
+    /**
+     * @return TRUE if a thumbnail bitmap is shown, not the default thumbnail.
+     */
+    public boolean hasThumbnail() {
+        return thumbnailDrawable != defaultThumbnailDrawable;
+    }
+
+    public void setFileName(final String fileName) {
+        this.fileName = fileName != null ? fileName : "";
+        setContentDescription(this.fileName);
+        layoutText();
+        invalidate();
+    }
+
+    public void setFileSize(final String fileSize) {
+        this.fileSize = fileSize != null ? fileSize : "";
+        layoutText();
+        invalidate();
+    }
+
+    public void setAttachmentTileListener(final AttachmentTileListener attachmentTileListener) {
+        this.attachmentTileListener = attachmentTileListener;
+    }
+
+    /**
+     * View Methods.
+     */
+    // Tile always has fixed size.
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int size = tileSize + (2 * tilePadding);
+        setMeasuredDimension(resolveSize(size, widthMeasureSpec), resolveSize(size, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+
+        // Details - Two lines of text with the remove button on their right, at the bottom of the tile.
+        Paint.FontMetricsInt fileNameMetrics = fileNamePaint.getFontMetricsInt();
+        Paint.FontMetricsInt fileSizeMetrics = fileSizePaint.getFontMetricsInt();
+        int fileNameHeight = fileNameMetrics.bottom - fileNameMetrics.top;
+        int fileSizeHeight = fileSizeMetrics.bottom - fileSizeMetrics.top;
+        int removeWidth = removeDrawable.getIntrinsicWidth();
+        int removeHeight = removeDrawable.getIntrinsicHeight();
+        int detailsHeight = (2 * detailsPadding) + Math.max(fileNameHeight + fileNameMarginBottom + fileSizeHeight, removeHeight);
+
+        int left = tilePadding;
+        int top = tilePadding;
+        int right = width - tilePadding;
+        int bottom = height - tilePadding;
+        detailsRect.set(left, bottom - detailsHeight, right, bottom);
+        thumbnailRect.set(left, top, right, detailsRect.top);
+        removeRect.set(detailsRect.right - detailsPadding - removeWidth, detailsRect.top, detailsRect.right - detailsPadding,
+                detailsRect.bottom);
+        removeDrawable.setBounds(removeRect.left, removeRect.centerY() - (removeHeight / 2), removeRect.right,
+                removeRect.centerY() - (removeHeight / 2) + removeHeight);
+
+        textWidth = removeRect.left - detailsRect.left - detailsPadding;
+        fileNameBaseline = detailsRect.top + detailsPadding - fileNameMetrics.top;
+        fileSizeBaseline = fileNameBaseline + fileNameMetrics.bottom + fileNameMarginBottom - fileSizeMetrics.top;
+
+        layoutThumbnail();
+        layoutText();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (thumbnailDrawable != null) {
+            thumbnailDrawable.draw(canvas);
+        }
+        canvas.drawRect(detailsRect, detailsBackgroundPaint);
+        float textLeft = detailsRect.left + detailsPadding;
+        canvas.drawText(displayFileName, textLeft, fileNameBaseline, fileNamePaint);
+        canvas.drawText(displayFileSize, textLeft, fileSizeBaseline, fileSizePaint);
+        removeDrawable.draw(canvas);
+    }
+
+    // Hit test - Tap must start & end on the same target.
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int x = (int) event.getX();
+        int y = (int) event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                touchDownTarget = getTouchTarget(x, y);
+                return touchDownTarget != TOUCH_TARGET_NONE;
+
+            case MotionEvent.ACTION_UP:
+                if (touchDownTarget != TOUCH_TARGET_NONE && touchDownTarget == getTouchTarget(x, y) && attachmentTileListener != null) {
+                    if (touchDownTarget == TOUCH_TARGET_REMOVE) {
+                        attachmentTileListener.onRemoveClicked();
+                    } else {
+                        attachmentTileListener.onThumbnailClicked();
+                    }
+                }
+                touchDownTarget = TOUCH_TARGET_NONE;
+                return true;
+
+            case MotionEvent.ACTION_CANCEL:
+                touchDownTarget = TOUCH_TARGET_NONE;
+                return true;
+        }
+        return touchDownTarget != TOUCH_TARGET_NONE;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private int getTouchTarget(final int x, final int y) {
+        if (removeRect.contains(x, y)) {
+            return TOUCH_TARGET_REMOVE;
+        } else if (thumbnailRect.contains(x, y)) {
+            return TOUCH_TARGET_THUMBNAIL;
+        }
+        return TOUCH_TARGET_NONE;
+    }
+
+    /**
+     * Used to fit thumbnail in the center of thumbnail area, keeping its aspect ratio.
+     */
+    private void layoutThumbnail() {
+        if (thumbnailDrawable == null || thumbnailRect.isEmpty()) {
+            return;
+        }
+        int drawableWidth = thumbnailDrawable.getIntrinsicWidth();
+        int drawableHeight = thumbnailDrawable.getIntrinsicHeight();
+        if (drawableWidth <= 0 || drawableHeight <= 0) {
+            thumbnailDrawable.setBounds(thumbnailRect);
+            return;
+        }
+        float scale = Math.min((float) thumbnailRect.width() / drawableWidth, (float) thumbnailRect.height() / drawableHeight);
+        int width = Math.round(drawableWidth * scale);
+        int height = Math.round(drawableHeight * scale);
+        int left = thumbnailRect.left + ((thumbnailRect.width() - width) / 2);
+        int top = thumbnailRect.top + ((thumbnailRect.height() - height) / 2);
+        thumbnailDrawable.setBounds(left, top, left + width, top + height);
+    }
+
+    /**
+     * Used to ellipsize text to the available width.
+     */
+    private void layoutText() {
+        if (textWidth <= 0) {
+            return;
+        }
+        displayFileName = TextUtils.ellipsize(fileName, fileNamePaint, textWidth, TextUtils.TruncateAt.MIDDLE).toString();
+        displayFileSize = TextUtils.ellipsize(fileSize, fileSizePaint, textWidth, TextUtils.TruncateAt.MIDDLE).toString();
+    }
+
+    private int convertDpToPixel(final int dp) {
+        return Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, getResources().getDisplayMetrics()));
+    }
+}
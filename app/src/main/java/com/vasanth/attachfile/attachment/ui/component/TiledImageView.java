@@ -0,0 +1,440 @@
+package com.vasanth.attachfile.attachment.ui.component;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.vasanth.attachfile.attachment.model.MemoryPressureEvent;
+import com.vasanth.attachfile.attachment.util.AttachmentMemoryGovernor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tiled Image View.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. View used to show an image of any resolution at full detail, with pinch zoom, pan & double tap zoom.
+ * 1.b. Only the tiles visible at the current zoom level are decoded (Using BitmapRegionDecoder), so memory stays constant
+ * whatever the image resolution.
+ * <p>
+ * 2. Methods.
+ * 2.a. setImage - Used to set the decoder of the image & its base (Whole image, subsampled to fit screen) bitmap.
+ * 2.b. recycle - Used to cancel pending decodes & release the decoder.
+ * <p>
+ * 3. Note.
+ * 3.a. Base bitmap is always drawn first, tiles are only decoded when zoomed in beyond the detail of the base bitmap.
+ * 3.b. Decoded tiles are kept in a cache bounded by screen size, tiles which scroll away are cancelled before being decoded.
+ * 3.c. Under memory pressure the cache shrinks (Down to a single screen of tiles) & tiles are decoded as RGB_565
+ * (See {@link AttachmentMemoryGovernor}).
+ *
+ * @author Vasanth
+ */
+public class TiledImageView extends View implements AttachmentMemoryGovernor.MemoryPressureListener {
+
+    private static final int TILE_SIZE_PX = 512;
+
+    // Max zoom, relative to showing image pixels 1:1.
+    private static final float MAX_SCALE = 2f;
+
+    // Number of screens worth of tiles kept in cache.
+    private static final int TILE_CACHE_SCREEN_COUNT = 3;
+
+    private BitmapRegionDecoder bitmapRegionDecoder;
+    private Bitmap baseBitmap;
+    private int baseSampleSize;
+    private int imageWidth;
+    private int imageHeight;
+
+    private float scale;
+    private float minScale;
+    private float translateX;
+    private float translateY;
+
+    private LruCache<Tile, Bitmap> tileCache;
+    private int screenTileCacheSizeInBytes;
+    private AttachmentMemoryGovernor attachmentMemoryGovernor;
+    private Map<Tile, TileDecodeTask> pendingTiles = new HashMap<>();
+    private ExecutorService tileDecodeExecutor;
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ScaleGestureDetector scaleGestureDetector;
+    private GestureDetector gestureDetector;
+    private Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Rect tileSourceRect = new Rect();
+    private RectF destinationRect = new RectF();
+
+    /**
+     * Constructor's.
+     */
+    public TiledImageView(Context context) {
+        this(context, null);
+    }
+
+    public TiledImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        int tilesPerScreen = (displayMetrics.widthPixels / TILE_SIZE_PX + 2) * (displayMetrics.heightPixels / TILE_SIZE_PX + 2);
+        screenTileCacheSizeInBytes = tilesPerScreen * TILE_SIZE_PX * TILE_SIZE_PX * 4;
+        attachmentMemoryGovernor = AttachmentMemoryGovernor.getInstance(context);
+        tileCache = createTileCache();
+
+        scaleGestureDetector = new ScaleGestureDetector(context, new ScaleGestureListener());
+        gestureDetector = new GestureDetector(context, new PanGestureListener());
+    }
+
+    /**
+     * Used to set the image.
+     *
+     * @param bitmapRegionDecoder Decoder of the image, owned by this view from now on.
+     * @param baseBitmap          Whole image decoded with baseSampleSize.
+     * @param baseSampleSize      Sample size used to decode base bitmap.
+     */
+    public void setImage(final BitmapRegionDecoder bitmapRegionDecoder, final Bitmap baseBitmap, final int baseSampleSize) {
+        recycle();
+        this.bitmapRegionDecoder = bitmapRegionDecoder;
+        this.baseBitmap = baseBitmap;
+        this.baseSampleSize = baseSampleSize;
+        this.imageWidth = bitmapRegionDecoder.getWidth();
+        this.imageHeight = bitmapRegionDecoder.getHeight();
+        this.tileDecodeExecutor = Executors.newSingleThreadExecutor();
+        resetScale();
+        invalidate();
+    }
+
+    /**
+     * Used to cancel pending decodes & release the decoder.
+     */
+    public void recycle() {
+        cancelTiles(new HashSet<Tile>());
+        if (tileDecodeExecutor != null) {
+            tileDecodeExecutor.shutdownNow();
+            tileDecodeExecutor = null;
+        }
+        tileCache.evictAll();
+        if (bitmapRegionDecoder != null) {
+            bitmapRegionDecoder.recycle();
+            bitmapRegionDecoder = null;
+        }
+        baseBitmap = null;
+    }
+
+    /**
+     * View Methods.
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        resetScale();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attachmentMemoryGovernor.addMemoryPressureListener(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        attachmentMemoryGovernor.removeMemoryPressureListener(this);
+        recycle();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleGestureDetector.onTouchEvent(event);
+        gestureDetector.onTouchEvent(event);
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (bitmapRegionDecoder == null || baseBitmap == null) {
+            return;
+        }
+
+        // Base bitmap.
+        destinationRect.set(translateX, translateY, translateX + imageWidth * scale, translateY + imageHeight * scale);
+        canvas.drawBitmap(baseBitmap, null, destinationRect, bitmapPaint);
+
+        // Tiles - Only when zoomed in beyond the detail of base bitmap.
+        int sampleSize = getSampleSize(scale);
+        Set<Tile> visibleTiles = new HashSet<>();
+        if (sampleSize < baseSampleSize) {
+            int tileSourceSize = TILE_SIZE_PX * sampleSize;
+            float visibleLeft = Math.max(0, -translateX / scale);
+            float visibleTop = Math.max(0, -translateY / scale);
+            float visibleRight = Math.min(imageWidth, (getWidth() - translateX) / scale);
+            float visibleBottom = Math.min(imageHeight, (getHeight() - translateY) / scale);
+            int firstColumn = (int) (visibleLeft / tileSourceSize);
+            int lastColumn = (int) (Math.max(visibleLeft, visibleRight - 1) / tileSourceSize);
+            int firstRow = (int) (visibleTop / tileSourceSize);
+            int lastRow = (int) (Math.max(visibleTop, visibleBottom - 1) / tileSourceSize);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    Tile tile = new Tile(sampleSize, column, row);
+                    visibleTiles.add(tile);
+                    Bitmap tileBitmap = tileCache.get(tile);
+                    if (tileBitmap != null) {
+                        getTileSourceRect(tile, tileSourceRect);
+                        destinationRect.set(translateX + tileSourceRect.left * scale, translateY + tileSourceRect.top * scale,
+                                translateX + tileSourceRect.right * scale, translateY + tileSourceRect.bottom * scale);
+                        canvas.drawBitmap(tileBitmap, null, destinationRect, bitmapPaint);
+                    } else {
+                        requestTile(tile);
+                    }
+                }
+            }
+        }
+
+        // Tiles which scrolled away or belong to other zoom level are no longer needed.
+        cancelTiles(visibleTiles);
+    }
+
+    /**
+     * AttachmentMemoryGovernor.MemoryPressureListener Methods.
+     */
+    @Override
+    public void onMemoryPressureChanged(final MemoryPressureEvent memoryPressureEvent) {
+        // LruCache can't be resized below API 21, hence replaced - Visible tiles are decoded again on next draw.
+        tileCache.evictAll();
+        tileCache = createTileCache();
+        invalidate();
+    }
+
+    /**
+     * TILE STUFF.
+     */
+    private LruCache<Tile, Bitmap> createTileCache() {
+        // At least one screen of tiles, else visible tiles would be evicted & decoded again on every draw.
+        int tileCacheSizeInBytes = Math.max(screenTileCacheSizeInBytes,
+                Math.round(screenTileCacheSizeInBytes * TILE_CACHE_SCREEN_COUNT * attachmentMemoryGovernor.getCacheSizeFraction()));
+        return new LruCache<Tile, Bitmap>(tileCacheSizeInBytes) {
+            @Override
+            protected int sizeOf(Tile tile, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    private void requestTile(final Tile tile) {
+        if (pendingTiles.containsKey(tile) || tileDecodeExecutor == null) {
+            return;
+        }
+        TileDecodeTask tileDecodeTask = new TileDecodeTask(tile, bitmapRegionDecoder, attachmentMemoryGovernor.getBitmapConfig());
+        pendingTiles.put(tile, tileDecodeTask);
+        tileDecodeTask.future = tileDecodeExecutor.submit(tileDecodeTask);
+    }
+
+    private void cancelTiles(final Set<Tile> tilesToKeep) {
+        List<Tile> tilesToCancel = new ArrayList<>();
+        for (Tile tile : pendingTiles.keySet()) {
+            if (!tilesToKeep.contains(tile)) {
+                tilesToCancel.add(tile);
+            }
+        }
+        for (Tile tile : tilesToCancel) {
+            pendingTiles.remove(tile).cancel();
+        }
+    }
+
+    private void onTileDecoded(final TileDecodeTask tileDecodeTask, final Bitmap tileBitmap) {
+        // Ignore result of cancelled task.
+        if (pendingTiles.get(tileDecodeTask.tile) != tileDecodeTask) {
+            return;
+        }
+        pendingTiles.remove(tileDecodeTask.tile);
+        if (tileBitmap != null) {
+            tileCache.put(tileDecodeTask.tile, tileBitmap);
+            invalidate();
+        }
+    }
+
+    private void getTileSourceRect(final Tile tile, final Rect rect) {
+        int tileSourceSize = TILE_SIZE_PX * tile.sampleSize;
+        rect.set(tile.column * tileSourceSize, tile.row * tileSourceSize,
+                Math.min((tile.column + 1) * tileSourceSize, imageWidth), Math.min((tile.row + 1) * tileSourceSize, imageHeight));
+    }
+
+    /**
+     * SCALE STUFF.
+     */
+    private void resetScale() {
+        if (imageWidth <= 0 || imageHeight <= 0 || getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        minScale = Math.min(1f, Math.min((float) getWidth() / imageWidth, (float) getHeight() / imageHeight));
+        scale = minScale;
+        clampTranslation();
+    }
+
+    private void zoomTo(final float newScale, final float focusX, final float focusY) {
+        float clampedScale = Math.max(minScale, Math.min(MAX_SCALE, newScale));
+        translateX = focusX - (focusX - translateX) * (clampedScale / scale);
+        translateY = focusY - (focusY - translateY) * (clampedScale / scale);
+        scale = clampedScale;
+        clampTranslation();
+        invalidate();
+    }
+
+    private void clampTranslation() {
+        float scaledWidth = imageWidth * scale;
+        float scaledHeight = imageHeight * scale;
+        if (scaledWidth <= getWidth()) {
+            translateX = (getWidth() - scaledWidth) / 2;
+        } else {
+            translateX = Math.max(getWidth() - scaledWidth, Math.min(0, translateX));
+        }
+        if (scaledHeight <= getHeight()) {
+            translateY = (getHeight() - scaledHeight) / 2;
+        } else {
+            translateY = Math.max(getHeight() - scaledHeight, Math.min(0, translateY));
+        }
+    }
+
+    /**
+     * Used to get sample size to decode tiles with, for the given scale.
+     *
+     * @param scale Scale.
+     * @return Largest power of two sample size, which still shows every screen pixel.
+     */
+    private static int getSampleSize(final float scale) {
+        int k = Integer.highestOneBit((int) Math.floor(1 / scale));
+        return k == 0 ? 1 : k;
+    }
+
+    /**
+     * Gesture Listener's.
+     */
+    private class ScaleGestureListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            zoomTo(scale * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+            return true;
+        }
+    }
+
+    private class PanGestureListener extends GestureDetector.SimpleOnGestureListener {
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            translateX -= distanceX;
+            translateY -= distanceY;
+            clampTranslation();
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onDoubleTap(MotionEvent e) {
+            // Toggle between fit to screen & showing image pixels 1:1.
+            zoomTo(scale < 1f ? 1f : minScale, e.getX(), e.getY());
+            return true;
+        }
+    }
+
+    /**
+     * Tile - Identified by its sample size, column & row.
+     */
+    private static class Tile {
+
+        private int sampleSize;
+        private int column;
+        private int row;
+
+        Tile(final int sampleSize, final int column, final int row) {
+            this.sampleSize = sampleSize;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Tile)) return false;
+            Tile tile = (Tile) o;
+            return sampleSize == tile.sampleSize && column == tile.column && row == tile.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * sampleSize + column) + row;
+        }
+    }
+
+    /**
+     * Decodes a single tile in background & hands it over to the main thread.
+     */
+    private class TileDecodeTask implements Runnable {
+
+        private Tile tile;
+        private BitmapRegionDecoder bitmapRegionDecoder;
+        private Bitmap.Config bitmapConfig;
+        private volatile boolean isCancelled;
+        private Future<?> future;
+
+        TileDecodeTask(final Tile tile, final BitmapRegionDecoder bitmapRegionDecoder, final Bitmap.Config bitmapConfig) {
+            this.tile = tile;
+            this.bitmapRegionDecoder = bitmapRegionDecoder;
+            this.bitmapConfig = bitmapConfig;
+        }
+
+        void cancel() {
+            isCancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled) {
+                return;
+            }
+            Bitmap tileBitmap = null;
+            try {
+                Rect sourceRect = new Rect();
+                getTileSourceRect(tile, sourceRect);
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = tile.sampleSize;
+                options.inPreferredConfig = bitmapConfig;
+                tileBitmap = bitmapRegionDecoder.decodeRegion(sourceRect, options);
+            } catch (IllegalStateException illegalStateException) {
+                // Decoder was recycled while decoding.
+                tileBitmap = null;
+            }
+            final Bitmap decodedTileBitmap = tileBitmap;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTileDecoded(TileDecodeTask.this, decodedTileBitmap);
+                }
+            });
+        }
+    }
+}
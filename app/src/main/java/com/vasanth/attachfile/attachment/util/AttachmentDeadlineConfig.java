@@ -0,0 +1,93 @@
+package com.vasanth.attachfile.attachment.util;
+
+/**
+ * Attachment Deadline Config.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Holds the deadlines used while processing attachments, so that one slow provider (Like a hung Drive file) can't block
+ * the other attachments forever.
+ * <p>
+ * 2. Deadlines.
+ * 2.a. perUriResolutionDeadlineMillis - Max time to resolve a single uri (name, mimeType & size, including reading its content for size).
+ * 2.b. batchResolutionDeadlineMillis - Max time to resolve all uri's attached in one go.
+ * 2.c. thumbnailDecodeDeadlineMillis - Max time to decode thumbnail for a single attachment.
+ * <p>
+ * 3. Note.
+ * 3.a. Use {@link #NO_DEADLINE} to wait without any limit.
+ *
+ * @author Vasanth
+ */
+public class AttachmentDeadlineConfig {
+
+    public static final long NO_DEADLINE = 0L;
+
+    private static final long DEFAULT_PER_URI_RESOLUTION_DEADLINE_MILLIS = 60 * 1000L;
+    private static final long DEFAULT_BATCH_RESOLUTION_DEADLINE_MILLIS = 5 * 60 * 1000L;
+    private static final long DEFAULT_THUMBNAIL_DECODE_DEADLINE_MILLIS = 30 * 1000L;
+
+    private long perUriResolutionDeadlineMillis;
+    private long batchResolutionDeadlineMillis;
+    private long thumbnailDecodeDeadlineMillis;
+
+    /**
+     * Constructor.
+     * <p>
+     * 1. Creates config with default deadlines.
+     */
+    public AttachmentDeadlineConfig() {
+        this(DEFAULT_PER_URI_RESOLUTION_DEADLINE_MILLIS, DEFAULT_BATCH_RESOLUTION_DEADLINE_MILLIS, DEFAULT_THUMBNAIL_DECODE_DEADLINE_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param perUriResolutionDeadlineMillis Max time to resolve a single uri.
+     * @param batchResolutionDeadlineMillis  Max time to resolve all uri's attached in one go.
+     * @param thumbnailDecodeDeadlineMillis  Max time to decode thumbnail for a single attachment.
+     */
+    public AttachmentDeadlineConfig(final long perUriResolutionDeadlineMillis, final long batchResolutionDeadlineMillis,
+                                    final long thumbnailDecodeDeadlineMillis) {
+        this.perUriResolutionDeadlineMillis = perUriResolutionDeadlineMillis;
+        this.batchResolutionDeadlineMillis = batchResolutionDeadlineMillis;
+        this.thumbnailDecodeDeadlineMillis = thumbnailDecodeDeadlineMillis;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public long getPerUriResolutionDeadlineMillis() {
+        return perUriResolutionDeadlineMillis;
+    }
+
+    public void setPerUriResolutionDeadlineMillis(long perUriResolutionDeadlineMillis) {
+        this.perUriResolutionDeadlineMillis = perUriResolutionDeadlineMillis;
+    }
+
+    public long getBatchResolutionDeadlineMillis() {
+        return batchResolutionDeadlineMillis;
+    }
+
+    public void setBatchResolutionDeadlineMillis(long batchResolutionDeadlineMillis) {
+        this.batchResolutionDeadlineMillis = batchResolutionDeadlineMillis;
+    }
+
+    public long getThumbnailDecodeDeadlineMillis() {
+        return thumbnailDecodeDeadlineMillis;
+    }
+
+    public void setThumbnailDecodeDeadlineMillis(long thumbnailDecodeDeadlineMillis) {
+        this.thumbnailDecodeDeadlineMillis = thumbnailDecodeDeadlineMillis;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "AttachmentDeadlineConfig{" +
+                "perUriResolutionDeadlineMillis=" + perUriResolutionDeadlineMillis +
+                ", batchResolutionDeadlineMillis=" + batchResolutionDeadlineMillis +
+                ", thumbnailDecodeDeadlineMillis=" + thumbnailDecodeDeadlineMillis +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Attachment Deadline Executor.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to run attachment work (resolution, size reading, decoding) with a deadline.
+ * 1.b. Each task gets its own deadline, and optionally all tasks of a batch share one batch deadline.
+ * <p>
+ * 2. Methods.
+ * 2.a. startBatch - Used to start the batch, batch deadline is counted from this point.
+ * 2.b. execute - Used to run the given task & wait for its result until its deadline.
+ * 2.c. cancel - Used to cancel the running task & any further tasks.
+ * <p>
+ * 3. Note.
+ * 3.a. Task which misses its deadline is interrupted, so the task must check for thread interruption while doing long reads.
+ * 3.b. A provider call which ignores interruption (Like a hung ContentResolver query) keeps its worker thread busy until it returns,
+ * but the caller is released immediately on deadline.
+ *
+ * @author Vasanth
+ */
+public class AttachmentDeadlineExecutor {
+
+    // Shared by all executors, threads are created on demand & die when idle.
+    private static final ExecutorService WORKER_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AttachmentDeadlineWorker");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private long taskDeadlineMillis;
+    private long batchDeadlineMillis;
+    private long batchStartTimeMillis;
+    private volatile Future<?> runningTask;
+    private volatile boolean isCancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param taskDeadlineMillis  Deadline for each task, or {@link AttachmentDeadlineConfig#NO_DEADLINE}.
+     * @param batchDeadlineMillis Deadline for all tasks executed after {@link #startBatch()}, or {@link AttachmentDeadlineConfig#NO_DEADLINE}.
+     */
+    public AttachmentDeadlineExecutor(final long taskDeadlineMillis, final long batchDeadlineMillis) {
+        this.taskDeadlineMillis = taskDeadlineMillis;
+        this.batchDeadlineMillis = batchDeadlineMillis;
+        startBatch();
+    }
+
+    /**
+     * Used to start the batch.
+     * <p>
+     * 1. Batch deadline is counted from this point.
+     */
+    public void startBatch() {
+        batchStartTimeMillis = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Used to run the given task & wait for its result until its deadline.
+     *
+     * @param task Task to be executed.
+     * @param <T>  Type of task result.
+     * @return Result of the task.
+     * @throws TimeoutException      If task didn't complete within its deadline or batch deadline already expired.
+     * @throws CancellationException If executor was cancelled.
+     * @throws ExecutionException    If task failed.
+     * @throws InterruptedException  If calling thread was interrupted while waiting.
+     */
+    public <T> T execute(final Callable<T> task) throws TimeoutException, ExecutionException, InterruptedException {
+        if (isCancelled) {
+            throw new CancellationException();
+        }
+        long waitMillis = getRemainingMillis();
+        if (waitMillis <= 0) {
+            throw new TimeoutException("Batch deadline expired");
+        }
+
+        Future<T> future = WORKER_EXECUTOR.submit(task);
+        runningTask = future;
+        try {
+            if (isCancelled) {
+                future.cancel(true);
+            }
+            if (waitMillis == Long.MAX_VALUE) {
+                return future.get();
+            }
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException timeoutException) {
+            future.cancel(true);
+            throw timeoutException;
+        } catch (InterruptedException interruptedException) {
+            future.cancel(true);
+            throw interruptedException;
+        } finally {
+            runningTask = null;
+        }
+    }
+
+    /**
+     * Used to cancel the running task & any further tasks.
+     * <p>
+     * 1. Can be called from any thread.
+     */
+    public void cancel() {
+        isCancelled = true;
+        Future<?> task = runningTask;
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Used to check whether executor was cancelled.
+     *
+     * @return TRUE if executor was cancelled.
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Used to get the time we can wait for the next task.
+     *
+     * @return Time in millis, Long.MAX_VALUE if there is no deadline.
+     */
+    private long getRemainingMillis() {
+        long remainingMillis = Long.MAX_VALUE;
+        if (taskDeadlineMillis > AttachmentDeadlineConfig.NO_DEADLINE) {
+            remainingMillis = taskDeadlineMillis;
+        }
+        if (batchDeadlineMillis > AttachmentDeadlineConfig.NO_DEADLINE) {
+            long batchRemainingMillis = batchDeadlineMillis - (SystemClock.elapsedRealtime() - batchStartTimeMillis);
+            remainingMillis = Math.min(remainingMillis, batchRemainingMillis);
+        }
+        return remainingMillis;
+    }
+}
@@ -0,0 +1,289 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.UriPermission;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+
+import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.core.draft.AttachmentDraftJournal;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentDraftEntry;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Attachment Draft Store.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to keep the attachments of the draft on disk - Their resolved details in a journal & their thumbnails in a cache,
+ * so that a cold start restores the draft without querying providers or decoding images again.
+ * <p>
+ * 2. Methods.
+ * 2.a. restore - Used to read the draft back, with its cached thumbnails.
+ * 2.b. save - Used to journal the resolved attachments of the draft.
+ * 2.c. saveThumbnail - Used to cache thumbnail of an attachment.
+ * 2.d. removeThumbnail - Used to remove cached thumbnail of an attachment.
+ * <p>
+ * 3. Note.
+ * 3.a. Uri's are only readable after restart if we hold persistable permission for them (See {@link FileAttachmentUtil}), hence
+ * "content://" uri's for which we don't hold it anymore (Directly, or through the folder tree they were found in) are dropped on restore.
+ * 3.b. Writes happen in order on a single background thread, hence a thumbnail is always on disk before the journal referring to it.
+ *
+ * @author Vasanth
+ */
+public class AttachmentDraftStore {
+
+    private static final String JOURNAL_FILE_NAME = "attachment_draft.journal";
+    private static final String THUMBNAIL_DIRECTORY_NAME = "attachment_thumbnails";
+    private static final int THUMBNAIL_COMPRESS_QUALITY = 100;
+    private static final String TREE_PATH_SEGMENT = "tree";
+
+    private Context context;
+    private AttachmentDraftJournal attachmentDraftJournal;
+    private File thumbnailDirectory;
+    private ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    // Thumbnail key of each attachment whose thumbnail is cached, accessed only from main thread.
+    private Map<AttachmentFileDetail, String> thumbnailKeys = new HashMap<>();
+
+    /**
+     * Restored attachment, with its cached thumbnail.
+     */
+    public static class RestoredAttachment {
+
+        private AttachmentFileDetail attachmentFileDetail;
+        private Bitmap thumbnail;
+
+        RestoredAttachment(final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail) {
+            this.attachmentFileDetail = attachmentFileDetail;
+            this.thumbnail = thumbnail;
+        }
+
+        public AttachmentFileDetail getAttachmentFileDetail() {
+            return attachmentFileDetail;
+        }
+
+        /**
+         * @return Cached thumbnail, NULL if attachment has no cached thumbnail.
+         */
+        public Bitmap getThumbnail() {
+            return thumbnail;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context Context.
+     */
+    public AttachmentDraftStore(final Context context) {
+        this.context = context.getApplicationContext();
+        this.attachmentDraftJournal = new AttachmentDraftJournal(new File(this.context.getFilesDir(), JOURNAL_FILE_NAME));
+        this.thumbnailDirectory = new File(this.context.getCacheDir(), THUMBNAIL_DIRECTORY_NAME);
+    }
+
+    /**
+     * Used to read the draft back, with its cached thumbnails.
+     * <p>
+     * 1. Reads from disk, hence make sure to call this method in separate thread.
+     * 2. Once restored attachments are shown, call {@link #registerRestoredAttachments(List)} from main thread.
+     *
+     * @return Restored attachments, empty if there is no draft or it couldn't be read.
+     */
+    public List<RestoredAttachment> restore() {
+        List<RestoredAttachment> restoredAttachments = new ArrayList<>();
+        try {
+            Set<Uri> readableUris = getPersistedReadableUris();
+            for (AttachmentDraftEntry attachmentDraftEntry : attachmentDraftJournal.read()) {
+                Uri uri = Uri.parse(attachmentDraftEntry.getLocation());
+                if (!isReadable(uri, readableUris)) {
+                    continue;
+                }
+                AttachmentDetail attachmentDetail = attachmentDraftEntry.getAttachmentDetail();
+                AttachmentFileDetail attachmentFileDetail = new AttachmentFileDetail(attachmentDetail.getName(), attachmentDetail.getSize(),
+                        attachmentDetail.getMimeType(), uri);
+                Bitmap thumbnail = null;
+                if (attachmentDraftEntry.getThumbnailKey() != null) {
+                    thumbnail = BitmapFactory.decodeFile(new File(thumbnailDirectory, attachmentDraftEntry.getThumbnailKey()).getPath());
+                }
+                restoredAttachments.add(new RestoredAttachment(attachmentFileDetail, thumbnail));
+            }
+        } catch (IOException exp) {
+            exp.printStackTrace();
+            restoredAttachments.clear();
+        }
+        return restoredAttachments;
+    }
+
+    /**
+     * Used to register thumbnail keys of restored attachments, so that they are journaled again on next save.
+     *
+     * @param restoredAttachments Restored attachments.
+     */
+    public void registerRestoredAttachments(final List<RestoredAttachment> restoredAttachments) {
+        for (RestoredAttachment restoredAttachment : restoredAttachments) {
+            if (restoredAttachment.getThumbnail() != null) {
+                AttachmentFileDetail attachmentFileDetail = restoredAttachment.getAttachmentFileDetail();
+                thumbnailKeys.put(attachmentFileDetail, getThumbnailKey(attachmentFileDetail));
+            }
+        }
+    }
+
+    /**
+     * Used to journal the resolved attachments of the draft, replacing the previous draft.
+     *
+     * @param attachmentFileDetails Resolved attachments of the draft.
+     */
+    public void save(final List<AttachmentFileDetail> attachmentFileDetails) {
+        final List<AttachmentDraftEntry> attachmentDraftEntries = new ArrayList<>();
+        for (AttachmentFileDetail attachmentFileDetail : attachmentFileDetails) {
+            attachmentDraftEntries.add(new AttachmentDraftEntry(attachmentFileDetail.getUri().toString(), attachmentFileDetail,
+                    thumbnailKeys.get(attachmentFileDetail)));
+        }
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    attachmentDraftJournal.write(attachmentDraftEntries);
+                } catch (IOException exp) {
+                    exp.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Used to cache thumbnail of an attachment.
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     * @param thumbnail            Thumbnail.
+     */
+    public void saveThumbnail(final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail) {
+        final String thumbnailKey = getThumbnailKey(attachmentFileDetail);
+        thumbnailKeys.put(attachmentFileDetail, thumbnailKey);
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeThumbnail(thumbnailKey, thumbnail);
+                } catch (IOException exp) {
+                    exp.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Used to remove cached thumbnail of an attachment.
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     */
+    public void removeThumbnail(final AttachmentFileDetail attachmentFileDetail) {
+        final String thumbnailKey = thumbnailKeys.remove(attachmentFileDetail);
+        if (thumbnailKey != null) {
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    new File(thumbnailDirectory, thumbnailKey).delete();
+                }
+            });
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to get thumbnail key - Same uri with same size maps to same key, across restarts.
+     */
+    private static String getThumbnailKey(final AttachmentFileDetail attachmentFileDetail) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            messageDigest.update((attachmentFileDetail.getUri() + "|" + attachmentFileDetail.getSize()).getBytes("UTF-8"));
+            return SegmentedDigest.toHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        } catch (UnsupportedEncodingException unsupportedEncodingException) {
+            throw new IllegalStateException(unsupportedEncodingException);
+        }
+    }
+
+    private void writeThumbnail(final String thumbnailKey, final Bitmap thumbnail) throws IOException {
+        if (!thumbnailDirectory.isDirectory() && !thumbnailDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + thumbnailDirectory);
+        }
+        File thumbnailFile = new File(thumbnailDirectory, thumbnailKey);
+        File tempFile = new File(thumbnailDirectory, thumbnailKey + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        boolean isWritten = false;
+        try {
+            isWritten = thumbnail.compress(Bitmap.CompressFormat.PNG, THUMBNAIL_COMPRESS_QUALITY, outputStream);
+        } finally {
+            outputStream.close();
+            if (!isWritten) {
+                tempFile.delete();
+            }
+        }
+        if (isWritten && !tempFile.renameTo(thumbnailFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to move thumbnail to " + thumbnailFile);
+        }
+    }
+
+    private boolean isReadable(final Uri uri, final Set<Uri> readableUris) {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            return new File(uri.getPath()).canRead();
+        }
+        if (readableUris.contains(uri)) {
+            return true;
+        }
+        // Document within a folder tree - Readable through permission of the tree ("content://authority/tree/id/document/id").
+        String uriString = uri.toString();
+        for (Uri readableUri : readableUris) {
+            List<String> pathSegments = readableUri.getPathSegments();
+            if (pathSegments.size() == 2 && TREE_PATH_SEGMENT.equals(pathSegments.get(0))
+                    && uriString.startsWith(readableUri.toString() + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Used to get uri's we hold persistable read permission for.
+     */
+    private Set<Uri> getPersistedReadableUris() {
+        Set<Uri> readableUris = new HashSet<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            addPersistedReadableUris(readableUris);
+        }
+        return readableUris;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void addPersistedReadableUris(final Set<Uri> readableUris) {
+        for (UriPermission uriPermission : context.getContentResolver().getPersistedUriPermissions()) {
+            if (uriPermission.isReadPermission()) {
+                readableUris.add(uriPermission.getUri());
+            }
+        }
+    }
+}
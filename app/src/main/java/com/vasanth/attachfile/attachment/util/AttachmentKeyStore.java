@@ -0,0 +1,279 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Attachment Key Store.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to keep the AES key staged attachment content is encrypted with (See {@link AttachmentOutbox}).
+ * <p>
+ * 2. Methods.
+ * 2.a. getInstance - Used to get single ton instance.
+ * 2.b. getDataKey - Used to get the data key, creating it on first use.
+ * <p>
+ * 3. Note.
+ * 3.a. Data key is a software key wrapped (AES-GCM) by a master key which never leaves AndroidKeyStore - Encrypting every chunk in
+ * AndroidKeyStore would be an IPC per chunk, hence only the small data key goes through it, once per process.
+ * 3.b. AndroidKeyStore AES keys are available from API 23 - From API 18 to 22 data key is wrapped (RSA) by a key pair in
+ * AndroidKeyStore instead, & it stays in use after an OS upgrade so that content staged before it stays readable.
+ * 3.c. Below API 18 there is no AndroidKeyStore, hence no data key - Callers must not keep content at rest without one.
+ *
+ * @author Vasanth
+ */
+public class AttachmentKeyStore {
+
+    private static final String KEY_STORE_PROVIDER = "AndroidKeyStore";
+    private static final String MASTER_KEY_ALIAS = "attachment_master_key";
+    private static final String MASTER_KEY_PAIR_ALIAS = "attachment_master_key_pair";
+    private static final String DATA_KEY_FILE_NAME = "attachment_data.key";
+    private static final String LEGACY_DATA_KEY_FILE_NAME = "attachment_data_rsa.key";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String LEGACY_TRANSFORMATION = "RSA/ECB/PKCS1Padding";
+    // Below API 23 AndroidKeyStore private keys work only through this provider's RSA cipher.
+    private static final String LEGACY_CIPHER_PROVIDER = "AndroidOpenSSL";
+    private static final int MASTER_KEY_PAIR_VALIDITY_YEARS = 30;
+    private static final int DATA_KEY_SIZE = 32;
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+
+    private static AttachmentKeyStore instance;
+
+    private Context context;
+    private File dataKeyFile;
+    private File legacyDataKeyFile;
+    private SecretKey dataKey;
+    private boolean isUnavailable;
+
+    /**
+     * Constructor.
+     *
+     * @param context Application context.
+     */
+    private AttachmentKeyStore(final Context context) {
+        this.context = context;
+        this.dataKeyFile = new File(context.getFilesDir(), DATA_KEY_FILE_NAME);
+        this.legacyDataKeyFile = new File(context.getFilesDir(), LEGACY_DATA_KEY_FILE_NAME);
+    }
+
+    /**
+     * Used to get single ton instance.
+     *
+     * @param context Context.
+     * @return Attachment key store.
+     */
+    public static synchronized AttachmentKeyStore getInstance(final Context context) {
+        if (instance == null) {
+            instance = new AttachmentKeyStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Used to get the data key, unwrapping it (Or creating it, on first use) once per process.
+     * <p>
+     * 1. Talks to AndroidKeyStore on first call, hence make sure to call this method in separate thread.
+     *
+     * @return Data key, NULL if below API 18 or AndroidKeyStore is not usable on this device.
+     */
+    public synchronized SecretKey getDataKey() {
+        if (dataKey == null && !isUnavailable) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                try {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !legacyDataKeyFile.exists()) {
+                        dataKey = loadDataKey();
+                    } else {
+                        dataKey = loadLegacyDataKey();
+                    }
+                } catch (GeneralSecurityException exp) {
+                    exp.printStackTrace();
+                } catch (IOException exp) {
+                    exp.printStackTrace();
+                }
+            }
+            isUnavailable = dataKey == null;
+        }
+        return dataKey;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to unwrap the data key from its file, creating both keys if there is none (Or it can't be unwrapped anymore).
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private SecretKey loadDataKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEY_STORE_PROVIDER);
+        keyStore.load(null);
+        SecretKey masterKey = (SecretKey) keyStore.getKey(MASTER_KEY_ALIAS, null);
+        if (masterKey != null && dataKeyFile.exists()) {
+            try {
+                return unwrapDataKey(masterKey, readDataKeyFile(dataKeyFile));
+            } catch (GeneralSecurityException exp) {
+                // Master key changed (Like restored from backup onto another device) - Content staged with old key is unreadable.
+                exp.printStackTrace();
+            }
+        }
+        if (masterKey == null) {
+            masterKey = createMasterKey();
+        }
+        byte[] dataKeyBytes = new byte[DATA_KEY_SIZE];
+        new SecureRandom().nextBytes(dataKeyBytes);
+        writeDataKeyFile(dataKeyFile, wrapDataKey(masterKey, dataKeyBytes));
+        return new SecretKeySpec(dataKeyBytes, KeyProperties.KEY_ALGORITHM_AES);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static SecretKey createMasterKey() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEY_STORE_PROVIDER);
+        int purposes = KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT;
+        keyGenerator.init(new KeyGenParameterSpec.Builder(MASTER_KEY_ALIAS, purposes)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * Used to unwrap the data key from its legacy file, creating the key pair & data key if there is none (Or it can't be unwrapped
+     * anymore).
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private SecretKey loadLegacyDataKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEY_STORE_PROVIDER);
+        keyStore.load(null);
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(MASTER_KEY_PAIR_ALIAS, null);
+        if (privateKey != null && legacyDataKeyFile.exists()) {
+            try {
+                Cipher cipher = getLegacyCipher();
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+                byte[] dataKeyBytes = cipher.doFinal(readDataKeyFile(legacyDataKeyFile));
+                if (dataKeyBytes.length != DATA_KEY_SIZE) {
+                    throw new GeneralSecurityException("Data key file is corrupt");
+                }
+                return new SecretKeySpec(dataKeyBytes, "AES");
+            } catch (GeneralSecurityException exp) {
+                // Key pair changed (Like lock screen reset on some devices) - Content staged with old key is unreadable.
+                exp.printStackTrace();
+            }
+        }
+        if (privateKey == null) {
+            createMasterKeyPair();
+        }
+        Certificate certificate = keyStore.getCertificate(MASTER_KEY_PAIR_ALIAS);
+        byte[] dataKeyBytes = new byte[DATA_KEY_SIZE];
+        new SecureRandom().nextBytes(dataKeyBytes);
+        Cipher cipher = getLegacyCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, certificate.getPublicKey());
+        writeDataKeyFile(legacyDataKeyFile, cipher.doFinal(dataKeyBytes));
+        return new SecretKeySpec(dataKeyBytes, "AES");
+    }
+
+    // KeyPairGeneratorSpec is the only way below API 23, superseded by KeyGenParameterSpec from it.
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void createMasterKeyPair() throws GeneralSecurityException {
+        Calendar startDate = Calendar.getInstance();
+        Calendar endDate = Calendar.getInstance();
+        endDate.add(Calendar.YEAR, MASTER_KEY_PAIR_VALIDITY_YEARS);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA", KEY_STORE_PROVIDER);
+        keyPairGenerator.initialize(new android.security.KeyPairGeneratorSpec.Builder(context)
+                .setAlias(MASTER_KEY_PAIR_ALIAS)
+                .setSubject(new X500Principal("CN=" + MASTER_KEY_PAIR_ALIAS))
+                .setSerialNumber(BigInteger.ONE)
+                .setStartDate(startDate.getTime())
+                .setEndDate(endDate.getTime())
+                .build());
+        keyPairGenerator.generateKeyPair();
+    }
+
+    private static Cipher getLegacyCipher() throws GeneralSecurityException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return Cipher.getInstance(LEGACY_TRANSFORMATION);
+        }
+        return Cipher.getInstance(LEGACY_TRANSFORMATION, LEGACY_CIPHER_PROVIDER);
+    }
+
+    /**
+     * Used to wrap data key - Nonce (Chosen by AndroidKeyStore) followed by ciphertext & tag.
+     */
+    private static byte[] wrapDataKey(final SecretKey masterKey, final byte[] dataKeyBytes) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+        byte[] nonce = cipher.getIV();
+        byte[] ciphertext = cipher.doFinal(dataKeyBytes);
+        byte[] wrappedKey = Arrays.copyOf(nonce, nonce.length + ciphertext.length);
+        System.arraycopy(ciphertext, 0, wrappedKey, nonce.length, ciphertext.length);
+        return wrappedKey;
+    }
+
+    private static SecretKey unwrapDataKey(final SecretKey masterKey, final byte[] wrappedKey) throws GeneralSecurityException {
+        if (wrappedKey.length != NONCE_SIZE + DATA_KEY_SIZE + TAG_SIZE) {
+            throw new GeneralSecurityException("Data key file is corrupt");
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_SIZE * 8, wrappedKey, 0, NONCE_SIZE));
+        byte[] dataKeyBytes = cipher.doFinal(wrappedKey, NONCE_SIZE, wrappedKey.length - NONCE_SIZE);
+        return new SecretKeySpec(dataKeyBytes, KeyProperties.KEY_ALGORITHM_AES);
+    }
+
+    private static byte[] readDataKeyFile(final File dataKeyFile) throws IOException {
+        byte[] bytes = new byte[(int) dataKeyFile.length()];
+        InputStream inputStream = new FileInputStream(dataKeyFile);
+        try {
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = inputStream.read(bytes, length, bytes.length - length)) >= 0) {
+                length += read;
+            }
+            return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Used to write data key file - Through a temporary file, so that a crash never leaves a partial key behind.
+     */
+    private static void writeDataKeyFile(final File dataKeyFile, final byte[] wrappedKey) throws IOException {
+        File tempFile = new File(dataKeyFile.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(wrappedKey);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!tempFile.renameTo(dataKeyFile)) {
+            throw new IOException("Unable to write " + dataKeyFile);
+        }
+    }
+}
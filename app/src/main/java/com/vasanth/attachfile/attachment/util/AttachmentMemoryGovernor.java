@@ -0,0 +1,253 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vasanth.attachfile.attachment.model.MemoryPressureEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Attachment Memory Governor.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to track memory pressure of the app (From onTrimMemory, onLowMemory & whether device is a low RAM device) as
+ * one of PRESSURE_LEVEL_*, & to tell attachment components how much memory they may use at that level.
+ * 1.b. Components listen for level transitions - Shrinking caches, decoding bitmaps as RGB_565, decoding fewer thumbnails in
+ * parallel & dropping off screen thumbnails as pressure rises, & restoring them once it eases.
+ * <p>
+ * 2. Methods.
+ * 2.a. getInstance - Used to get single ton instance, registered for memory callbacks of the application.
+ * 2.b. addMemoryPressureListener / removeMemoryPressureListener - Used to listen for level transitions.
+ * 2.c. getBitmapConfig, getDecodeParallelism, getCacheSizeFraction, isDropOffscreenThumbnails - Budget at current level.
+ * 2.d. getRecentEvents - Used to get recent level transitions, for monitoring.
+ * <p>
+ * 3. Note.
+ * 3.a. Android only tells when pressure rises, hence pressure is assumed to ease one level at a time, once no callback arrived for
+ * RECOVERY_INTERVAL_MILLIS.
+ * 3.b. Low RAM device never recovers below PRESSURE_LEVEL_MODERATE.
+ * 3.c. Callbacks & listeners are called on main thread, budget getters may be called from any thread.
+ *
+ * @author Vasanth
+ */
+public class AttachmentMemoryGovernor implements ComponentCallbacks2 {
+
+    private static final String TAG = "AttachmentMemoryGovern";
+
+    public static final int PRESSURE_LEVEL_NONE = 0;
+    public static final int PRESSURE_LEVEL_MODERATE = 1;
+    public static final int PRESSURE_LEVEL_HIGH = 2;
+    public static final int PRESSURE_LEVEL_CRITICAL = 3;
+
+    private static final long RECOVERY_INTERVAL_MILLIS = 30 * 1000;
+    private static final int MAX_RECENT_EVENT_COUNT = 20;
+
+    // Fraction of cache size allowed at each level, indexed by level.
+    private static final float[] CACHE_SIZE_FRACTIONS = {1f, 0.5f, 0.25f, 0f};
+
+    private static AttachmentMemoryGovernor instance;
+
+    private volatile int pressureLevel;
+    private int basePressureLevel;
+    private boolean isLowRamDevice;
+    private List<MemoryPressureListener> memoryPressureListeners = new ArrayList<>();
+    private LinkedList<MemoryPressureEvent> recentEvents = new LinkedList<>();
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Runnable recoveryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (pressureLevel > basePressureLevel) {
+                setPressureLevel(pressureLevel - 1, MemoryPressureEvent.TRIGGER_RECOVERED, 0);
+                scheduleRecovery();
+            }
+        }
+    };
+
+    /**
+     * Memory Pressure Listener.
+     */
+    public interface MemoryPressureListener {
+
+        /**
+         * Gets called on main thread, once pressure level changes.
+         *
+         * @param memoryPressureEvent Transition.
+         */
+        void onMemoryPressureChanged(final MemoryPressureEvent memoryPressureEvent);
+
+    }
+
+    /**
+     * Constructor.
+     */
+    private AttachmentMemoryGovernor(final Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            isLowRamDevice = isLowRamDevice((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE));
+        }
+        if (isLowRamDevice) {
+            basePressureLevel = PRESSURE_LEVEL_MODERATE;
+            setPressureLevel(PRESSURE_LEVEL_MODERATE, MemoryPressureEvent.TRIGGER_LOW_RAM_DEVICE, 0);
+        }
+    }
+
+    /**
+     * Used to get single ton instance of AttachmentMemoryGovernor.
+     * <p>
+     * 1. Call from main thread.
+     *
+     * @param context Context.
+     * @return Single Ton instance of AttachmentMemoryGovernor.
+     */
+    public static AttachmentMemoryGovernor getInstance(final Context context) {
+        if (instance == null) {
+            Context applicationContext = context.getApplicationContext();
+            instance = new AttachmentMemoryGovernor(applicationContext);
+            applicationContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Used to listen for level transitions, call from main thread.
+     *
+     * @param memoryPressureListener Listener.
+     */
+    public void addMemoryPressureListener(final MemoryPressureListener memoryPressureListener) {
+        if (!memoryPressureListeners.contains(memoryPressureListener)) {
+            memoryPressureListeners.add(memoryPressureListener);
+        }
+    }
+
+    /**
+     * Used to stop listening for level transitions, call from main thread.
+     *
+     * @param memoryPressureListener Listener.
+     */
+    public void removeMemoryPressureListener(final MemoryPressureListener memoryPressureListener) {
+        memoryPressureListeners.remove(memoryPressureListener);
+    }
+
+    /**
+     * ComponentCallbacks2 Methods.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        int pressureLevel;
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            pressureLevel = PRESSURE_LEVEL_CRITICAL;
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            pressureLevel = PRESSURE_LEVEL_HIGH;
+        } else {
+            // TRIM_MEMORY_RUNNING_MODERATE & TRIM_MEMORY_UI_HIDDEN.
+            pressureLevel = PRESSURE_LEVEL_MODERATE;
+        }
+        raisePressureLevel(pressureLevel, MemoryPressureEvent.TRIGGER_TRIM_MEMORY, level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        raisePressureLevel(PRESSURE_LEVEL_CRITICAL, MemoryPressureEvent.TRIGGER_LOW_MEMORY, 0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    /**
+     * @return Current pressure level (One of PRESSURE_LEVEL_*).
+     */
+    public int getPressureLevel() {
+        return pressureLevel;
+    }
+
+    public boolean isLowRamDevice() {
+        return isLowRamDevice;
+    }
+
+    /**
+     * @return Config thumbnails & image tiles must be decoded with - RGB_565 (Half the memory, no transparency) once pressure is not NONE.
+     */
+    public Bitmap.Config getBitmapConfig() {
+        return pressureLevel >= PRESSURE_LEVEL_MODERATE ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * @param defaultParallelism Number of parallel decodes without pressure.
+     * @return Number of parallel decodes allowed - Single decode once pressure is HIGH.
+     */
+    public int getDecodeParallelism(final int defaultParallelism) {
+        return pressureLevel >= PRESSURE_LEVEL_HIGH ? 1 : defaultParallelism;
+    }
+
+    /**
+     * @return Fraction (0 to 1) of its full size a cache may use.
+     */
+    public float getCacheSizeFraction() {
+        return CACHE_SIZE_FRACTIONS[pressureLevel];
+    }
+
+    /**
+     * @return TRUE if thumbnails not on screen must be dropped, once pressure is HIGH.
+     */
+    public boolean isDropOffscreenThumbnails() {
+        return pressureLevel >= PRESSURE_LEVEL_HIGH;
+    }
+
+    /**
+     * @return Recent level transitions, oldest first.
+     */
+    public List<MemoryPressureEvent> getRecentEvents() {
+        return new ArrayList<>(recentEvents);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void raisePressureLevel(final int pressureLevel, final int trigger, final int trimMemoryLevel) {
+        if (pressureLevel > this.pressureLevel) {
+            setPressureLevel(pressureLevel, trigger, trimMemoryLevel);
+        }
+        // Pressure is still there, restart waiting for it to ease.
+        scheduleRecovery();
+    }
+
+    private void setPressureLevel(final int pressureLevel, final int trigger, final int trimMemoryLevel) {
+        MemoryPressureEvent memoryPressureEvent = new MemoryPressureEvent(this.pressureLevel, pressureLevel, trigger, trimMemoryLevel,
+                SystemClock.elapsedRealtime());
+        this.pressureLevel = pressureLevel;
+        Log.i(TAG, "Memory pressure changed " + memoryPressureEvent);
+        recentEvents.add(memoryPressureEvent);
+        if (recentEvents.size() > MAX_RECENT_EVENT_COUNT) {
+            recentEvents.removeFirst();
+        }
+        for (MemoryPressureListener memoryPressureListener : new ArrayList<>(memoryPressureListeners)) {
+            memoryPressureListener.onMemoryPressureChanged(memoryPressureEvent);
+        }
+    }
+
+    private void scheduleRecovery() {
+        mainHandler.removeCallbacks(recoveryRunnable);
+        if (pressureLevel > basePressureLevel) {
+            mainHandler.postDelayed(recoveryRunnable, RECOVERY_INTERVAL_MILLIS);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean isLowRamDevice(final ActivityManager activityManager) {
+        return activityManager.isLowRamDevice();
+    }
+}
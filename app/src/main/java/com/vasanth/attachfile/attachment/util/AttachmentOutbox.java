@@ -0,0 +1,403 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.vasanth.attachfile.attachment.service.AttachmentOutboxService;
+import com.vasanth.attachfile.attachment.source.ContentResolverAttachmentSource;
+import com.vasanth.attachfile.core.crypto.ChunkedCipher;
+import com.vasanth.attachfile.core.crypto.EncryptedAttachmentReader;
+import com.vasanth.attachfile.core.model.OutboxJob;
+import com.vasanth.attachfile.core.outbox.OutboxJournal;
+import com.vasanth.attachfile.core.outbox.OutboxProcessor;
+import com.vasanth.attachfile.core.retry.RetryMetrics;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.store.ContentAddressableStore;
+import com.vasanth.attachfile.core.util.EncryptedStager;
+import com.vasanth.attachfile.core.util.ProgressListener;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Attachment Outbox.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to keep background attachment jobs (Like staging attachment content into app owned storage) in a journal on disk,
+ * so that they are processed by {@link AttachmentOutboxService} even once the screen which started them is gone, & resume from their
+ * last checkpoint after process death.
+ * <p>
+ * 2. Methods.
+ * 2.a. getInstance - Used to get single ton instance.
+ * 2.b. enqueueStaging - Used to stage content of an attachment.
+ * 2.c. cancelStaging - Used to stop staging an attachment & remove its staged content.
+ * 2.d. getStagedFile - Used to get staged file (Blob in content store) of an attachment.
+ * 2.e. openStagedContent - Used to read staged content of an attachment, decrypting it if needed.
+ * 2.f. getStagedContentHash / getStoredFile / openStoredContent / getStoredContentSize - Used to reach staged content by its content
+ * hash, like when it is shared out (See {@link com.vasanth.attachfile.attachment.provider.AttachmentShareProvider}).
+ * 2.g. processPendingJobs - Used by the service to run pending jobs.
+ * <p>
+ * 3. Note.
+ * 3.a. Journal is synced once a job is enqueued & while jobs run every SYNC_INTERVAL_MILLIS or MAX_UNSYNCED_RECORD_COUNT records,
+ * whichever comes first (See {@link OutboxJournal}).
+ * 3.b. Journal writes from the app happen in order on a single background thread.
+ * 3.c. Staged content is encrypted at rest as chunked AES-GCM (See {@link EncryptedStager}) with the key from
+ * {@link AttachmentKeyStore}, chunks are encrypted in parallel on multi core devices. Content is not staged without a key (Below
+ * API 18, or AndroidKeyStore not usable), attachment is then read from its uri when sent.
+ * 3.d. Staged content is moved into a {@link ContentAddressableStore} keyed by its plaintext hash & referenced by uri from the draft,
+ * hence same content reached through several uri's is kept once. Released content is kept within STORE_BYTE_BUDGET, least recently
+ * used evicted first.
+ *
+ * @author Vasanth
+ */
+public class AttachmentOutbox {
+
+    private static final String JOURNAL_FILE_NAME = "attachment_outbox.journal";
+    private static final String STAGED_DIRECTORY_NAME = "attachment_staged";
+    private static final String STORE_DIRECTORY_NAME = "attachment_store";
+    private static final long STORE_BYTE_BUDGET = 256 * 1024 * 1024;
+    // Owner of references to staged content - App keeps a single draft.
+    private static final String DRAFT_OWNER_ID = "draft";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final long SYNC_INTERVAL_MILLIS = 2 * 1000;
+    private static final int MAX_UNSYNCED_RECORD_COUNT = 64;
+
+    private static AttachmentOutbox instance;
+
+    private Context context;
+    private File stagedDirectory;
+    private OutboxJournal outboxJournal;
+    private OutboxProcessor outboxProcessor;
+    private ContentAddressableStore contentStore;
+    private RetryMetrics retryMetrics = new RetryMetrics();
+    private ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private ExecutorService encryptExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param context Application context.
+     */
+    private AttachmentOutbox(final Context context) {
+        this.context = context;
+        this.stagedDirectory = new File(context.getFilesDir(), STAGED_DIRECTORY_NAME);
+    }
+
+    /**
+     * Used to get single ton instance.
+     *
+     * @param context Context.
+     * @return Attachment outbox.
+     */
+    public static synchronized AttachmentOutbox getInstance(final Context context) {
+        if (instance == null) {
+            instance = new AttachmentOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Used to stage content of an attachment, in background.
+     * <p>
+     * 1. Does nothing if attachment is already staged or being staged, or if there is no key to encrypt it with.
+     *
+     * @param uri Attachment uri.
+     */
+    public void enqueueStaging(final Uri uri) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (AttachmentKeyStore.getInstance(context).getDataKey() == null) {
+                        return;
+                    }
+                    OutboxJournal outboxJournal = getOutboxJournal();
+                    if (getStagedFile(uri) != null || findPendingJob(OutboxJob.JOB_TYPE_STAGE, uri) != null) {
+                        return;
+                    }
+                    outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, uri.toString(), getStagedFileOf(uri).getPath());
+                    outboxJournal.sync();
+                    AttachmentOutboxService.start(context);
+                } catch (IOException exp) {
+                    exp.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Used to stop staging an attachment & remove its staged content.
+     *
+     * @param uri Attachment uri.
+     */
+    public void cancelStaging(final Uri uri) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutboxJob outboxJob = findPendingJob(OutboxJob.JOB_TYPE_STAGE, uri);
+                    if (outboxJob != null) {
+                        getOutboxJournal().cancel(outboxJob);
+                    }
+                    getContentStore().removeReference(DRAFT_OWNER_ID, uri.toString());
+                } catch (IOException exp) {
+                    exp.printStackTrace();
+                }
+                deleteStagedFile(getStagedFileOf(uri));
+            }
+        });
+    }
+
+    /**
+     * Used to get staged file of an attachment.
+     * <p>
+     * 1. File may hold encrypted content, use {@link #openStagedContent(Uri)} to read it.
+     * 2. Reads content store from disk on first use, hence make sure to call this method in separate thread.
+     *
+     * @param uri Attachment uri.
+     * @return Staged file, NULL if attachment is not staged (yet).
+     * @throws IOException If content store couldn't be opened.
+     */
+    public File getStagedFile(final Uri uri) throws IOException {
+        ContentAddressableStore contentStore = getContentStore();
+        return contentStore.getFile(contentStore.getReference(DRAFT_OWNER_ID, uri.toString()));
+    }
+
+    /**
+     * Used to read staged content of an attachment.
+     * <p>
+     * 1. Encrypted content is decrypted chunk by chunk as it is read, each chunk is authenticated before its bytes are returned.
+     * 2. Reads from disk, hence make sure to call this method in separate thread.
+     *
+     * @param uri Attachment uri.
+     * @return Plaintext input stream, NULL if attachment is not staged (yet).
+     * @throws IOException If staged file couldn't be opened or is encrypted with a key we don't have anymore.
+     */
+    public InputStream openStagedContent(final Uri uri) throws IOException {
+        File stagedFile = getStagedFile(uri);
+        return stagedFile != null ? openContent(stagedFile) : null;
+    }
+
+    /**
+     * Used to get content hash of staged content of an attachment.
+     * <p>
+     * 1. Reads content store from disk on first use, hence make sure to call this method in separate thread.
+     *
+     * @param uri Attachment uri.
+     * @return Content hash, NULL if attachment is not staged (yet).
+     * @throws IOException If content store couldn't be opened.
+     */
+    public String getStagedContentHash(final Uri uri) throws IOException {
+        ContentAddressableStore contentStore = getContentStore();
+        String contentHash = contentStore.getReference(DRAFT_OWNER_ID, uri.toString());
+        return contentStore.getFile(contentHash) != null ? contentHash : null;
+    }
+
+    /**
+     * Used to get stored file of a content hash.
+     * <p>
+     * 1. File may hold encrypted content, use {@link #openStoredContent(String)} to read it.
+     *
+     * @param contentHash Content hash.
+     * @return Stored file, NULL if content is not in the store (Anymore).
+     * @throws IOException If content store couldn't be opened.
+     */
+    public File getStoredFile(final String contentHash) throws IOException {
+        return getContentStore().getFile(contentHash);
+    }
+
+    /**
+     * Used to read stored content of a content hash, decrypting it if needed.
+     *
+     * @param contentHash Content hash.
+     * @return Plaintext input stream, NULL if content is not in the store (Anymore).
+     * @throws IOException If stored file couldn't be opened or is encrypted with a key we don't have anymore.
+     */
+    public InputStream openStoredContent(final String contentHash) throws IOException {
+        File storedFile = getStoredFile(contentHash);
+        return storedFile != null ? openContent(storedFile) : null;
+    }
+
+    /**
+     * Used to get plaintext size of stored content of a content hash, without reading it.
+     *
+     * @param contentHash Content hash.
+     * @return Size in bytes, -1 if content is not in the store (Anymore).
+     * @throws IOException If stored file couldn't be read or is encrypted with a key we don't have anymore.
+     */
+    public long getStoredContentSize(final String contentHash) throws IOException {
+        File storedFile = getStoredFile(contentHash);
+        if (storedFile == null) {
+            return -1L;
+        }
+        if (!ChunkedCipher.isEncrypted(storedFile)) {
+            return storedFile.length();
+        }
+        EncryptedAttachmentReader encryptedAttachmentReader = new EncryptedAttachmentReader(storedFile, getDataKey(storedFile));
+        try {
+            return encryptedAttachmentReader.getSize();
+        } finally {
+            encryptedAttachmentReader.close();
+        }
+    }
+
+    /**
+     * Used to run pending jobs, including ones enqueued meanwhile.
+     * <p>
+     * 1. Runs on the calling thread, hence make sure to call this method in separate thread.
+     *
+     * @return Number of jobs which are still pending.
+     * @throws IOException If journal couldn't be read or written.
+     */
+    public int processPendingJobs() throws IOException {
+        getOutboxJournal();
+        return outboxProcessor.processPendingJobs();
+    }
+
+    /**
+     * Used to get retry counts & outcomes of jobs, since process start.
+     *
+     * @return Retry metrics.
+     */
+    public RetryMetrics getRetryMetrics() {
+        return retryMetrics;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to read plaintext content of a staged file, decrypting it if needed.
+     */
+    private InputStream openContent(final File stagedFile) throws IOException {
+        if (!ChunkedCipher.isEncrypted(stagedFile)) {
+            return new FileInputStream(stagedFile);
+        }
+        return new EncryptedAttachmentReader(stagedFile, getDataKey(stagedFile)).openInputStream(0L);
+    }
+
+    private SecretKey getDataKey(final File stagedFile) throws IOException {
+        SecretKey secretKey = AttachmentKeyStore.getInstance(context).getDataKey();
+        if (secretKey == null) {
+            throw new IOException("No key to decrypt " + stagedFile);
+        }
+        return secretKey;
+    }
+
+    /**
+     * Used to get journal, opening it on first use - Reads from disk.
+     */
+    private synchronized OutboxJournal getOutboxJournal() throws IOException {
+        if (outboxJournal == null) {
+            outboxJournal = new OutboxJournal(new File(context.getFilesDir(), JOURNAL_FILE_NAME), SYNC_INTERVAL_MILLIS,
+                    MAX_UNSYNCED_RECORD_COUNT);
+            outboxProcessor = new OutboxProcessor(outboxJournal, AttachmentUtil.RETRY_POLICY, retryMetrics);
+            outboxProcessor.setJobHandler(OutboxJob.JOB_TYPE_STAGE, new StageJobHandler());
+        }
+        return outboxJournal;
+    }
+
+    /**
+     * Used to get content store, opening it on first use - Reads from disk.
+     */
+    private synchronized ContentAddressableStore getContentStore() throws IOException {
+        if (contentStore == null) {
+            contentStore = ContentAddressableStore.open(new File(context.getFilesDir(), STORE_DIRECTORY_NAME), STORE_BYTE_BUDGET);
+        }
+        return contentStore;
+    }
+
+    private OutboxJob findPendingJob(final int jobType, final Uri uri) throws IOException {
+        String location = uri.toString();
+        for (OutboxJob outboxJob : getOutboxJournal().getPendingJobs()) {
+            if (outboxJob.getJobType() == jobType && outboxJob.getLocation().equals(location)) {
+                return outboxJob;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Used to get staged file of uri - Same uri maps to same file, across restarts.
+     */
+    private File getStagedFileOf(final Uri uri) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            messageDigest.update(uri.toString().getBytes("UTF-8"));
+            return new File(stagedDirectory, SegmentedDigest.toHex(messageDigest.digest()));
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        } catch (UnsupportedEncodingException unsupportedEncodingException) {
+            throw new IllegalStateException(unsupportedEncodingException);
+        }
+    }
+
+    /**
+     * Used to get executor to encrypt chunks on, creating it on first use - NULL on single core devices.
+     */
+    private synchronized ExecutorService getEncryptExecutor() {
+        int coreCount = Runtime.getRuntime().availableProcessors();
+        if (encryptExecutor == null && coreCount > 1) {
+            encryptExecutor = Executors.newFixedThreadPool(coreCount);
+        }
+        return encryptExecutor;
+    }
+
+    private static void deleteStagedFile(final File stagedFile) {
+        stagedFile.delete();
+        new File(stagedFile.getPath() + TEMP_FILE_SUFFIX).delete();
+    }
+
+    /**
+     * Stage job handler - Copies uri content into its staged file (Encrypted), from its checkpoint, & moves it into the content
+     * store.
+     */
+    private class StageJobHandler implements OutboxProcessor.JobHandler {
+
+        @Override
+        public void process(final OutboxJob outboxJob, final ProgressListener checkpointListener) throws Exception {
+            // Cancelled before this attempt.
+            if (!outboxJournal.isPending(outboxJob)) {
+                return;
+            }
+            if (!stagedDirectory.isDirectory() && !stagedDirectory.mkdirs()) {
+                throw new IOException("Unable to create " + stagedDirectory);
+            }
+            File stagedFile = new File(outboxJob.getTarget());
+            AttachmentSource attachmentSource = new ContentResolverAttachmentSource(context, Uri.parse(outboxJob.getLocation()));
+            SecretKey secretKey = AttachmentKeyStore.getInstance(context).getDataKey();
+            // Key became unusable since the job was enqueued - Content is never kept at rest as plaintext.
+            if (secretKey == null) {
+                deleteStagedFile(stagedFile);
+                return;
+            }
+            EncryptedStager.stage(attachmentSource, stagedFile, outboxJob.getCheckpoint(), secretKey, getEncryptExecutor(),
+                    checkpointListener);
+
+            // Cancelled while its last part was copied.
+            if (!outboxJournal.isPending(outboxJob)) {
+                deleteStagedFile(stagedFile);
+                return;
+            }
+            // Hashed from the local copy, not the provider - Staged file is dropped if the store already has its content.
+            String contentHash = ContentAddressableStore.computeContentHash(openContent(stagedFile));
+            ContentAddressableStore contentStore = getContentStore();
+            contentStore.putFile(stagedFile, contentHash);
+            contentStore.addReference(DRAFT_OWNER_ID, outboxJob.getLocation(), contentHash);
+            // Cancelled while it was hashed - Cancel released the reference before it was added.
+            if (!outboxJournal.isPending(outboxJob)) {
+                contentStore.removeReference(DRAFT_OWNER_ID, outboxJob.getLocation());
+            }
+        }
+    }
+}
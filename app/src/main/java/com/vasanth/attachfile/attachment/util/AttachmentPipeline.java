@@ -0,0 +1,789 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.model.MemoryPressureEvent;
+import com.vasanth.attachfile.attachment.source.ContentResolverAttachmentSource;
+import com.vasanth.attachfile.core.index.NearDuplicateIndex;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentProbeResult;
+import com.vasanth.attachfile.core.model.ZipInspection;
+import com.vasanth.attachfile.core.probe.AttachmentProbe;
+import com.vasanth.attachfile.core.pipeline.StagedPipeline;
+import com.vasanth.attachfile.core.retry.FailureClassifier;
+import com.vasanth.attachfile.core.retry.RetryMetrics;
+import com.vasanth.attachfile.core.util.ContentSizeCounter;
+import com.vasanth.attachfile.core.util.ProgressListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Attachment Pipeline.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to resolve attached uri's & decode their thumbnails, each uri moving through the stages on its own.
+ * 1.b. Resolve Pipeline - Query (Name, declared size & mimeType) -> Classify (Sniff mimeType & image bounds if needed) -> Size (Read
+ * content if size is not declared).
+ * 1.c. Image bounds sniffed while classifying are reused by thumbnail decode, which then opens the content only once.
+ * 1.d. Thumbnail Pipeline - Preview (Coarse decode) -> Decode, image uri's enter it as soon as they are classified, hence thumbnail
+ * decode of one uri overlaps with size resolution of the same & other uri's.
+ * 1.e. Archive Pipeline - Inspect (Entry count, total size & zip bomb check, See {@link AttachmentUtil#inspectZipArchive}), ZIP uri's
+ * enter it as soon as they are classified. Best effort, uri whose inspection fails or times out is still attached.
+ * <p>
+ * 2. Methods.
+ * 2.a. submit - Used to submit attached uri's, as one batch.
+ * 2.b. decodeThumbnail - Used to decode thumbnail of an already resolved attachment.
+ * 2.c. cancelThumbnailRefinement / refineThumbnail - Used to stop decoding thumbnail of an attachment whose preview is shown, like
+ * once it goes off screen & to decode it again later.
+ * 2.d. cancel - Used to cancel resolution of all uri's submitted so far.
+ * 2.e. shutdown - Used to stop the pipeline, once the screen goes away.
+ * 2.f. getRetryMetrics - Used to get retry counts & outcomes of all stages, for monitoring.
+ * <p>
+ * 3. Deadlines.
+ * 3.a. Each resolve stage has the per uri deadline & each batch has the batch deadline (See {@link AttachmentDeadlineConfig}).
+ * 3.b. Thumbnail preview & decode have the thumbnail decode deadline each, an uri whose thumbnail misses it is still attached with
+ * its preview or default thumbnail.
+ * 3.c. Within its deadline, each stage retries transient failures (See {@link AttachmentUtil#RETRY_POLICY}) - Reusing metadata
+ * queried & bytes counted before the failure.
+ * <p>
+ * 4. Output.
+ * 4.a. AttachmentPipelineListener - Gets called on main thread.
+ * <p>
+ * 5. Memory.
+ * 5.a. Thumbnails are decoded with the config & parallelism allowed at current memory pressure (See {@link AttachmentMemoryGovernor}).
+ * 5.b. Every provider call of every stage runs under the concurrency limit of uri's authority (See
+ * {@link AttachmentUtil#AUTHORITY_LIMITERS}), hence stage worker counts are only the ceiling - Provider which throttles parallel
+ * reads gets fewer of them, while other providers use the rest of the workers.
+ * <p>
+ * 6. Progressive Thumbnails.
+ * 6.a. Preview (Embedded EXIF thumbnail or a heavily sub sampled decode) is notified first, refined thumbnail replaces it once decoded.
+ * 6.b. If preview is already large enough, it is the thumbnail & nothing more is decoded.
+ * 6.c. Thumbnail is decoded once as a chain of all UI sizes & cached (See {@link AttachmentThumbnailCache}), uri whose chain is
+ * cached skips preview & decode.
+ * 6.d. Provider thumbnail is tried before the decode (See {@link AttachmentProviderThumbnailLoader}), preview is skipped for uri
+ * whose provider mostly gives one - It would be replaced almost at once.
+ * <p>
+ * 7. Near Duplicates.
+ * 7.a. Perceptual hash of each decoded thumbnail is checked against the ones of attachments decoded before (See
+ * {@link NearDuplicateIndex}), so that burst shots & the same image at another resolution are notified - Content hashes miss those.
+ * 7.b. Hash comes from the thumbnail, hence it costs no extra read. Attachments whose thumbnail wasn't decoded aren't checked.
+ *
+ * @author Vasanth
+ */
+public class AttachmentPipeline implements AttachmentMemoryGovernor.MemoryPressureListener {
+
+    private static final String TAG = "AttachmentPipeline";
+
+    private static final String STAGE_QUERY = "query";
+    private static final String STAGE_CLASSIFY = "classify";
+    private static final String STAGE_SIZE = "size";
+    private static final String STAGE_PREVIEW = "preview";
+    private static final String STAGE_THUMBNAIL = "thumbnail";
+    private static final String STAGE_INSPECT = "inspect";
+
+    // Queue capacity between stages - Keeps at most these many uri's waiting in front of a slow stage.
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final int QUERY_WORKER_COUNT = 4;
+    private static final int CLASSIFY_WORKER_COUNT = 1;
+    private static final int SIZE_WORKER_COUNT = 4;
+    private static final int PREVIEW_WORKER_COUNT = 2;
+    private static final int THUMBNAIL_WORKER_COUNT = 2;
+    private static final int INSPECT_WORKER_COUNT = 1;
+
+    // Mime types of ZIP archives - Windows shares them with the legacy one.
+    private static final String ZIP_MIME_TYPE = "application/zip";
+    private static final String ZIP_LEGACY_MIME_TYPE = "application/x-zip-compressed";
+
+    // Max perceptual hash distance (Of 64 bits) of near duplicates.
+    private static final int NEAR_DUPLICATE_MAX_DISTANCE = 8;
+
+    private Context context;
+    private AttachmentDeadlineConfig attachmentDeadlineConfig;
+    private int thumbnailSizeInDp;
+    private AttachmentPipelineListener attachmentPipelineListener;
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    private AttachmentMemoryGovernor attachmentMemoryGovernor;
+    private AttachmentThumbnailCache attachmentThumbnailCache;
+    private StagedPipeline<AttachmentJob> resolvePipeline;
+    private StagedPipeline<AttachmentJob> thumbnailPipeline;
+    private StagedPipeline<AttachmentJob> archivePipeline;
+    private RetryMetrics retryMetrics = new RetryMetrics();
+    // Jobs whose preview is notified & thumbnail is being decoded, accessed on main thread.
+    private Map<AttachmentFileDetail, AttachmentJob> refiningJobs = new HashMap<>();
+    // Attachments by perceptual hash of their thumbnail, accessed under its own lock.
+    private NearDuplicateIndex<AttachmentFileDetail> nearDuplicateIndex = new NearDuplicateIndex<>();
+
+    /**
+     * Attachment Pipeline Listener.
+     */
+    public interface AttachmentPipelineListener {
+
+        /**
+         * Gets called once uri's name & mimeType are known, its size may not be known yet.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         */
+        void onAttachmentClassified(final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called with bytes read so far, while reading uri content to get its size.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         * @param bytesRead            Bytes read so far.
+         */
+        void onAttachmentProgress(final AttachmentFileDetail attachmentFileDetail, final long bytesRead);
+
+        /**
+         * Gets called once uri's size is known, uri is completely resolved.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         */
+        void onAttachmentResolved(final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called once thumbnail is decoded for image uri's.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         * @param thumbnail            Thumbnail, NULL if it couldn't be decoded within its deadline.
+         */
+        void onAttachmentThumbnailDecoded(final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail);
+
+        /**
+         * Gets called once preview is decoded for image uri's, before their thumbnail.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         * @param preview              Coarse thumbnail, to be shown until thumbnail is decoded.
+         */
+        void onAttachmentThumbnailPreviewDecoded(final AttachmentFileDetail attachmentFileDetail, final Bitmap preview);
+
+        /**
+         * Gets called if thumbnail decode was cancelled by {@link #cancelThumbnailRefinement(AttachmentFileDetail)}, attachment keeps
+         * its preview.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         */
+        void onAttachmentThumbnailRefinementCancelled(final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called after thumbnail is decoded, if it looks like the thumbnail of an attachment decoded before.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         * @param nearDuplicateOf      Attachment it looks like, nearest one if there are several.
+         */
+        void onAttachmentNearDuplicateFound(final AttachmentFileDetail attachmentFileDetail, final AttachmentFileDetail nearDuplicateOf);
+
+        /**
+         * Gets called once ZIP attachment is inspected (See {@link AttachmentFileDetail#getZipInspection()}), not called if its
+         * inspection failed.
+         *
+         * @param attachmentFileDetail Attachment file detail.
+         */
+        void onAttachmentArchiveInspected(final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called if uri couldn't be resolved.
+         *
+         * @param uri                  Uri.
+         * @param attachmentFileDetail Attachment file detail, NULL if uri failed before it was classified.
+         */
+        void onAttachmentFailed(final Uri uri, final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called if uri wasn't resolved within its deadline.
+         *
+         * @param uri                  Uri.
+         * @param attachmentFileDetail Attachment file detail, NULL if uri timed out before it was classified.
+         */
+        void onAttachmentTimedOut(final Uri uri, final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called if uri's resolution was cancelled.
+         *
+         * @param uri                  Uri.
+         * @param attachmentFileDetail Attachment file detail, NULL if uri was cancelled before it was classified.
+         */
+        void onAttachmentCancelled(final Uri uri, final AttachmentFileDetail attachmentFileDetail);
+
+        /**
+         * Gets called once all submitted uri's are resolved, failed, timed out or cancelled.
+         */
+        void onAttachmentsResolved();
+
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * 1. Call from main thread.
+     *
+     * @param context                    Context.
+     * @param attachmentDeadlineConfig   Deadlines for resolution & thumbnail decode.
+     * @param thumbnailSizeInDp          Thumbnail size required in DP.
+     * @param attachmentPipelineListener Listener.
+     */
+    public AttachmentPipeline(final Context context, final AttachmentDeadlineConfig attachmentDeadlineConfig, final int thumbnailSizeInDp,
+                              final AttachmentPipelineListener attachmentPipelineListener) {
+        this.context = context.getApplicationContext();
+        this.attachmentDeadlineConfig = attachmentDeadlineConfig;
+        this.thumbnailSizeInDp = thumbnailSizeInDp;
+        this.attachmentPipelineListener = attachmentPipelineListener;
+
+        this.attachmentMemoryGovernor = AttachmentMemoryGovernor.getInstance(context);
+        this.attachmentThumbnailCache = AttachmentThumbnailCache.getInstance(context);
+
+        createResolvePipeline();
+        createThumbnailPipeline();
+        createArchivePipeline();
+        attachmentMemoryGovernor.addMemoryPressureListener(this);
+    }
+
+    /**
+     * Used to submit attached uri's, as one batch.
+     *
+     * @param uris Attached uri's.
+     */
+    public void submit(final List<Uri> uris) {
+        List<AttachmentJob> attachmentJobs = new ArrayList<>();
+        for (Uri uri : uris) {
+            if (uri != null) {
+                attachmentJobs.add(new AttachmentJob(uri));
+            }
+        }
+        resolvePipeline.submitAll(attachmentJobs, attachmentDeadlineConfig.getBatchResolutionDeadlineMillis());
+    }
+
+    /**
+     * Used to decode thumbnail of an already resolved attachment (Like one restored from draft, whose thumbnail wasn't cached).
+     * <p>
+     * 1. Result is notified through {@link AttachmentPipelineListener#onAttachmentThumbnailDecoded(AttachmentFileDetail, Bitmap)}.
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     */
+    public void decodeThumbnail(final AttachmentFileDetail attachmentFileDetail) {
+        AttachmentJob attachmentJob = new AttachmentJob(attachmentFileDetail.getUri());
+        attachmentJob.attachmentFileDetail = attachmentFileDetail;
+        thumbnailPipeline.submitAll(Collections.singletonList(attachmentJob), StagedPipeline.NO_DEADLINE);
+    }
+
+    /**
+     * Used to decode thumbnail of an attachment whose preview is already shown, without decoding the preview again.
+     * <p>
+     * 1. Result is notified through {@link AttachmentPipelineListener#onAttachmentThumbnailDecoded(AttachmentFileDetail, Bitmap)}.
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     */
+    public void refineThumbnail(final AttachmentFileDetail attachmentFileDetail) {
+        AttachmentJob attachmentJob = new AttachmentJob(attachmentFileDetail.getUri());
+        attachmentJob.attachmentFileDetail = attachmentFileDetail;
+        attachmentJob.isPreviewSkipped = true;
+        refiningJobs.put(attachmentFileDetail, attachmentJob);
+        thumbnailPipeline.submitAll(Collections.singletonList(attachmentJob), StagedPipeline.NO_DEADLINE);
+    }
+
+    /**
+     * Used to stop decoding thumbnail of an attachment whose preview is already notified (Like once it goes off screen).
+     * <p>
+     * 1. Notified through {@link AttachmentPipelineListener#onAttachmentThumbnailRefinementCancelled(AttachmentFileDetail)}, does
+     * nothing if thumbnail is already decoded.
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     */
+    public void cancelThumbnailRefinement(final AttachmentFileDetail attachmentFileDetail) {
+        AttachmentJob attachmentJob = refiningJobs.remove(attachmentFileDetail);
+        if (attachmentJob != null) {
+            thumbnailPipeline.cancel(attachmentJob);
+        }
+    }
+
+    /**
+     * Used to stop checking new attachments against an attachment (Like once it is removed).
+     *
+     * @param attachmentFileDetail Attachment file detail.
+     */
+    public void removeNearDuplicateCandidate(final AttachmentFileDetail attachmentFileDetail) {
+        synchronized (nearDuplicateIndex) {
+            nearDuplicateIndex.remove(attachmentFileDetail);
+        }
+    }
+
+    /**
+     * Used to cancel resolution of all uri's submitted so far.
+     */
+    public void cancel() {
+        resolvePipeline.cancelAll();
+    }
+
+    /**
+     * Used to stop the pipeline, it can't be used afterwards.
+     */
+    public void shutdown() {
+        attachmentMemoryGovernor.removeMemoryPressureListener(this);
+        resolvePipeline.shutdown();
+        thumbnailPipeline.shutdown();
+        archivePipeline.shutdown();
+    }
+
+    /**
+     * Used to get number of uri's being resolved.
+     *
+     * @return Number of uri's submitted & not yet resolved, failed, timed out or cancelled.
+     */
+    public int getPendingCount() {
+        return resolvePipeline.getInFlightCount();
+    }
+
+    /**
+     * Used to get retry counts & outcomes of all stages, since the pipeline was created.
+     *
+     * @return Retry metrics.
+     */
+    public RetryMetrics getRetryMetrics() {
+        return retryMetrics;
+    }
+
+    /**
+     * AttachmentMemoryGovernor.MemoryPressureListener Methods.
+     */
+    @Override
+    public void onMemoryPressureChanged(final MemoryPressureEvent memoryPressureEvent) {
+        thumbnailPipeline.setStageParallelism(STAGE_THUMBNAIL, attachmentMemoryGovernor.getDecodeParallelism(THUMBNAIL_WORKER_COUNT));
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void createResolvePipeline() {
+        long perUriDeadlineMillis = attachmentDeadlineConfig.getPerUriResolutionDeadlineMillis();
+        resolvePipeline = new StagedPipeline<>("attachment-resolve", QUEUE_CAPACITY, new ResolveListener());
+
+        // Query - Name, declared size & mimeType from provider.
+        resolvePipeline.addStage(STAGE_QUERY, QUERY_WORKER_COUNT, perUriDeadlineMillis, new StagedPipeline.Stage<AttachmentJob>() {
+            @Override
+            public void process(final AttachmentJob attachmentJob) throws Exception {
+                // Metadata query costs the same whatever the content size, hence its latency drives the limit.
+                attachmentJob.attachmentDetail = retry(attachmentJob.uri, new Callable<AttachmentDetail>() {
+                    @Override
+                    public AttachmentDetail call() throws Exception {
+                        return attachmentJob.attachmentSource.queryMetadata();
+                    }
+                }, true);
+            }
+        });
+
+        // Classify - Sniff mimeType & image bounds from content header, if provider didn't tell mimeType.
+        resolvePipeline.addStage(STAGE_CLASSIFY, CLASSIFY_WORKER_COUNT, perUriDeadlineMillis, new StagedPipeline.Stage<AttachmentJob>() {
+            @Override
+            public void process(final AttachmentJob attachmentJob) throws Exception {
+                final AttachmentDetail attachmentDetail = attachmentJob.attachmentDetail;
+                if (attachmentDetail.getMimeType() == null) {
+                    AttachmentProbeResult attachmentProbeResult = retry(attachmentJob.uri, new Callable<AttachmentProbeResult>() {
+                        @Override
+                        public AttachmentProbeResult call() throws Exception {
+                            return AttachmentProbe.probe(attachmentJob.attachmentSource, attachmentDetail,
+                                    AttachmentProbe.PROBE_MIME_TYPE | AttachmentProbe.PROBE_BOUNDS, null);
+                        }
+                    }, false);
+                    attachmentJob.imageWidth = attachmentProbeResult.getWidth();
+                    attachmentJob.imageHeight = attachmentProbeResult.getHeight();
+                }
+                attachmentJob.attachmentFileDetail = new AttachmentFileDetail(attachmentDetail.getName(), attachmentDetail.getSize(),
+                        attachmentDetail.getMimeType(), attachmentJob.uri);
+            }
+        });
+
+        // Size - Read content, if provider didn't declare the size.
+        resolvePipeline.addStage(STAGE_SIZE, SIZE_WORKER_COUNT, perUriDeadlineMillis, new StagedPipeline.Stage<AttachmentJob>() {
+            @Override
+            public void process(final AttachmentJob attachmentJob) throws Exception {
+                if (attachmentJob.attachmentFileDetail.getSize() <= 0) {
+                    final ProgressListener progressListener = new ProgressListener() {
+                        @Override
+                        public void onProgress(final long bytesRead) {
+                            if (!Thread.currentThread().isInterrupted()) {
+                                postProgress(attachmentJob, bytesRead);
+                            }
+                        }
+                    };
+                    long size = retry(attachmentJob.uri, new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            return attachmentJob.contentSizeCounter.count(attachmentJob.attachmentSource, progressListener);
+                        }
+                    }, false);
+                    attachmentJob.attachmentFileDetail.setSize(size);
+                }
+            }
+        });
+
+        resolvePipeline.start();
+    }
+
+    private void createThumbnailPipeline() {
+        long thumbnailDecodeDeadlineMillis = attachmentDeadlineConfig.getThumbnailDecodeDeadlineMillis();
+        thumbnailPipeline = new StagedPipeline<>("attachment-thumbnail", QUEUE_CAPACITY, new ThumbnailListener());
+
+        // Preview - Coarse thumbnail, best effort - Thumbnail decode still gets its chance if this fails.
+        thumbnailPipeline.addStage(STAGE_PREVIEW, PREVIEW_WORKER_COUNT, thumbnailDecodeDeadlineMillis, new StagedPipeline.Stage<AttachmentJob>() {
+            @Override
+            public void process(final AttachmentJob attachmentJob) throws Exception {
+                if (attachmentJob.isPreviewSkipped || attachmentThumbnailCache.get(attachmentJob.uri, thumbnailSizeInDp) != null
+                        || AttachmentProviderThumbnailLoader.isHitLikely(attachmentJob.uri)) {
+                    return;
+                }
+                try {
+                    attachmentJob.preview = AttachmentUtil.AUTHORITY_LIMITERS.execute(attachmentJob.uri.getAuthority(), new Callable<Bitmap>() {
+                        @Override
+                        public Bitmap call() throws Exception {
+                            return AttachmentUtil.createPreviewThumbnail(context, attachmentJob.uri, thumbnailSizeInDp,
+                                    attachmentMemoryGovernor.getBitmapConfig(), attachmentJob.imageWidth, attachmentJob.imageHeight);
+                        }
+                    }, false);
+                } catch (Exception exp) {
+                    if (FailureClassifier.classify(exp) == FailureClassifier.FAILURE_TYPE_INTERRUPTED) {
+                        throw exp;
+                    }
+                    exp.printStackTrace();
+                }
+            }
+        });
+
+        // Decode - Thumbnail chain for image uri's, unless it is cached - Or built from preview, if it is large enough.
+        thumbnailPipeline.addStage(STAGE_THUMBNAIL, THUMBNAIL_WORKER_COUNT, thumbnailDecodeDeadlineMillis,
+                new StagedPipeline.Stage<AttachmentJob>() {
+                    @Override
+                    public void process(final AttachmentJob attachmentJob) throws Exception {
+                        if (AttachmentUtil.isThumbnailComplete(context, attachmentJob.preview, thumbnailSizeInDp)) {
+                            attachmentThumbnailCache.put(attachmentJob.uri, AttachmentUtil.createThumbnailChain(context,
+                                    attachmentJob.preview, AttachmentThumbnailCache.CHAIN_SIZES_DP));
+                            attachmentJob.thumbnail = attachmentJob.preview;
+                        } else {
+                            attachmentJob.thumbnail = retry(attachmentJob.uri, new Callable<Bitmap>() {
+                                @Override
+                                public Bitmap call() throws Exception {
+                                    return attachmentThumbnailCache.getOrCreate(attachmentJob.uri, thumbnailSizeInDp,
+                                            attachmentMemoryGovernor.getBitmapConfig(), attachmentJob.imageWidth, attachmentJob.imageHeight);
+                                }
+                            }, false);
+                        }
+                        if (attachmentJob.thumbnail != null) {
+                            findNearDuplicate(attachmentJob);
+                        }
+                    }
+                });
+
+        thumbnailPipeline.start();
+        thumbnailPipeline.setStageParallelism(STAGE_THUMBNAIL, attachmentMemoryGovernor.getDecodeParallelism(THUMBNAIL_WORKER_COUNT));
+    }
+
+    private void createArchivePipeline() {
+        archivePipeline = new StagedPipeline<>("attachment-archive", QUEUE_CAPACITY, new ArchiveListener());
+
+        // Inspect - Central directory of ZIP uri's (Or a bounded scan, if provider gives only a stream), nothing is extracted.
+        archivePipeline.addStage(STAGE_INSPECT, INSPECT_WORKER_COUNT, attachmentDeadlineConfig.getPerUriResolutionDeadlineMillis(),
+                new StagedPipeline.Stage<AttachmentJob>() {
+                    @Override
+                    public void process(final AttachmentJob attachmentJob) throws Exception {
+                        ZipInspection zipInspection = AttachmentUtil.AUTHORITY_LIMITERS.execute(attachmentJob.uri.getAuthority(),
+                                new Callable<ZipInspection>() {
+                                    @Override
+                                    public ZipInspection call() throws Exception {
+                                        return AttachmentUtil.inspectZipArchive(context, attachmentJob.uri);
+                                    }
+                                }, false);
+                        attachmentJob.attachmentFileDetail.setZipInspection(zipInspection);
+                    }
+                });
+
+        archivePipeline.start();
+    }
+
+    /**
+     * Used to run a provider call of a stage - Each attempt under the concurrency limit of uri's authority, waiting for retry without
+     * holding a permit.
+     */
+    private <V> V retry(final Uri uri, final Callable<V> step, final boolean isLatencySampled) throws Exception {
+        return AttachmentUtil.RETRY_POLICY.execute(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return AttachmentUtil.AUTHORITY_LIMITERS.execute(uri.getAuthority(), step, isLatencySampled);
+            }
+        }, retryMetrics);
+    }
+
+    /**
+     * Used to index perceptual hash of job's thumbnail & find the nearest attachment decoded before it within max distance.
+     */
+    private void findNearDuplicate(final AttachmentJob attachmentJob) {
+        long perceptualHash = AttachmentUtil.computePerceptualHash(attachmentJob.thumbnail);
+        synchronized (nearDuplicateIndex) {
+            for (NearDuplicateIndex.Match<AttachmentFileDetail> match : nearDuplicateIndex.find(perceptualHash,
+                    NEAR_DUPLICATE_MAX_DISTANCE)) {
+                if (match.getValue() != attachmentJob.attachmentFileDetail) {
+                    attachmentJob.nearDuplicateOf = match.getValue();
+                    break;
+                }
+            }
+            nearDuplicateIndex.add(perceptualHash, attachmentJob.attachmentFileDetail);
+        }
+    }
+
+    private void postProgress(final AttachmentJob attachmentJob, final long bytesRead) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                attachmentPipelineListener.onAttachmentProgress(attachmentJob.attachmentFileDetail, bytesRead);
+            }
+        });
+    }
+
+    private void postThumbnail(final AttachmentJob attachmentJob, final Bitmap thumbnail) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                removeRefiningJob(attachmentJob);
+                attachmentPipelineListener.onAttachmentThumbnailDecoded(attachmentJob.attachmentFileDetail, thumbnail);
+                if (attachmentJob.nearDuplicateOf != null) {
+                    attachmentPipelineListener.onAttachmentNearDuplicateFound(attachmentJob.attachmentFileDetail, attachmentJob.nearDuplicateOf);
+                }
+            }
+        });
+    }
+
+    private void postPreview(final AttachmentJob attachmentJob, final Bitmap preview) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                refiningJobs.put(attachmentJob.attachmentFileDetail, attachmentJob);
+                attachmentPipelineListener.onAttachmentThumbnailPreviewDecoded(attachmentJob.attachmentFileDetail, preview);
+            }
+        });
+    }
+
+    private void postRefinementCancelled(final AttachmentJob attachmentJob) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                removeRefiningJob(attachmentJob);
+                attachmentPipelineListener.onAttachmentThumbnailRefinementCancelled(attachmentJob.attachmentFileDetail);
+            }
+        });
+    }
+
+    /**
+     * Used to remove job once its thumbnail is notified - Its detail may already be refined by a newer job, which is kept.
+     */
+    private void removeRefiningJob(final AttachmentJob attachmentJob) {
+        if (refiningJobs.get(attachmentJob.attachmentFileDetail) == attachmentJob) {
+            refiningJobs.remove(attachmentJob.attachmentFileDetail);
+        }
+    }
+
+    private static boolean isImage(final AttachmentFileDetail attachmentFileDetail) {
+        return attachmentFileDetail.getMimeType() != null && attachmentFileDetail.getMimeType().matches("image/.*");
+    }
+
+    private static boolean isZipArchive(final AttachmentFileDetail attachmentFileDetail) {
+        return ZIP_MIME_TYPE.equals(attachmentFileDetail.getMimeType()) || ZIP_LEGACY_MIME_TYPE.equals(attachmentFileDetail.getMimeType());
+    }
+
+    /**
+     * Single attached uri, as it moves through the stages.
+     */
+    private class AttachmentJob {
+
+        private Uri uri;
+        private ContentResolverAttachmentSource attachmentSource;
+        private ContentSizeCounter contentSizeCounter = new ContentSizeCounter();
+        private AttachmentDetail attachmentDetail;
+        private AttachmentFileDetail attachmentFileDetail;
+        private boolean isPreviewSkipped;
+        private Bitmap preview;
+        private Bitmap thumbnail;
+        private AttachmentFileDetail nearDuplicateOf;
+        // Image bounds, if read while classifying.
+        private int imageWidth = AttachmentProbeResult.UNKNOWN_DIMENSION;
+        private int imageHeight = AttachmentProbeResult.UNKNOWN_DIMENSION;
+
+        AttachmentJob(final Uri uri) {
+            this.uri = uri;
+            this.attachmentSource = new ContentResolverAttachmentSource(context, uri);
+        }
+    }
+
+    /**
+     * Resolve pipeline listener - Hands classified image uri's to thumbnail pipeline & forwards the rest to main thread.
+     */
+    private class ResolveListener implements StagedPipeline.Listener<AttachmentJob> {
+
+        @Override
+        public void onStageCompleted(final AttachmentJob attachmentJob, final String stageName) {
+            if (STAGE_CLASSIFY.equals(stageName)) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        attachmentPipelineListener.onAttachmentClassified(attachmentJob.attachmentFileDetail);
+                    }
+                });
+                if (isImage(attachmentJob.attachmentFileDetail)) {
+                    try {
+                        thumbnailPipeline.submitAll(Collections.singletonList(attachmentJob), StagedPipeline.NO_DEADLINE);
+                    } catch (IllegalStateException illegalStateException) {
+                        // Pipeline was shutdown - Screen went away, nobody to show thumbnail to.
+                    }
+                } else if (isZipArchive(attachmentJob.attachmentFileDetail)) {
+                    try {
+                        archivePipeline.submitAll(Collections.singletonList(attachmentJob), StagedPipeline.NO_DEADLINE);
+                    } catch (IllegalStateException illegalStateException) {
+                        // Pipeline was shutdown - Screen went away.
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onItemCompleted(final AttachmentJob attachmentJob) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    attachmentPipelineListener.onAttachmentResolved(attachmentJob.attachmentFileDetail);
+                }
+            });
+        }
+
+        @Override
+        public void onItemFailed(final AttachmentJob attachmentJob, final String stageName, final Exception exception) {
+            Log.i(TAG, "Attachment " + stageName + " failed (" + FailureClassifier.getName(FailureClassifier.classify(exception))
+                    + ") for " + attachmentJob.uri);
+            exception.printStackTrace();
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    attachmentPipelineListener.onAttachmentFailed(attachmentJob.uri, attachmentJob.attachmentFileDetail);
+                }
+            });
+        }
+
+        @Override
+        public void onItemTimedOut(final AttachmentJob attachmentJob, final String stageName) {
+            Log.i(TAG, "Attachment " + stageName + " timed out for " + attachmentJob.uri);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    attachmentPipelineListener.onAttachmentTimedOut(attachmentJob.uri, attachmentJob.attachmentFileDetail);
+                }
+            });
+        }
+
+        @Override
+        public void onItemCancelled(final AttachmentJob attachmentJob) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    attachmentPipelineListener.onAttachmentCancelled(attachmentJob.uri, attachmentJob.attachmentFileDetail);
+                }
+            });
+        }
+
+        @Override
+        public void onIdle() {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    attachmentPipelineListener.onAttachmentsResolved();
+                }
+            });
+        }
+    }
+
+    /**
+     * Thumbnail pipeline listener - Uri whose thumbnail failed still gets notified, with its preview or NULL thumbnail.
+     */
+    private class ThumbnailListener implements StagedPipeline.Listener<AttachmentJob> {
+
+        @Override
+        public void onStageCompleted(final AttachmentJob attachmentJob, final String stageName) {
+            if (STAGE_PREVIEW.equals(stageName) && attachmentJob.preview != null
+                    && !AttachmentUtil.isThumbnailComplete(context, attachmentJob.preview, thumbnailSizeInDp)) {
+                postPreview(attachmentJob, attachmentJob.preview);
+            }
+        }
+
+        @Override
+        public void onItemCompleted(final AttachmentJob attachmentJob) {
+            postThumbnail(attachmentJob, attachmentJob.thumbnail);
+        }
+
+        @Override
+        public void onItemFailed(final AttachmentJob attachmentJob, final String stageName, final Exception exception) {
+            exception.printStackTrace();
+            postThumbnail(attachmentJob, attachmentJob.preview);
+        }
+
+        @Override
+        public void onItemTimedOut(final AttachmentJob attachmentJob, final String stageName) {
+            Log.i(TAG, "Thumbnail " + stageName + " timed out for " + attachmentJob.uri);
+            postThumbnail(attachmentJob, attachmentJob.preview);
+        }
+
+        // Only refinement is cancelled, by cancelThumbnailRefinement.
+        @Override
+        public void onItemCancelled(final AttachmentJob attachmentJob) {
+            postRefinementCancelled(attachmentJob);
+        }
+
+        @Override
+        public void onIdle() {
+        }
+    }
+
+    /**
+     * Archive pipeline listener - Only successful inspections are notified, attachment shows its size alone otherwise.
+     */
+    private class ArchiveListener implements StagedPipeline.Listener<AttachmentJob> {
+
+        @Override
+        public void onStageCompleted(final AttachmentJob attachmentJob, final String stageName) {
+        }
+
+        @Override
+        public void onItemCompleted(final AttachmentJob attachmentJob) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    attachmentPipelineListener.onAttachmentArchiveInspected(attachmentJob.attachmentFileDetail);
+                }
+            });
+        }
+
+        @Override
+        public void onItemFailed(final AttachmentJob attachmentJob, final String stageName, final Exception exception) {
+            Log.i(TAG, "Archive " + stageName + " failed for " + attachmentJob.uri);
+            exception.printStackTrace();
+        }
+
+        @Override
+        public void onItemTimedOut(final AttachmentJob attachmentJob, final String stageName) {
+            Log.i(TAG, "Archive " + stageName + " timed out for " + attachmentJob.uri);
+        }
+
+        @Override
+        public void onItemCancelled(final AttachmentJob attachmentJob) {
+        }
+
+        @Override
+        public void onIdle() {
+        }
+    }
+}
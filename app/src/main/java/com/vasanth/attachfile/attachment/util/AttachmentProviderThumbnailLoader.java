@@ -0,0 +1,245 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+
+import com.vasanth.attachfile.core.image.ExifThumbnailReader;
+import com.vasanth.attachfile.core.util.HitRateMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+/**
+ * Attachment Provider Thumbnail Loader.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to get thumbnail of an image uri from its provider, which mostly has it cached already - So that the image itself
+ * is decoded only when provider has no thumbnail (See {@link AttachmentThumbnailCache#getOrCreate}).
+ * <p>
+ * 2. Methods.
+ * 2.a. load - Used to get provider thumbnail of at least a size, NULL on a miss.
+ * 2.b. isHitLikely - Used to check if uri's provider mostly gives thumbnails, so that callers can skip work done for a miss.
+ * <p>
+ * 3. Sources, first one which applies.
+ * 3.a. Document uri (API 19) - DocumentsContract.getDocumentThumbnail, only if document has FLAG_SUPPORTS_THUMBNAIL.
+ * 3.b. MediaStore uri - MediaStore MINI_KIND thumbnail (512 x 384), rotated by its ORIENTATION.
+ * 3.c. Other content uri (API 19) - openTypedAssetFileDescriptor with EXTRA_SIZE, image which is far larger than asked for is the
+ * image itself (Provider ignored EXTRA_SIZE), hence a miss.
+ * <p>
+ * 4. Note.
+ * 4.a. Hits & misses are counted per uri authority in HIT_RATE_METRICS - Thumbnail smaller than asked for counts as a miss.
+ * 4.b. Provider failures are misses, only an interrupt is thrown.
+ *
+ * @author Vasanth
+ */
+public class AttachmentProviderThumbnailLoader {
+
+    // Hit rates per uri authority, since app start.
+    public static final HitRateMetrics HIT_RATE_METRICS = new HitRateMetrics();
+
+    // Lookups & hit rate after which provider is taken to mostly give thumbnails.
+    private static final int LIKELY_MIN_LOOKUP_COUNT = 4;
+    private static final double LIKELY_HIT_RATE = 0.8;
+
+    // Typed asset larger than this many times the asked size is not a thumbnail.
+    private static final int MAX_TYPED_ASSET_SIZE_FACTOR = 4;
+
+    private static final String MEDIA_TYPE_IMAGES = "images";
+    private static final String MEDIA_TYPE_VIDEO = "video";
+    // Same as DocumentsContract.EXTRA_ORIENTATION (API 24), set by providers on typed assets.
+    private static final String EXTRA_ORIENTATION = "android.provider.extra.ORIENTATION";
+
+    /**
+     * Used to get thumbnail of an uri from its provider.
+     * <p>
+     * 1. Queries provider, hence make sure to call this method in separate thread.
+     *
+     * @param context         Context.
+     * @param uri             Uri.
+     * @param sizeInPx        Size to ask provider for.
+     * @param minSizeInPx     Smallest size used, smaller thumbnail is a miss.
+     * @param bitmapConfig    Preferred bitmap config (Document thumbnails are decoded by the platform, with its default).
+     * @return Thumbnail, oriented - NULL on a miss.
+     * @throws InterruptedIOException If the calling thread is interrupted.
+     */
+    public static Bitmap load(final Context context, final Uri uri, final int sizeInPx, final float minSizeInPx,
+                              final Bitmap.Config bitmapConfig) throws InterruptedIOException {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return null;
+        }
+        Bitmap thumbnail = null;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && DocumentsContract.isDocumentUri(context, uri)) {
+                thumbnail = loadDocumentThumbnail(context, uri, sizeInPx);
+            } else if (MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+                thumbnail = loadMediaStoreThumbnail(context, uri, bitmapConfig);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                thumbnail = loadTypedAssetThumbnail(context, uri, sizeInPx, bitmapConfig);
+            }
+        } catch (InterruptedIOException interruptedIOException) {
+            throw interruptedIOException;
+        } catch (IOException exp) {
+            exp.printStackTrace();
+        } catch (RuntimeException exp) {
+            // Providers throw whatever they like (Like SecurityException or UnsupportedOperationException).
+            exp.printStackTrace();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while loading provider thumbnail");
+        }
+
+        boolean isHit = thumbnail != null && Math.max(thumbnail.getWidth(), thumbnail.getHeight()) >= minSizeInPx;
+        HIT_RATE_METRICS.record(uri.getAuthority(), isHit);
+        return isHit ? thumbnail : null;
+    }
+
+    /**
+     * Used to check if uri's provider mostly gives thumbnails, going by its lookups so far.
+     *
+     * @param uri Uri.
+     * @return TRUE if provider was looked up at least LIKELY_MIN_LOOKUP_COUNT times & mostly hit.
+     */
+    public static boolean isHitLikely(final Uri uri) {
+        String authority = uri.getAuthority();
+        return HIT_RATE_METRICS.getHitCount(authority) + HIT_RATE_METRICS.getMissCount(authority) >= LIKELY_MIN_LOOKUP_COUNT
+                && HIT_RATE_METRICS.getHitRate(authority) >= LIKELY_HIT_RATE;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static Bitmap loadDocumentThumbnail(final Context context, final Uri uri, final int sizeInPx) throws IOException {
+        ContentResolver contentResolver = context.getContentResolver();
+        int flags = 0;
+        Cursor cursor = contentResolver.query(uri, new String[]{DocumentsContract.Document.COLUMN_FLAGS}, null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    flags = cursor.getInt(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if ((flags & DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL) == 0) {
+            return null;
+        }
+        return DocumentsContract.getDocumentThumbnail(contentResolver, uri, new Point(sizeInPx, sizeInPx), null);
+    }
+
+    /**
+     * Used to get MINI_KIND thumbnail of content://media/[volume]/images|video/media/[id] - MICRO_KIND is cropped square, hence not
+     * used.
+     */
+    private static Bitmap loadMediaStoreThumbnail(final Context context, final Uri uri, final Bitmap.Config bitmapConfig) {
+        List<String> pathSegments = uri.getPathSegments();
+        if (pathSegments.size() != 4 || !"media".equals(pathSegments.get(2))) {
+            return null;
+        }
+        long id;
+        try {
+            id = Long.parseLong(pathSegments.get(3));
+        } catch (NumberFormatException numberFormatException) {
+            return null;
+        }
+        ContentResolver contentResolver = context.getContentResolver();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = bitmapConfig;
+        if (MEDIA_TYPE_IMAGES.equals(pathSegments.get(1))) {
+            Bitmap thumbnail = MediaStore.Images.Thumbnails.getThumbnail(contentResolver, id, MediaStore.Images.Thumbnails.MINI_KIND,
+                    options);
+            return thumbnail != null ? rotate(thumbnail, queryMediaStoreOrientation(contentResolver, uri)) : null;
+        } else if (MEDIA_TYPE_VIDEO.equals(pathSegments.get(1))) {
+            return MediaStore.Video.Thumbnails.getThumbnail(contentResolver, id, MediaStore.Video.Thumbnails.MINI_KIND, options);
+        }
+        return null;
+    }
+
+    private static int queryMediaStoreOrientation(final ContentResolver contentResolver, final Uri uri) {
+        Cursor cursor = contentResolver.query(uri, new String[]{MediaStore.Images.ImageColumns.ORIENTATION}, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Used to get thumbnail through openTypedAssetFileDescriptor with EXTRA_SIZE - Bounds are read first, so that an image returned
+     * as is (Provider ignored EXTRA_SIZE) is never decoded.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static Bitmap loadTypedAssetThumbnail(final Context context, final Uri uri, final int sizeInPx,
+                                                  final Bitmap.Config bitmapConfig) throws IOException {
+        Bundle opts = new Bundle();
+        opts.putParcelable(ContentResolver.EXTRA_SIZE, new Point(sizeInPx, sizeInPx));
+        AssetFileDescriptor assetFileDescriptor;
+        try {
+            assetFileDescriptor = context.getContentResolver().openTypedAssetFileDescriptor(uri, "image/*", opts);
+        } catch (FileNotFoundException fileNotFoundException) {
+            // Provider has no image representation of the uri.
+            return null;
+        }
+        if (assetFileDescriptor == null) {
+            return null;
+        }
+        try {
+            InputStream input = new BufferedInputStream(assetFileDescriptor.createInputStream());
+            try {
+                input.mark(ExifThumbnailReader.MAX_HEADER_SIZE);
+                BitmapFactory.Options onlyBoundsOptions = new BitmapFactory.Options();
+                onlyBoundsOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeStream(input, null, onlyBoundsOptions);
+                int size = Math.max(onlyBoundsOptions.outWidth, onlyBoundsOptions.outHeight);
+                if (size <= 0 || size > sizeInPx * MAX_TYPED_ASSET_SIZE_FACTOR) {
+                    return null;
+                }
+                input.reset();
+
+                BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+                bitmapOptions.inSampleSize = AttachmentUtil.getPowerOfTwoForSampleRatio((double) size / sizeInPx);
+                bitmapOptions.inPreferredConfig = bitmapConfig;
+                Bitmap thumbnail = BitmapFactory.decodeStream(input, null, bitmapOptions);
+                Bundle extras = assetFileDescriptor.getExtras();
+                return thumbnail != null ? rotate(thumbnail, extras != null ? extras.getInt(EXTRA_ORIENTATION, 0) : 0) : null;
+            } finally {
+                input.close();
+            }
+        } finally {
+            assetFileDescriptor.close();
+        }
+    }
+
+    private static Bitmap rotate(final Bitmap bitmap, final int degrees) {
+        if (degrees % 360 == 0) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(degrees);
+        Bitmap rotatedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotatedBitmap != bitmap) {
+            bitmap.recycle();
+        }
+        return rotatedBitmap;
+    }
+}
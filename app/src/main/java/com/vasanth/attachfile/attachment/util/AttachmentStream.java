@@ -0,0 +1,301 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.vasanth.attachfile.attachment.model.AttachmentEvent;
+import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.core.stream.DemandEmitter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Attachment Stream.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to resolve attached uri's as a stream of per uri events (See {@link AttachmentEvent}), so that a consumer can show,
+ * upload or dedupe each uri as soon as it is ready, instead of waiting for the whole batch.
+ * <p>
+ * 2. Methods.
+ * 2.a. subscribe - Used to start the stream, events are delivered on the given executor (Like {@link #MAIN_THREAD_EXECUTOR}).
+ * <p>
+ * 3. Backpressure.
+ * 3.a. Events are delivered only as requested by the subscriber (See {@link DemandEmitter}).
+ * 3.b. Uri's are submitted for resolution only while the subscriber has unmet demand (At most MAX_IN_FLIGHT_URI_COUNT at a time),
+ * hence a slow consumer slows resolution down instead of piling up resolved uri's & thumbnails.
+ * <p>
+ * 4. Events Of A Uri.
+ * 4.a. Resolved -> Size known -> (Thumbnail ready, image uri's only, may come before size known) -> Done.
+ * 4.b. Failed -> Done, if uri couldn't be resolved or timed out.
+ * 4.c. Stream completes once every uri is done, cancelling the subscription stops resolution of all its uri's.
+ * <p>
+ * 5. Note.
+ * 5.a. Uri's are resolved by an {@link AttachmentPipeline} of the stream, which is shutdown once stream completes or is cancelled.
+ * 5.b. API only so far - No screen consumes it yet, MainActivity drives {@link AttachmentPipeline} directly.
+ *
+ * @author Vasanth
+ */
+public class AttachmentStream implements AttachmentPipeline.AttachmentPipelineListener {
+
+    // Uri's being resolved at a time, at most.
+    private static final int MAX_IN_FLIGHT_URI_COUNT = 8;
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    // Delivers events on main thread.
+    public static final Executor MAIN_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable runnable) {
+            MAIN_HANDLER.post(runnable);
+        }
+    };
+
+    private Context context;
+    private List<Uri> uris = new ArrayList<>();
+    private AttachmentDeadlineConfig attachmentDeadlineConfig;
+    private int thumbnailSizeInDp;
+    private AttachmentPipeline attachmentPipeline;
+    private DemandEmitter<AttachmentEvent> demandEmitter;
+    private int nextUriIndex;
+    private int inFlightUriCount;
+    // State of uri's which are resolved (Classified) & not yet done, accessed on main thread.
+    private Map<AttachmentFileDetail, UriState> resolvedUris = new HashMap<>();
+    private boolean isFinished;
+
+    /**
+     * Constructor.
+     *
+     * @param context                  Context.
+     * @param uris                     Attached uri's, NULL uri's are skipped.
+     * @param attachmentDeadlineConfig Deadlines for resolution & thumbnail decode.
+     * @param thumbnailSizeInDp        Thumbnail size required in DP.
+     */
+    public AttachmentStream(final Context context, final List<Uri> uris, final AttachmentDeadlineConfig attachmentDeadlineConfig,
+                            final int thumbnailSizeInDp) {
+        this.context = context.getApplicationContext();
+        this.attachmentDeadlineConfig = attachmentDeadlineConfig;
+        this.thumbnailSizeInDp = thumbnailSizeInDp;
+        for (Uri uri : uris) {
+            if (uri != null) {
+                this.uris.add(uri);
+            }
+        }
+    }
+
+    /**
+     * Used to start the stream, it can be subscribed only once.
+     * <p>
+     * 1. Call from main thread.
+     *
+     * @param subscriber       Subscriber.
+     * @param deliveryExecutor Executor on which subscriber is called.
+     * @return Subscription, same as given to subscriber - Handle to cancel the stream.
+     */
+    public DemandEmitter.Subscription subscribe(final DemandEmitter.Subscriber<AttachmentEvent> subscriber, final Executor deliveryExecutor) {
+        if (demandEmitter != null) {
+            throw new IllegalStateException("Stream is already subscribed");
+        }
+        demandEmitter = new DemandEmitter<>(deliveryExecutor, subscriber, new DemandEmitter.DemandListener() {
+            @Override
+            public void onDemand() {
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        submitUris();
+                    }
+                });
+            }
+
+            @Override
+            public void onCancel() {
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish();
+                    }
+                });
+            }
+        });
+        demandEmitter.start();
+        if (uris.isEmpty()) {
+            finish();
+        }
+        return demandEmitter.getSubscription();
+    }
+
+    /**
+     * AttachmentPipeline.AttachmentPipelineListener Methods.
+     */
+    @Override
+    public void onAttachmentClassified(final AttachmentFileDetail attachmentFileDetail) {
+        if (isFinished) {
+            return;
+        }
+        String mimeType = attachmentFileDetail.getMimeType();
+        resolvedUris.put(attachmentFileDetail, new UriState(mimeType != null && mimeType.matches("image/.*")));
+        emit(AttachmentEvent.EVENT_TYPE_RESOLVED, attachmentFileDetail.getUri(), attachmentFileDetail, null);
+    }
+
+    @Override
+    public void onAttachmentProgress(final AttachmentFileDetail attachmentFileDetail, final long bytesRead) {
+    }
+
+    @Override
+    public void onAttachmentResolved(final AttachmentFileDetail attachmentFileDetail) {
+        UriState uriState = resolvedUris.get(attachmentFileDetail);
+        if (isFinished || uriState == null) {
+            return;
+        }
+        emit(AttachmentEvent.EVENT_TYPE_SIZE_KNOWN, attachmentFileDetail.getUri(), attachmentFileDetail, null);
+        uriState.isSizeKnown = true;
+        if (uriState.isDone()) {
+            onUriDone(attachmentFileDetail.getUri(), attachmentFileDetail);
+        }
+    }
+
+    @Override
+    public void onAttachmentThumbnailDecoded(final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail) {
+        UriState uriState = resolvedUris.get(attachmentFileDetail);
+        if (isFinished || uriState == null) {
+            return;
+        }
+        emit(AttachmentEvent.EVENT_TYPE_THUMBNAIL_READY, attachmentFileDetail.getUri(), attachmentFileDetail, thumbnail);
+        uriState.isThumbnailDone = true;
+        if (uriState.isDone()) {
+            onUriDone(attachmentFileDetail.getUri(), attachmentFileDetail);
+        }
+    }
+
+    // Only the final thumbnail is an event.
+    @Override
+    public void onAttachmentThumbnailPreviewDecoded(final AttachmentFileDetail attachmentFileDetail, final Bitmap preview) {
+    }
+
+    @Override
+    public void onAttachmentThumbnailRefinementCancelled(final AttachmentFileDetail attachmentFileDetail) {
+    }
+
+    // Near duplicates are for the attach screen to offer removal, not part of a uri's events.
+    @Override
+    public void onAttachmentNearDuplicateFound(final AttachmentFileDetail attachmentFileDetail, final AttachmentFileDetail nearDuplicateOf) {
+    }
+
+    // Archive inspection is for the attachment tile, not part of a uri's events.
+    @Override
+    public void onAttachmentArchiveInspected(final AttachmentFileDetail attachmentFileDetail) {
+    }
+
+    @Override
+    public void onAttachmentFailed(final Uri uri, final AttachmentFileDetail attachmentFileDetail) {
+        onUriFailed(uri, attachmentFileDetail, false);
+    }
+
+    @Override
+    public void onAttachmentTimedOut(final Uri uri, final AttachmentFileDetail attachmentFileDetail) {
+        onUriFailed(uri, attachmentFileDetail, true);
+    }
+
+    // Only cancelled along with the stream.
+    @Override
+    public void onAttachmentCancelled(final Uri uri, final AttachmentFileDetail attachmentFileDetail) {
+    }
+
+    @Override
+    public void onAttachmentsResolved() {
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to submit next uri's, as many as subscriber has unmet demand for.
+     */
+    private void submitUris() {
+        if (isFinished) {
+            return;
+        }
+        long unmetDemand = demandEmitter.getUnmetDemand();
+        List<Uri> submittedUris = new ArrayList<>();
+        while (nextUriIndex < uris.size() && inFlightUriCount < MAX_IN_FLIGHT_URI_COUNT && inFlightUriCount < unmetDemand) {
+            submittedUris.add(uris.get(nextUriIndex));
+            nextUriIndex++;
+            inFlightUriCount++;
+        }
+        if (submittedUris.size() > 0) {
+            getAttachmentPipeline().submit(submittedUris);
+        }
+    }
+
+    private void onUriFailed(final Uri uri, final AttachmentFileDetail attachmentFileDetail, final boolean isTimedOut) {
+        if (isFinished) {
+            return;
+        }
+        demandEmitter.emit(new AttachmentEvent(AttachmentEvent.EVENT_TYPE_FAILED, uri, attachmentFileDetail, null, isTimedOut));
+        onUriDone(uri, attachmentFileDetail);
+    }
+
+    private void onUriDone(final Uri uri, final AttachmentFileDetail attachmentFileDetail) {
+        if (attachmentFileDetail != null) {
+            resolvedUris.remove(attachmentFileDetail);
+        }
+        emit(AttachmentEvent.EVENT_TYPE_DONE, uri, attachmentFileDetail, null);
+        inFlightUriCount--;
+        if (nextUriIndex >= uris.size() && inFlightUriCount == 0) {
+            finish();
+        } else {
+            submitUris();
+        }
+    }
+
+    private void emit(final int eventType, final Uri uri, final AttachmentFileDetail attachmentFileDetail, final Bitmap thumbnail) {
+        demandEmitter.emit(new AttachmentEvent(eventType, uri, attachmentFileDetail, thumbnail, false));
+    }
+
+    /**
+     * Used to complete the stream & stop resolution, once all uri's are done or subscriber cancelled.
+     */
+    private void finish() {
+        if (isFinished) {
+            return;
+        }
+        isFinished = true;
+        resolvedUris.clear();
+        demandEmitter.complete();
+        if (attachmentPipeline != null) {
+            attachmentPipeline.cancel();
+            attachmentPipeline.shutdown();
+        }
+    }
+
+    private AttachmentPipeline getAttachmentPipeline() {
+        if (attachmentPipeline == null) {
+            attachmentPipeline = new AttachmentPipeline(context, attachmentDeadlineConfig, thumbnailSizeInDp, this);
+        }
+        return attachmentPipeline;
+    }
+
+    /**
+     * Events of a resolved uri so far.
+     */
+    private static class UriState {
+
+        private boolean isImage;
+        private boolean isSizeKnown;
+        private boolean isThumbnailDone;
+
+        UriState(final boolean isImage) {
+            this.isImage = isImage;
+        }
+
+        boolean isDone() {
+            return isSizeKnown && (isThumbnailDone || !isImage);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.vasanth.attachfile.attachment.model.MemoryPressureEvent;
+import com.vasanth.attachfile.attachment.model.ThumbnailChain;
+
+import java.io.IOException;
+
+/**
+ * Attachment Thumbnail Cache.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to keep thumbnail chains (See {@link ThumbnailChain}) of attachments in memory, so that every size shown by the UI
+ * (List row, grid tile, notification, upload preview) is served from the single decode which created the chain.
+ * <p>
+ * 2. Methods.
+ * 2.a. getInstance - Used to get single ton instance.
+ * 2.b. get - Used to get thumbnail of an attachment nearest to a size, if its chain is cached.
+ * 2.c. getOrCreate - Used to get thumbnail of an attachment nearest to a size, decoding its chain on a miss.
+ * 2.d. put / remove - Used to cache (Like a chain built from a preview) / drop chain of an attachment.
+ * <p>
+ * 3. Note.
+ * 3.a. Lookup is by nearest size, hence a size which is not in CHAIN_SIZES_DP is served from a cached chain as well - Adding a
+ * UI size never reads the image again.
+ * 3.b. Cache size is MEMORY_CLASS_FRACTION of the app's memory class, scaled by the memory pressure budget (See
+ * {@link AttachmentMemoryGovernor}).
+ * 3.c. Lookups may be called from any thread.
+ * 3.d. On a miss, thumbnail the uri's provider already has (MediaStore, document or typed asset thumbnail) is tried before decoding
+ * the image (See {@link AttachmentProviderThumbnailLoader}) - Its chain is decoded from the image only if a larger size is asked for.
+ *
+ * @author Vasanth
+ */
+public class AttachmentThumbnailCache implements AttachmentMemoryGovernor.MemoryPressureListener {
+
+    // Thumbnail sizes of the UI.
+    public static final int SIZE_UPLOAD_PREVIEW_DP = 240;
+    public static final int SIZE_GRID_TILE_DP = 160;
+    public static final int SIZE_LIST_ROW_DP = 90;
+    public static final int SIZE_NOTIFICATION_DP = 64;
+
+    // Levels of every chain, largest first.
+    public static final int[] CHAIN_SIZES_DP = {SIZE_UPLOAD_PREVIEW_DP, SIZE_GRID_TILE_DP, SIZE_LIST_ROW_DP, SIZE_NOTIFICATION_DP};
+
+    private static final int MEMORY_CLASS_FRACTION = 8;
+
+    private static AttachmentThumbnailCache instance;
+
+    private Context context;
+    private AttachmentMemoryGovernor attachmentMemoryGovernor;
+    private int maxCacheSizeInBytes;
+    private volatile LruCache<Uri, ThumbnailChain> chainCache;
+
+    /**
+     * Constructor.
+     *
+     * @param context Application context.
+     */
+    private AttachmentThumbnailCache(final Context context) {
+        this.context = context;
+        this.attachmentMemoryGovernor = AttachmentMemoryGovernor.getInstance(context);
+        int memoryClass = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass();
+        this.maxCacheSizeInBytes = memoryClass * 1024 * 1024 / MEMORY_CLASS_FRACTION;
+        this.chainCache = createChainCache();
+    }
+
+    /**
+     * Used to get single ton instance.
+     * <p>
+     * 1. Call from main thread.
+     *
+     * @param context Context.
+     * @return Attachment thumbnail cache.
+     */
+    public static AttachmentThumbnailCache getInstance(final Context context) {
+        if (instance == null) {
+            instance = new AttachmentThumbnailCache(context.getApplicationContext());
+            instance.attachmentMemoryGovernor.addMemoryPressureListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Used to get thumbnail of an attachment, if its chain is cached.
+     *
+     * @param uri      Attachment uri.
+     * @param sizeInDp Thumbnail size required in DP.
+     * @return Thumbnail nearest to the size (See {@link ThumbnailChain#getNearest(float)}), NULL if chain is not cached.
+     */
+    public Bitmap get(final Uri uri, final int sizeInDp) {
+        ThumbnailChain thumbnailChain = chainCache.get(uri);
+        return thumbnailChain != null ? thumbnailChain.getNearest(AttachmentUtil.convertDpToPixel(sizeInDp, context)) : null;
+    }
+
+    /**
+     * Used to get thumbnail of an attachment, decoding its chain of CHAIN_SIZES_DP (Once) if it is not cached.
+     * <p>
+     * 1. Decodes the image on a miss, hence make sure to call this method in separate thread.
+     *
+     * @param uri          Attachment uri.
+     * @param sizeInDp     Thumbnail size required in DP.
+     * @param bitmapConfig Preferred bitmap config.
+     * @param imageWidth   Image width if known (Like from AttachmentUtil.probeAttachmentFromUri), else
+     *                     {@link com.vasanth.attachfile.core.model.AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @param imageHeight  Image height if known, else UNKNOWN_DIMENSION.
+     * @return Thumbnail nearest to the size, NULL if image couldn't be decoded.
+     * @throws IOException If uri couldn't be read.
+     */
+    public Bitmap getOrCreate(final Uri uri, final int sizeInDp, final Bitmap.Config bitmapConfig, final int imageWidth,
+                              final int imageHeight) throws IOException {
+        float sizeInPx = AttachmentUtil.convertDpToPixel(sizeInDp, context);
+        ThumbnailChain cachedChain = chainCache.get(uri);
+        if (cachedChain != null && (!cachedChain.isProviderThumbnail() || getSize(cachedChain.getLargest()) >= sizeInPx)) {
+            return cachedChain.getNearest(sizeInPx);
+        }
+
+        ThumbnailChain thumbnailChain = null;
+        if (cachedChain == null) {
+            int providerSizeInPx = Math.round(AttachmentUtil.convertDpToPixel(CHAIN_SIZES_DP[0], context));
+            Bitmap providerThumbnail = AttachmentProviderThumbnailLoader.load(context, uri, providerSizeInPx, sizeInPx, bitmapConfig);
+            if (providerThumbnail != null) {
+                thumbnailChain = AttachmentUtil.createThumbnailChain(context, providerThumbnail, CHAIN_SIZES_DP);
+                thumbnailChain.setProviderThumbnail(true);
+                if (!thumbnailChain.getLevels().contains(providerThumbnail)) {
+                    providerThumbnail.recycle();
+                }
+            }
+        }
+        if (thumbnailChain == null) {
+            thumbnailChain = AttachmentUtil.createThumbnailChain(context, uri, CHAIN_SIZES_DP, bitmapConfig, imageWidth, imageHeight);
+        }
+        if (thumbnailChain == null) {
+            return null;
+        }
+        put(uri, thumbnailChain);
+        return thumbnailChain.getNearest(sizeInPx);
+    }
+
+    /**
+     * Used to cache chain of an attachment, replacing the cached one.
+     *
+     * @param uri            Attachment uri.
+     * @param thumbnailChain Thumbnail chain.
+     */
+    public void put(final Uri uri, final ThumbnailChain thumbnailChain) {
+        chainCache.put(uri, thumbnailChain);
+    }
+
+    /**
+     * Used to drop chain of an attachment (Like once it is removed).
+     *
+     * @param uri Attachment uri.
+     */
+    public void remove(final Uri uri) {
+        chainCache.remove(uri);
+    }
+
+    /**
+     * AttachmentMemoryGovernor.MemoryPressureListener Methods.
+     */
+    @Override
+    public void onMemoryPressureChanged(final MemoryPressureEvent memoryPressureEvent) {
+        // LruCache can't be resized below API 21, hence replaced (Same as TiledImageView) - Chains are decoded again on next use.
+        LruCache<Uri, ThumbnailChain> previousCache = chainCache;
+        chainCache = createChainCache();
+        previousCache.evictAll();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private LruCache<Uri, ThumbnailChain> createChainCache() {
+        // LruCache needs a positive size - Under critical pressure a single byte, which holds nothing.
+        int cacheSizeInBytes = Math.max(1, Math.round(maxCacheSizeInBytes * attachmentMemoryGovernor.getCacheSizeFraction()));
+        return new LruCache<Uri, ThumbnailChain>(cacheSizeInBytes) {
+            @Override
+            protected int sizeOf(Uri uri, ThumbnailChain thumbnailChain) {
+                return thumbnailChain.getByteCount();
+            }
+        };
+    }
+
+    private static int getSize(final Bitmap bitmap) {
+        return bitmap != null ? Math.max(bitmap.getWidth(), bitmap.getHeight()) : 0;
+    }
+}
@@ -1,37 +1,93 @@
 package com.vasanth.attachfile.attachment.util;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
 import android.net.Uri;
-import android.provider.OpenableColumns;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.util.DisplayMetrics;
-import android.webkit.MimeTypeMap;
 
 import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.model.ThumbnailChain;
+import com.vasanth.attachfile.attachment.source.ContentResolverAttachmentSource;
+import com.vasanth.attachfile.core.archive.ZipInspector;
+import com.vasanth.attachfile.core.image.ExifThumbnail;
+import com.vasanth.attachfile.core.image.ExifThumbnailReader;
+import com.vasanth.attachfile.core.image.PerceptualHash;
+import com.vasanth.attachfile.core.limit.ConcurrencyLimiterGroup;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentProbeResult;
+import com.vasanth.attachfile.core.model.ZipInspection;
+import com.vasanth.attachfile.core.probe.AttachmentProbe;
+import com.vasanth.attachfile.core.retry.RetryPolicy;
+import com.vasanth.attachfile.core.util.AttachmentFingerprint;
+import com.vasanth.attachfile.core.util.AttachmentResolver;
+import com.vasanth.attachfile.core.util.AttachmentStager;
+import com.vasanth.attachfile.core.util.FileDetailUtil;
+import com.vasanth.attachfile.core.util.ParallelSegmentHasher;
+import com.vasanth.attachfile.core.util.ProgressListener;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipException;
 
 /**
  * Attachment Util.
  * <p>
  * 1. Responsibility.
  * 1.a. Class used to provide utils functionality for our attachment module.
+ * 1.b. Platform independent logic (resolution, size, fingerprint) lives in attachment-core, this class adapts it to Android Uri's.
  * <p>
  * 2. Methods.
  * 2.a. getAttachmentFileDetailFromUri - Used to get attachment file detail from uri.
- * 2.b. getDisplayFileSize - Used to get displayable file size from file size in bytes.
- * 2.c. createThumbnail - Used to create thumbnail for the given URI.
+ * 2.b. getAttachmentFingerprintFromUri - Used to get content fingerprint from uri.
+ * 2.c. stageAttachment - Used to copy content of uri into app owned file.
+ * 2.d. getDisplayFileSize - Used to get displayable file size from file size in bytes.
+ * 2.e. createThumbnail - Used to create thumbnail for the given URI.
+ * 2.f. createPreviewThumbnail - Used to create coarse thumbnail for the given URI, shown until its thumbnail is created.
+ * 2.g. isThumbnailComplete - Used to check if a (preview) thumbnail is large enough to be used as thumbnail.
+ * 2.h. probeAttachmentFromUri - Used to get attachment file detail, fingerprint & image dimensions from a single read of uri.
+ * 2.i. createThumbnailChain - Used to create thumbnails of several sizes for the given URI, from a single decode.
+ * 2.j. computePerceptualHash - Used to get perceptual hash of an already decoded thumbnail, for near duplicate detection.
+ * 2.k. inspectZipArchive - Used to get entry count, total size & zip bomb check of a ZIP attachment, without extracting it.
  *
  * @author Vasanth
  */
 public class AttachmentUtil {
 
+    // Retry policy for reading attachments - Transient provider failures (Like a cloud provider's network hiccup) are retried twice.
+    public static final RetryPolicy RETRY_POLICY = new RetryPolicy(3, 250, 2000);
+
+    // Concurrency limits per uri authority - Each provider starts at 2 parallel reads & adapts between 1 & 4 (AIMD), so that MediaStore
+    // gets more parallel reads while a cloud provider which throttles them gets fewer (See ConcurrencyLimiter).
+    public static final ConcurrencyLimiterGroup AUTHORITY_LIMITERS = new ConcurrencyLimiterGroup(2, 1, 4);
+
+    // Preview thumbnail is sub sampled this many times more than the thumbnail - 1/8 is what JPEG decoder scales for almost free.
+    private static final int PREVIEW_SAMPLE_FACTOR = 8;
+
+    /**
+     * Used to get attachment file detail from uri.
+     *
+     * @param context Context.
+     * @param uri     Uri.
+     * @return AttachmentFile object if we successfully retrieved data from uri else NULL if we failed to retrieve data.
+     * @see #getAttachmentFileDetailFromUri(Context, Uri, ProgressListener)
+     */
+    public static AttachmentFileDetail getAttachmentFileDetailFromUri(final Context context, final Uri uri) {
+        return getAttachmentFileDetailFromUri(context, uri, null);
+    }
+
     /**
      * Used to get attachment file detail from uri.
      * <p>
@@ -41,48 +97,29 @@ public class AttachmentUtil {
      * 1. For some Uri's we will get fileSize as "0" - Like "Shared file in google drive" then in those cases we need to read the file content
      * to get actual file size.
      * 2. Reading file content make take long time hence make sure to call this method in separate thread.
+     * 3. Reading file content stops if the calling thread is interrupted (Like when its deadline expires), in that case we return NULL.
+     * 4. Transient failures are retried as per {@link #RETRY_POLICY}, reusing what was read before the failure.
+     * 5. Runs under the concurrency limit of uri's authority (See {@link #AUTHORITY_LIMITERS}).
      *
-     * @param context Context.
-     * @param uri     Uri.
+     * @param context          Context.
+     * @param uri              Uri.
+     * @param progressListener Listener to be notified with bytes read while reading file content, can be NULL.
      * @return AttachmentFile object if we successfully retrieved data from uri else NULL if we failed to retrieve data.
      */
-    public static AttachmentFileDetail getAttachmentFileDetailFromUri(final Context context, final Uri uri) {
+    public static AttachmentFileDetail getAttachmentFileDetailFromUri(final Context context, final Uri uri,
+                                                                      final ProgressListener progressListener) {
         AttachmentFileDetail attachmentFileDetail = null;
         if (uri != null) {
             try {
-
-                // Get fileName, fileSize & fileMimeType.
-                String fileName = null;
-                long fileSize = 0L;
-                String fileMimeType = null;
-
-                // File Scheme.
-                if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
-                    File file = new File(uri.getPath());
-                    fileName = file.getName();
-                    fileSize = file.length();
-                    fileMimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(getFileExtension(fileName));
-                }
-
-                // Content Scheme.
-                else if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
-                    Cursor returnCursor =
-                            context.getContentResolver().query(uri, null, null, null, null);
-                    if (returnCursor != null && returnCursor.moveToFirst()) {
-                        int nameIndex = returnCursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                        int sizeIndex = returnCursor.getColumnIndex(OpenableColumns.SIZE);
-                        fileName = returnCursor.getString(nameIndex);
-                        fileSize = returnCursor.getLong(sizeIndex);
-                        fileMimeType = context.getContentResolver().getType(uri);
-                        returnCursor.close();
+                AttachmentDetail attachmentDetail = AUTHORITY_LIMITERS.execute(uri.getAuthority(), new Callable<AttachmentDetail>() {
+                    @Override
+                    public AttachmentDetail call() throws Exception {
+                        return AttachmentResolver.resolve(new ContentResolverAttachmentSource(context, uri), progressListener, RETRY_POLICY,
+                                null);
                     }
-                    // If "FileSize is 0" - Then get fileSize by reading its content.
-                    if (fileSize == 0) {
-                        fileSize = getFileSizeFromUri(context, uri);
-                    }
-                }
-
-                attachmentFileDetail = new AttachmentFileDetail(fileName, fileSize, fileMimeType, uri);
+                }, false);
+                attachmentFileDetail = new AttachmentFileDetail(attachmentDetail.getName(), attachmentDetail.getSize(),
+                        attachmentDetail.getMimeType(), uri);
             } catch (Exception exp) {
                 exp.printStackTrace();
                 attachmentFileDetail = null;
@@ -92,24 +129,71 @@ public class AttachmentUtil {
     }
 
     /**
-     * Used to get file size from uri.
+     * Used to get content fingerprint from uri.
+     * <p>
+     * 1. Same content gives same fingerprint, whichever uri it is read from.
+     * 2. Reads the whole content, hence make sure to call this method in separate thread.
+     * 3. From API 21 "file://" uri's are hashed in parallel across memory mapped segments.
      *
-     * @param uri Uri to get file size.
-     * @return File size in bytes from uri.
+     * @param context          Context.
+     * @param uri              Uri.
+     * @param progressListener Listener to be notified with bytes read, can be NULL.
+     * @return Fingerprint in lower case hex.
+     * @throws IOException If content couldn't be read.
      */
-    private static long getFileSizeFromUri(final Context context, final Uri uri) throws IOException {
-        long fileSize = 0L;
-
-        InputStream inputStream = context.getContentResolver().openInputStream(uri);
-        if (inputStream != null) {
-            byte[] bytes = new byte[1024];
-            int read = -1;
-            while ((read = inputStream.read(bytes)) >= 0) {
-                fileSize += read;
-            }
+    public static String getAttachmentFingerprintFromUri(final Context context, final Uri uri,
+                                                         final ProgressListener progressListener) throws IOException {
+        ContentResolverAttachmentSource attachmentSource = new ContentResolverAttachmentSource(context, uri);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return ParallelSegmentHasher.hash(attachmentSource, ParallelSegmentHasher.getDefaultPool(), progressListener);
         }
-        inputStream.close();
-        return fileSize;
+        return AttachmentFingerprint.compute(attachmentSource, progressListener);
+    }
+
+    /**
+     * Used to get attachment file detail, fingerprint & image dimensions from uri, opening its content only once.
+     * <p>
+     * 1. Size, mimeType (If provider can't tell them), fingerprint & image bounds are read from the same stream (See
+     * {@link AttachmentProbe}), reading stops as soon as nothing more is needed.
+     * 2. Image dimensions can be passed to {@link #createThumbnail(Context, Uri, int, Bitmap.Config, int, int)}, so that it doesn't
+     * read them again.
+     * 3. Make sure to call this method in separate thread.
+     *
+     * @param context               Context.
+     * @param uri                   Uri.
+     * @param isFingerprintRequired TRUE if fingerprint is needed, it reads the whole content.
+     * @param progressListener      Listener to be notified with bytes read, can be NULL.
+     * @return Probe result, whose attachment detail is an {@link AttachmentFileDetail}.
+     * @throws IOException If content couldn't be read.
+     */
+    public static AttachmentProbeResult probeAttachmentFromUri(final Context context, final Uri uri, final boolean isFingerprintRequired,
+                                                               final ProgressListener progressListener) throws IOException {
+        ContentResolverAttachmentSource attachmentSource = new ContentResolverAttachmentSource(context, uri);
+        AttachmentDetail attachmentDetail = attachmentSource.queryMetadata();
+        AttachmentFileDetail attachmentFileDetail = new AttachmentFileDetail(attachmentDetail.getName(), attachmentDetail.getSize(),
+                attachmentDetail.getMimeType(), uri);
+        int probeFlags = AttachmentProbe.PROBE_SIZE | AttachmentProbe.PROBE_MIME_TYPE | AttachmentProbe.PROBE_BOUNDS
+                | (isFingerprintRequired ? AttachmentProbe.PROBE_FINGERPRINT : 0);
+        return AttachmentProbe.probe(attachmentSource, attachmentFileDetail, probeFlags, progressListener);
+    }
+
+    /**
+     * Used to copy content of uri into app owned file.
+     * <p>
+     * 1. "file://" uri's are copied through memory mapped regions, other uri's through their stream.
+     * 2. Destination is either complete or absent, never partially written.
+     * 3. Reads the whole content, hence make sure to call this method in separate thread.
+     *
+     * @param context          Context.
+     * @param uri              Uri.
+     * @param destinationFile  Destination file, replaced if it exists.
+     * @param progressListener Listener to be notified with bytes copied, can be NULL.
+     * @return Number of bytes copied.
+     * @throws IOException If content couldn't be copied.
+     */
+    public static long stageAttachment(final Context context, final Uri uri, final File destinationFile,
+                                       final ProgressListener progressListener) throws IOException {
+        return AttachmentStager.stage(new ContentResolverAttachmentSource(context, uri), destinationFile, progressListener);
     }
 
     /**
@@ -121,83 +205,383 @@ public class AttachmentUtil {
      * @return Display file size.
      */
     public static String getDisplayFileSize(final long fileSizeInBytes) {
-        String displayFileSize;
-        if (fileSizeInBytes >= 1048576) {// 1MB
-            displayFileSize = (fileSizeInBytes / 1048576) + " MB";
-        } else if (fileSizeInBytes >= 1024) {// 1KB
-            displayFileSize = (fileSizeInBytes / 1024) + " KB";
-        } else {
-            displayFileSize = fileSizeInBytes + " B";
-        }
-        return displayFileSize;
+        return FileDetailUtil.getDisplayFileSize(fileSizeInBytes);
+    }
+
+    /**
+     * Used to create thumbnail for the given URI.
+     * <p>
+     * 1. Try the thumbnail embedded in JPEG EXIF, reading only the EXIF segment - If it is at least as large as thumbnail size, use it.
+     * 2. Else convert the given URI to bitmap (Reading only its bounds, from the same stream).
+     * 3. Calculate ratio (depending on thumbnail size) on how much we need to subSample the original bitmap.
+     * 4. Create thumbnail bitmap depending on the ration from URI.
+     * 5. Rotate thumbnail as per EXIF orientation.
+     * 6. Reference - http://stackoverflow.com/questions/3879992/how-to-get-bitmap-from-an-uri
+     * <p>
+     * Note.
+     * 1. Make sure to call this method in separate thread because "Getting uri content" may take long time for cloud file (likke Drive files).
+     * 2. Decoding stops if the calling thread is interrupted (Like when its deadline expires).
+     *
+     * @param context           Context.
+     * @param uri               URI to the file.
+     * @param thumbnailSizeInDp Thumbnail size required in DP.
+     * @return Thumbnail bitmap created for the given URI.
+     * @throws IOException
+     */
+    public static Bitmap createThumbnail(final Context context, Uri uri, final int thumbnailSizeInDp) throws IOException {
+        return createThumbnail(context, uri, thumbnailSizeInDp, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Used to create thumbnail for the given URI, decoded with the given config.
+     * <p>
+     * Note.
+     * 1. RGB_565 takes half the memory of ARGB_8888 but drops transparency, hence used only under memory pressure
+     * (See {@link AttachmentMemoryGovernor}).
+     *
+     * @param context           Context.
+     * @param uri               URI to the file.
+     * @param thumbnailSizeInDp Thumbnail size required in DP.
+     * @param bitmapConfig      Preferred bitmap config.
+     * @return Thumbnail bitmap created for the given URI.
+     * @throws IOException
+     */
+    public static Bitmap createThumbnail(final Context context, Uri uri, final int thumbnailSizeInDp, final Bitmap.Config bitmapConfig)
+            throws IOException {
+        return createThumbnail(context, uri, thumbnailSizeInDp, bitmapConfig, AttachmentProbeResult.UNKNOWN_DIMENSION,
+                AttachmentProbeResult.UNKNOWN_DIMENSION);
     }
 
     /**
-     * Gets the extension of a filename.
+     * Used to create thumbnail for the given URI, whose image dimensions may already be known (Like from
+     * {@link #probeAttachmentFromUri}).
+     * <p>
+     * 1. If dimensions are known, bounds are not read & thumbnail is decoded from the same stream EXIF was read from - Content is
+     * opened only once.
      *
-     * @param fileName The filename to retrieve the extension of.
-     * @return The extension of the file or an empty string if none exists.
+     * @param context           Context.
+     * @param uri               URI to the file.
+     * @param thumbnailSizeInDp Thumbnail size required in DP.
+     * @param bitmapConfig      Preferred bitmap config.
+     * @param imageWidth        Image width or {@link AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @param imageHeight       Image height or {@link AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @return Thumbnail bitmap created for the given URI.
+     * @throws IOException
      */
-    private static String getFileExtension(final String fileName) {
-        String fileExtension = "";
-        if (fileName != null) {
-            int lastIndexOfExtension = fileName.lastIndexOf('.');
-            int lastIndexOfSeparator = fileName.lastIndexOf('/');
-            int index = lastIndexOfSeparator > lastIndexOfExtension ? -1 : lastIndexOfExtension; // We can't have separator ('/') after extension '.'.
-            if (index != -1) {
-                fileExtension = fileName.substring(index + 1);
+    public static Bitmap createThumbnail(final Context context, Uri uri, final int thumbnailSizeInDp, final Bitmap.Config bitmapConfig,
+                                         final int imageWidth, final int imageHeight) throws IOException {
+
+        float thumbnailSizeInPx = convertDpToPixel(thumbnailSizeInDp, context);
+
+        // 1. Try EXIF thumbnail.
+        InputStream input = new BufferedInputStream(openInterruptibleInputStream(context, uri));
+        try {
+            input.mark(ExifThumbnailReader.MAX_HEADER_SIZE);
+            ExifThumbnail exifThumbnail = ExifThumbnailReader.read(input);
+            int orientation = exifThumbnail != null ? exifThumbnail.getOrientation() : ExifThumbnail.ORIENTATION_NORMAL;
+            if (exifThumbnail != null && exifThumbnail.hasThumbnail()) {
+                byte[] thumbnailBytes = exifThumbnail.getThumbnailBytes();
+                BitmapFactory.Options exifThumbnailOptions = new BitmapFactory.Options();
+                exifThumbnailOptions.inPreferredConfig = bitmapConfig;
+                Bitmap exifThumbnailBitmap = BitmapFactory.decodeByteArray(thumbnailBytes, 0, thumbnailBytes.length, exifThumbnailOptions);
+                if (exifThumbnailBitmap != null
+                        && Math.max(exifThumbnailBitmap.getWidth(), exifThumbnailBitmap.getHeight()) >= thumbnailSizeInPx) {
+                    return applyExifOrientation(exifThumbnailBitmap, orientation);
+                }
+            }
+
+            // 2. Convert the given URI to bitmap, unless its bounds are already known.
+            input.reset();
+            int originalWidth = imageWidth;
+            int originalHeight = imageHeight;
+            boolean isBoundsKnown = imageWidth > 0 && imageHeight > 0;
+            if (!isBoundsKnown) {
+                BitmapFactory.Options onlyBoundsOptions = new BitmapFactory.Options();
+                onlyBoundsOptions.inJustDecodeBounds = true;
+                onlyBoundsOptions.inDither = true;//optional
+                onlyBoundsOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;//optional
+                BitmapFactory.decodeStream(input, null, onlyBoundsOptions);
+                if ((onlyBoundsOptions.outWidth == -1) || (onlyBoundsOptions.outHeight == -1)) {
+                    return null;
+                }
+                originalWidth = onlyBoundsOptions.outWidth;
+                originalHeight = onlyBoundsOptions.outHeight;
             }
+
+            // 3. Calculate ratio.
+            int originalSize = (originalHeight > originalWidth) ? originalHeight : originalWidth;
+            double ratio = (originalSize > thumbnailSizeInPx) ? (originalSize / thumbnailSizeInPx) : 1.0;
+
+            // 4. Create thumbnail bitmap - From the same stream if bounds were known.
+            BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+            bitmapOptions.inSampleSize = getPowerOfTwoForSampleRatio(ratio);
+            bitmapOptions.inDither = true;//optional
+            bitmapOptions.inPreferredConfig = bitmapConfig;
+            if (!isBoundsKnown) {
+                input.close();
+                input = openInterruptibleInputStream(context, uri);
+            }
+            Bitmap bitmap = BitmapFactory.decodeStream(input, null, bitmapOptions);
+
+            // 5. Rotate thumbnail.
+            return bitmap != null ? applyExifOrientation(bitmap, orientation) : null;
+        } finally {
+            input.close();
         }
-        return fileExtension;
     }
 
     /**
-     * Used to create thumbnail for the given URI.
+     * Used to create coarse thumbnail for the given URI, to be shown until {@link #createThumbnail} is done.
      * <p>
-     * 1. Convert the given URI to bitmap.
-     * 2. Calculate ratio (depending on thumbnail size) on how much we need to subSample the original bitmap.
-     * 3. Create thumbnail bitmap depending on the ration from URI.
-     * 4. Reference - http://stackoverflow.com/questions/3879992/how-to-get-bitmap-from-an-uri
+     * 1. Use the thumbnail embedded in JPEG EXIF whatever its size, reading only the EXIF segment.
+     * 2. Else read bounds (Unless known) & decode with {@link #PREVIEW_SAMPLE_FACTOR} times the thumbnail's sample size.
+     * 3. Rotate preview as per EXIF orientation.
      * <p>
      * Note.
-     * 1. Make sure to call this method in separate thread because "Getting uri content" may take long time for cloud file (likke Drive files).
+     * 1. Make sure to call this method in separate thread, it reads the uri content like {@link #createThumbnail}.
+     * 2. Returns NULL if preview wouldn't be noticeably faster than the thumbnail itself (Image is not larger than thumbnail),
+     * caller then just waits for the thumbnail.
      *
      * @param context           Context.
      * @param uri               URI to the file.
      * @param thumbnailSizeInDp Thumbnail size required in DP.
-     * @return Thumbnail bitmap created for the given URI.
+     * @param bitmapConfig      Preferred bitmap config.
+     * @param imageWidth        Image width or {@link AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @param imageHeight       Image height or {@link AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @return Preview bitmap, NULL if there is no preview.
      * @throws IOException
      */
-    public static Bitmap createThumbnail(final Context context, Uri uri, final int thumbnailSizeInDp) throws IOException {
-
+    public static Bitmap createPreviewThumbnail(final Context context, final Uri uri, final int thumbnailSizeInDp,
+                                                final Bitmap.Config bitmapConfig, final int imageWidth, final int imageHeight)
+            throws IOException {
         float thumbnailSizeInPx = convertDpToPixel(thumbnailSizeInDp, context);
 
-        // 1. Convert the given URI to bitmap.
-        InputStream input = context.getContentResolver().openInputStream(uri);
-        BitmapFactory.Options onlyBoundsOptions = new BitmapFactory.Options();
-        onlyBoundsOptions.inJustDecodeBounds = true;
-        onlyBoundsOptions.inDither = true;//optional
-        onlyBoundsOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;//optional
-        BitmapFactory.decodeStream(input, null, onlyBoundsOptions);
-        input.close();
-        if ((onlyBoundsOptions.outWidth == -1) || (onlyBoundsOptions.outHeight == -1)) {
-            return null;
+        // 1. Try EXIF thumbnail.
+        InputStream input = new BufferedInputStream(openInterruptibleInputStream(context, uri));
+        try {
+            input.mark(ExifThumbnailReader.MAX_HEADER_SIZE);
+            ExifThumbnail exifThumbnail = ExifThumbnailReader.read(input);
+            int orientation = exifThumbnail != null ? exifThumbnail.getOrientation() : ExifThumbnail.ORIENTATION_NORMAL;
+            if (exifThumbnail != null && exifThumbnail.hasThumbnail()) {
+                byte[] thumbnailBytes = exifThumbnail.getThumbnailBytes();
+                BitmapFactory.Options exifThumbnailOptions = new BitmapFactory.Options();
+                exifThumbnailOptions.inPreferredConfig = bitmapConfig;
+                Bitmap exifThumbnailBitmap = BitmapFactory.decodeByteArray(thumbnailBytes, 0, thumbnailBytes.length, exifThumbnailOptions);
+                if (exifThumbnailBitmap != null) {
+                    return applyExifOrientation(exifThumbnailBitmap, orientation);
+                }
+            }
+
+            // 2. Read bounds, from the same stream - Unless they are already known.
+            input.reset();
+            boolean isBoundsKnown = imageWidth > 0 && imageHeight > 0;
+            int originalSize = Math.max(imageWidth, imageHeight);
+            if (!isBoundsKnown) {
+                BitmapFactory.Options onlyBoundsOptions = new BitmapFactory.Options();
+                onlyBoundsOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeStream(input, null, onlyBoundsOptions);
+                originalSize = Math.max(onlyBoundsOptions.outWidth, onlyBoundsOptions.outHeight);
+            }
+            if (originalSize <= thumbnailSizeInPx) {
+                return null;
+            }
+
+            // 3. Decode coarse bitmap - From the same stream if bounds were known.
+            BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+            bitmapOptions.inSampleSize = getPowerOfTwoForSampleRatio(originalSize / thumbnailSizeInPx) * PREVIEW_SAMPLE_FACTOR;
+            bitmapOptions.inPreferredConfig = bitmapConfig;
+            if (!isBoundsKnown) {
+                input.close();
+                input = openInterruptibleInputStream(context, uri);
+            }
+            Bitmap bitmap = BitmapFactory.decodeStream(input, null, bitmapOptions);
+
+            // 4. Rotate preview.
+            return bitmap != null ? applyExifOrientation(bitmap, orientation) : null;
+        } finally {
+            input.close();
         }
+    }
+
+    /**
+     * Used to create thumbnails of several sizes for the given URI, from a single decode.
+     * <p>
+     * 1. Image is decoded once for the largest size (See {@link #createThumbnail(Context, Uri, int, Bitmap.Config, int, int)}), each
+     * smaller level is then downscaled from the level above it.
+     *
+     * @param context            Context.
+     * @param uri                URI to the file.
+     * @param thumbnailSizesInDp Thumbnail sizes required in DP, largest first.
+     * @param bitmapConfig       Preferred bitmap config.
+     * @param imageWidth         Image width or {@link AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @param imageHeight        Image height or {@link AttachmentProbeResult#UNKNOWN_DIMENSION}.
+     * @return Thumbnail chain, NULL if image couldn't be decoded.
+     * @throws IOException
+     */
+    public static ThumbnailChain createThumbnailChain(final Context context, final Uri uri, final int[] thumbnailSizesInDp,
+                                                      final Bitmap.Config bitmapConfig, final int imageWidth, final int imageHeight)
+            throws IOException {
+        Bitmap thumbnail = createThumbnail(context, uri, thumbnailSizesInDp[0], bitmapConfig, imageWidth, imageHeight);
+        return thumbnail != null ? createThumbnailChain(context, thumbnail, thumbnailSizesInDp) : null;
+    }
 
-        // 2. Calculate ratio.
-        int originalSize = (onlyBoundsOptions.outHeight > onlyBoundsOptions.outWidth) ? onlyBoundsOptions.outHeight : onlyBoundsOptions.outWidth;
-        double ratio = (originalSize > thumbnailSizeInPx) ? (originalSize / thumbnailSizeInPx) : 1.0;
+    /**
+     * Used to create thumbnails of several sizes from an already decoded thumbnail (Like a preview large enough to be the thumbnail).
+     * <p>
+     * 1. Levels are never upscaled, sizes larger than the thumbnail share one level - The thumbnail itself, or its downscale if
+     * it is larger than the largest size (Sub sampled decode may be up to twice the size).
+     *
+     * @param context            Context.
+     * @param thumbnail          Thumbnail, oriented - Kept as is, levels are new bitmaps.
+     * @param thumbnailSizesInDp Thumbnail sizes required in DP, largest first.
+     * @return Thumbnail chain.
+     */
+    public static ThumbnailChain createThumbnailChain(final Context context, final Bitmap thumbnail, final int[] thumbnailSizesInDp) {
+        ThumbnailChain thumbnailChain = new ThumbnailChain();
+        Bitmap level = thumbnail;
+        for (int thumbnailSizeInDp : thumbnailSizesInDp) {
+            float thumbnailSizeInPx = convertDpToPixel(thumbnailSizeInDp, context);
+            int levelSize = Math.max(level.getWidth(), level.getHeight());
+            if (levelSize > thumbnailSizeInPx) {
+                // Downscale from the level above, filtered - Each step at most halves in practice, hence no aliasing.
+                float scale = thumbnailSizeInPx / levelSize;
+                level = Bitmap.createScaledBitmap(level, Math.max(1, Math.round(level.getWidth() * scale)),
+                        Math.max(1, Math.round(level.getHeight() * scale)), true);
+                thumbnailChain.addLevel(level);
+            } else if (thumbnailChain.getLevels().isEmpty()) {
+                thumbnailChain.addLevel(level);
+            }
+        }
+        return thumbnailChain;
+    }
 
-        // 3. Create thumbnail bitmap.
-        BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
-        bitmapOptions.inSampleSize = getPowerOfTwoForSampleRatio(ratio);
-        bitmapOptions.inDither = true;//optional
-        bitmapOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;//optional
-        input = context.getContentResolver().openInputStream(uri);
-        Bitmap bitmap = BitmapFactory.decodeStream(input, null, bitmapOptions);
-        input.close();
+    /**
+     * Used to check if a (preview) thumbnail is large enough to be used as thumbnail, so that thumbnail needn't be created.
+     *
+     * @param context           Context.
+     * @param thumbnail         Thumbnail.
+     * @param thumbnailSizeInDp Thumbnail size required in DP.
+     * @return TRUE if thumbnail is at least thumbnail size.
+     */
+    public static boolean isThumbnailComplete(final Context context, final Bitmap thumbnail, final int thumbnailSizeInDp) {
+        return thumbnail != null && Math.max(thumbnail.getWidth(), thumbnail.getHeight()) >= convertDpToPixel(thumbnailSizeInDp, context);
+    }
 
-        return bitmap;
+    /**
+     * Used to get perceptual hash (See {@link PerceptualHash}) of an already decoded thumbnail - No content is read.
+     *
+     * @param thumbnail Thumbnail.
+     * @return Perceptual hash.
+     */
+    public static long computePerceptualHash(final Bitmap thumbnail) {
+        int width = thumbnail.getWidth();
+        int height = thumbnail.getHeight();
+        int[] pixels = new int[width * height];
+        thumbnail.getPixels(pixels, 0, width, 0, 0, width, height);
+        return PerceptualHash.compute(pixels, width, height);
+    }
+
+    /**
+     * Used to inspect a ZIP attachment (See {@link ZipInspector}) - Reading only its central directory if uri gives a seekable file
+     * descriptor, else scanning it as a stream.
+     * <p>
+     * 1. Reads the content, hence make sure to call this method in separate thread.
+     *
+     * @param context Context.
+     * @param uri     Uri of the archive.
+     * @return Zip inspection.
+     * @throws ZipException If content is not a ZIP archive.
+     * @throws IOException  If uri couldn't be read.
+     */
+    public static ZipInspection inspectZipArchive(final Context context, final Uri uri) throws IOException {
+        ParcelFileDescriptor parcelFileDescriptor = null;
+        try {
+            parcelFileDescriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+        } catch (FileNotFoundException fileNotFoundException) {
+            // Provider serves only streams.
+        }
+        if (parcelFileDescriptor != null) {
+            try {
+                // Stat size is known only for regular files - Pipes & sockets can't seek.
+                if (parcelFileDescriptor.getStatSize() >= 0) {
+                    FileChannel fileChannel = new FileInputStream(parcelFileDescriptor.getFileDescriptor()).getChannel();
+                    return ZipInspector.inspect(fileChannel);
+                }
+            } catch (ZipException zipException) {
+                // No central directory (Like a truncated download) - Local headers may still be there.
+            } finally {
+                parcelFileDescriptor.close();
+            }
+        }
+
+        InputStream inputStream = context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+        try {
+            return ZipInspector.inspect(new BufferedInputStream(inputStream));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Used to open content of the uri, reads of which stop once the calling thread is interrupted (Like by a stage deadline).
+     *
+     * @param context Context.
+     * @param uri     Uri.
+     * @return Input stream, caller must close it.
+     * @throws FileNotFoundException If provider has no content for the uri (Including when it returns NULL).
+     */
+    private static InputStream openInterruptibleInputStream(final Context context, final Uri uri) throws FileNotFoundException {
+        InputStream inputStream = context.getContentResolver().openInputStream(uri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+        return new InterruptibleInputStream(inputStream);
+    }
+
+    /**
+     * Used to rotate / flip bitmap as per EXIF orientation.
+     *
+     * @param bitmap      Bitmap as stored in file.
+     * @param orientation EXIF orientation.
+     * @return Bitmap as it should be shown, same bitmap if orientation is normal.
+     */
+    private static Bitmap applyExifOrientation(final Bitmap bitmap, final int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifThumbnail.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifThumbnail.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifThumbnail.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifThumbnail.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifThumbnail.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifThumbnail.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifThumbnail.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        Bitmap orientedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (orientedBitmap != bitmap) {
+            bitmap.recycle();
+        }
+        return orientedBitmap;
     }
 
     /**
@@ -206,7 +590,7 @@ public class AttachmentUtil {
      * @param ratio Ratio to be rounded of to power of two.
      * @return Ratio rounded of to nearest power of two.
      */
-    private static int getPowerOfTwoForSampleRatio(final double ratio) {
+    static int getPowerOfTwoForSampleRatio(final double ratio) {
         int k = Integer.highestOneBit((int) Math.floor(ratio));
         if (k == 0) return 1;
         else return k;
@@ -219,10 +603,40 @@ public class AttachmentUtil {
      * @param context Context to get resources and device specific display metrics
      * @return A float value to represent px equivalent to dp depending on device density
      */
-    private static float convertDpToPixel(float dp, Context context) {
+    static float convertDpToPixel(float dp, Context context) {
         Resources resources = context.getResources();
         DisplayMetrics metrics = resources.getDisplayMetrics();
         float px = dp * ((float) metrics.densityDpi / DisplayMetrics.DENSITY_DEFAULT);
         return px;
     }
+
+    /**
+     * Input stream which fails the read once the reading thread is interrupted.
+     * <p>
+     * 1. BitmapFactory doesn't check for interruption, hence we wrap the stream so that decoding of a slow uri can be abandoned.
+     */
+    private static class InterruptibleInputStream extends FilterInputStream {
+
+        InterruptibleInputStream(final InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkInterrupted();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkInterrupted();
+            return super.read(buffer, offset, count);
+        }
+
+        private void checkInterrupted() throws InterruptedIOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while reading attachment content");
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.vasanth.attachfile.attachment.util;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
 import android.content.ClipData;
@@ -20,6 +21,8 @@ import java.util.List;
  * 2. Methods.
  * 2.a. attachFile - Used to attach file.
  * 2.b. processAttachFileResult - Used to process Attach File Result.
+ * 2.c. attachFolder - Used to attach all files of a folder (API 21), result is the folder's tree uri (See {@link FolderAttachmentWalker}).
+ * 2.d. releasePersistableAccess - Used to release persistable permission of an attached uri.
  * <p>
  * 3. Result.
  * 3.a. We will send result (User selected files uri) through Callback.
@@ -31,10 +34,13 @@ import java.util.List;
  * 4.c. Beware of Security Exception - We will get the user attached file as a Uri, we will only hold temporary permission to read content from the Uri,
  * The permission will be expired once the activity is destroyed, hence we can't read the content from uri (Hence consume this uri with in this activity &
  * don't pass it around to other activity).
+ * 4.d. Persistable Access (Opt-in, from API 19) - Files are picked with ACTION_OPEN_DOCUMENT & we take persistable permission for them,
+ * which survives activity & process death, hence uri's can be kept in a draft & read after restart (See {@link AttachmentDraftStore}).
  * <p>
  * 5. Reference
  * 5.a. https://developer.android.com/guide/topics/providers/document-provider.html
  * 5.b. https://developer.android.com/reference/android/content/Intent.html#ACTION_GET_CONTENT
+ * 5.c. https://developer.android.com/guide/topics/providers/document-provider.html#permissions
  *
  * @author Vasanth
  */
@@ -46,6 +52,9 @@ public class FileAttachmentUtil {
     // Pass the result here to process it.
     public static final int ATTACH_FILE_REQUEST_CODE = 202;
 
+    // Request code - Used to fire a intent to pick folder for attachment, pass its result to "processAttachFileResult" as well.
+    public static final int ATTACH_FOLDER_REQUEST_CODE = 203;
+
     // This error code will be returned - If there is no external application to choose attachment from.
     public static final int ATTACH_FILE_ERROR_CODE_NO_ATTACHMENT_APPLICATION = 1001;
 
@@ -57,6 +66,7 @@ public class FileAttachmentUtil {
 
     private Activity activity;
     private FileAttachmentCallback fileAttachmentCallback;
+    private boolean isPersistableAccessRequested;
 
     /**
      * File Attachment Callback.
@@ -70,6 +80,13 @@ public class FileAttachmentUtil {
          */
         void onFileAttachmentSuccess(List<Uri> attachedFileUris);
 
+        /**
+         * Called on success of folder attachment.
+         *
+         * @param attachedFolderTreeUri Tree uri of the user attached folder, its files can be found through {@link FolderAttachmentWalker}.
+         */
+        void onFolderAttachmentSuccess(Uri attachedFolderTreeUri);
+
         /**
          * Called on failure of file attachment.
          *
@@ -86,8 +103,30 @@ public class FileAttachmentUtil {
      * @param fileAttachmentCallback File Attachment callback.
      */
     public FileAttachmentUtil(final Activity activity, final FileAttachmentCallback fileAttachmentCallback) {
+        this(activity, fileAttachmentCallback, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param activity                     Activity.
+     * @param fileAttachmentCallback       File Attachment callback.
+     * @param isPersistableAccessRequested TRUE to hold permission of attached files across restarts, where supported (API 19).
+     */
+    public FileAttachmentUtil(final Activity activity, final FileAttachmentCallback fileAttachmentCallback,
+                              final boolean isPersistableAccessRequested) {
         this.activity = activity;
         this.fileAttachmentCallback = fileAttachmentCallback;
+        this.isPersistableAccessRequested = isPersistableAccessRequested;
+    }
+
+    /**
+     * Used to know if attached files are accessible across restarts.
+     *
+     * @return TRUE if persistable access was requested & is supported by this device.
+     */
+    public boolean isPersistableAccess() {
+        return isPersistableAccessRequested && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
     }
 
     /**
@@ -98,6 +137,10 @@ public class FileAttachmentUtil {
      * @param attachFileChooserTitle Title used to set on Attachment file chooser dialog.
      */
     public void attachFile(final String attachFileChooserTitle) {
+        if (isPersistableAccess()) {
+            attachDocument();
+            return;
+        }
         Intent attachIntent = new Intent(Intent.ACTION_GET_CONTENT);
         attachIntent.addCategory(Intent.CATEGORY_OPENABLE);
         attachIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
@@ -114,6 +157,36 @@ public class FileAttachmentUtil {
         }
     }
 
+    /**
+     * Used to know if folders can be attached on this device.
+     *
+     * @return TRUE from API 21.
+     */
+    public static boolean isFolderAttachmentSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * Used to attach folder.
+     * <p>
+     * 1. Launch system picker to allow user to select a folder, we get read permission for the folder & everything under it.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public void attachFolder() {
+        if (!isFolderAttachmentSupported()) {
+            sendFileAttachmentFailureCallback(ATTACH_FILE_ERROR_CODE_NO_ATTACHMENT_APPLICATION);
+            return;
+        }
+        Intent attachIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        attachIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+        try {
+            activity.startActivityForResult(attachIntent, ATTACH_FOLDER_REQUEST_CODE);
+        } catch (ActivityNotFoundException activityNotFoundException) {
+            Log.i(TAG, activityNotFoundException.getMessage());
+            sendFileAttachmentFailureCallback(ATTACH_FILE_ERROR_CODE_NO_ATTACHMENT_APPLICATION);
+        }
+    }
+
     /**
      * Used to process Attach File Result.
      * <p>
@@ -160,23 +233,107 @@ public class FileAttachmentUtil {
                             attachedFileUris.add(attachedFileUri);
                         }
                     }
+                    if (isPersistableAccess()) {
+                        takePersistableUriPermissions(attachedFileUris, data.getFlags());
+                    }
                     sendFileAttachmentSuccessCallback(attachedFileUris);
                 }
             } else {
                 sendFileAttachmentFailureCallback(ATTACH_FILE_ERROR_CODE_CANCELLED);
             }
+        } else if (requestCode == ATTACH_FOLDER_REQUEST_CODE) {
+            if (resultCode == Activity.RESULT_OK) {
+                Uri attachedFolderTreeUri = data != null ? data.getData() : null;
+                if (attachedFolderTreeUri != null) {
+                    if (isPersistableAccess()) {
+                        List<Uri> attachedFolderTreeUris = new ArrayList<>();
+                        attachedFolderTreeUris.add(attachedFolderTreeUri);
+                        takePersistableUriPermissions(attachedFolderTreeUris, data.getFlags());
+                    }
+                    sendFolderAttachmentSuccessCallback(attachedFolderTreeUri);
+                } else {
+                    sendFileAttachmentFailureCallback(ATTACH_FILE_ERROR_CODE_FAILED);
+                }
+            } else {
+                sendFileAttachmentFailureCallback(ATTACH_FILE_ERROR_CODE_CANCELLED);
+            }
+        }
+    }
+
+    /**
+     * Used to release persistable permission of an uri, once it is not needed anymore (Like attachment removed from draft).
+     * <p>
+     * 1. Number of persisted permissions per application is limited, hence release them as soon as they are not needed.
+     *
+     * @param attachedFileUri Attached file uri.
+     */
+    public void releasePersistableAccess(final Uri attachedFileUri) {
+        if (isPersistableAccess()) {
+            releasePersistableUriPermission(attachedFileUri);
         }
     }
 
     /**
      * Helper Methods.
      */
+    /**
+     * Used to pick files through system document picker, its uri's support persistable permission.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void attachDocument() {
+        Intent attachIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        attachIntent.addCategory(Intent.CATEGORY_OPENABLE);
+        attachIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+        attachIntent.setType("*/*");
+        attachIntent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        try {
+            activity.startActivityForResult(attachIntent, ATTACH_FILE_REQUEST_CODE);
+        } catch (ActivityNotFoundException activityNotFoundException) {
+            Log.i(TAG, activityNotFoundException.getMessage());
+            sendFileAttachmentFailureCallback(ATTACH_FILE_ERROR_CODE_NO_ATTACHMENT_APPLICATION);
+        }
+    }
+
+    /**
+     * Used to take persistable read permission for the attached uri's.
+     * <p>
+     * 1. Uri's whose provider doesn't grant persistable permission are still attached, they are just not readable after restart.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void takePersistableUriPermissions(final List<Uri> attachedFileUris, final int grantFlags) {
+        if ((grantFlags & Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION) == 0) {
+            return;
+        }
+        for (Uri attachedFileUri : attachedFileUris) {
+            try {
+                activity.getContentResolver().takePersistableUriPermission(attachedFileUri, grantFlags & Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException securityException) {
+                Log.i(TAG, "Persistable permission not granted for " + attachedFileUri);
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void releasePersistableUriPermission(final Uri attachedFileUri) {
+        try {
+            activity.getContentResolver().releasePersistableUriPermission(attachedFileUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException securityException) {
+            Log.i(TAG, "Persistable permission not held for " + attachedFileUri);
+        }
+    }
+
     private void sendFileAttachmentSuccessCallback(final List<Uri> attachedFileUris) {
         if (fileAttachmentCallback != null) {
             fileAttachmentCallback.onFileAttachmentSuccess(attachedFileUris);
         }
     }
 
+    private void sendFolderAttachmentSuccessCallback(final Uri attachedFolderTreeUri) {
+        if (fileAttachmentCallback != null) {
+            fileAttachmentCallback.onFolderAttachmentSuccess(attachedFolderTreeUri);
+        }
+    }
+
     private void sendFileAttachmentFailureCallback(final int errorCode) {
         if (fileAttachmentCallback != null) {
             fileAttachmentCallback.onFileAttachmentFailure(errorCode);
@@ -0,0 +1,137 @@
+package com.vasanth.attachfile.attachment.util;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.vasanth.attachfile.attachment.model.AttachmentFileDetail;
+import com.vasanth.attachfile.attachment.model.DocumentTreeNode;
+import com.vasanth.attachfile.attachment.source.DocumentTreeSource;
+import com.vasanth.attachfile.core.walk.ParallelTreeWalker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folder Attachment Walker.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to find all files of an attached folder (Document tree uri), listing its sub folders in parallel.
+ * 1.b. Files are streamed to the listener folder by folder as they are found, so that they can be shown before the walk finishes.
+ * <p>
+ * 2. Methods.
+ * 2.a. walk - Used to start walking the folder.
+ * 2.b. cancel - Used to stop walking.
+ * <p>
+ * 3. Output.
+ * 3.a. FolderAttachmentListener - Gets called on main thread.
+ * <p>
+ * 4. Note.
+ * 4.a. Requires API 21.
+ *
+ * @author Vasanth
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class FolderAttachmentWalker {
+
+    private static final String TAG = "FolderAttachmentWalker";
+
+    private DocumentTreeSource documentTreeSource;
+    private ParallelTreeWalker<DocumentTreeNode> parallelTreeWalker;
+    private FolderAttachmentListener folderAttachmentListener;
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Folder Attachment Listener.
+     */
+    public interface FolderAttachmentListener {
+
+        /**
+         * Gets called with the files found in a folder, their details are already resolved.
+         *
+         * @param attachmentFileDetails Attachment file details.
+         */
+        void onFolderAttachmentsFound(final List<AttachmentFileDetail> attachmentFileDetails);
+
+        /**
+         * Gets called once walk is finished.
+         *
+         * @param walkSummary Summary, tells if walk was stopped by a limit.
+         */
+        void onFolderWalkFinished(final ParallelTreeWalker.WalkSummary walkSummary);
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context                  Context.
+     * @param treeUri                  Tree uri of the attached folder.
+     * @param parallelism              Max number of folders listed in parallel.
+     * @param maxDepth                 Max depth of sub folders, or {@link ParallelTreeWalker#NO_LIMIT}.
+     * @param maxFileCount             Max number of files, or {@link ParallelTreeWalker#NO_LIMIT}.
+     * @param maxTotalSize             Max total size of files, or {@link ParallelTreeWalker#NO_LIMIT}.
+     * @param folderAttachmentListener Listener.
+     */
+    public FolderAttachmentWalker(final Context context, final Uri treeUri, final int parallelism, final int maxDepth, final long maxFileCount,
+                                  final long maxTotalSize, final FolderAttachmentListener folderAttachmentListener) {
+        this.documentTreeSource = new DocumentTreeSource(context.getApplicationContext(), treeUri);
+        this.folderAttachmentListener = folderAttachmentListener;
+        this.parallelTreeWalker = new ParallelTreeWalker<>(documentTreeSource, parallelism, maxDepth, maxFileCount, maxTotalSize,
+                new WalkListener());
+    }
+
+    /**
+     * Used to start walking the folder, returns immediately.
+     */
+    public void walk() {
+        parallelTreeWalker.walk(documentTreeSource.getRootDirectory());
+    }
+
+    /**
+     * Used to stop walking.
+     */
+    public void cancel() {
+        parallelTreeWalker.cancel();
+    }
+
+    /**
+     * Walk listener - Converts nodes to attachment file details & forwards them to main thread.
+     */
+    private class WalkListener implements ParallelTreeWalker.Listener<DocumentTreeNode> {
+
+        @Override
+        public void onFilesFound(final List<DocumentTreeNode> files) {
+            final List<AttachmentFileDetail> attachmentFileDetails = new ArrayList<>();
+            for (DocumentTreeNode file : files) {
+                attachmentFileDetails.add(file.getAttachmentFileDetail());
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    folderAttachmentListener.onFolderAttachmentsFound(attachmentFileDetails);
+                }
+            });
+        }
+
+        @Override
+        public void onDirectoryFailed(final DocumentTreeNode directory, final IOException exception) {
+            Log.i(TAG, "Unable to list folder " + directory.getAttachmentFileDetail().getUri() + " - " + exception.getMessage());
+        }
+
+        @Override
+        public void onWalkFinished(final ParallelTreeWalker.WalkSummary walkSummary) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    folderAttachmentListener.onFolderWalkFinished(walkSummary);
+                }
+            });
+        }
+    }
+}
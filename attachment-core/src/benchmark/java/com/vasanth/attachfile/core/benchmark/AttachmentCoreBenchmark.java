@@ -0,0 +1,509 @@
+package com.vasanth.attachfile.core.benchmark;
+
+import com.vasanth.attachfile.core.archive.ZipInspector;
+import com.vasanth.attachfile.core.dedup.DedupUploader;
+import com.vasanth.attachfile.core.dedup.LocalChunkStore;
+import com.vasanth.attachfile.core.index.AttachmentIndex;
+import com.vasanth.attachfile.core.index.NearDuplicateIndex;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.DedupUploadResult;
+import com.vasanth.attachfile.core.model.ZipInspection;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+import com.vasanth.attachfile.core.util.AttachmentFingerprint;
+import com.vasanth.attachfile.core.util.AttachmentResolver;
+import com.vasanth.attachfile.core.util.AttachmentStager;
+import com.vasanth.attachfile.core.util.EncryptedStager;
+import com.vasanth.attachfile.core.util.ParallelSegmentHasher;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Attachment Core Benchmark.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Measures resolution, size probe, fingerprint & staging throughput of the attachment core on the host JVM.
+ * 1.b. Measures encrypted staging (Sequential & parallel chunks) against plaintext staging & a single stream AES-GCM copy.
+ * 1.c. Measures dedup upload to a local chunk store, of a new file & of an edited copy (EDIT_INSERT_SIZE bytes inserted in the middle).
+ * 1.d. Measures building, sorting & searching an attachment index of INDEX_ATTACHMENT_COUNT attachments.
+ * 1.e. Measures near duplicate lookup among NEAR_DUPLICATE_IMAGE_COUNT perceptual hashes, against a linear scan of them.
+ * 1.f. Measures inspecting a ZIP of ZIP_ENTRY_COUNT entries through its central directory & by stream scan, against listing it with
+ * ZipInputStream (Which inflates every entry).
+ * <p>
+ * 2. Usage.
+ * 2.a. ./gradlew :attachment-core:benchmark -PbenchmarkArgs="<fileSizeMb> <iterations>"
+ *
+ * @author Vasanth
+ */
+public class AttachmentCoreBenchmark {
+
+    private static final int DEFAULT_FILE_SIZE_MB = 64;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int INDEX_ATTACHMENT_COUNT = 5000;
+    private static final int EDIT_INSERT_SIZE = 100;
+    private static final int NEAR_DUPLICATE_IMAGE_COUNT = 10000;
+    private static final int NEAR_DUPLICATE_LOOKUP_COUNT = 1000;
+    private static final int NEAR_DUPLICATE_MAX_DISTANCE = 8;
+    private static final int ZIP_ENTRY_COUNT = 2000;
+    private static final int ZIP_ENTRY_SIZE = 16 * 1024;
+    private static final String[] INDEX_MIME_TYPES = {"image/jpeg", "image/png", "video/mp4", "application/pdf", "text/plain", null};
+
+    public static void main(String[] args) throws Exception {
+        int fileSizeMb = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILE_SIZE_MB;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        Path file = createRandomFile(fileSizeMb);
+        final File stagedFile = new File(file.toString() + ".staged");
+        final SecretKey secretKey = createKey();
+        final ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            final PathAttachmentSource pathSource = new PathAttachmentSource(file);
+            final AttachmentSource streamSource = new StreamOnlyAttachmentSource(pathSource);
+            long fileSize = Files.size(file);
+
+            System.out.println("File size: " + fileSize + " bytes, iterations: " + iterations);
+            run("resolve (metadata)", iterations, 0, new Task() {
+                @Override
+                public void run() throws IOException {
+                    AttachmentResolver.resolve(pathSource, null);
+                }
+            });
+            run("size probe (stream read)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    AttachmentResolver.getContentSize(streamSource, null);
+                }
+            });
+            run("fingerprint (channel)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    AttachmentFingerprint.compute(pathSource, null);
+                }
+            });
+            run("fingerprint (stream)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    AttachmentFingerprint.compute(streamSource, null);
+                }
+            });
+            run("fingerprint (parallel mapped)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    ParallelSegmentHasher.hash(pathSource, ParallelSegmentHasher.getDefaultPool(), null);
+                }
+            });
+            run("stage (mapped)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    AttachmentStager.stage(pathSource, stagedFile, null);
+                }
+            });
+            run("stage (stream)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    AttachmentStager.stage(streamSource, stagedFile, null);
+                }
+            });
+            run("stage (encrypted stream)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    stageWithCipherStream(pathSource, stagedFile, secretKey);
+                }
+            });
+            run("stage (encrypted sequential)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    EncryptedStager.stage(pathSource, stagedFile, secretKey, null, null);
+                }
+            });
+            run("stage (encrypted parallel)", iterations, fileSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    EncryptedStager.stage(pathSource, stagedFile, secretKey, executorService, null);
+                }
+            });
+        } finally {
+            executorService.shutdown();
+            Files.deleteIfExists(file);
+            stagedFile.delete();
+        }
+
+        runDedup(fileSizeMb, iterations);
+        runIndex(iterations);
+        runNearDuplicate(iterations);
+        runZipInspection(iterations);
+    }
+
+    private static void runDedup(final int fileSizeMb, final int iterations) throws IOException {
+        Path file = createRandomFile(fileSizeMb);
+        Path editedFile = createEditedFile(file);
+        final Path storeDirectory = Files.createTempDirectory("attachment-benchmark-store");
+        try {
+            final PathAttachmentSource pathSource = new PathAttachmentSource(file);
+            final PathAttachmentSource editedSource = new PathAttachmentSource(editedFile);
+            final List<DedupUploadResult> dedupUploadResults = new ArrayList<>();
+
+            System.out.println("Dedup file size: " + Files.size(file) + " bytes");
+            run("dedup upload (first)", iterations, Files.size(file), new Task() {
+                @Override
+                public void run() throws IOException {
+                    // Fresh store each time - Nothing to dedup against.
+                    File directory = Files.createTempDirectory(storeDirectory, "first").toFile();
+                    DedupUploader.upload(pathSource, new LocalChunkStore(directory), null);
+                }
+            });
+            final LocalChunkStore localChunkStore = new LocalChunkStore(storeDirectory.toFile());
+            DedupUploader.upload(pathSource, localChunkStore, null);
+            run("dedup upload (edited)", iterations, Files.size(editedFile), new Task() {
+                @Override
+                public void run() throws IOException {
+                    dedupUploadResults.add(DedupUploader.upload(editedSource, localChunkStore, null));
+                }
+            });
+            DedupUploadResult dedupUploadResult = dedupUploadResults.get(0);
+            System.out.println(String.format("dedup edited: %d / %d chunks sent, ratio %.3f, saved %d bytes",
+                    dedupUploadResult.getUploadedChunkCount(), dedupUploadResult.getContentChunks().size(),
+                    dedupUploadResult.getDedupRatio(), dedupUploadResult.getSavedBytes()));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(editedFile);
+            deleteDirectory(storeDirectory.toFile());
+        }
+    }
+
+    private static void runIndex(final int iterations) throws IOException {
+        final List<AttachmentDetail> attachmentDetails = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < INDEX_ATTACHMENT_COUNT; i++) {
+            attachmentDetails.add(new AttachmentDetail("IMG_" + random.nextInt(100000) + "_holiday_" + i + ".jpg",
+                    random.nextInt(50 * 1024 * 1024), INDEX_MIME_TYPES[random.nextInt(INDEX_MIME_TYPES.length)]));
+        }
+        final AttachmentIndex<AttachmentDetail> attachmentIndex = new AttachmentIndex<>();
+        for (AttachmentDetail attachmentDetail : attachmentDetails) {
+            attachmentIndex.add(attachmentDetail, attachmentDetail);
+        }
+
+        System.out.println("Index attachments: " + INDEX_ATTACHMENT_COUNT);
+        run("index build", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                AttachmentIndex<AttachmentDetail> builtIndex = new AttachmentIndex<>();
+                for (AttachmentDetail attachmentDetail : attachmentDetails) {
+                    builtIndex.add(attachmentDetail, attachmentDetail);
+                }
+            }
+        });
+        run("index remove + add", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    AttachmentDetail attachmentDetail = attachmentDetails.get(i * (INDEX_ATTACHMENT_COUNT / 100));
+                    attachmentIndex.remove(attachmentDetail);
+                    attachmentIndex.add(attachmentDetail, attachmentDetail);
+                }
+            }
+        });
+        run("index sort by size", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                attachmentIndex.getSorted(AttachmentIndex.SORT_BY_SIZE, false);
+            }
+        });
+        run("index name prefix", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                attachmentIndex.findByNamePrefix("img_42");
+            }
+        });
+        run("index name substring", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                attachmentIndex.findByName("day_123");
+            }
+        });
+        run("index name substring (scan)", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                attachmentIndex.findByName("_1");
+            }
+        });
+    }
+
+    private static void runNearDuplicate(final int iterations) throws IOException {
+        // Images as bursts of 5 shots of a scene, each shot a few bits off the scene's hash.
+        Random random = new Random(42);
+        final long[] hashes = new long[NEAR_DUPLICATE_IMAGE_COUNT];
+        long sceneHash = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i % 5 == 0) {
+                sceneHash = random.nextLong();
+            }
+            hashes[i] = flipBits(sceneHash, random.nextInt(5), random);
+        }
+        final long[] queries = new long[NEAR_DUPLICATE_LOOKUP_COUNT];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = flipBits(hashes[random.nextInt(hashes.length)], 3, random);
+        }
+        final NearDuplicateIndex<Integer> nearDuplicateIndex = new NearDuplicateIndex<>();
+        for (int i = 0; i < hashes.length; i++) {
+            nearDuplicateIndex.add(hashes[i], i);
+        }
+
+        System.out.println("Near duplicate images: " + NEAR_DUPLICATE_IMAGE_COUNT + ", lookups per iteration: " + NEAR_DUPLICATE_LOOKUP_COUNT);
+        long comparedCount = nearDuplicateIndex.getComparedCount();
+        run("near duplicate lookup (index)", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                for (long query : queries) {
+                    nearDuplicateIndex.find(query, NEAR_DUPLICATE_MAX_DISTANCE);
+                }
+            }
+        });
+        run("near duplicate lookup (scan)", iterations, 0, new Task() {
+            @Override
+            public void run() {
+                for (long query : queries) {
+                    List<Integer> matches = new ArrayList<>();
+                    for (int i = 0; i < hashes.length; i++) {
+                        if (NearDuplicateIndex.distance(hashes[i], query) <= NEAR_DUPLICATE_MAX_DISTANCE) {
+                            matches.add(i);
+                        }
+                    }
+                }
+            }
+        });
+        System.out.println(String.format("near duplicate index: %.0f of %d hashes compared per lookup",
+                (nearDuplicateIndex.getComparedCount() - comparedCount) / (double) ((iterations + 1) * NEAR_DUPLICATE_LOOKUP_COUNT),
+                NEAR_DUPLICATE_IMAGE_COUNT));
+    }
+
+    private static void runZipInspection(final int iterations) throws IOException {
+        // Half the entries text like (Compressible), half random.
+        final Path archive = Files.createTempFile("attachment-benchmark", ".zip");
+        Random random = new Random(42);
+        byte[] bytes = new byte[ZIP_ENTRY_SIZE];
+        ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(archive));
+        try {
+            for (int i = 0; i < ZIP_ENTRY_COUNT; i++) {
+                if (i % 2 == 0) {
+                    random.nextBytes(bytes);
+                } else {
+                    for (int j = 0; j < bytes.length; j++) {
+                        bytes[j] = (byte) ('a' + random.nextInt(8));
+                    }
+                }
+                zipOutputStream.putNextEntry(new ZipEntry("folder" + (i / 100) + "/entry" + i + ".bin"));
+                zipOutputStream.write(bytes);
+                zipOutputStream.closeEntry();
+            }
+        } finally {
+            zipOutputStream.close();
+        }
+
+        try {
+            final long archiveSize = Files.size(archive);
+            System.out.println("Zip entries: " + ZIP_ENTRY_COUNT + ", archive size: " + archiveSize + " bytes");
+            run("zip inspect (central directory)", iterations, 0, new Task() {
+                @Override
+                public void run() throws IOException {
+                    FileChannel fileChannel = FileChannel.open(archive, StandardOpenOption.READ);
+                    try {
+                        ZipInspection zipInspection = ZipInspector.inspect(fileChannel);
+                        ZipInspector.readEntryPage(fileChannel, zipInspection, 0);
+                    } finally {
+                        fileChannel.close();
+                    }
+                }
+            });
+            run("zip inspect (stream scan)", iterations, archiveSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    InputStream inputStream = new BufferedInputStream(Files.newInputStream(archive));
+                    try {
+                        ZipInspector.inspect(inputStream);
+                    } finally {
+                        inputStream.close();
+                    }
+                }
+            });
+            run("zip list (ZipInputStream)", iterations, archiveSize, new Task() {
+                @Override
+                public void run() throws IOException {
+                    ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive)));
+                    try {
+                        byte[] buffer = new byte[64 * 1024];
+                        while (zipInputStream.getNextEntry() != null) {
+                            while (zipInputStream.read(buffer) >= 0) {
+                                // Entry size is known only once it is read through.
+                            }
+                        }
+                    } finally {
+                        zipInputStream.close();
+                    }
+                }
+            });
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static void run(final String name, final int iterations, final long bytesPerIteration, final Task task) throws IOException {
+        // Warm up.
+        task.run();
+
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long startNanos = System.nanoTime();
+            task.run();
+            bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+        }
+        String throughput = bytesPerIteration > 0
+                ? String.format(" (%.1f MB/s)", (bytesPerIteration / 1048576.0) / (bestNanos / 1e9))
+                : "";
+        System.out.println(String.format("%-30s best %8.3f ms%s", name, bestNanos / 1e6, throughput));
+    }
+
+    private static SecretKey createKey() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        return keyGenerator.generateKey();
+    }
+
+    /**
+     * Baseline - Whole content as one AES-GCM message through CipherOutputStream, as an app would encrypt without chunking.
+     */
+    private static void stageWithCipherStream(final AttachmentSource attachmentSource, final File destinationFile,
+                                              final SecretKey secretKey) throws IOException {
+        byte[] nonce = new byte[12];
+        new SecureRandom().nextBytes(nonce);
+        Cipher cipher;
+        try {
+            cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, nonce));
+        } catch (GeneralSecurityException generalSecurityException) {
+            throw new IOException(generalSecurityException);
+        }
+        InputStream inputStream = attachmentSource.openInputStream();
+        OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(destinationFile.toPath()), cipher);
+        try {
+            byte[] bytes = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(bytes)) >= 0) {
+                outputStream.write(bytes, 0, read);
+            }
+        } finally {
+            inputStream.close();
+            outputStream.close();
+        }
+    }
+
+    private static long flipBits(long hash, final int bitCount, final Random random) {
+        for (int i = 0; i < bitCount; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+
+    private static Path createRandomFile(final int fileSizeMb) throws IOException {
+        Path file = Files.createTempFile("attachment-benchmark", ".bin");
+        Random random = new Random(42);
+        byte[] bytes = new byte[1024 * 1024];
+        OutputStream outputStream = Files.newOutputStream(file);
+        try {
+            for (int i = 0; i < fileSizeMb; i++) {
+                random.nextBytes(bytes);
+                outputStream.write(bytes);
+            }
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Used to create a copy of the file with EDIT_INSERT_SIZE bytes inserted in the middle, as if a document was edited.
+     */
+    private static Path createEditedFile(final Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] editedBytes = new byte[bytes.length + EDIT_INSERT_SIZE];
+        int middle = bytes.length / 2;
+        System.arraycopy(bytes, 0, editedBytes, 0, middle);
+        Arrays.fill(editedBytes, middle, middle + EDIT_INSERT_SIZE, (byte) 'x');
+        System.arraycopy(bytes, middle, editedBytes, middle + EDIT_INSERT_SIZE, bytes.length - middle);
+        return Files.write(Files.createTempFile("attachment-benchmark-edited", ".bin"), editedBytes);
+    }
+
+    private static void deleteDirectory(final File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDirectory(file);
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Source which hides its channel, used to measure stream only providers (Like cloud documents).
+     */
+    private static class StreamOnlyAttachmentSource implements AttachmentSource {
+
+        private AttachmentSource attachmentSource;
+
+        StreamOnlyAttachmentSource(final AttachmentSource attachmentSource) {
+            this.attachmentSource = attachmentSource;
+        }
+
+        @Override
+        public String getLocation() {
+            return attachmentSource.getLocation();
+        }
+
+        @Override
+        public AttachmentDetail queryMetadata() throws IOException {
+            return new AttachmentDetail(null, AttachmentDetail.UNKNOWN_SIZE, null);
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            return attachmentSource.openInputStream();
+        }
+
+        @Override
+        public FileChannel openFileChannel() throws IOException {
+            return null;
+        }
+    }
+}
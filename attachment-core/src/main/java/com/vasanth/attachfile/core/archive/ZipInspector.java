@@ -0,0 +1,582 @@
+package com.vasanth.attachfile.core.archive;
+
+import com.vasanth.attachfile.core.model.ZipArchiveEntry;
+import com.vasanth.attachfile.core.model.ZipInspection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Zip Inspector.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to tell what a ZIP attachment holds - Entry count, total size & a paged entry list - Without extracting anything.
+ * 1.b. Flags zip bombs, by compression ratio & by entries sharing the same compressed data.
+ * <p>
+ * 2. Methods.
+ * 2.a. inspect (FileChannel) - Used to inspect a seekable archive, reading only the end of central directory record & the central
+ * directory (A few percent of the archive at most).
+ * 2.b. inspect (InputStream) - Used to inspect an archive which can only be streamed, by scanning its local headers & skipping entry
+ * data - Up to MAX_SCAN_SIZE bytes, keeping the first MAX_SCANNED_ENTRIES entries for paging.
+ * 2.c. readEntryPage - Used to read a page of PAGE_SIZE entries, once inspected.
+ * <p>
+ * 3. Zip Bomb.
+ * 3.a. Archive (Or any entry) which unpacks to at least MIN_BOMB_SIZE bytes & more than MAX_COMPRESSION_RATIO times its compressed
+ * size - Deflate tops out near 1032:1 & real content rarely goes beyond 20:1.
+ * 3.b. Archive whose entries claim more compressed data than there is in front of the central directory - Entries overlap, so the
+ * same compressed data unpacks again & again (Ratio of each entry looks normal).
+ * <p>
+ * 4. Note.
+ * 4.a. Reads the content, hence call it in separate thread.
+ * 4.b. Supports ZIP64 (Archives & entries beyond 4GB or 65535 entries) & archives with data in front (Like self extracting ones).
+ * 4.c. Entry whose sizes are only written after its data (Data descriptor) is inflated into a scratch buffer by stream scan, to find
+ * where it ends - Up to MAX_INFLATE_SIZE bytes, stopping as soon as its ratio is a zip bomb's. Stored ones can't be skipped, scan
+ * stops there & inspection is not complete.
+ * 4.d. Counts, sizes & offsets come from the archive (ZIP64 ones as signed longs), hence are checked without overflowing - A
+ * malformed or malicious archive fails with ZipException, never with an unchecked exception or a huge allocation.
+ *
+ * @author Vasanth
+ */
+public class ZipInspector {
+
+    public static final int PAGE_SIZE = 50;
+    public static final int MAX_COMPRESSION_RATIO = 100;
+    public static final long MIN_BOMB_SIZE = 16 * 1024 * 1024;
+
+    private static final long MAX_SCAN_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_SCANNED_ENTRIES = 1000;
+    private static final long MAX_INFLATE_SIZE = 256 * 1024 * 1024;
+
+    private static final int SIGNATURE_LOCAL_HEADER = 0x04034b50;
+    private static final int SIGNATURE_CENTRAL_DIRECTORY = 0x02014b50;
+    private static final int SIGNATURE_END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int SIGNATURE_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int SIGNATURE_ZIP64_LOCATOR = 0x07064b50;
+    private static final int SIGNATURE_DATA_DESCRIPTOR = 0x08074b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int EXTRA_ZIP64 = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int SKIP_BUFFER_SIZE = 8 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Names without UTF-8 flag are in the DOS code page.
+    private static final Charset LEGACY_CHARSET = Charset.isSupported("IBM437") ? Charset.forName("IBM437") : Charset.forName("ISO-8859-1");
+
+    /**
+     * Used to inspect a seekable archive, through its central directory.
+     *
+     * @param fileChannel Archive, it is read with positional reads & not closed.
+     * @return Zip inspection.
+     * @throws ZipException If archive has no valid central directory (Like a truncated download) - Caller can scan it as a stream.
+     * @throws IOException  If archive couldn't be read.
+     */
+    public static ZipInspection inspect(final FileChannel fileChannel) throws IOException {
+        ChannelWindow window = new ChannelWindow(fileChannel);
+        long archiveSize = fileChannel.size();
+
+        // End of central directory - Last record, followed only by the archive comment.
+        long endPosition = findEndOfCentralDirectory(window, archiveSize);
+        long entryCount = window.getUnsignedShort(endPosition + 10);
+        long centralDirectorySize = window.getUnsignedInt(endPosition + 12);
+        long centralDirectoryOffset = window.getUnsignedInt(endPosition + 16);
+        long centralDirectoryEnd = endPosition;
+        long locatorPosition = endPosition - ZIP64_LOCATOR_SIZE;
+        if (locatorPosition >= 0 && window.getInt(locatorPosition) == SIGNATURE_ZIP64_LOCATOR) {
+            long zip64EndPosition = window.getLong(locatorPosition + 8);
+            if (zip64EndPosition < 0 || zip64EndPosition > locatorPosition - ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE
+                    || window.getInt(zip64EndPosition) != SIGNATURE_ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Invalid ZIP64 end of central directory");
+            }
+            entryCount = window.getLong(zip64EndPosition + 32);
+            centralDirectorySize = window.getLong(zip64EndPosition + 40);
+            centralDirectoryOffset = window.getLong(zip64EndPosition + 48);
+            centralDirectoryEnd = zip64EndPosition;
+        }
+        // ZIP64 values are signed longs read off the archive, hence checked before any arithmetic on them.
+        if (entryCount < 0 || centralDirectorySize < 0 || centralDirectoryOffset < 0 || centralDirectorySize > centralDirectoryEnd
+                || entryCount > centralDirectorySize / CENTRAL_DIRECTORY_HEADER_SIZE) {
+            throw new ZipException("Invalid end of central directory");
+        }
+        // Data in front of the archive shifts every offset the archive records.
+        long centralDirectoryStart = centralDirectoryEnd - centralDirectorySize;
+        long prefixSize = centralDirectoryStart - centralDirectoryOffset;
+        if (prefixSize < 0) {
+            throw new ZipException("Invalid end of central directory");
+        }
+
+        ZipInspection zipInspection = new ZipInspection();
+        zipInspection.setCentralDirectoryRead(true);
+        zipInspection.setCentralDirectoryEnd(centralDirectoryEnd);
+        long[] pageOffsets = new long[(int) ((entryCount + PAGE_SIZE - 1) / PAGE_SIZE)];
+        // Least bytes entries take in front of the central directory, if none of them overlap.
+        long localBytes = 0L;
+        long position = centralDirectoryStart;
+        for (long index = 0; index < entryCount; index++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while inspecting archive");
+            }
+            if (index % PAGE_SIZE == 0) {
+                pageOffsets[(int) (index / PAGE_SIZE)] = position;
+            }
+            ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(null, 0L, 0L, 0);
+            long nextPosition = readCentralDirectoryEntry(window, position, centralDirectoryEnd, zipArchiveEntry, false);
+            addEntry(zipInspection, zipArchiveEntry);
+            localBytes += LOCAL_HEADER_SIZE + window.getUnsignedShort(position + 28) + zipArchiveEntry.getCompressedSize();
+            // Past the central directory offset it is a bomb already - Capped, so that ZIP64 sizes don't overflow it.
+            localBytes = Math.min(localBytes, centralDirectoryOffset + 1);
+            position = nextPosition;
+        }
+        zipInspection.setPageOffsets(pageOffsets);
+        zipInspection.setComplete(true);
+        if (localBytes > centralDirectoryOffset) {
+            zipInspection.setZipBomb(true);
+        }
+        return zipInspection;
+    }
+
+    /**
+     * Used to inspect an archive which can only be streamed, by scanning its local headers.
+     *
+     * @param inputStream Stream positioned at the start of the archive, it is not closed.
+     * @return Zip inspection, not complete if scan stopped early.
+     * @throws ZipException If content is not a ZIP archive.
+     * @throws IOException  If stream couldn't be read.
+     */
+    public static ZipInspection inspect(final InputStream inputStream) throws IOException {
+        // Inflater reads past the end of a deflated entry, pushed back for the next header.
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, SKIP_BUFFER_SIZE);
+        ZipInspection zipInspection = new ZipInspection();
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long bytesRead = 0L;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while inspecting archive");
+            }
+            if (read(pushbackInputStream, header.array(), 0, 4) < 4) {
+                // Archive ends without a central directory (Like a truncated download).
+                break;
+            }
+            int signature = header.getInt(0);
+            if (signature == SIGNATURE_CENTRAL_DIRECTORY || signature == SIGNATURE_END_OF_CENTRAL_DIRECTORY) {
+                zipInspection.setComplete(true);
+                break;
+            }
+            if (signature != SIGNATURE_LOCAL_HEADER) {
+                if (zipInspection.getEntryCount() == 0) {
+                    throw new ZipException("Not a ZIP archive");
+                }
+                break;
+            }
+            readFully(pushbackInputStream, header.array(), 4, LOCAL_HEADER_SIZE - 4);
+            int flags = header.getShort(6) & 0xFFFF;
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            readFully(pushbackInputStream, name, 0, nameLength);
+            byte[] extra = new byte[extraLength];
+            readFully(pushbackInputStream, extra, 0, extraLength);
+            bytesRead += LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+            ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(decodeName(name, flags), header.getInt(22) & ZIP64_MAGIC,
+                    header.getInt(18) & ZIP64_MAGIC, header.getShort(8) & 0xFFFF);
+            zipArchiveEntry.setDirectory(nameLength > 0 && name[nameLength - 1] == '/');
+            zipArchiveEntry.setEncrypted((flags & FLAG_ENCRYPTED) != 0);
+            ByteBuffer zip64Extra = findExtra(ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN), EXTRA_ZIP64);
+            if (zipArchiveEntry.getSize() == ZIP64_MAGIC || zipArchiveEntry.getCompressedSize() == ZIP64_MAGIC) {
+                // Local ZIP64 extra has both sizes.
+                if (zip64Extra == null || zip64Extra.remaining() < 16) {
+                    throw new ZipException("Invalid ZIP64 extra of " + zipArchiveEntry.getName());
+                }
+                zipArchiveEntry.setSize(zip64Extra.getLong());
+                zipArchiveEntry.setCompressedSize(zip64Extra.getLong());
+            }
+
+            boolean isDataDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+            boolean isDeflated = zipArchiveEntry.getCompressionMethod() == ZipArchiveEntry.METHOD_DEFLATED && !zipArchiveEntry.isEncrypted();
+            if (isDataDescriptor && zipArchiveEntry.getCompressedSize() == 0 && (isDeflated || !zipArchiveEntry.isDirectory())) {
+                // Sizes follow the data - Deflated data tells where it ends (Even an empty one), stored data doesn't.
+                if (!isDeflated) {
+                    break;
+                }
+                boolean isSkipped = skipDeflated(pushbackInputStream, zipArchiveEntry, MAX_SCAN_SIZE - bytesRead);
+                addScannedEntry(zipInspection, zipArchiveEntry);
+                if (!isSkipped) {
+                    break;
+                }
+            } else {
+                if (zipArchiveEntry.getCompressedSize() < 0 || zipArchiveEntry.getCompressedSize() > MAX_SCAN_SIZE - bytesRead) {
+                    break;
+                }
+                addScannedEntry(zipInspection, zipArchiveEntry);
+                skipFully(pushbackInputStream, zipArchiveEntry.getCompressedSize());
+            }
+            bytesRead += zipArchiveEntry.getCompressedSize();
+
+            if (isDataDescriptor) {
+                // Data descriptor - Optional signature, CRC & sizes (8 bytes each for ZIP64).
+                if (read(pushbackInputStream, header.array(), 0, 4) < 4) {
+                    break;
+                }
+                int descriptorSize = (zip64Extra != null ? 20 : 12) - 4;
+                if (header.getInt(0) == SIGNATURE_DATA_DESCRIPTOR) {
+                    descriptorSize += 4;
+                }
+                skipFully(pushbackInputStream, descriptorSize);
+                bytesRead += 4 + descriptorSize;
+            }
+        }
+        return zipInspection;
+    }
+
+    /**
+     * Used to read a page of entries.
+     *
+     * @param fileChannel   Archive, as inspected - Not used (Can be NULL) if it was scanned as a stream.
+     * @param zipInspection Inspection of the archive.
+     * @param pageIndex     Page index, from 0.
+     * @return Up to PAGE_SIZE entries in archive order, empty if page is beyond the last.
+     * @throws IOException If archive couldn't be read or changed since it was inspected.
+     */
+    public static List<ZipArchiveEntry> readEntryPage(final FileChannel fileChannel, final ZipInspection zipInspection,
+                                                      final int pageIndex) throws IOException {
+        List<ZipArchiveEntry> zipArchiveEntries = new ArrayList<>();
+        if (!zipInspection.isCentralDirectoryRead()) {
+            List<ZipArchiveEntry> scannedEntries = zipInspection.getScannedEntries();
+            int fromIndex = pageIndex * PAGE_SIZE;
+            if (pageIndex >= 0 && fromIndex < scannedEntries.size()) {
+                zipArchiveEntries.addAll(scannedEntries.subList(fromIndex, Math.min(fromIndex + PAGE_SIZE, scannedEntries.size())));
+            }
+            return zipArchiveEntries;
+        }
+        long[] pageOffsets = zipInspection.getPageOffsets();
+        if (pageIndex < 0 || pageIndex >= pageOffsets.length) {
+            return zipArchiveEntries;
+        }
+        ChannelWindow window = new ChannelWindow(fileChannel);
+        long entryCount = Math.min(PAGE_SIZE, zipInspection.getEntryCount() - (long) pageIndex * PAGE_SIZE);
+        long position = pageOffsets[pageIndex];
+        for (int index = 0; index < entryCount; index++) {
+            ZipArchiveEntry zipArchiveEntry = new ZipArchiveEntry(null, 0L, 0L, 0);
+            position = readCentralDirectoryEntry(window, position, zipInspection.getCentralDirectoryEnd(), zipArchiveEntry, true);
+            zipArchiveEntries.add(zipArchiveEntry);
+        }
+        return zipArchiveEntries;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static long findEndOfCentralDirectory(final ChannelWindow window, final long archiveSize) throws IOException {
+        if (archiveSize < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new ZipException("Not a ZIP archive");
+        }
+        int tailSize = (int) Math.min(archiveSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        long tailStart = archiveSize - tailSize;
+        ByteBuffer tail = ByteBuffer.wrap(window.getBytes(tailStart, tailSize)).order(ByteOrder.LITTLE_ENDIAN);
+        // Nearest to the end whose comment runs to the end of archive, else nearest to the end (Archive has trailing bytes).
+        int looseMatch = -1;
+        for (int index = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; index >= 0; index--) {
+            if (tail.getInt(index) == SIGNATURE_END_OF_CENTRAL_DIRECTORY) {
+                int commentLength = tail.getShort(index + 20) & 0xFFFF;
+                if (index + END_OF_CENTRAL_DIRECTORY_SIZE + commentLength == tailSize) {
+                    return tailStart + index;
+                }
+                if (looseMatch < 0) {
+                    looseMatch = index;
+                }
+            }
+        }
+        if (looseMatch < 0) {
+            throw new ZipException("No end of central directory");
+        }
+        return tailStart + looseMatch;
+    }
+
+    /**
+     * Used to read central directory entry at the position into the given entry.
+     *
+     * @return Position of the next entry.
+     */
+    private static long readCentralDirectoryEntry(final ChannelWindow window, final long position, final long centralDirectoryEnd,
+                                                  final ZipArchiveEntry zipArchiveEntry, final boolean isNameDecoded) throws IOException {
+        if (position + CENTRAL_DIRECTORY_HEADER_SIZE > centralDirectoryEnd || window.getInt(position) != SIGNATURE_CENTRAL_DIRECTORY) {
+            throw new ZipException("Invalid central directory entry at " + position);
+        }
+        int flags = window.getUnsignedShort(position + 8);
+        int nameLength = window.getUnsignedShort(position + 28);
+        int extraLength = window.getUnsignedShort(position + 30);
+        int commentLength = window.getUnsignedShort(position + 32);
+        long nextPosition = position + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        if (nextPosition > centralDirectoryEnd) {
+            throw new ZipException("Invalid central directory entry at " + position);
+        }
+        long namePosition = position + CENTRAL_DIRECTORY_HEADER_SIZE;
+        zipArchiveEntry.setCompressionMethod(window.getUnsignedShort(position + 10));
+        zipArchiveEntry.setCompressedSize(window.getUnsignedInt(position + 20));
+        zipArchiveEntry.setSize(window.getUnsignedInt(position + 24));
+        zipArchiveEntry.setEncrypted((flags & FLAG_ENCRYPTED) != 0);
+        zipArchiveEntry.setDirectory(nameLength > 0 && window.getByte(namePosition + nameLength - 1) == '/');
+        if (isNameDecoded) {
+            zipArchiveEntry.setName(decodeName(window.getBytes(namePosition, nameLength), flags));
+        }
+        if (zipArchiveEntry.getSize() == ZIP64_MAGIC || zipArchiveEntry.getCompressedSize() == ZIP64_MAGIC) {
+            // ZIP64 extra has the sizes which didn't fit, in this order.
+            ByteBuffer extra = ByteBuffer.wrap(window.getBytes(namePosition + nameLength, extraLength)).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer zip64Extra = findExtra(extra, EXTRA_ZIP64);
+            try {
+                if (zip64Extra == null) {
+                    throw new ZipException("No ZIP64 extra at " + position);
+                }
+                if (zipArchiveEntry.getSize() == ZIP64_MAGIC) {
+                    zipArchiveEntry.setSize(zip64Extra.getLong());
+                }
+                if (zipArchiveEntry.getCompressedSize() == ZIP64_MAGIC) {
+                    zipArchiveEntry.setCompressedSize(zip64Extra.getLong());
+                }
+            } catch (RuntimeException exp) {
+                throw new ZipException("Invalid ZIP64 extra at " + position);
+            }
+            if (zipArchiveEntry.getSize() < 0 || zipArchiveEntry.getCompressedSize() < 0) {
+                throw new ZipException("Invalid ZIP64 extra at " + position);
+            }
+        }
+        return nextPosition;
+    }
+
+    /**
+     * Used to find an extra field by id.
+     *
+     * @return Field data (Positioned at its start & limited to its end) or NULL if there is none.
+     */
+    private static ByteBuffer findExtra(final ByteBuffer extra, final int headerId) {
+        while (extra.remaining() >= 4) {
+            int id = extra.getShort() & 0xFFFF;
+            int length = extra.getShort() & 0xFFFF;
+            if (length > extra.remaining()) {
+                return null;
+            }
+            if (id == headerId) {
+                ByteBuffer field = extra.slice().order(ByteOrder.LITTLE_ENDIAN);
+                field.limit(length);
+                return field;
+            }
+            extra.position(extra.position() + length);
+        }
+        return null;
+    }
+
+    private static void addScannedEntry(final ZipInspection zipInspection, final ZipArchiveEntry zipArchiveEntry) {
+        addEntry(zipInspection, zipArchiveEntry);
+        if (zipInspection.getScannedEntries().size() < MAX_SCANNED_ENTRIES) {
+            zipInspection.getScannedEntries().add(zipArchiveEntry);
+        }
+    }
+
+    /**
+     * Used to find where deflated data of an entry ends, by inflating it into a scratch buffer - Its sizes are set from what was
+     * inflated.
+     *
+     * @return TRUE if data was skipped, FALSE if scan stopped (Beyond max compressed bytes, MAX_INFLATE_SIZE or zip bomb ratio).
+     */
+    private static boolean skipDeflated(final PushbackInputStream inputStream, final ZipArchiveEntry zipArchiveEntry,
+                                        final long maxCompressedSize) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] input = new byte[SKIP_BUFFER_SIZE];
+            byte[] output = new byte[SKIP_BUFFER_SIZE];
+            int inputLength = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    inputLength = inputStream.read(input);
+                    if (inputLength < 0) {
+                        throw new EOFException("Archive ends within an entry");
+                    }
+                    inflater.setInput(input, 0, inputLength);
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid deflated data of " + zipArchiveEntry.getName());
+                }
+                try {
+                    inflater.inflate(output);
+                } catch (DataFormatException dataFormatException) {
+                    throw new ZipException("Invalid deflated data of " + zipArchiveEntry.getName());
+                }
+                zipArchiveEntry.setCompressedSize(inflater.getBytesRead());
+                zipArchiveEntry.setSize(inflater.getBytesWritten());
+                if (inflater.getBytesRead() > maxCompressedSize || inflater.getBytesWritten() > MAX_INFLATE_SIZE
+                        || isBombRatio(inflater.getBytesWritten(), inflater.getBytesRead())) {
+                    return false;
+                }
+            }
+            int remaining = inflater.getRemaining();
+            if (remaining > 0) {
+                inputStream.unread(input, inputLength - remaining, remaining);
+            }
+            return true;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void addEntry(final ZipInspection zipInspection, final ZipArchiveEntry zipArchiveEntry) {
+        zipInspection.setEntryCount(zipInspection.getEntryCount() + 1);
+        if (zipArchiveEntry.isDirectory()) {
+            zipInspection.setDirectoryCount(zipInspection.getDirectoryCount() + 1);
+        }
+        zipInspection.setTotalSize(saturatedAdd(zipInspection.getTotalSize(), zipArchiveEntry.getSize()));
+        zipInspection.setTotalCompressedSize(saturatedAdd(zipInspection.getTotalCompressedSize(), zipArchiveEntry.getCompressedSize()));
+        if (isBombRatio(zipArchiveEntry.getSize(), zipArchiveEntry.getCompressedSize())
+                || isBombRatio(zipInspection.getTotalSize(), zipInspection.getTotalCompressedSize())) {
+            zipInspection.setZipBomb(true);
+        }
+    }
+
+    /**
+     * Used to add sizes, which are not negative - Capped at Long.MAX_VALUE instead of overflowing.
+     */
+    private static long saturatedAdd(final long first, final long second) {
+        return first > Long.MAX_VALUE - second ? Long.MAX_VALUE : first + second;
+    }
+
+    private static boolean isBombRatio(final long size, final long compressedSize) {
+        return size >= MIN_BOMB_SIZE && size / MAX_COMPRESSION_RATIO > compressedSize;
+    }
+
+    private static String decodeName(final byte[] name, final int flags) {
+        return new String(name, (flags & FLAG_UTF8) != 0 ? UTF_8 : LEGACY_CHARSET);
+    }
+
+    private static int read(final InputStream inputStream, final byte[] bytes, final int offset, final int length) throws IOException {
+        int totalRead = 0;
+        while (totalRead < length) {
+            int read = inputStream.read(bytes, offset + totalRead, length - totalRead);
+            if (read < 0) {
+                break;
+            }
+            totalRead += read;
+        }
+        return totalRead;
+    }
+
+    private static void readFully(final InputStream inputStream, final byte[] bytes, final int offset, final int length) throws IOException {
+        if (read(inputStream, bytes, offset, length) < length) {
+            throw new EOFException("Archive ends within an entry header");
+        }
+    }
+
+    private static void skipFully(final InputStream inputStream, final long length) throws IOException {
+        long remaining = length;
+        byte[] skipBuffer = null;
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                // Some streams can't skip - Read through instead.
+                if (skipBuffer == null) {
+                    skipBuffer = new byte[SKIP_BUFFER_SIZE];
+                }
+                int read = inputStream.read(skipBuffer, 0, (int) Math.min(skipBuffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Archive ends within an entry");
+                }
+                skipped = read;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Channel Window - Buffers WINDOW_SIZE bytes of the channel around the last position read, central directory entries are small &
+     * read in order, hence most reads are served from the window.
+     */
+    private static class ChannelWindow {
+
+        private FileChannel fileChannel;
+        private ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long bufferStart;
+
+        ChannelWindow(final FileChannel fileChannel) {
+            this.fileChannel = fileChannel;
+            this.buffer.limit(0);
+        }
+
+        byte getByte(final long position) throws IOException {
+            return buffer.get(require(position, 1));
+        }
+
+        int getUnsignedShort(final long position) throws IOException {
+            return buffer.getShort(require(position, 2)) & 0xFFFF;
+        }
+
+        int getInt(final long position) throws IOException {
+            return buffer.getInt(require(position, 4));
+        }
+
+        long getUnsignedInt(final long position) throws IOException {
+            return getInt(position) & ZIP64_MAGIC;
+        }
+
+        long getLong(final long position) throws IOException {
+            return buffer.getLong(require(position, 8));
+        }
+
+        byte[] getBytes(final long position, final int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int index = require(position, length);
+            for (int offset = 0; offset < length; offset++) {
+                bytes[offset] = buffer.get(index + offset);
+            }
+            return bytes;
+        }
+
+        /**
+         * Used to make sure window holds the bytes, reading them if it doesn't.
+         *
+         * @return Index of the position within buffer.
+         */
+        private int require(final long position, final int length) throws IOException {
+            if (position < 0 || position > Long.MAX_VALUE - length) {
+                throw new ZipException("Invalid offset " + position);
+            }
+            if (position >= bufferStart && position + length <= bufferStart + buffer.limit()) {
+                return (int) (position - bufferStart);
+            }
+            if (length > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear();
+            while (buffer.position() < length) {
+                int read = fileChannel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    // Offsets come from the archive, hence one past its end is a malformed archive (Not a read failure).
+                    throw new ZipException("Archive ends at " + (position + buffer.position()));
+                }
+            }
+            buffer.flip();
+            bufferStart = position;
+            return 0;
+        }
+    }
+}
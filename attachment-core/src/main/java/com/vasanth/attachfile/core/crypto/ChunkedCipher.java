@@ -0,0 +1,219 @@
+package com.vasanth.attachfile.core.crypto;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Chunked Cipher.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to encrypt / decrypt attachment content as fixed size AES-GCM chunks, each authenticated on its own - So that any
+ * chunk can be decrypted without the ones before it (Random access) & chunks can be encrypted in parallel.
+ * <p>
+ * 2. Format.
+ * 2.a. Header (HEADER_SIZE) - Magic "AFEC", version & chunk size (Big endian ints).
+ * 2.b. Chunks - Each is a random nonce (NONCE_SIZE), ciphertext of chunk size plaintext bytes (Last chunk may be shorter, empty
+ * content has one empty chunk) & tag (TAG_SIZE). Chunk "i" starts at {@link #getChunkOffset}.
+ * 2.c. Associated data of each chunk - Header, chunk index & whether it is the last chunk, hence chunks can't be reordered, swapped
+ * across files of different chunk size or dropped from the end without failing authentication.
+ * <p>
+ * 3. Methods.
+ * 3.a. encryptChunk / decryptChunk - Used to encrypt / decrypt a single chunk, between reusable (Direct) buffers.
+ * 3.b. getHeader / readHeader / isEncrypted - Used to write & validate the header.
+ * <p>
+ * 4. Note.
+ * 4.a. Instance keeps its Cipher for reuse & is not thread safe - Use one instance per thread.
+ * 4.b. Nonces are random per chunk (Not derived from chunk index), hence re-encrypting a chunk (Like when a copy resumes) never
+ * reuses a nonce.
+ * 4.c. GCMParameterSpec is available on Android from API 19.
+ *
+ * @author Vasanth
+ */
+public class ChunkedCipher {
+
+    public static final int HEADER_SIZE = 12;
+    public static final int NONCE_SIZE = 12;
+    public static final int TAG_SIZE = 16;
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final byte[] MAGIC = {'A', 'F', 'E', 'C'};
+    private static final int VERSION = 1;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private SecretKey secretKey;
+    private byte[] header;
+    private Cipher cipher;
+    private byte[] nonce = new byte[NONCE_SIZE];
+    private ByteBuffer associatedData;
+
+    /**
+     * Constructor.
+     *
+     * @param secretKey AES key.
+     * @param chunkSize Chunk size in bytes, of the content being encrypted / decrypted.
+     * @throws GeneralSecurityException If AES-GCM is not available.
+     */
+    public ChunkedCipher(final SecretKey secretKey, final int chunkSize) throws GeneralSecurityException {
+        this.secretKey = secretKey;
+        this.header = createHeader(chunkSize);
+        this.cipher = Cipher.getInstance(TRANSFORMATION);
+        this.associatedData = ByteBuffer.allocate(HEADER_SIZE + 9);
+    }
+
+    /**
+     * Used to encrypt a chunk.
+     *
+     * @param chunkIndex Chunk index.
+     * @param isLast     TRUE if it is the last chunk of the content.
+     * @param plaintext  Plaintext from position till limit, at most chunk size - Position is moved to limit.
+     * @param frame      Buffer to put nonce, ciphertext & tag, from its position - Must have plaintext + NONCE_SIZE + TAG_SIZE bytes
+     *                   remaining.
+     * @throws GeneralSecurityException If chunk couldn't be encrypted.
+     */
+    public void encryptChunk(final long chunkIndex, final boolean isLast, final ByteBuffer plaintext, final ByteBuffer frame)
+            throws GeneralSecurityException {
+        SECURE_RANDOM.nextBytes(nonce);
+        frame.put(nonce);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+        cipher.updateAAD(getAssociatedData(chunkIndex, isLast));
+        cipher.doFinal(plaintext, frame);
+    }
+
+    /**
+     * Used to decrypt a chunk.
+     *
+     * @param chunkIndex Chunk index.
+     * @param isLast     TRUE if it is the last chunk of the content.
+     * @param frame      Nonce, ciphertext & tag from position till limit - Position is moved to limit.
+     * @param plaintext  Buffer to put plaintext, from its position - Must have frame - NONCE_SIZE - TAG_SIZE bytes remaining.
+     * @throws GeneralSecurityException If chunk is not authentic (Tampered, reordered or truncated) or couldn't be decrypted.
+     */
+    public void decryptChunk(final long chunkIndex, final boolean isLast, final ByteBuffer frame, final ByteBuffer plaintext)
+            throws GeneralSecurityException {
+        if (frame.remaining() < NONCE_SIZE + TAG_SIZE) {
+            throw new GeneralSecurityException("Chunk " + chunkIndex + " is truncated");
+        }
+        frame.get(nonce);
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+        cipher.updateAAD(getAssociatedData(chunkIndex, isLast));
+        cipher.doFinal(frame, plaintext);
+    }
+
+    /**
+     * Used to get the header, to be written before the first chunk.
+     *
+     * @return Header bytes.
+     */
+    public byte[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * Used to get offset of a chunk in encrypted content.
+     *
+     * @param chunkSize  Chunk size.
+     * @param chunkIndex Chunk index.
+     * @return Offset in bytes.
+     */
+    public static long getChunkOffset(final int chunkSize, final long chunkIndex) {
+        return HEADER_SIZE + chunkIndex * getFrameSize(chunkSize);
+    }
+
+    /**
+     * Used to get size of a full chunk in encrypted content.
+     *
+     * @param chunkSize Chunk size.
+     * @return Nonce, ciphertext & tag size.
+     */
+    public static int getFrameSize(final int chunkSize) {
+        return NONCE_SIZE + chunkSize + TAG_SIZE;
+    }
+
+    /**
+     * Used to get plaintext size from encrypted content size.
+     *
+     * @param chunkSize     Chunk size.
+     * @param encryptedSize Encrypted content size, including header.
+     * @return Plaintext size, -1 if encrypted size is not valid (Like truncated in the middle of a chunk header).
+     */
+    public static long getPlaintextSize(final int chunkSize, final long encryptedSize) {
+        long framesSize = encryptedSize - HEADER_SIZE;
+        int frameSize = getFrameSize(chunkSize);
+        long lastFrameSize = framesSize % frameSize;
+        if (framesSize < NONCE_SIZE + TAG_SIZE || (lastFrameSize > 0 && lastFrameSize < NONCE_SIZE + TAG_SIZE)) {
+            return -1L;
+        }
+        long fullFrameCount = framesSize / frameSize;
+        return fullFrameCount * chunkSize + (lastFrameSize > 0 ? lastFrameSize - NONCE_SIZE - TAG_SIZE : 0);
+    }
+
+    /**
+     * Used to read chunk size from header.
+     *
+     * @param header Header bytes, at least HEADER_SIZE.
+     * @return Chunk size, -1 if it is not a header of this format.
+     */
+    public static int readHeader(final byte[] header) {
+        if (header.length < HEADER_SIZE || !Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            return -1;
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        headerBuffer.position(MAGIC.length);
+        int version = headerBuffer.getInt();
+        int chunkSize = headerBuffer.getInt();
+        return version == VERSION && chunkSize > 0 ? chunkSize : -1;
+    }
+
+    /**
+     * Used to check if file holds content encrypted in this format.
+     *
+     * @param file File.
+     * @return TRUE if file starts with a valid header.
+     * @throws IOException If file couldn't be read.
+     */
+    public static boolean isEncrypted(final File file) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int length = 0;
+            int read;
+            while (length < HEADER_SIZE && (read = inputStream.read(header, length, HEADER_SIZE - length)) >= 0) {
+                length += read;
+            }
+            return length == HEADER_SIZE && readHeader(header) > 0;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static byte[] createHeader(final int chunkSize) {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+        headerBuffer.put(MAGIC);
+        headerBuffer.putInt(VERSION);
+        headerBuffer.putInt(chunkSize);
+        return headerBuffer.array();
+    }
+
+    private byte[] getAssociatedData(final long chunkIndex, final boolean isLast) {
+        associatedData.clear();
+        associatedData.put(header);
+        associatedData.putLong(chunkIndex);
+        associatedData.put((byte) (isLast ? 1 : 0));
+        return associatedData.array();
+    }
+}
@@ -0,0 +1,206 @@
+package com.vasanth.attachfile.core.crypto;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Encrypted Attachment Reader.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to decrypt attachment content encrypted as {@link ChunkedCipher} chunks - Any chunk on its own (Random access) or
+ * the whole content as a stream.
+ * <p>
+ * 2. Methods.
+ * 2.a. getSize / getChunkSize / getChunkCount - Used to get plaintext layout.
+ * 2.b. readChunk - Used to decrypt a single chunk.
+ * 2.c. openInputStream - Used to read plaintext from a position, decrypting chunk by chunk.
+ * 2.d. close - Used to close the file.
+ * <p>
+ * 3. Note.
+ * 3.a. Every chunk is authenticated before any of its bytes are returned, tampered or truncated content fails with IOException.
+ * 3.b. Not thread safe - Use one reader per thread.
+ *
+ * @author Vasanth
+ */
+public class EncryptedAttachmentReader {
+
+    private FileChannel fileChannel;
+    private int chunkSize;
+    private long size;
+    private long chunkCount;
+    private ChunkedCipher chunkedCipher;
+    private ByteBuffer frameBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param file      Encrypted file.
+     * @param secretKey AES key it was encrypted with.
+     * @throws IOException If file couldn't be read or is not in {@link ChunkedCipher} format.
+     */
+    public EncryptedAttachmentReader(final File file, final SecretKey secretKey) throws IOException {
+        fileChannel = new FileInputStream(file).getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ChunkedCipher.HEADER_SIZE);
+            readFully(header, 0L);
+            chunkSize = ChunkedCipher.readHeader(header.array());
+            if (chunkSize <= 0) {
+                throw new IOException(file + " is not encrypted attachment content");
+            }
+            size = ChunkedCipher.getPlaintextSize(chunkSize, fileChannel.size());
+            if (size < 0) {
+                throw new IOException(file + " is truncated");
+            }
+            chunkCount = Math.max(1L, (size + chunkSize - 1) / chunkSize);
+            chunkedCipher = new ChunkedCipher(secretKey, chunkSize);
+            frameBuffer = ByteBuffer.allocateDirect(ChunkedCipher.getFrameSize(chunkSize));
+        } catch (GeneralSecurityException generalSecurityException) {
+            fileChannel.close();
+            throw new IOException(generalSecurityException);
+        } catch (IOException ioException) {
+            fileChannel.close();
+            throw ioException;
+        }
+    }
+
+    /**
+     * Used to decrypt a single chunk.
+     *
+     * @param chunkIndex Chunk index, less than {@link #getChunkCount()}.
+     * @param plaintext  Buffer to put plaintext, from its position - Must have chunk size bytes remaining.
+     * @return Number of plaintext bytes, chunk size except for the last chunk.
+     * @throws IOException If chunk couldn't be read or is not authentic.
+     */
+    public int readChunk(final long chunkIndex, final ByteBuffer plaintext) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + chunkIndex + " of " + chunkCount);
+        }
+        boolean isLast = chunkIndex == chunkCount - 1;
+        int length = isLast ? (int) (size - chunkIndex * chunkSize) : chunkSize;
+        frameBuffer.clear();
+        frameBuffer.limit(ChunkedCipher.NONCE_SIZE + length + ChunkedCipher.TAG_SIZE);
+        readFully(frameBuffer, ChunkedCipher.getChunkOffset(chunkSize, chunkIndex));
+        frameBuffer.flip();
+        try {
+            chunkedCipher.decryptChunk(chunkIndex, isLast, frameBuffer, plaintext);
+        } catch (GeneralSecurityException generalSecurityException) {
+            throw new IOException("Chunk " + chunkIndex + " is not authentic", generalSecurityException);
+        }
+        return length;
+    }
+
+    /**
+     * Used to read plaintext from a position.
+     * <p>
+     * 1. Stream reads from this reader, hence don't read chunks while it is in use - Closing the stream closes this reader.
+     *
+     * @param position Plaintext position to start from.
+     * @return Input stream.
+     */
+    public InputStream openInputStream(final long position) {
+        return new DecryptingInputStream(position);
+    }
+
+    /**
+     * Used to close the file.
+     *
+     * @throws IOException If file couldn't be closed.
+     */
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * Getter's.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void readFully(final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Encrypted content ended at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Input stream decrypting one chunk at a time, into a reused buffer.
+     */
+    private class DecryptingInputStream extends InputStream {
+
+        private ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        private long position;
+        private long loadedChunkIndex = -1;
+
+        DecryptingInputStream(final long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            long chunkIndex = position / chunkSize;
+            if (chunkIndex != loadedChunkIndex) {
+                chunk.clear();
+                readChunk(chunkIndex, chunk);
+                chunk.flip();
+                loadedChunkIndex = chunkIndex;
+            }
+            chunk.position((int) (position - chunkIndex * chunkSize));
+            int count = Math.min(length, chunk.remaining());
+            chunk.get(bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(final long count) {
+            long skipped = Math.max(0L, Math.min(count, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return loadedChunkIndex == position / chunkSize ? chunk.limit() - (int) (position - loadedChunkIndex * chunkSize) : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            EncryptedAttachmentReader.this.close();
+        }
+    }
+}
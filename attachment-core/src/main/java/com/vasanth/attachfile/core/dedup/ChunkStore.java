@@ -0,0 +1,54 @@
+package com.vasanth.attachfile.core.dedup;
+
+import com.vasanth.attachfile.core.model.ContentChunk;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chunk Store.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Upload target which stores content as chunks addressed by their digest (See {@link DedupUploader}) - Like a backend upload
+ * endpoint, or {@link LocalChunkStore} standing in for one.
+ * <p>
+ * 2. Methods.
+ * 2.a. findMissingChunks - Used to ask which chunks it doesn't have yet.
+ * 2.b. putChunk - Used to send a chunk.
+ * 2.c. putManifest - Used to assemble content from its chunks, once all of them are sent.
+ *
+ * @author Vasanth
+ */
+public interface ChunkStore {
+
+    /**
+     * Used to ask which of the chunks the store doesn't have yet.
+     *
+     * @param chunkDigests Chunk digests.
+     * @return Digests of chunks which need to be sent.
+     * @throws IOException If store couldn't be reached.
+     */
+    Set<String> findMissingChunks(List<String> chunkDigests) throws IOException;
+
+    /**
+     * Used to send a chunk.
+     *
+     * @param chunkDigest Chunk digest, store should verify it against the bytes.
+     * @param bytes       Chunk bytes, valid only during this call.
+     * @param offset      Offset in bytes.
+     * @param length      Chunk length.
+     * @throws IOException If chunk couldn't be sent or digest doesn't match.
+     */
+    void putChunk(String chunkDigest, byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Used to assemble content from its chunks, in order.
+     *
+     * @param contentChunks Chunks of the content, all of them already in the store.
+     * @return Id the store assigned to the content.
+     * @throws IOException If a chunk is missing or manifest couldn't be stored.
+     */
+    String putManifest(List<ContentChunk> contentChunks) throws IOException;
+
+}
@@ -0,0 +1,177 @@
+package com.vasanth.attachfile.core.dedup;
+
+import java.io.IOException;
+
+/**
+ * Content Chunker.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to split content into content defined chunks (FastCDC) as it is pushed - Chunk boundaries depend only on the bytes
+ * around them, hence an edit shifts only the chunks it touches & the rest of an edited file yields the same chunks as before.
+ * <p>
+ * 2. Methods.
+ * 2.a. update - Used to push next bytes, chunks are notified as their boundary is found.
+ * 2.b. finish - Used to notify the last chunk, once content ended.
+ * <p>
+ * 3. Algorithm.
+ * 3.a. Gear rolling hash (hash = (hash << 1) + GEAR[byte]), a boundary is where the hash's top bits are zero.
+ * 3.b. No boundary before minSize (Those bytes aren't even hashed), a forced one at maxSize.
+ * 3.c. Normalized chunking - Harder mask (One more bit) before avgSize & easier mask (One bit less) after it, so that chunk sizes
+ * cluster around avgSize.
+ * <p>
+ * 4. Note.
+ * 4.a. GEAR table comes from a fixed seed - Same content gives same chunks on every device & version, which dedup relies on.
+ * 4.b. Chunk bytes passed to the listener are valid only during the call, the chunk buffer is reused.
+ *
+ * @author Vasanth
+ */
+public class ContentChunker {
+
+    public static final int DEFAULT_MIN_SIZE = 16 * 1024;
+    public static final int DEFAULT_AVG_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_SIZE = 256 * 1024;
+
+    private static final long[] GEAR = createGear(0x41464344434443L);
+
+    private ChunkListener chunkListener;
+    private int minSize;
+    private int avgSize;
+    private int maxSize;
+    private long hardMask;
+    private long easyMask;
+    private byte[] chunk;
+    private int chunkLength;
+    private long hash;
+
+    /**
+     * Chunk Listener.
+     */
+    public interface ChunkListener {
+
+        /**
+         * Gets called with each chunk, in content order.
+         *
+         * @param bytes  Chunk bytes, valid only during this call.
+         * @param offset Offset in bytes.
+         * @param length Chunk length.
+         * @throws IOException If chunk couldn't be handled, it is thrown from update / finish.
+         */
+        void onChunk(byte[] bytes, int offset, int length) throws IOException;
+
+    }
+
+    /**
+     * Constructor - With default sizes.
+     *
+     * @param chunkListener Listener.
+     */
+    public ContentChunker(final ChunkListener chunkListener) {
+        this(chunkListener, DEFAULT_MIN_SIZE, DEFAULT_AVG_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param chunkListener Listener.
+     * @param minSize       Min chunk size, except for the last chunk.
+     * @param avgSize       Expected chunk size, a power of two.
+     * @param maxSize       Max chunk size.
+     */
+    public ContentChunker(final ChunkListener chunkListener, final int minSize, final int avgSize, final int maxSize) {
+        if (Integer.bitCount(avgSize) != 1 || minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Invalid chunk sizes " + minSize + " / " + avgSize + " / " + maxSize);
+        }
+        this.chunkListener = chunkListener;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        this.hardMask = topBitsMask(bits + 1);
+        this.easyMask = topBitsMask(bits - 1);
+        this.chunk = new byte[maxSize];
+    }
+
+    /**
+     * Used to push next bytes of the content.
+     *
+     * @param bytes  Bytes.
+     * @param offset Offset in bytes.
+     * @param length Number of bytes.
+     * @throws IOException If listener failed.
+     */
+    public void update(final byte[] bytes, int offset, final int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            // Skip hashing till min size - No boundary there anyway.
+            if (chunkLength < minSize) {
+                int copied = Math.min(end - offset, minSize - chunkLength);
+                System.arraycopy(bytes, offset, chunk, chunkLength, copied);
+                chunkLength += copied;
+                offset += copied;
+                continue;
+            }
+            byte value = bytes[offset++];
+            chunk[chunkLength++] = value;
+            hash = (hash << 1) + GEAR[value & 0xFF];
+            long mask = chunkLength < avgSize ? hardMask : easyMask;
+            if ((hash & mask) == 0 || chunkLength >= maxSize) {
+                emitChunk();
+            }
+        }
+    }
+
+    /**
+     * Used to notify the last chunk, once content ended - Chunker can be reused for another content afterwards.
+     *
+     * @throws IOException If listener failed.
+     */
+    public void finish() throws IOException {
+        if (chunkLength > 0) {
+            emitChunk();
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void emitChunk() throws IOException {
+        int length = chunkLength;
+        chunkLength = 0;
+        hash = 0;
+        chunkListener.onChunk(chunk, 0, length);
+    }
+
+    private static long topBitsMask(final int bitCount) {
+        return bitCount <= 0 ? 0L : -1L << (64 - bitCount);
+    }
+
+    /**
+     * Used to create GEAR table - SplitMix64 from a fixed seed, not java.util.Random, so that it never changes.
+     */
+    private static long[] createGear(long seed) {
+        long[] gear = new long[256];
+        for (int i = 0; i < gear.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long value = seed;
+            value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+            value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+            gear[i] = value ^ (value >>> 31);
+        }
+        return gear;
+    }
+
+    /**
+     * Getter's.
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getAvgSize() {
+        return avgSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -0,0 +1,168 @@
+package com.vasanth.attachfile.core.dedup;
+
+import com.vasanth.attachfile.core.model.ContentChunk;
+import com.vasanth.attachfile.core.model.DedupUploadResult;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.util.ProgressListener;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dedup Uploader.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to upload attachment content to a {@link ChunkStore}, sending only the chunks it doesn't have yet - So that
+ * re-sending a slightly edited document or video sends little more than the edited chunks.
+ * <p>
+ * 2. Methods.
+ * 2.a. upload - Used to upload the content of a source, reading it once.
+ * <p>
+ * 3. Flow.
+ * 3.a. Content is split into content defined chunks (See {@link ContentChunker}) & each chunk is hashed (SHA-256).
+ * 3.b. Chunks are buffered in batches of up to BATCH_SIZE bytes - Store is asked once per batch which of them it is missing & only
+ * those are sent, so that a round trip is paid per batch instead of per chunk.
+ * 3.c. Chunk repeated within the content is sent at most once.
+ * 3.d. Manifest (Chunk digests in order) is sent last, store assembles the content from it.
+ * <p>
+ * 4. Note.
+ * 4.a. Reads the content & talks to the store, hence call it in separate thread. Upload stops if the calling thread is interrupted.
+ * 4.b. Memory is bounded by BATCH_SIZE plus one max size chunk, whatever the content size.
+ * 4.c. API only so far - The app has no upload backend, only AttachmentCoreBenchmark (With {@link LocalChunkStore}) calls it.
+ *
+ * @author Vasanth
+ */
+public class DedupUploader {
+
+    private static final int BATCH_SIZE = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ChunkStore chunkStore;
+    private ProgressListener progressListener;
+    private ContentChunker contentChunker;
+    private MessageDigest messageDigest;
+    private DedupUploadResult dedupUploadResult;
+    // Chunks of the current batch - Their bytes are in batchBuffer, one after the other.
+    private List<ContentChunk> batchChunks = new ArrayList<>();
+    private byte[] batchBuffer = new byte[BATCH_SIZE + ContentChunker.DEFAULT_MAX_SIZE];
+    private int batchLength;
+    // Digests of chunks of this content already sent or found in store.
+    private Set<String> storedDigests = new HashSet<>();
+    private long contentOffset;
+
+    /**
+     * Constructor.
+     */
+    private DedupUploader(final ChunkStore chunkStore, final ProgressListener progressListener) {
+        this.chunkStore = chunkStore;
+        this.progressListener = progressListener;
+        this.dedupUploadResult = new DedupUploadResult();
+        try {
+            this.messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+        this.contentChunker = new ContentChunker(new ContentChunker.ChunkListener() {
+            @Override
+            public void onChunk(final byte[] bytes, final int offset, final int length) throws IOException {
+                addChunk(bytes, offset, length);
+            }
+        });
+    }
+
+    /**
+     * Used to upload the content of a source, sending only the chunks store doesn't have.
+     *
+     * @param attachmentSource Attachment source.
+     * @param chunkStore       Upload target.
+     * @param progressListener Listener to be notified with content bytes processed (Sent or deduplicated), can be NULL.
+     * @return Upload result, with content id, dedup ratio & bytes saved.
+     * @throws IOException If source couldn't be read or store failed.
+     */
+    public static DedupUploadResult upload(final AttachmentSource attachmentSource, final ChunkStore chunkStore,
+                                           final ProgressListener progressListener) throws IOException {
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream == null) {
+            throw new IOException("Unable to open " + attachmentSource.getLocation());
+        }
+        DedupUploader dedupUploader = new DedupUploader(chunkStore, progressListener);
+        try {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(bytes)) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while uploading attachment content");
+                }
+                dedupUploader.contentChunker.update(bytes, 0, read);
+            }
+            dedupUploader.contentChunker.finish();
+            dedupUploader.flushBatch();
+        } finally {
+            inputStream.close();
+        }
+        DedupUploadResult dedupUploadResult = dedupUploader.dedupUploadResult;
+        dedupUploadResult.setContentId(chunkStore.putManifest(dedupUploadResult.getContentChunks()));
+        return dedupUploadResult;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void addChunk(final byte[] bytes, final int offset, final int length) throws IOException {
+        messageDigest.update(bytes, offset, length);
+        ContentChunk contentChunk = new ContentChunk(contentOffset, length, SegmentedDigest.toHex(messageDigest.digest()));
+        contentOffset += length;
+        dedupUploadResult.getContentChunks().add(contentChunk);
+        dedupUploadResult.setTotalBytes(contentOffset);
+
+        System.arraycopy(bytes, offset, batchBuffer, batchLength, length);
+        batchLength += length;
+        batchChunks.add(contentChunk);
+        if (batchLength >= BATCH_SIZE) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Used to ask store which chunks of the batch it is missing & send them.
+     */
+    private void flushBatch() throws IOException {
+        if (batchChunks.isEmpty()) {
+            return;
+        }
+        List<String> queryDigests = new ArrayList<>();
+        for (ContentChunk contentChunk : batchChunks) {
+            if (!storedDigests.contains(contentChunk.getDigest())) {
+                queryDigests.add(contentChunk.getDigest());
+            }
+        }
+        Set<String> missingDigests = queryDigests.isEmpty() ? new HashSet<String>() : chunkStore.findMissingChunks(queryDigests);
+        int batchOffset = 0;
+        for (ContentChunk contentChunk : batchChunks) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while uploading attachment content");
+            }
+            // Removed once sent - A chunk repeated within the batch is sent once.
+            if (missingDigests.remove(contentChunk.getDigest())) {
+                chunkStore.putChunk(contentChunk.getDigest(), batchBuffer, batchOffset, contentChunk.getLength());
+                dedupUploadResult.setUploadedBytes(dedupUploadResult.getUploadedBytes() + contentChunk.getLength());
+                dedupUploadResult.setUploadedChunkCount(dedupUploadResult.getUploadedChunkCount() + 1);
+            }
+            storedDigests.add(contentChunk.getDigest());
+            batchOffset += contentChunk.getLength();
+            if (progressListener != null) {
+                progressListener.onProgress(contentChunk.getOffset() + contentChunk.getLength());
+            }
+        }
+        batchChunks.clear();
+        batchLength = 0;
+    }
+}
@@ -0,0 +1,226 @@
+package com.vasanth.attachfile.core.dedup;
+
+import com.vasanth.attachfile.core.model.ContentChunk;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Local Chunk Store.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. {@link ChunkStore} backed by a local directory - Stands in for an upload backend, like in benchmarks & on CI, with the same
+ * contract (Chunks verified against their digest, manifest only over chunks it has).
+ * <p>
+ * 2. Layout.
+ * 2.a. chunks/<digest> - Chunk bytes.
+ * 2.b. manifests/<contentId> - One "<digest> <length>" line per chunk, contentId is SHA-256 of the manifest.
+ * <p>
+ * 3. Methods.
+ * 3.a. ChunkStore methods.
+ * 3.b. openContent - Used to read assembled content back, to verify an upload.
+ * 3.c. getChunkCount - Used to get number of distinct chunks stored.
+ * <p>
+ * 4. Note.
+ * 4.a. Files are written through a temporary file & renamed, hence a store shared by several uploads never exposes a partial chunk.
+ * 4.b. Only AttachmentCoreBenchmark & tests use it so far.
+ *
+ * @author Vasanth
+ */
+public class LocalChunkStore implements ChunkStore {
+
+    private static final String CHUNK_DIRECTORY_NAME = "chunks";
+    private static final String MANIFEST_DIRECTORY_NAME = "manifests";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String CHARSET = "UTF-8";
+
+    private File chunkDirectory;
+    private File manifestDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directory of the store, created if it doesn't exist.
+     * @throws IOException If directory couldn't be created.
+     */
+    public LocalChunkStore(final File directory) throws IOException {
+        this.chunkDirectory = createDirectory(new File(directory, CHUNK_DIRECTORY_NAME));
+        this.manifestDirectory = createDirectory(new File(directory, MANIFEST_DIRECTORY_NAME));
+    }
+
+    /**
+     * ChunkStore Methods.
+     */
+    @Override
+    public Set<String> findMissingChunks(final List<String> chunkDigests) {
+        Set<String> missingChunkDigests = new HashSet<>();
+        for (String chunkDigest : chunkDigests) {
+            if (!getChunkFile(chunkDigest).exists()) {
+                missingChunkDigests.add(chunkDigest);
+            }
+        }
+        return missingChunkDigests;
+    }
+
+    @Override
+    public void putChunk(final String chunkDigest, final byte[] bytes, final int offset, final int length) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        messageDigest.update(bytes, offset, length);
+        if (!SegmentedDigest.toHex(messageDigest.digest()).equals(chunkDigest)) {
+            throw new IOException("Chunk doesn't match its digest " + chunkDigest);
+        }
+        File chunkFile = getChunkFile(chunkDigest);
+        if (!chunkFile.exists()) {
+            writeFile(chunkFile, bytes, offset, length);
+        }
+    }
+
+    @Override
+    public String putManifest(final List<ContentChunk> contentChunks) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (ContentChunk contentChunk : contentChunks) {
+            File chunkFile = getChunkFile(contentChunk.getDigest());
+            if (chunkFile.length() != contentChunk.getLength()) {
+                throw new IOException("Chunk " + contentChunk.getDigest() + " is missing");
+            }
+            manifest.append(contentChunk.getDigest()).append(' ').append(contentChunk.getLength()).append('\n');
+        }
+        byte[] manifestBytes = manifest.toString().getBytes(CHARSET);
+        MessageDigest messageDigest = newDigest();
+        String contentId = SegmentedDigest.toHex(messageDigest.digest(manifestBytes));
+        File manifestFile = new File(manifestDirectory, contentId);
+        if (!manifestFile.exists()) {
+            writeFile(manifestFile, manifestBytes, 0, manifestBytes.length);
+        }
+        return contentId;
+    }
+
+    /**
+     * Used to read assembled content back.
+     *
+     * @param contentId Content id returned by {@link #putManifest(List)}.
+     * @return Input stream over the chunks of the content, in order.
+     * @throws IOException If content is not in the store.
+     */
+    public InputStream openContent(final String contentId) throws IOException {
+        List<InputStream> chunkStreams = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(manifestDirectory, contentId)),
+                CHARSET));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunkStreams.add(new LazyChunkInputStream(getChunkFile(line.substring(0, line.indexOf(' ')))));
+            }
+        } finally {
+            reader.close();
+        }
+        return new SequenceInputStream(Collections.enumeration(chunkStreams));
+    }
+
+    /**
+     * Used to get number of distinct chunks stored.
+     *
+     * @return Chunk count.
+     */
+    public int getChunkCount() {
+        String[] chunkFileNames = chunkDirectory.list();
+        int chunkCount = 0;
+        if (chunkFileNames != null) {
+            for (String chunkFileName : chunkFileNames) {
+                if (!chunkFileName.endsWith(TEMP_FILE_SUFFIX)) {
+                    chunkCount++;
+                }
+            }
+        }
+        return chunkCount;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private File getChunkFile(final String chunkDigest) {
+        return new File(chunkDirectory, chunkDigest);
+    }
+
+    private static File createDirectory(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        return directory;
+    }
+
+    private static void writeFile(final File file, final byte[] bytes, final int offset, final int length) throws IOException {
+        File tempFile = new File(file.getPath() + "." + Thread.currentThread().getId() + TEMP_FILE_SUFFIX);
+        OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(bytes, offset, length);
+        } finally {
+            outputStream.close();
+        }
+        if (!tempFile.renameTo(file) && !file.exists()) {
+            tempFile.delete();
+            throw new IOException("Unable to write " + file);
+        }
+        tempFile.delete();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    /**
+     * Input stream which opens its chunk file on first read, so that a large content doesn't hold a file per chunk open.
+     */
+    private static class LazyChunkInputStream extends InputStream {
+
+        private File chunkFile;
+        private InputStream inputStream;
+
+        LazyChunkInputStream(final File chunkFile) {
+            this.chunkFile = chunkFile;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return getInputStream().read();
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            return getInputStream().read(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+
+        private InputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new FileInputStream(chunkFile);
+            }
+            return inputStream;
+        }
+    }
+}
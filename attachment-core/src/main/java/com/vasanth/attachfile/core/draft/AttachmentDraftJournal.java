@@ -0,0 +1,160 @@
+package com.vasanth.attachfile.core.draft;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentDraftEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Attachment Draft Journal.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to persist the attachments of a draft (Their location, resolved detail & thumbnail cache key) to a file, so that
+ * the draft can be restored after process death without resolving its attachments again.
+ * <p>
+ * 2. Methods.
+ * 2.a. write - Used to replace the journal with the given entries.
+ * 2.b. read - Used to read entries from the journal.
+ * 2.c. delete - Used to delete the journal.
+ * <p>
+ * 3. Note.
+ * 3.a. Journal is written to a temporary file which is synced & renamed over the journal, hence journal is always either the old
+ * or the new draft, never partially written.
+ * 3.b. Journal carries a checksum, a journal which doesn't match it is treated as corrupt.
+ *
+ * @author Vasanth
+ */
+public class AttachmentDraftJournal {
+
+    private static final int MAGIC = 0x41445246;
+    private static final int VERSION = 1;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private File journalFile;
+
+    /**
+     * Constructor.
+     *
+     * @param journalFile Journal file.
+     */
+    public AttachmentDraftJournal(final File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Used to replace the journal with the given entries.
+     *
+     * @param attachmentDraftEntries Entries of the draft.
+     * @throws IOException If journal couldn't be written, old journal is then left as it is.
+     */
+    public synchronized void write(final List<AttachmentDraftEntry> attachmentDraftEntries) throws IOException {
+        File tempFile = new File(journalFile.getPath() + TEMP_FILE_SUFFIX);
+        FileOutputStream fileOutputStream = new FileOutputStream(tempFile);
+        boolean isWritten = false;
+        try {
+            CheckedOutputStream checkedOutputStream = new CheckedOutputStream(new BufferedOutputStream(fileOutputStream), new CRC32());
+            DataOutputStream outputStream = new DataOutputStream(checkedOutputStream);
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(attachmentDraftEntries.size());
+            for (AttachmentDraftEntry attachmentDraftEntry : attachmentDraftEntries) {
+                AttachmentDetail attachmentDetail = attachmentDraftEntry.getAttachmentDetail();
+                outputStream.writeUTF(attachmentDraftEntry.getLocation());
+                writeNullableString(outputStream, attachmentDetail.getName());
+                outputStream.writeLong(attachmentDetail.getSize());
+                writeNullableString(outputStream, attachmentDetail.getMimeType());
+                writeNullableString(outputStream, attachmentDraftEntry.getThumbnailKey());
+            }
+            outputStream.flush();
+            long checksum = checkedOutputStream.getChecksum().getValue();
+            outputStream.writeLong(checksum);
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+            isWritten = true;
+        } finally {
+            fileOutputStream.close();
+            if (!isWritten) {
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(journalFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to replace journal " + journalFile);
+        }
+    }
+
+    /**
+     * Used to read entries from the journal.
+     *
+     * @return Entries of the draft, empty if there is no journal.
+     * @throws IOException If journal couldn't be read or is corrupt.
+     */
+    public synchronized List<AttachmentDraftEntry> read() throws IOException {
+        FileInputStream fileInputStream;
+        try {
+            fileInputStream = new FileInputStream(journalFile);
+        } catch (FileNotFoundException fileNotFoundException) {
+            return Collections.emptyList();
+        }
+        try {
+            CheckedInputStream checkedInputStream = new CheckedInputStream(new BufferedInputStream(fileInputStream), new CRC32());
+            DataInputStream inputStream = new DataInputStream(checkedInputStream);
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("Unknown journal format " + journalFile);
+            }
+            int entryCount = inputStream.readInt();
+            List<AttachmentDraftEntry> attachmentDraftEntries = new ArrayList<>();
+            for (int i = 0; i < entryCount; i++) {
+                String location = inputStream.readUTF();
+                String name = readNullableString(inputStream);
+                long size = inputStream.readLong();
+                String mimeType = readNullableString(inputStream);
+                String thumbnailKey = readNullableString(inputStream);
+                attachmentDraftEntries.add(new AttachmentDraftEntry(location, new AttachmentDetail(name, size, mimeType), thumbnailKey));
+            }
+            long checksum = checkedInputStream.getChecksum().getValue();
+            if (inputStream.readLong() != checksum) {
+                throw new IOException("Corrupt journal " + journalFile);
+            }
+            return attachmentDraftEntries;
+        } finally {
+            fileInputStream.close();
+        }
+    }
+
+    /**
+     * Used to delete the journal.
+     */
+    public synchronized void delete() {
+        journalFile.delete();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static void writeNullableString(final DataOutputStream outputStream, final String value) throws IOException {
+        outputStream.writeBoolean(value != null);
+        if (value != null) {
+            outputStream.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(final DataInputStream inputStream) throws IOException {
+        return inputStream.readBoolean() ? inputStream.readUTF() : null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.vasanth.attachfile.core.image;
+
+/**
+ * Exif Thumbnail.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold what we read from JPEG EXIF (APP1) segment - Orientation & embedded thumbnail.
+ *
+ * @author Vasanth
+ */
+public class ExifThumbnail {
+
+    // EXIF orientation values.
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    private int orientation;
+    private byte[] thumbnailBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param orientation    EXIF orientation, one of ORIENTATION_*.
+     * @param thumbnailBytes Embedded JPEG thumbnail or NULL if there is none.
+     */
+    public ExifThumbnail(final int orientation, final byte[] thumbnailBytes) {
+        this.orientation = orientation;
+        this.thumbnailBytes = thumbnailBytes;
+    }
+
+    /**
+     * Getter's.
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    public byte[] getThumbnailBytes() {
+        return thumbnailBytes;
+    }
+
+    public boolean hasThumbnail() {
+        return thumbnailBytes != null;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "ExifThumbnail{" +
+                "orientation=" + orientation +
+                ", thumbnailSize=" + (thumbnailBytes != null ? thumbnailBytes.length : 0) +
+                '}';
+    }
+}
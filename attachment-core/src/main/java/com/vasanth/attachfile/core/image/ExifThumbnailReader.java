@@ -0,0 +1,208 @@
+package com.vasanth.attachfile.core.image;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Exif Thumbnail Reader.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to read orientation & embedded thumbnail from JPEG EXIF, reading only the segments before image data.
+ * <p>
+ * 2. Methods.
+ * 2.a. read - Used to read EXIF thumbnail from JPEG stream.
+ * <p>
+ * 3. Note.
+ * 3.a. Reads at most {@link #MAX_HEADER_SIZE} bytes, hence caller can mark the stream with it & reset to decode the image
+ * from the same stream when there is no usable thumbnail.
+ * 3.b. Malformed EXIF is treated as "no EXIF", only stream errors are thrown.
+ *
+ * @author Vasanth
+ */
+public class ExifThumbnailReader {
+
+    // Max bytes read - Enough for APP0 (JFIF) & APP1 (EXIF) segments, which are each at most 64KB, with their markers.
+    public static final int MAX_HEADER_SIZE = 132 * 1024;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP15 = 0xEF;
+    private static final int MARKER_COM = 0xFE;
+
+    private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+
+    /**
+     * Used to read EXIF thumbnail from JPEG stream.
+     *
+     * @param inputStream Stream positioned at the start of the content, it is not closed.
+     * @return EXIF thumbnail or NULL if the content is not JPEG or has no EXIF.
+     * @throws IOException If stream couldn't be read.
+     */
+    public static ExifThumbnail read(final InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        try {
+            if (dataInputStream.readUnsignedByte() != 0xFF || dataInputStream.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            int bytesRead = 2;
+            while (bytesRead + 4 <= MAX_HEADER_SIZE) {
+                if (dataInputStream.readUnsignedByte() != 0xFF) {
+                    return null;
+                }
+                int marker = dataInputStream.readUnsignedByte();
+                bytesRead += 2;
+                while (marker == 0xFF && bytesRead + 3 <= MAX_HEADER_SIZE) {
+                    // Fill bytes.
+                    marker = dataInputStream.readUnsignedByte();
+                    bytesRead++;
+                }
+                boolean isMetadataSegment = (marker >= MARKER_APP0 && marker <= MARKER_APP15) || marker == MARKER_COM;
+                if (!isMetadataSegment) {
+                    // Reached image data, there is no EXIF.
+                    return null;
+                }
+                int segmentLength = dataInputStream.readUnsignedShort() - 2;
+                bytesRead += 2;
+                if (segmentLength < 0 || bytesRead + segmentLength > MAX_HEADER_SIZE) {
+                    return null;
+                }
+                byte[] segment = new byte[segmentLength];
+                dataInputStream.readFully(segment);
+                bytesRead += segmentLength;
+                if (marker == MARKER_APP1 && startsWith(segment, EXIF_IDENTIFIER)) {
+                    return parseTiff(segment, EXIF_IDENTIFIER.length);
+                }
+            }
+            return null;
+        } catch (EOFException eofException) {
+            return null;
+        }
+    }
+
+    /**
+     * Used to parse TIFF structure of EXIF segment.
+     *
+     * @param segment   APP1 segment.
+     * @param tiffStart Offset of TIFF header in segment.
+     * @return EXIF thumbnail or NULL if TIFF structure is malformed.
+     */
+    private static ExifThumbnail parseTiff(final byte[] segment, final int tiffStart) {
+        TiffBuffer tiff = new TiffBuffer(segment, tiffStart);
+        if (!tiff.readByteOrder() || tiff.readUnsignedShort(2) != 42) {
+            return null;
+        }
+
+        // IFD0 - Orientation.
+        int orientation = ExifThumbnail.ORIENTATION_NORMAL;
+        long ifd0Offset = tiff.readUnsignedInt(4);
+        int ifd0EntryCount = tiff.readUnsignedShort(ifd0Offset);
+        if (ifd0EntryCount < 0) {
+            return null;
+        }
+        for (int i = 0; i < ifd0EntryCount; i++) {
+            long entryOffset = ifd0Offset + 2 + i * 12L;
+            if (tiff.readUnsignedShort(entryOffset) == TAG_ORIENTATION) {
+                int value = tiff.readUnsignedShort(entryOffset + 8);
+                if (value >= ExifThumbnail.ORIENTATION_NORMAL && value <= ExifThumbnail.ORIENTATION_ROTATE_270) {
+                    orientation = value;
+                }
+            }
+        }
+
+        // IFD1 - Thumbnail.
+        byte[] thumbnailBytes = null;
+        long ifd1Offset = tiff.readUnsignedInt(ifd0Offset + 2 + ifd0EntryCount * 12L);
+        int ifd1EntryCount = ifd1Offset > 0 ? tiff.readUnsignedShort(ifd1Offset) : -1;
+        if (ifd1EntryCount > 0) {
+            long thumbnailOffset = -1;
+            long thumbnailLength = -1;
+            for (int i = 0; i < ifd1EntryCount; i++) {
+                long entryOffset = ifd1Offset + 2 + i * 12L;
+                int tag = tiff.readUnsignedShort(entryOffset);
+                if (tag == TAG_JPEG_INTERCHANGE_FORMAT) {
+                    thumbnailOffset = tiff.readUnsignedInt(entryOffset + 8);
+                } else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+                    thumbnailLength = tiff.readUnsignedInt(entryOffset + 8);
+                }
+            }
+            long thumbnailStart = tiffStart + thumbnailOffset;
+            if (thumbnailOffset > 0 && thumbnailLength > 2 && thumbnailStart + thumbnailLength <= segment.length
+                    && (segment[(int) thumbnailStart] & 0xFF) == 0xFF && (segment[(int) thumbnailStart + 1] & 0xFF) == MARKER_SOI) {
+                thumbnailBytes = Arrays.copyOfRange(segment, (int) thumbnailStart, (int) (thumbnailStart + thumbnailLength));
+            }
+        }
+        return new ExifThumbnail(orientation, thumbnailBytes);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static boolean startsWith(final byte[] bytes, final byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads TIFF values relative to TIFF header, in its byte order. Out of bounds reads return -1.
+     */
+    private static class TiffBuffer {
+
+        private byte[] bytes;
+        private int start;
+        private boolean isLittleEndian;
+
+        TiffBuffer(final byte[] bytes, final int start) {
+            this.bytes = bytes;
+            this.start = start;
+        }
+
+        boolean readByteOrder() {
+            if (start + 2 > bytes.length) {
+                return false;
+            }
+            if (bytes[start] == 'I' && bytes[start + 1] == 'I') {
+                isLittleEndian = true;
+                return true;
+            }
+            return bytes[start] == 'M' && bytes[start + 1] == 'M';
+        }
+
+        int readUnsignedShort(final long offset) {
+            long position = start + offset;
+            if (offset < 0 || position + 2 > bytes.length) {
+                return -1;
+            }
+            int b0 = bytes[(int) position] & 0xFF;
+            int b1 = bytes[(int) position + 1] & 0xFF;
+            return isLittleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+        }
+
+        long readUnsignedInt(final long offset) {
+            long position = start + offset;
+            if (offset < 0 || position + 4 > bytes.length) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = bytes[(int) position + (isLittleEndian ? 3 - i : i)] & 0xFF;
+                value = (value << 8) | b;
+            }
+            return value;
+        }
+    }
+}
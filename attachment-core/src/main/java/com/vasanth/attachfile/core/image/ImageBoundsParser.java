@@ -0,0 +1,264 @@
+package com.vasanth.attachfile.core.image;
+
+import com.vasanth.attachfile.core.probe.AttachmentProbe;
+
+/**
+ * Image Bounds Parser.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to parse width & height of an image from its header, as the content is pushed to it - Without decoding & without
+ * buffering the content (See {@link AttachmentProbe}).
+ * 1.b. Supports JPEG, PNG, GIF, BMP & WebP - Same types {@code MimeTypeSniffer} detects as images, except HEIC.
+ * <p>
+ * 2. Methods.
+ * 2.a. consume - Used to push next bytes, returns FALSE once bounds are parsed or can't be.
+ * 2.b. isFound / getWidth / getHeight - Used to get parsed bounds.
+ * <p>
+ * 3. Note.
+ * 3.a. JPEG bounds come from its frame header (SOF), metadata segments before it (Like EXIF) are skipped as they are pushed.
+ * 3.b. Bounds are as stored, EXIF orientation is not applied - Same as BitmapFactory's bounds decode.
+ * 3.c. Gives up after MAX_SCAN_SIZE bytes, so that a malformed JPEG doesn't keep the probe reading.
+ *
+ * @author Vasanth
+ */
+public class ImageBoundsParser implements AttachmentProbe.Consumer {
+
+    // Header bytes needed to parse bounds of all types except JPEG.
+    private static final int HEADER_SIZE = 30;
+
+    private static final int MAX_SCAN_SIZE = 1024 * 1024;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+
+    // JPEG parse states.
+    private static final int STATE_MARKER_PREFIX = 1;
+    private static final int STATE_MARKER = 2;
+    private static final int STATE_LENGTH = 3;
+    private static final int STATE_SKIP = 4;
+    private static final int STATE_FRAME_HEADER = 5;
+
+    private byte[] header = new byte[HEADER_SIZE];
+    private int headerLength;
+    private boolean isJpeg;
+    private int jpegState = STATE_MARKER_PREFIX;
+    private int marker;
+    // Bytes of the length / frame header read so far, or bytes left to skip.
+    private int segmentBytes;
+    private int segmentValue;
+    private byte[] frameHeader = new byte[5];
+    private long scannedBytes;
+    private int width = -1;
+    private int height = -1;
+    private boolean isDone;
+
+    /**
+     * AttachmentProbe.Consumer Methods.
+     */
+    @Override
+    public boolean consume(final byte[] bytes, int offset, int length) {
+        if (isDone) {
+            return false;
+        }
+        scannedBytes += length;
+        if (!isJpeg) {
+            int copied = Math.min(length, HEADER_SIZE - headerLength);
+            System.arraycopy(bytes, offset, header, headerLength, copied);
+            headerLength += copied;
+            offset += copied;
+            length -= copied;
+            if (headerLength < HEADER_SIZE) {
+                return true;
+            }
+            if (!parseHeader()) {
+                return false;
+            }
+            // JPEG - Continue with the bytes after SOI.
+            consumeJpeg(header, 2, headerLength - 2);
+        }
+        consumeJpeg(bytes, offset, length);
+        if (!isDone && scannedBytes >= MAX_SCAN_SIZE) {
+            isDone = true;
+        }
+        return !isDone;
+    }
+
+    @Override
+    public void onEnd() {
+        if (!isJpeg && !isDone && parseHeader()) {
+            consumeJpeg(header, 2, headerLength - 2);
+        }
+        isDone = true;
+    }
+
+    /**
+     * Getter's.
+     */
+    public boolean isFound() {
+        return width > 0 && height > 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to parse bounds from header - Returns TRUE if it is JPEG, whose bounds come later in the content.
+     */
+    private boolean parseHeader() {
+        if (startsWith(0, 0xFF, MARKER_SOI)) {
+            isJpeg = true;
+            return true;
+        }
+        isDone = true;
+        if (startsWith(0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A) && startsWith(12, 'I', 'H', 'D', 'R')) {
+            setBounds(readInt(16, false), readInt(20, false));
+        } else if (startsWith(0, 'G', 'I', 'F', '8') && headerLength >= 10) {
+            setBounds(readShort(6, true), readShort(8, true));
+        } else if (startsWith(0, 'B', 'M') && headerLength >= 26) {
+            if (readInt(14, true) == 12) {
+                // OS/2 bitmap core header.
+                setBounds(readShort(18, true), readShort(20, true));
+            } else {
+                // Negative height is a top down bitmap.
+                setBounds(readInt(18, true), Math.abs(readInt(22, true)));
+            }
+        } else if (startsWith(0, 'R', 'I', 'F', 'F') && startsWith(8, 'W', 'E', 'B', 'P')) {
+            if (startsWith(12, 'V', 'P', '8', ' ') && startsWith(23, 0x9D, 0x01, 0x2A)) {
+                setBounds(readShort(26, true) & 0x3FFF, readShort(28, true) & 0x3FFF);
+            } else if (startsWith(12, 'V', 'P', '8', 'L') && startsWith(20, 0x2F)) {
+                int bits = readInt(21, true);
+                setBounds((bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1);
+            } else if (startsWith(12, 'V', 'P', '8', 'X')) {
+                setBounds(readInt24(24) + 1, readInt24(27) + 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Used to walk JPEG segments till the frame header, skipping segment payloads without buffering them.
+     */
+    private void consumeJpeg(final byte[] bytes, int offset, final int length) {
+        int end = offset + length;
+        while (offset < end && !isDone) {
+            if (jpegState == STATE_SKIP) {
+                int skipped = Math.min(segmentBytes, end - offset);
+                segmentBytes -= skipped;
+                offset += skipped;
+                if (segmentBytes == 0) {
+                    jpegState = STATE_MARKER_PREFIX;
+                }
+                continue;
+            }
+            int value = bytes[offset++] & 0xFF;
+            switch (jpegState) {
+                case STATE_MARKER_PREFIX:
+                    if (value != 0xFF) {
+                        isDone = true;
+                    } else {
+                        jpegState = STATE_MARKER;
+                    }
+                    break;
+                case STATE_MARKER:
+                    if (value == 0xFF) {
+                        // Fill bytes.
+                        break;
+                    }
+                    marker = value;
+                    if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                        // Markers without segment.
+                        jpegState = STATE_MARKER_PREFIX;
+                    } else if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                        // Reached image data without a frame header.
+                        isDone = true;
+                    } else {
+                        jpegState = STATE_LENGTH;
+                        segmentBytes = 0;
+                        segmentValue = 0;
+                    }
+                    break;
+                case STATE_LENGTH:
+                    segmentValue = (segmentValue << 8) | value;
+                    segmentBytes++;
+                    if (segmentBytes == 2) {
+                        if (segmentValue < 2) {
+                            isDone = true;
+                        } else if (isFrameHeader(marker)) {
+                            jpegState = STATE_FRAME_HEADER;
+                            segmentBytes = 0;
+                        } else {
+                            segmentBytes = segmentValue - 2;
+                            jpegState = segmentBytes > 0 ? STATE_SKIP : STATE_MARKER_PREFIX;
+                        }
+                    }
+                    break;
+                case STATE_FRAME_HEADER:
+                    frameHeader[segmentBytes++] = (byte) value;
+                    if (segmentBytes == frameHeader.length) {
+                        // Precision, height, width.
+                        setBounds(((frameHeader[3] & 0xFF) << 8) | (frameHeader[4] & 0xFF),
+                                ((frameHeader[1] & 0xFF) << 8) | (frameHeader[2] & 0xFF));
+                        isDone = true;
+                    }
+                    break;
+                default:
+                    isDone = true;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * SOF0 - SOF15, except DHT, JPG & DAC which share the range.
+     */
+    private static boolean isFrameHeader(final int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private void setBounds(final int width, final int height) {
+        if (width > 0 && height > 0) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private boolean startsWith(final int offset, final int... signature) {
+        if (headerLength < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readShort(final int offset, final boolean isLittleEndian) {
+        int b0 = header[offset] & 0xFF;
+        int b1 = header[offset + 1] & 0xFF;
+        return isLittleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private int readInt(final int offset, final boolean isLittleEndian) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = header[isLittleEndian ? offset + 3 - i : offset + i] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private int readInt24(final int offset) {
+        return (header[offset] & 0xFF) | ((header[offset + 1] & 0xFF) << 8) | ((header[offset + 2] & 0xFF) << 16);
+    }
+}
@@ -0,0 +1,70 @@
+package com.vasanth.attachfile.core.image;
+
+/**
+ * Perceptual Hash.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to compute difference hash (dHash) of an image from its pixels - 64 bits which stay close (Few differing bits) for
+ * the same image at another resolution or compression, & for near identical shots (Like a burst), unlike a content hash.
+ * <p>
+ * 2. Methods.
+ * 2.a. compute - Used to compute hash of ARGB pixels (Like Bitmap.getPixels of an already decoded thumbnail).
+ * <p>
+ * 3. Algorithm.
+ * 3.a. Image is reduced to GRID_WIDTH x GRID_HEIGHT luminance cells, each the average of its pixels.
+ * 3.b. Each bit is whether a cell is brighter than the cell on its right - Gradients survive scaling, brightness & color changes.
+ * <p>
+ * 4. Note.
+ * 4.a. Hash compares gradients, hence images without any (Like a blank page) all hash alike - Callers should expect those to match.
+ *
+ * @author Vasanth
+ */
+public class PerceptualHash {
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    /**
+     * Used to compute hash of an image.
+     *
+     * @param pixels ARGB pixels, row by row.
+     * @param width  Image width, at least 1.
+     * @param height Image height, at least 1.
+     * @return Hash.
+     */
+    public static long compute(final int[] pixels, final int width, final int height) {
+        long[] cellSums = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] cellCounts = new int[GRID_WIDTH * GRID_HEIGHT];
+        for (int y = 0; y < height; y++) {
+            int cellRow = (y * GRID_HEIGHT / height) * GRID_WIDTH;
+            int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[rowOffset + x];
+                int cell = cellRow + x * GRID_WIDTH / width;
+                // Luminance (ITU-R BT.601), scaled by 1000.
+                cellSums[cell] += 299 * ((pixel >> 16) & 0xFF) + 587 * ((pixel >> 8) & 0xFF) + 114 * (pixel & 0xFF);
+                cellCounts[cell]++;
+            }
+        }
+        // Image smaller than the grid leaves cells without pixels - Those take the cell on their left.
+        long[] cells = new long[GRID_WIDTH * GRID_HEIGHT];
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cellCounts[cell] > 0) {
+                cells[cell] = cellSums[cell] / cellCounts[cell];
+            } else if (cell % GRID_WIDTH > 0) {
+                cells[cell] = cells[cell - 1];
+            } else if (cell >= GRID_WIDTH) {
+                cells[cell] = cells[cell - GRID_WIDTH];
+            }
+        }
+
+        long hash = 0L;
+        for (int row = 0; row < GRID_HEIGHT; row++) {
+            for (int column = 0; column < GRID_WIDTH - 1; column++) {
+                int cell = row * GRID_WIDTH + column;
+                hash = (hash << 1) | (cells[cell] > cells[cell + 1] ? 1L : 0L);
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,436 @@
+package com.vasanth.attachfile.core.index;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Attachment Index.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Collection of attachments which keeps its aggregates (Count, total size & count per mimeType category) & its sorted views
+ * (By name, size & type) up to date on every add / remove, instead of rescanning all attachments when they are needed.
+ * 1.b. Attachments are found by name prefix (Through name sorted view) or by name substring (Through an index of name trigrams).
+ * <p>
+ * 2. Methods.
+ * 2.a. add / update / remove - O(log n) plus name length, update re-indexes attachment whose detail changed (Like size known
+ * after resolution).
+ * 2.b. getTotalSize, getCategoryCount, getCategoryCounts - Aggregates, O(1).
+ * 2.c. getSorted - Attachments in one of SORT_BY_* order.
+ * 2.d. findByNamePrefix / findByName - Attachments whose name starts with / contains the query, ignoring case.
+ * <p>
+ * 3. Note.
+ * 3.a. Index keeps its own copy of name, size & mimeType taken at add / update time, hence changes to the detail are only seen
+ * after {@link #update(Object, AttachmentDetail)}.
+ * 3.b. Items are compared by identity.
+ * 3.c. Not thread safe, use from a single thread (Like main thread).
+ *
+ * @param <T> Type of the indexed item (Like attachment view).
+ * @author Vasanth
+ */
+public class AttachmentIndex<T> implements Iterable<T> {
+
+    public static final int SORT_BY_ADDED = 0;
+    public static final int SORT_BY_NAME = 1;
+    public static final int SORT_BY_SIZE = 2;
+    public static final int SORT_BY_TYPE = 3;
+
+    // Category of attachment whose mimeType is not known.
+    public static final String CATEGORY_UNKNOWN = "unknown";
+
+    private static final int GRAM_LENGTH = 3;
+
+    private Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private TreeSet<Entry<T>> entriesByAdded = new TreeSet<>(new AddedComparator<T>());
+    private TreeSet<Entry<T>> entriesByName = new TreeSet<>(new NameComparator<T>());
+    private TreeSet<Entry<T>> entriesBySize = new TreeSet<>(new SizeComparator<T>());
+    private TreeSet<Entry<T>> entriesByType = new TreeSet<>(new TypeComparator<T>());
+    private Map<String, Set<Entry<T>>> entriesByGram = new HashMap<>();
+    private Map<String, Integer> categoryCounts = new HashMap<>();
+    private long totalSize;
+    private long nextSequence;
+
+    /**
+     * Used to add item, if item is already added it is updated.
+     *
+     * @param item             Item.
+     * @param attachmentDetail Detail of the item's attachment.
+     */
+    public void add(final T item, final AttachmentDetail attachmentDetail) {
+        Entry<T> previousEntry = entries.get(item);
+        if (previousEntry != null) {
+            removeEntry(previousEntry);
+        }
+        // Updated item keeps its position in added order.
+        long sequence = previousEntry != null ? previousEntry.sequence : nextSequence++;
+        Entry<T> entry = new Entry<>(item, attachmentDetail, sequence);
+        entries.put(item, entry);
+        entriesByAdded.add(entry);
+        entriesByName.add(entry);
+        entriesBySize.add(entry);
+        entriesByType.add(entry);
+        for (String gram : getGrams(entry.lowerCaseName)) {
+            Set<Entry<T>> gramEntries = entriesByGram.get(gram);
+            if (gramEntries == null) {
+                gramEntries = new HashSet<>();
+                entriesByGram.put(gram, gramEntries);
+            }
+            gramEntries.add(entry);
+        }
+        categoryCounts.put(entry.category, getCategoryCount(entry.category) + 1);
+        totalSize += entry.countedSize;
+    }
+
+    /**
+     * Used to re-index item whose detail changed.
+     *
+     * @param item             Item.
+     * @param attachmentDetail Current detail of the item's attachment.
+     * @return TRUE if item was in index.
+     */
+    public boolean update(final T item, final AttachmentDetail attachmentDetail) {
+        if (!entries.containsKey(item)) {
+            return false;
+        }
+        add(item, attachmentDetail);
+        return true;
+    }
+
+    /**
+     * Used to remove item.
+     *
+     * @param item Item.
+     * @return TRUE if item was in index.
+     */
+    public boolean remove(final T item) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            return false;
+        }
+        removeEntry(entry);
+        return true;
+    }
+
+    public boolean contains(final T item) {
+        return entries.containsKey(item);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return Total size of all attachments, attachments whose size is not known are counted as size "0".
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @param category MimeType category (Like "image", "video", "application") or {@link #CATEGORY_UNKNOWN}.
+     * @return Number of attachments of the category.
+     */
+    public int getCategoryCount(final String category) {
+        Integer count = categoryCounts.get(category);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * @return Number of attachments per mimeType category, only categories with attachments.
+     */
+    public Map<String, Integer> getCategoryCounts() {
+        return new HashMap<>(categoryCounts);
+    }
+
+    /**
+     * Used to get items in added order.
+     *
+     * @return Iterator, item must not be added or removed while iterating.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new ItemIterator<>(entriesByAdded.iterator());
+    }
+
+    /**
+     * Used to get items in the given order.
+     *
+     * @param sortBy      One of SORT_BY_*.
+     * @param isAscending TRUE for ascending order.
+     * @return Items in the given order.
+     */
+    public List<T> getSorted(final int sortBy, final boolean isAscending) {
+        List<T> items = new ArrayList<>(entries.size());
+        for (Entry<T> entry : getEntries(sortBy, isAscending)) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    /**
+     * Used to find items whose name starts with the given prefix, ignoring case.
+     *
+     * @param prefix Name prefix.
+     * @return Items in name order.
+     */
+    public List<T> findByNamePrefix(final String prefix) {
+        String lowerCasePrefix = toLowerCase(prefix);
+        List<T> items = new ArrayList<>();
+        // Entries from the first name >= prefix, till name no longer starts with it.
+        for (Entry<T> entry : entriesByName.tailSet(Entry.<T>createProbe(lowerCasePrefix), true)) {
+            if (!entry.lowerCaseName.startsWith(lowerCasePrefix)) {
+                break;
+            }
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    /**
+     * Used to find items whose name contains the given query, ignoring case.
+     *
+     * @param query Name substring.
+     * @return Items in name order.
+     */
+    public List<T> findByName(final String query) {
+        String lowerCaseQuery = toLowerCase(query);
+        Iterable<Entry<T>> candidates = entriesByName;
+        if (lowerCaseQuery.length() >= GRAM_LENGTH) {
+            // Only names having the rarest gram of query can contain it.
+            Set<Entry<T>> rarestGramEntries = null;
+            for (String gram : getGrams(lowerCaseQuery)) {
+                Set<Entry<T>> gramEntries = entriesByGram.get(gram);
+                if (gramEntries == null) {
+                    return new ArrayList<>();
+                }
+                if (rarestGramEntries == null || gramEntries.size() < rarestGramEntries.size()) {
+                    rarestGramEntries = gramEntries;
+                }
+            }
+            List<Entry<T>> sortedCandidates = new ArrayList<>(rarestGramEntries);
+            Collections.sort(sortedCandidates, entriesByName.comparator());
+            candidates = sortedCandidates;
+        }
+        List<T> items = new ArrayList<>();
+        for (Entry<T> entry : candidates) {
+            if (entry.lowerCaseName.contains(lowerCaseQuery)) {
+                items.add(entry.item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Used to get mimeType category - Part before "/" (Like "image" for "image/png").
+     *
+     * @param mimeType MimeType, can be NULL.
+     * @return Category in lower case, {@link #CATEGORY_UNKNOWN} if mimeType is not known.
+     */
+    public static String getCategory(final String mimeType) {
+        if (mimeType == null || mimeType.length() == 0) {
+            return CATEGORY_UNKNOWN;
+        }
+        int separatorIndex = mimeType.indexOf('/');
+        return toLowerCase(separatorIndex > 0 ? mimeType.substring(0, separatorIndex) : mimeType);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void removeEntry(final Entry<T> entry) {
+        entries.remove(entry.item);
+        entriesByAdded.remove(entry);
+        entriesByName.remove(entry);
+        entriesBySize.remove(entry);
+        entriesByType.remove(entry);
+        for (String gram : getGrams(entry.lowerCaseName)) {
+            Set<Entry<T>> gramEntries = entriesByGram.get(gram);
+            if (gramEntries != null) {
+                gramEntries.remove(entry);
+                if (gramEntries.isEmpty()) {
+                    entriesByGram.remove(gram);
+                }
+            }
+        }
+        int categoryCount = getCategoryCount(entry.category) - 1;
+        if (categoryCount > 0) {
+            categoryCounts.put(entry.category, categoryCount);
+        } else {
+            categoryCounts.remove(entry.category);
+        }
+        totalSize -= entry.countedSize;
+    }
+
+    private NavigableSet<Entry<T>> getEntries(final int sortBy, final boolean isAscending) {
+        NavigableSet<Entry<T>> sortedEntries;
+        switch (sortBy) {
+            case SORT_BY_NAME:
+                sortedEntries = entriesByName;
+                break;
+
+            case SORT_BY_SIZE:
+                sortedEntries = entriesBySize;
+                break;
+
+            case SORT_BY_TYPE:
+                sortedEntries = entriesByType;
+                break;
+
+            default:
+                sortedEntries = entriesByAdded;
+                break;
+        }
+        return isAscending ? sortedEntries : sortedEntries.descendingSet();
+    }
+
+    /**
+     * Used to get distinct grams of the name, names shorter than a gram have none.
+     */
+    private static Set<String> getGrams(final String lowerCaseName) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= lowerCaseName.length(); i++) {
+            grams.add(lowerCaseName.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String toLowerCase(final String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static int compareLong(final long first, final long second) {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+
+    /**
+     * Indexed item, with its own copy of the detail it is sorted by.
+     */
+    private static class Entry<T> {
+
+        private T item;
+        private String lowerCaseName;
+        private String lowerCaseMimeType;
+        private String category;
+        private long size;
+        private long countedSize;
+        private long sequence;
+
+        Entry(final T item, final AttachmentDetail attachmentDetail, final long sequence) {
+            this.item = item;
+            this.lowerCaseName = toLowerCase(attachmentDetail.getName());
+            this.lowerCaseMimeType = toLowerCase(attachmentDetail.getMimeType());
+            this.category = getCategory(attachmentDetail.getMimeType());
+            this.size = attachmentDetail.getSize();
+            this.countedSize = Math.max(0, attachmentDetail.getSize());
+            this.sequence = sequence;
+        }
+
+        /**
+         * Used to create entry which sorts before all entries with the given name, or any name after it.
+         */
+        static <T> Entry<T> createProbe(final String lowerCaseName) {
+            Entry<T> entry = new Entry<>(null, new AttachmentDetail(null, 0, null), Long.MIN_VALUE);
+            entry.lowerCaseName = lowerCaseName;
+            return entry;
+        }
+    }
+
+    /**
+     * Added order.
+     */
+    private static class AddedComparator<T> implements Comparator<Entry<T>> {
+
+        @Override
+        public int compare(Entry<T> first, Entry<T> second) {
+            return compareLong(first.sequence, second.sequence);
+        }
+    }
+
+    /**
+     * Name order - Equal names in added order.
+     */
+    private static class NameComparator<T> implements Comparator<Entry<T>> {
+
+        @Override
+        public int compare(Entry<T> first, Entry<T> second) {
+            int result = first.lowerCaseName.compareTo(second.lowerCaseName);
+            return result != 0 ? result : compareLong(first.sequence, second.sequence);
+        }
+    }
+
+    /**
+     * Size order - Equal sizes in name order.
+     */
+    private static class SizeComparator<T> implements Comparator<Entry<T>> {
+
+        @Override
+        public int compare(Entry<T> first, Entry<T> second) {
+            int result = compareLong(first.size, second.size);
+            if (result == 0) {
+                result = first.lowerCaseName.compareTo(second.lowerCaseName);
+            }
+            return result != 0 ? result : compareLong(first.sequence, second.sequence);
+        }
+    }
+
+    /**
+     * Type order - Attachments of unknown type last, equal types in name order.
+     */
+    private static class TypeComparator<T> implements Comparator<Entry<T>> {
+
+        @Override
+        public int compare(Entry<T> first, Entry<T> second) {
+            boolean isFirstUnknown = first.lowerCaseMimeType.length() == 0;
+            boolean isSecondUnknown = second.lowerCaseMimeType.length() == 0;
+            int result = isFirstUnknown == isSecondUnknown ? first.lowerCaseMimeType.compareTo(second.lowerCaseMimeType)
+                    : (isFirstUnknown ? 1 : -1);
+            if (result == 0) {
+                result = first.lowerCaseName.compareTo(second.lowerCaseName);
+            }
+            return result != 0 ? result : compareLong(first.sequence, second.sequence);
+        }
+    }
+
+    /**
+     * Iterates items of entries, removal through iterator is not supported.
+     */
+    private static class ItemIterator<T> implements Iterator<T> {
+
+        private Iterator<Entry<T>> entryIterator;
+
+        ItemIterator(final Iterator<Entry<T>> entryIterator) {
+            this.entryIterator = entryIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entryIterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return entryIterator.next().item;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
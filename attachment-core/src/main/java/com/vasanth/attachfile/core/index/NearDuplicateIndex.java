@@ -0,0 +1,242 @@
+package com.vasanth.attachfile.core.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Near Duplicate Index.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to index values by a 64 bit perceptual hash (See {@link com.vasanth.attachfile.core.image.PerceptualHash}) & find
+ * the ones within a hamming distance of a hash, without comparing it with every indexed hash (Multi index hashing).
+ * <p>
+ * 2. Methods.
+ * 2.a. add - Used to index a value.
+ * 2.b. remove - Used to remove a value.
+ * 2.c. find - Used to find values whose hash is within max distance, nearest first.
+ * <p>
+ * 3. Algorithm.
+ * 3.a. Hash is split into TABLE_COUNT substrings of 12 / 13 bits, each indexed in its own table.
+ * 3.b. Two hashes within distance d have at least one substring within distance d / TABLE_COUNT (Pigeonhole) - Hence find probes,
+ * in each table, only the buckets within that distance of the query's substring & compares full hash of the values found there.
+ * 3.c. Up to max distance 9, that's 14 buckets per table holding about 1 in 8192 values each - Against all values for a linear
+ * scan. Longer substrings mean fewer values per bucket but many more buckets to probe (137 per table for 16 bits), & from max
+ * distance 10 on each table probes 92 buckets, hence 13 bits suit near duplicate distances (Around 8).
+ * <p>
+ * 4. Note.
+ * 4.a. Buckets of a table are an array of lists created on first use, hence index holds about 160 KB of bucket arrays once it
+ * has values.
+ * 4.b. BK tree was measured too - At max distance 8 it compares about half of 10,000 hashes, since 64 bit hashes spread around
+ * distance 32 & its pruning needs distances much larger than max distance.
+ * 4.c. Not thread safe.
+ *
+ * @param <V> Value type, used as key - Hence must implement equals & hashCode.
+ * @author Vasanth
+ */
+public class NearDuplicateIndex<V> {
+
+    private static final int TABLE_COUNT = 5;
+    // Bits & position of the substring of each table.
+    private static final int[] SUBSTRING_BITS = {13, 13, 13, 13, 12};
+    private static final int[] SUBSTRING_SHIFTS = {0, 13, 26, 39, 52};
+
+    private List<Entry<V>>[][] tables;
+    private Map<V, Entry<V>> entries = new HashMap<>();
+    private int findCount;
+    private long comparedCount;
+
+    /**
+     * Entry.
+     */
+    private static class Entry<V> {
+
+        private long hash;
+        private V value;
+        // Find which last compared this entry - So that an entry found in several tables is compared once per find.
+        private int lastFindCount;
+
+        Entry(final long hash, final V value) {
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Match.
+     */
+    public static class Match<V> {
+
+        private V value;
+        private long hash;
+        private int distance;
+
+        Match(final V value, final long hash, final int distance) {
+            this.value = value;
+            this.hash = hash;
+            this.distance = distance;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return "Match{" +
+                    "value=" + value +
+                    ", distance=" + distance +
+                    '}';
+        }
+    }
+
+    /**
+     * Used to index a value, replacing its previous hash if it is already indexed.
+     *
+     * @param hash  Hash.
+     * @param value Value.
+     */
+    public void add(final long hash, final V value) {
+        remove(value);
+        if (tables == null) {
+            tables = createTables();
+        }
+        Entry<V> entry = new Entry<>(hash, value);
+        entries.put(value, entry);
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            List<Entry<V>>[] buckets = tables[table];
+            int substring = substring(hash, table);
+            if (buckets[substring] == null) {
+                buckets[substring] = new ArrayList<>(1);
+            }
+            buckets[substring].add(entry);
+        }
+    }
+
+    /**
+     * Used to remove a value.
+     *
+     * @param value Value.
+     * @return TRUE if value was indexed.
+     */
+    public boolean remove(final V value) {
+        Entry<V> entry = entries.remove(value);
+        if (entry == null) {
+            return false;
+        }
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            List<Entry<V>>[] buckets = tables[table];
+            int substring = substring(entry.hash, table);
+            buckets[substring].remove(entry);
+            if (buckets[substring].isEmpty()) {
+                buckets[substring] = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Used to find values whose hash is within max distance of the given hash.
+     *
+     * @param hash        Hash.
+     * @param maxDistance Max hamming distance, inclusive.
+     * @return Matches, nearest first - Empty if there is none.
+     */
+    public List<Match<V>> find(final long hash, final int maxDistance) {
+        List<Match<V>> matches = new ArrayList<>();
+        if (entries.isEmpty()) {
+            return matches;
+        }
+        findCount++;
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            int substringDistance = Math.min(SUBSTRING_BITS[table], maxDistance / TABLE_COUNT);
+            probe(tables[table], SUBSTRING_BITS[table], substring(hash, table), substringDistance, 0, hash, maxDistance, matches);
+        }
+        Collections.sort(matches, new Comparator<Match<V>>() {
+            @Override
+            public int compare(final Match<V> match1, final Match<V> match2) {
+                return match1.distance - match2.distance;
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Used to get hamming distance of two hashes.
+     *
+     * @param hash1 Hash.
+     * @param hash2 Hash.
+     * @return Number of differing bits.
+     */
+    public static int distance(final long hash1, final long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static int substring(final long hash, final int table) {
+        return (int) (hash >>> SUBSTRING_SHIFTS[table]) & ((1 << SUBSTRING_BITS[table]) - 1);
+    }
+
+    // Java has no generic array creation - Arrays only ever hold List<Entry<V>>, hence the cast is safe.
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <V> List<Entry<V>>[][] createTables() {
+        List<Entry<V>>[][] tables = new List[TABLE_COUNT][];
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            tables[table] = new List[1 << SUBSTRING_BITS[table]];
+        }
+        return tables;
+    }
+
+    /**
+     * Used to compare values of the bucket & of every bucket reached by flipping up to flipCount more bits, from fromBit on.
+     */
+    private void probe(final List<Entry<V>>[] buckets, final int substringBits, final int substring, final int flipCount,
+                       final int fromBit, final long hash, final int maxDistance, final List<Match<V>> matches) {
+        List<Entry<V>> bucket = buckets[substring];
+        if (bucket != null) {
+            for (Entry<V> entry : bucket) {
+                if (entry.lastFindCount == findCount) {
+                    continue;
+                }
+                entry.lastFindCount = findCount;
+                comparedCount++;
+                int distance = distance(entry.hash, hash);
+                if (distance <= maxDistance) {
+                    matches.add(new Match<>(entry.value, entry.hash, distance));
+                }
+            }
+        }
+        if (flipCount > 0) {
+            for (int bit = fromBit; bit < substringBits; bit++) {
+                probe(buckets, substringBits, substring ^ (1 << bit), flipCount - 1, bit + 1, hash, maxDistance, matches);
+            }
+        }
+    }
+
+    /**
+     * Getter's.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Hashes compared by all finds so far, for measuring how many of the indexed hashes a find skips.
+     */
+    public long getComparedCount() {
+        return comparedCount;
+    }
+}
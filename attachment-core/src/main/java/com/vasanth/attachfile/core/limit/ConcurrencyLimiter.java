@@ -0,0 +1,177 @@
+package com.vasanth.attachfile.core.limit;
+
+import com.vasanth.attachfile.core.retry.FailureClassifier;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Concurrency Limiter.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to limit how many operations run in parallel against one provider, adapting the limit to how the provider copes
+ * with it - Additive increase, multiplicative decrease (AIMD), like TCP congestion control.
+ * <p>
+ * 2. Methods.
+ * 2.a. execute - Used to run an operation once a permit is free.
+ * 2.b. getLimit / getInFlightCount / getQueueDepth / getDecreaseCount - Current state, for monitoring.
+ * <p>
+ * 3. Adaptation.
+ * 3.a. Increase - Limit grows by 1 / limit for every success while the limit was in use, hence by about 1 per limit's worth of
+ * operations. It doesn't grow while operations don't fill it.
+ * 3.b. Decrease - Limit is multiplied by BACKOFF_RATIO on a transient failure (See {@link FailureClassifier}), or when latency of a
+ * sampled operation exceeds LATENCY_TOLERANCE times the baseline (Lowest latency seen, slowly following latency upwards).
+ * 3.c. Limit decreases at most once per window - Operations which started before the last decrease don't decrease it again, so that
+ * a burst of failures of one overloaded moment halves the limit once.
+ * <p>
+ * 4. Note.
+ * 4.a. Only operations whose cost doesn't depend on content size (Like a metadata query) should be latency sampled - Reading a large
+ * file is slow without the provider being overloaded.
+ * 4.b. Methods are thread safe, waiting for a permit stops if the calling thread is interrupted.
+ *
+ * @author Vasanth
+ */
+public class ConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_TOLERANCE = 3.0;
+    // Baseline moves 1 / BASELINE_DECAY of the way towards a slower latency per sample.
+    private static final int BASELINE_DECAY = 64;
+
+    private double limit;
+    private int minLimit;
+    private int maxLimit;
+    private int inFlightCount;
+    private int queueDepth;
+    private long baselineLatencyNanos;
+    private long lastDecreaseNanos;
+    private long decreaseCount;
+
+    /**
+     * Constructor.
+     *
+     * @param initialLimit Limit to start with.
+     * @param minLimit     Limit never goes below this, at least 1.
+     * @param maxLimit     Limit never goes above this.
+     */
+    public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * Used to run an operation once a permit is free, on the calling thread.
+     *
+     * @param operation        Operation.
+     * @param isLatencySampled TRUE if latency of the operation should drive the limit (See note 4.a).
+     * @param <V>              Result type.
+     * @return Result of the operation.
+     * @throws Exception Failure of the operation, or InterruptedException if interrupted while waiting for a permit.
+     */
+    public <V> V execute(final Callable<V> operation, final boolean isLatencySampled) throws Exception {
+        acquire();
+        long startNanos = System.nanoTime();
+        try {
+            V result = operation.call();
+            onSucceeded(startNanos, isLatencySampled ? System.nanoTime() - startNanos : -1L);
+            return result;
+        } catch (Exception exp) {
+            onFailed(startNanos, FailureClassifier.classify(exp));
+            throw exp;
+        }
+    }
+
+    /**
+     * Getter's.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public synchronized long getDecreaseCount() {
+        return decreaseCount;
+    }
+
+    public synchronized long getBaselineLatencyNanos() {
+        return baselineLatencyNanos;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private synchronized void acquire() throws InterruptedException {
+        if (inFlightCount >= (int) limit) {
+            queueDepth++;
+            try {
+                while (inFlightCount >= (int) limit) {
+                    wait();
+                }
+            } finally {
+                queueDepth--;
+            }
+        }
+        inFlightCount++;
+    }
+
+    private synchronized void onSucceeded(final long startNanos, final long latencyNanos) {
+        boolean isLimitInUse = inFlightCount >= (int) limit;
+        inFlightCount--;
+        if (latencyNanos >= 0 && updateBaseline(latencyNanos)) {
+            decrease(startNanos);
+        } else if (isLimitInUse) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        notifyAll();
+    }
+
+    private synchronized void onFailed(final long startNanos, final int failureType) {
+        inFlightCount--;
+        if (failureType == FailureClassifier.FAILURE_TYPE_TRANSIENT) {
+            decrease(startNanos);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Used to update baseline with a latency sample - Returns TRUE if sample is too slow compared to baseline.
+     */
+    private boolean updateBaseline(final long latencyNanos) {
+        if (baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos) {
+            baselineLatencyNanos = latencyNanos;
+            return false;
+        }
+        boolean isTooSlow = latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE;
+        baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) / BASELINE_DECAY;
+        return isTooSlow;
+    }
+
+    private void decrease(final long startNanos) {
+        // Started before the last decrease - Its outcome reflects the limit which was already decreased.
+        if (startNanos - lastDecreaseNanos < 0) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        lastDecreaseNanos = System.nanoTime();
+        decreaseCount++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConcurrencyLimiter{" +
+                "limit=" + String.format("%.2f", limit) +
+                ", inFlightCount=" + inFlightCount +
+                ", queueDepth=" + queueDepth +
+                ", baselineLatencyMillis=" + baselineLatencyNanos / 1000000 +
+                ", decreaseCount=" + decreaseCount +
+                '}';
+    }
+}
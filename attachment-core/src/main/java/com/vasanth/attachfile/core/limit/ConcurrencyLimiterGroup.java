@@ -0,0 +1,86 @@
+package com.vasanth.attachfile.core.limit;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Concurrency Limiter Group.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to keep a {@link ConcurrencyLimiter} per key (Like uri authority), so that each provider gets a limit adapted to
+ * itself - A provider which copes with many parallel reads isn't held back by one which throttles them, & vice versa.
+ * <p>
+ * 2. Methods.
+ * 2.a. execute - Used to run an operation under the limiter of its key.
+ * 2.b. getLimiter - Used to get limiter of a key, created on first use.
+ * 2.c. getLimiters - Used to get current limiters by key, for monitoring limits & queue depths.
+ * <p>
+ * 3. Note.
+ * 3.a. Methods are thread safe.
+ *
+ * @author Vasanth
+ */
+public class ConcurrencyLimiterGroup {
+
+    // Key used for operations without a key (Like file uri's, which have no authority).
+    private static final String DEFAULT_KEY = "";
+
+    private int initialLimit;
+    private int minLimit;
+    private int maxLimit;
+    private Map<String, ConcurrencyLimiter> limiters = new TreeMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param initialLimit Limit each key starts with.
+     * @param minLimit     Min limit of each key.
+     * @param maxLimit     Max limit of each key.
+     */
+    public ConcurrencyLimiterGroup(final int initialLimit, final int minLimit, final int maxLimit) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Used to run an operation under the limiter of its key, on the calling thread.
+     *
+     * @param key              Key, can be NULL.
+     * @param operation        Operation.
+     * @param isLatencySampled TRUE if latency of the operation should drive the limit.
+     * @param <V>              Result type.
+     * @return Result of the operation.
+     * @throws Exception Failure of the operation, or InterruptedException if interrupted while waiting for a permit.
+     * @see ConcurrencyLimiter#execute(Callable, boolean)
+     */
+    public <V> V execute(final String key, final Callable<V> operation, final boolean isLatencySampled) throws Exception {
+        return getLimiter(key).execute(operation, isLatencySampled);
+    }
+
+    /**
+     * Used to get limiter of a key, created on first use.
+     *
+     * @param key Key, can be NULL.
+     * @return Limiter.
+     */
+    public synchronized ConcurrencyLimiter getLimiter(final String key) {
+        String limiterKey = key != null ? key : DEFAULT_KEY;
+        ConcurrencyLimiter concurrencyLimiter = limiters.get(limiterKey);
+        if (concurrencyLimiter == null) {
+            concurrencyLimiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+            limiters.put(limiterKey, concurrencyLimiter);
+        }
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Used to get current limiters by key.
+     *
+     * @return Copy of limiters by key, sorted by key.
+     */
+    public synchronized Map<String, ConcurrencyLimiter> getLimiters() {
+        return new TreeMap<>(limiters);
+    }
+}
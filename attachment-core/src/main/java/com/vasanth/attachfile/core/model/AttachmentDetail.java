@@ -0,0 +1,72 @@
+package com.vasanth.attachfile.core.model;
+
+/**
+ * Attachment Detail.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold platform independent details about attachment file (name, size & mimeType).
+ * 1.b. Platform specific models (Like app's AttachmentFileDetail holding Uri) extend this model.
+ *
+ * @author Vasanth
+ */
+public class AttachmentDetail {
+
+    // Size used when size of the attachment is not known yet.
+    public static final long UNKNOWN_SIZE = -1L;
+
+    private String name;
+    private long size;
+    private String mimeType;
+
+    /**
+     * Constructor.
+     *
+     * @param name     Attachment file name.
+     * @param size     Attachment file size in Bytes, or {@link #UNKNOWN_SIZE}.
+     * @param mimeType Attachment file mimeType.
+     */
+    public AttachmentDetail(final String name, final long size, final String mimeType) {
+        this.name = name;
+        this.size = size;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "AttachmentDetail{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", mimeType='" + mimeType + '\'' +
+                '}';
+    }
+}
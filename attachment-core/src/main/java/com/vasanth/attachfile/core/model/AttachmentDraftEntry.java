@@ -0,0 +1,65 @@
+package com.vasanth.attachfile.core.model;
+
+/**
+ * Attachment Draft Entry.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold a single attachment of a draft, as journaled to disk - Its location, resolved detail & thumbnail cache key.
+ *
+ * @author Vasanth
+ */
+public class AttachmentDraftEntry {
+
+    private String location;
+    private AttachmentDetail attachmentDetail;
+    private String thumbnailKey;
+
+    /**
+     * Constructor.
+     *
+     * @param location         Attachment location (Like uri string).
+     * @param attachmentDetail Resolved attachment detail.
+     * @param thumbnailKey     Key of the cached thumbnail, NULL if thumbnail is not cached.
+     */
+    public AttachmentDraftEntry(final String location, final AttachmentDetail attachmentDetail, final String thumbnailKey) {
+        this.location = location;
+        this.attachmentDetail = attachmentDetail;
+        this.thumbnailKey = thumbnailKey;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public AttachmentDetail getAttachmentDetail() {
+        return attachmentDetail;
+    }
+
+    public void setAttachmentDetail(AttachmentDetail attachmentDetail) {
+        this.attachmentDetail = attachmentDetail;
+    }
+
+    public String getThumbnailKey() {
+        return thumbnailKey;
+    }
+
+    public void setThumbnailKey(String thumbnailKey) {
+        this.thumbnailKey = thumbnailKey;
+    }
+
+    @Override
+    public String toString() {
+        return "AttachmentDraftEntry{" +
+                "location='" + location + '\'' +
+                ", attachmentDetail=" + attachmentDetail +
+                ", thumbnailKey='" + thumbnailKey + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package com.vasanth.attachfile.core.model;
+
+/**
+ * Attachment Probe Result.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold what a single read of the attachment content tells - Filled in attachment detail, fingerprint & image
+ * dimensions (See AttachmentProbe).
+ *
+ * @author Vasanth
+ */
+public class AttachmentProbeResult {
+
+    // Dimension used when attachment is not an image or its bounds couldn't be parsed.
+    public static final int UNKNOWN_DIMENSION = -1;
+
+    private AttachmentDetail attachmentDetail;
+    private String fingerprint;
+    private int width = UNKNOWN_DIMENSION;
+    private int height = UNKNOWN_DIMENSION;
+    private long bytesRead;
+
+    /**
+     * Constructor.
+     *
+     * @param attachmentDetail Attachment detail, with size & mimeType filled in.
+     */
+    public AttachmentProbeResult(final AttachmentDetail attachmentDetail) {
+        this.attachmentDetail = attachmentDetail;
+    }
+
+    /**
+     * @return TRUE if image dimensions are known.
+     */
+    public boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public AttachmentDetail getAttachmentDetail() {
+        return attachmentDetail;
+    }
+
+    public void setAttachmentDetail(AttachmentDetail attachmentDetail) {
+        this.attachmentDetail = attachmentDetail;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "AttachmentProbeResult{" +
+                "attachmentDetail=" + attachmentDetail +
+                ", fingerprint='" + fingerprint + '\'' +
+                ", width=" + width +
+                ", height=" + height +
+                ", bytesRead=" + bytesRead +
+                '}';
+    }
+}
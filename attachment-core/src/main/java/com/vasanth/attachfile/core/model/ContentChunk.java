@@ -0,0 +1,69 @@
+package com.vasanth.attachfile.core.model;
+
+/**
+ * Content Chunk.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold a single content defined chunk of an attachment - Its place in the content & digest of its bytes (See
+ * ContentChunker).
+ *
+ * @author Vasanth
+ */
+public class ContentChunk {
+
+    private long offset;
+    private int length;
+    private String digest;
+
+    /**
+     * Constructor.
+     *
+     * @param offset Offset of the chunk in the content.
+     * @param length Chunk length in bytes.
+     * @param digest SHA-256 of chunk bytes, in lower case hex.
+     */
+    public ContentChunk(final long offset, final int length, final String digest) {
+        this.offset = offset;
+        this.length = length;
+        this.digest = digest;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "ContentChunk{" +
+                "offset=" + offset +
+                ", length=" + length +
+                ", digest='" + digest + '\'' +
+                '}';
+    }
+}
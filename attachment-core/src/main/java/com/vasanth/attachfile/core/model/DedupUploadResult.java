@@ -0,0 +1,97 @@
+package com.vasanth.attachfile.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dedup Upload Result.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold the outcome of a dedup aware upload of an attachment - Its chunks, id the target assigned to the content &
+ * how many bytes didn't need to be sent (See DedupUploader).
+ * <p>
+ * 2. Note.
+ * 2.a. Saved bytes don't account for the chunk digests sent to ask the target which chunks it has - 64 bytes per chunk.
+ *
+ * @author Vasanth
+ */
+public class DedupUploadResult {
+
+    private String contentId;
+    private List<ContentChunk> contentChunks = new ArrayList<>();
+    private long totalBytes;
+    private long uploadedBytes;
+    private int uploadedChunkCount;
+
+    /**
+     * @return Bytes which were not sent as the target already had them (Or they repeat within the attachment).
+     */
+    public long getSavedBytes() {
+        return totalBytes - uploadedBytes;
+    }
+
+    /**
+     * @return Fraction of content bytes which were not sent, 0 (Nothing deduplicated) to 1 (Target had every chunk).
+     */
+    public double getDedupRatio() {
+        return totalBytes > 0 ? (double) getSavedBytes() / totalBytes : 0;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public String getContentId() {
+        return contentId;
+    }
+
+    public void setContentId(String contentId) {
+        this.contentId = contentId;
+    }
+
+    public List<ContentChunk> getContentChunks() {
+        return contentChunks;
+    }
+
+    public void setContentChunks(List<ContentChunk> contentChunks) {
+        this.contentChunks = contentChunks;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public void setUploadedBytes(long uploadedBytes) {
+        this.uploadedBytes = uploadedBytes;
+    }
+
+    public int getUploadedChunkCount() {
+        return uploadedChunkCount;
+    }
+
+    public void setUploadedChunkCount(int uploadedChunkCount) {
+        this.uploadedChunkCount = uploadedChunkCount;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "DedupUploadResult{" +
+                "contentId='" + contentId + '\'' +
+                ", chunkCount=" + contentChunks.size() +
+                ", uploadedChunkCount=" + uploadedChunkCount +
+                ", totalBytes=" + totalBytes +
+                ", uploadedBytes=" + uploadedBytes +
+                ", dedupRatio=" + String.format("%.3f", getDedupRatio()) +
+                '}';
+    }
+}
@@ -0,0 +1,99 @@
+package com.vasanth.attachfile.core.model;
+
+/**
+ * Outbox Job.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold a single pending attachment job of the outbox, as journaled to disk - What to do, on which attachment &
+ * how far it got.
+ * <p>
+ * 2. Job Types.
+ * 2.a. JOB_TYPE_STAGE - Copy attachment content into app owned storage.
+ * 2.b. JOB_TYPE_UPLOAD - Upload attachment content.
+ * 2.c. JOB_TYPE_TRANSFORM - Transform attachment content (Like re-encode an image).
+ *
+ * @author Vasanth
+ */
+public class OutboxJob {
+
+    public static final int JOB_TYPE_STAGE = 1;
+    public static final int JOB_TYPE_UPLOAD = 2;
+    public static final int JOB_TYPE_TRANSFORM = 3;
+
+    private long id;
+    private int jobType;
+    private String location;
+    private String target;
+    private long checkpoint;
+
+    /**
+     * Constructor.
+     *
+     * @param id         Job id, unique within its journal.
+     * @param jobType    One of JOB_TYPE_*.
+     * @param location   Attachment location (Like uri string).
+     * @param target     Where the result goes (Like destination file path), meaning depends on job type, can be NULL.
+     * @param checkpoint Progress done so far (Like bytes copied), job resumes from here.
+     */
+    public OutboxJob(final long id, final int jobType, final String location, final String target, final long checkpoint) {
+        this.id = id;
+        this.jobType = jobType;
+        this.location = location;
+        this.target = target;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getJobType() {
+        return jobType;
+    }
+
+    public void setJobType(int jobType) {
+        this.jobType = jobType;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxJob{" +
+                "id=" + id +
+                ", jobType=" + jobType +
+                ", location='" + location + '\'' +
+                ", target='" + target + '\'' +
+                ", checkpoint=" + checkpoint +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+package com.vasanth.attachfile.core.model;
+
+/**
+ * Zip Archive Entry.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold details about a single entry of a ZIP attachment, as listed by its central directory (Or local header, when
+ * archive is scanned as a stream) - Nothing is extracted.
+ *
+ * @author Vasanth
+ */
+public class ZipArchiveEntry {
+
+    // Compression methods.
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private String name;
+    private long size;
+    private long compressedSize;
+    private int compressionMethod;
+    private boolean isDirectory;
+    private boolean isEncrypted;
+
+    /**
+     * Constructor.
+     *
+     * @param name              Entry name (Path within the archive).
+     * @param size              Uncompressed size in Bytes.
+     * @param compressedSize    Compressed size in Bytes.
+     * @param compressionMethod Compression method (Like {@link #METHOD_DEFLATED}).
+     */
+    public ZipArchiveEntry(final String name, final long size, final long compressedSize, final int compressionMethod) {
+        this.name = name;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.compressionMethod = compressionMethod;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public void setCompressedSize(long compressedSize) {
+        this.compressedSize = compressedSize;
+    }
+
+    public int getCompressionMethod() {
+        return compressionMethod;
+    }
+
+    public void setCompressionMethod(int compressionMethod) {
+        this.compressionMethod = compressionMethod;
+    }
+
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    public void setDirectory(boolean directory) {
+        isDirectory = directory;
+    }
+
+    public boolean isEncrypted() {
+        return isEncrypted;
+    }
+
+    public void setEncrypted(boolean encrypted) {
+        isEncrypted = encrypted;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "ZipArchiveEntry{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", compressedSize=" + compressedSize +
+                ", compressionMethod=" + compressionMethod +
+                ", isDirectory=" + isDirectory +
+                ", isEncrypted=" + isEncrypted +
+                '}';
+    }
+}
@@ -0,0 +1,146 @@
+package com.vasanth.attachfile.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Zip Inspection.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Model used to hold what inspecting a ZIP attachment tells - Entry counts, total sizes & whether it looks like a zip bomb (See
+ * ZipInspector).
+ * 1.b. Entries themselves are read a page at a time, on demand - Model holds only where each page starts.
+ *
+ * @author Vasanth
+ */
+public class ZipInspection {
+
+    private long entryCount;
+    private long directoryCount;
+    private long totalSize;
+    private long totalCompressedSize;
+    private boolean isZipBomb;
+    private boolean isComplete;
+    private boolean isCentralDirectoryRead;
+    // Central directory read - Position of first entry of each page & end of the central directory.
+    private long[] pageOffsets = new long[0];
+    private long centralDirectoryEnd;
+    // Archive scanned as a stream - Entries scanned, up to a limit.
+    private List<ZipArchiveEntry> scannedEntries = new ArrayList<>();
+
+    /**
+     * @return Number of entries which are not directories.
+     */
+    public long getFileCount() {
+        return entryCount - directoryCount;
+    }
+
+    /**
+     * @return Total size over total compressed size, 0 if archive has no content.
+     */
+    public double getCompressionRatio() {
+        return totalCompressedSize > 0 ? (double) totalSize / totalCompressedSize : 0;
+    }
+
+    /**
+     * Getter's & Setter's.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(long entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    public void setDirectoryCount(long directoryCount) {
+        this.directoryCount = directoryCount;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public void setTotalSize(long totalSize) {
+        this.totalSize = totalSize;
+    }
+
+    public long getTotalCompressedSize() {
+        return totalCompressedSize;
+    }
+
+    public void setTotalCompressedSize(long totalCompressedSize) {
+        this.totalCompressedSize = totalCompressedSize;
+    }
+
+    public boolean isZipBomb() {
+        return isZipBomb;
+    }
+
+    public void setZipBomb(boolean zipBomb) {
+        isZipBomb = zipBomb;
+    }
+
+    /**
+     * @return TRUE if every entry was counted, FALSE if stream scan stopped early - Then counts & sizes are of the entries scanned.
+     */
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    public void setComplete(boolean complete) {
+        isComplete = complete;
+    }
+
+    public boolean isCentralDirectoryRead() {
+        return isCentralDirectoryRead;
+    }
+
+    public void setCentralDirectoryRead(boolean centralDirectoryRead) {
+        isCentralDirectoryRead = centralDirectoryRead;
+    }
+
+    public long[] getPageOffsets() {
+        return pageOffsets;
+    }
+
+    public void setPageOffsets(long[] pageOffsets) {
+        this.pageOffsets = pageOffsets;
+    }
+
+    public long getCentralDirectoryEnd() {
+        return centralDirectoryEnd;
+    }
+
+    public void setCentralDirectoryEnd(long centralDirectoryEnd) {
+        this.centralDirectoryEnd = centralDirectoryEnd;
+    }
+
+    public List<ZipArchiveEntry> getScannedEntries() {
+        return scannedEntries;
+    }
+
+    public void setScannedEntries(List<ZipArchiveEntry> scannedEntries) {
+        this.scannedEntries = scannedEntries;
+    }
+
+    /**
+     * To String.
+     */
+    @Override
+    public String toString() {
+        return "ZipInspection{" +
+                "entryCount=" + entryCount +
+                ", directoryCount=" + directoryCount +
+                ", totalSize=" + totalSize +
+                ", totalCompressedSize=" + totalCompressedSize +
+                ", isZipBomb=" + isZipBomb +
+                ", isComplete=" + isComplete +
+                ", isCentralDirectoryRead=" + isCentralDirectoryRead +
+                '}';
+    }
+}
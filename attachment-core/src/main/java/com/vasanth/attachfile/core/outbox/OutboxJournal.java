@@ -0,0 +1,434 @@
+package com.vasanth.attachfile.core.outbox;
+
+import com.vasanth.attachfile.core.model.OutboxJob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Outbox Journal.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to persist pending attachment jobs (See {@link OutboxJob}) & their progress as an append only log, so that jobs
+ * survive the screen & process that started them & resume from their last checkpoint.
+ * <p>
+ * 2. Methods.
+ * 2.a. enqueue - Used to add a job.
+ * 2.b. checkpoint - Used to record progress of a job.
+ * 2.c. complete / fail / cancel - Used to record end of a job, it is no longer pending.
+ * 2.d. getPendingJobs - Used to get jobs which are not yet ended, in enqueued order.
+ * 2.e. sync / syncIfDue - Used to force appended records to disk.
+ * <p>
+ * 3. Durability.
+ * 3.a. Each record reaches the file as soon as it is appended, hence it survives process death.
+ * 3.b. Records are synced to disk in batches - Once sync interval passed or max unsynced records are appended - Hence a power loss
+ * loses at most one batch, jobs then resume from an older checkpoint.
+ * 3.c. Each record carries its length & checksum - A record torn by a crash & everything after it is dropped on open.
+ * <p>
+ * 4. Compaction.
+ * 4.a. Once the log is mostly records of ended jobs & old checkpoints, it is rewritten with only pending jobs & their latest
+ * checkpoint - Through a temporary file which is synced & renamed over the journal, hence journal is never partially rewritten.
+ * 4.b. Failed compaction (Like rename failed) keeps appending to the journal as it is.
+ * <p>
+ * 5. Note.
+ * 5.a. Methods are thread safe.
+ *
+ * @author Vasanth
+ */
+public class OutboxJournal {
+
+    private static final int MAGIC = 0x414F4258;
+    private static final int VERSION = 1;
+    // Magic, version & next job id - So that ids of ended jobs are not reused after compaction.
+    private static final int HEADER_SIZE = 16;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final int RECORD_ENQUEUE = 1;
+    private static final int RECORD_CHECKPOINT = 2;
+    private static final int RECORD_COMPLETE = 3;
+    private static final int RECORD_FAIL = 4;
+    private static final int RECORD_CANCEL = 5;
+
+    // Larger length can only be a torn record, as location & target are short strings.
+    private static final int MAX_RECORD_SIZE = 256 * 1024;
+    // Log is compacted once it has at least these many records, & 4 times more than its pending jobs need.
+    private static final int COMPACT_MIN_RECORD_COUNT = 1024;
+    private static final int COMPACT_RECORD_FACTOR = 4;
+
+    private File journalFile;
+    private long syncIntervalMillis;
+    private int maxUnsyncedRecordCount;
+    private FileOutputStream fileOutputStream;
+    private Map<Long, OutboxJob> pendingJobs = new LinkedHashMap<>();
+    private long nextJobId = 1;
+    private int recordCount;
+    private int compactMinRecordCount = COMPACT_MIN_RECORD_COUNT;
+    private int unsyncedRecordCount;
+    private long lastSyncAtMillis;
+
+    /**
+     * Constructor, opens the journal - Replaying its records.
+     * <p>
+     * 1. Reads the whole journal, hence make sure to call this method in separate thread.
+     *
+     * @param journalFile            Journal file, created if it doesn't exist.
+     * @param syncIntervalMillis     Max time appended records wait before they are synced to disk.
+     * @param maxUnsyncedRecordCount Max number of appended records which wait to be synced to disk.
+     * @throws IOException If journal couldn't be read or isn't an outbox journal.
+     */
+    public OutboxJournal(final File journalFile, final long syncIntervalMillis, final int maxUnsyncedRecordCount) throws IOException {
+        this.journalFile = journalFile;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.maxUnsyncedRecordCount = Math.max(1, maxUnsyncedRecordCount);
+        open();
+    }
+
+    /**
+     * Used to add a job.
+     *
+     * @param jobType  One of OutboxJob.JOB_TYPE_*.
+     * @param location Attachment location (Like uri string).
+     * @param target   Where the result goes, can be NULL.
+     * @return Job added.
+     * @throws IOException If journal couldn't be written.
+     */
+    public synchronized OutboxJob enqueue(final int jobType, final String location, final String target) throws IOException {
+        OutboxJob outboxJob = new OutboxJob(nextJobId, jobType, location, target, 0L);
+        append(encodeEnqueue(outboxJob));
+        nextJobId++;
+        pendingJobs.put(outboxJob.getId(), outboxJob);
+        return outboxJob;
+    }
+
+    /**
+     * Used to record progress of a job, job resumes from here if it is interrupted.
+     *
+     * @param outboxJob  Job.
+     * @param checkpoint Progress done so far (Like bytes copied).
+     * @throws IOException If journal couldn't be written.
+     */
+    public synchronized void checkpoint(final OutboxJob outboxJob, final long checkpoint) throws IOException {
+        if (!pendingJobs.containsKey(outboxJob.getId())) {
+            return;
+        }
+        append(encodeCheckpoint(outboxJob.getId(), checkpoint));
+        outboxJob.setCheckpoint(checkpoint);
+    }
+
+    /**
+     * Used to record that job is done.
+     *
+     * @param outboxJob Job.
+     * @throws IOException If journal couldn't be written.
+     */
+    public synchronized void complete(final OutboxJob outboxJob) throws IOException {
+        end(outboxJob, RECORD_COMPLETE);
+    }
+
+    /**
+     * Used to record that job failed for good & won't be tried again.
+     *
+     * @param outboxJob Job.
+     * @throws IOException If journal couldn't be written.
+     */
+    public synchronized void fail(final OutboxJob outboxJob) throws IOException {
+        end(outboxJob, RECORD_FAIL);
+    }
+
+    /**
+     * Used to record that job is no longer wanted (Like its attachment was removed).
+     *
+     * @param outboxJob Job.
+     * @throws IOException If journal couldn't be written.
+     */
+    public synchronized void cancel(final OutboxJob outboxJob) throws IOException {
+        end(outboxJob, RECORD_CANCEL);
+    }
+
+    /**
+     * Used to check if job is still pending, like to stop working on a job which was cancelled meanwhile.
+     *
+     * @param outboxJob Job.
+     * @return TRUE if job is not yet completed, failed or cancelled.
+     */
+    public synchronized boolean isPending(final OutboxJob outboxJob) {
+        return pendingJobs.containsKey(outboxJob.getId());
+    }
+
+    /**
+     * Used to get jobs which are not yet completed, failed or cancelled.
+     *
+     * @return Pending jobs, in enqueued order.
+     */
+    public synchronized List<OutboxJob> getPendingJobs() {
+        return new ArrayList<>(pendingJobs.values());
+    }
+
+    /**
+     * Used to sync appended records to disk, if sync interval passed since last sync.
+     *
+     * @throws IOException If journal couldn't be synced.
+     */
+    public synchronized void syncIfDue() throws IOException {
+        if (unsyncedRecordCount > 0 && System.currentTimeMillis() - lastSyncAtMillis >= syncIntervalMillis) {
+            sync();
+        }
+    }
+
+    /**
+     * Used to sync appended records to disk, like once a batch of jobs is enqueued.
+     *
+     * @throws IOException If journal couldn't be synced.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsyncedRecordCount > 0) {
+            fileOutputStream.getFD().sync();
+            unsyncedRecordCount = 0;
+        }
+        lastSyncAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Used to sync & close the journal, it can't be used afterwards.
+     *
+     * @throws IOException If journal couldn't be synced.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            fileOutputStream.close();
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to replay journal into pending jobs & open it for appending - Torn tail is truncated, missing journal is created.
+     */
+    private void open() throws IOException {
+        long validLength = replay();
+        if (validLength < 0) {
+            rewrite();
+        } else {
+            if (validLength < journalFile.length()) {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+                try {
+                    randomAccessFile.setLength(validLength);
+                    randomAccessFile.getFD().sync();
+                } finally {
+                    randomAccessFile.close();
+                }
+            }
+            fileOutputStream = new FileOutputStream(journalFile, true);
+        }
+        lastSyncAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Used to read records into pending jobs.
+     *
+     * @return Length of the valid part of the journal, -1 if there is no journal (or not even its header).
+     */
+    private long replay() throws IOException {
+        if (!journalFile.exists() || journalFile.length() < HEADER_SIZE) {
+            return -1L;
+        }
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("Unknown journal format " + journalFile);
+            }
+            nextJobId = inputStream.readLong();
+            long validLength = HEADER_SIZE;
+            CRC32 crc32 = new CRC32();
+            while (true) {
+                byte[] record;
+                try {
+                    int recordSize = inputStream.readInt();
+                    if (recordSize <= 0 || recordSize > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    record = new byte[recordSize];
+                    inputStream.readFully(record);
+                    int checksum = inputStream.readInt();
+                    crc32.reset();
+                    crc32.update(record, 0, record.length);
+                    if ((int) crc32.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException eofException) {
+                    break;
+                }
+                applyRecord(record);
+                recordCount++;
+                validLength += 4 + record.length + 4;
+            }
+            return validLength;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void applyRecord(final byte[] record) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(record));
+        int recordType = inputStream.readByte();
+        long jobId = inputStream.readLong();
+        nextJobId = Math.max(nextJobId, jobId + 1);
+        switch (recordType) {
+            case RECORD_ENQUEUE:
+                int jobType = inputStream.readInt();
+                String location = inputStream.readUTF();
+                String target = inputStream.readBoolean() ? inputStream.readUTF() : null;
+                long checkpoint = inputStream.readLong();
+                pendingJobs.put(jobId, new OutboxJob(jobId, jobType, location, target, checkpoint));
+                break;
+
+            case RECORD_CHECKPOINT:
+                OutboxJob outboxJob = pendingJobs.get(jobId);
+                if (outboxJob != null) {
+                    outboxJob.setCheckpoint(inputStream.readLong());
+                }
+                break;
+
+            default:
+                pendingJobs.remove(jobId);
+                break;
+        }
+    }
+
+    private void end(final OutboxJob outboxJob, final int recordType) throws IOException {
+        if (!pendingJobs.containsKey(outboxJob.getId())) {
+            return;
+        }
+        append(encodeEnd(outboxJob.getId(), recordType));
+        pendingJobs.remove(outboxJob.getId());
+        if (recordCount >= compactMinRecordCount && recordCount > pendingJobs.size() * 2 * COMPACT_RECORD_FACTOR) {
+            compact();
+        }
+    }
+
+    private void append(final byte[] record) throws IOException {
+        writeRecord(fileOutputStream, record);
+        recordCount++;
+        unsyncedRecordCount++;
+        if (unsyncedRecordCount >= maxUnsyncedRecordCount) {
+            sync();
+        } else {
+            syncIfDue();
+        }
+    }
+
+    /**
+     * Used to compact the journal - On failure journal is left as it is (Rewrite goes through a temporary file) & reopened for
+     * appending, compaction is then tried again once the journal doubles.
+     */
+    private void compact() throws IOException {
+        fileOutputStream.close();
+        try {
+            rewrite();
+            compactMinRecordCount = COMPACT_MIN_RECORD_COUNT;
+        } catch (IOException exp) {
+            exp.printStackTrace();
+            fileOutputStream = new FileOutputStream(journalFile, true);
+            compactMinRecordCount = recordCount * 2;
+        }
+    }
+
+    /**
+     * Used to rewrite journal with pending jobs only (Enqueued with their latest checkpoint) & open it for appending.
+     */
+    private void rewrite() throws IOException {
+        File tempFile = new File(journalFile.getPath() + TEMP_FILE_SUFFIX);
+        FileOutputStream tempOutputStream = new FileOutputStream(tempFile);
+        boolean isWritten = false;
+        try {
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(tempOutputStream));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeLong(nextJobId);
+            for (OutboxJob outboxJob : pendingJobs.values()) {
+                writeRecord(outputStream, encodeEnqueue(outboxJob));
+            }
+            outputStream.flush();
+            tempOutputStream.getFD().sync();
+            isWritten = true;
+        } finally {
+            tempOutputStream.close();
+            if (!isWritten) {
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(journalFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to replace journal " + journalFile);
+        }
+        fileOutputStream = new FileOutputStream(journalFile, true);
+        recordCount = pendingJobs.size();
+        unsyncedRecordCount = 0;
+    }
+
+    /**
+     * Used to write a record - Length, record & checksum in a single write, so that a crash tears at most this record.
+     */
+    private static void writeRecord(final OutputStream outputStream, final byte[] record) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(record.length + 8);
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        CRC32 crc32 = new CRC32();
+        crc32.update(record, 0, record.length);
+        dataOutputStream.writeInt(record.length);
+        dataOutputStream.write(record);
+        dataOutputStream.writeInt((int) crc32.getValue());
+        outputStream.write(byteArrayOutputStream.toByteArray());
+    }
+
+    private static byte[] encodeEnqueue(final OutboxJob outboxJob) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+        outputStream.writeByte(RECORD_ENQUEUE);
+        outputStream.writeLong(outboxJob.getId());
+        outputStream.writeInt(outboxJob.getJobType());
+        outputStream.writeUTF(outboxJob.getLocation());
+        outputStream.writeBoolean(outboxJob.getTarget() != null);
+        if (outboxJob.getTarget() != null) {
+            outputStream.writeUTF(outboxJob.getTarget());
+        }
+        outputStream.writeLong(outboxJob.getCheckpoint());
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static byte[] encodeEnd(final long jobId, final int recordType) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+        outputStream.writeByte(recordType);
+        outputStream.writeLong(jobId);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static byte[] encodeCheckpoint(final long jobId, final long checkpoint) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+        outputStream.writeByte(RECORD_CHECKPOINT);
+        outputStream.writeLong(jobId);
+        outputStream.writeLong(checkpoint);
+        return byteArrayOutputStream.toByteArray();
+    }
+}
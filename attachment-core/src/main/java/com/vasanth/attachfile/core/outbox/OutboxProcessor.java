@@ -0,0 +1,162 @@
+package com.vasanth.attachfile.core.outbox;
+
+import com.vasanth.attachfile.core.model.OutboxJob;
+import com.vasanth.attachfile.core.retry.FailureClassifier;
+import com.vasanth.attachfile.core.retry.RetryMetrics;
+import com.vasanth.attachfile.core.retry.RetryPolicy;
+import com.vasanth.attachfile.core.util.ProgressListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Outbox Processor.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to run pending jobs of an {@link OutboxJournal} one by one, through the handler of their job type, recording their
+ * progress & outcome in the journal.
+ * <p>
+ * 2. Methods.
+ * 2.a. setJobHandler - Used to set handler of a job type, before processing.
+ * 2.b. processPendingJobs - Used to run pending jobs, including ones enqueued meanwhile.
+ * <p>
+ * 3. Outcome.
+ * 3.a. Job which succeeds is completed, job which fails for good (Like permission or not found) is failed.
+ * 3.b. Transient failures are retried as per retry policy - Job which still fails transiently stays pending, for the next processing.
+ * 3.c. Job without handler is failed.
+ * 3.d. Once the calling thread is interrupted, processing stops & the running job stays pending, to resume from its last checkpoint.
+ * 3.e. Job cancelled in the journal while running is stopped at its next checkpoint.
+ *
+ * @author Vasanth
+ */
+public class OutboxProcessor {
+
+    private OutboxJournal outboxJournal;
+    private RetryPolicy retryPolicy;
+    private RetryMetrics retryMetrics;
+    private Map<Integer, JobHandler> jobHandlers = new HashMap<>();
+
+    /**
+     * Job Handler.
+     */
+    public interface JobHandler {
+
+        /**
+         * Used to run the job, from its checkpoint.
+         * <p>
+         * 1. Should check for thread interruption while doing long work.
+         *
+         * @param outboxJob          Job, {@link OutboxJob#getCheckpoint()} is where the job should resume from.
+         * @param checkpointListener Listener to be notified with progress which is safe to resume from.
+         * @throws Exception If job failed.
+         */
+        void process(OutboxJob outboxJob, ProgressListener checkpointListener) throws Exception;
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param outboxJournal Journal.
+     * @param retryPolicy   Retry policy for each job.
+     * @param retryMetrics  Metrics to be updated, can be NULL.
+     */
+    public OutboxProcessor(final OutboxJournal outboxJournal, final RetryPolicy retryPolicy, final RetryMetrics retryMetrics) {
+        this.outboxJournal = outboxJournal;
+        this.retryPolicy = retryPolicy;
+        this.retryMetrics = retryMetrics;
+    }
+
+    /**
+     * Used to set handler of a job type.
+     *
+     * @param jobType    One of OutboxJob.JOB_TYPE_*.
+     * @param jobHandler Handler.
+     */
+    public synchronized void setJobHandler(final int jobType, final JobHandler jobHandler) {
+        jobHandlers.put(jobType, jobHandler);
+    }
+
+    /**
+     * Used to run pending jobs, each at most once - Jobs enqueued meanwhile are run too.
+     * <p>
+     * 1. Runs on the calling thread, hence make sure to call this method in separate thread.
+     *
+     * @return Number of jobs which are still pending (Failed transiently or processing was interrupted).
+     * @throws IOException If journal couldn't be written.
+     */
+    public int processPendingJobs() throws IOException {
+        Set<Long> processedJobIds = new HashSet<>();
+        try {
+            OutboxJob outboxJob;
+            while (!Thread.currentThread().isInterrupted() && (outboxJob = getNextJob(processedJobIds)) != null) {
+                processedJobIds.add(outboxJob.getId());
+                processJob(outboxJob);
+            }
+        } finally {
+            outboxJournal.sync();
+        }
+        return outboxJournal.getPendingJobs().size();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private OutboxJob getNextJob(final Set<Long> processedJobIds) {
+        for (OutboxJob outboxJob : outboxJournal.getPendingJobs()) {
+            if (!processedJobIds.contains(outboxJob.getId())) {
+                return outboxJob;
+            }
+        }
+        return null;
+    }
+
+    private void processJob(final OutboxJob outboxJob) throws IOException {
+        final JobHandler jobHandler;
+        synchronized (this) {
+            jobHandler = jobHandlers.get(outboxJob.getJobType());
+        }
+        if (jobHandler == null) {
+            outboxJournal.fail(outboxJob);
+            return;
+        }
+
+        final ProgressListener checkpointListener = new ProgressListener() {
+            @Override
+            public void onProgress(final long checkpoint) {
+                if (!outboxJournal.isPending(outboxJob)) {
+                    throw new CancellationException("Job cancelled " + outboxJob.getId());
+                }
+                try {
+                    outboxJournal.checkpoint(outboxJob, checkpoint);
+                } catch (IOException ioException) {
+                    throw new RuntimeException(ioException);
+                }
+            }
+        };
+        try {
+            retryPolicy.execute(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    jobHandler.process(outboxJob, checkpointListener);
+                    return null;
+                }
+            }, retryMetrics);
+            outboxJournal.complete(outboxJob);
+        } catch (Exception exp) {
+            int failureType = FailureClassifier.classify(exp);
+            if (failureType == FailureClassifier.FAILURE_TYPE_INTERRUPTED) {
+                // Keep it pending, to resume from its checkpoint.
+                Thread.currentThread().interrupt();
+            } else if (failureType != FailureClassifier.FAILURE_TYPE_TRANSIENT) {
+                exp.printStackTrace();
+                outboxJournal.fail(outboxJob);
+            }
+        }
+    }
+}
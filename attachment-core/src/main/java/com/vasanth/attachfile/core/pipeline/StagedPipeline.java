@@ -0,0 +1,644 @@
+package com.vasanth.attachfile.core.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged Pipeline.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Runs each item through a fixed sequence of stages, each stage has its own workers & a bounded input queue.
+ * 1.b. Items move independently - Item N can be in the last stage while item N+1 is still in the first one, so that I/O &
+ * decoding of different items overlap & total latency approaches the slowest single item instead of the sum.
+ * <p>
+ * 2. Methods.
+ * 2.a. addStage - Used to add a stage, before start.
+ * 2.b. start - Used to start the workers.
+ * 2.c. submitAll - Used to submit a batch of items, with a deadline for the whole batch.
+ * 2.d. cancelAll - Used to cancel all items submitted so far, pipeline stays usable for new items.
+ * 2.e. cancel - Used to cancel a single item, like one whose result is no longer needed.
+ * 2.f. setStageParallelism - Used to change how many items a stage processes in parallel, like under memory pressure.
+ * 2.g. shutdown - Used to stop the workers.
+ * <p>
+ * 3. Deadlines.
+ * 3.a. Each stage can have a deadline per item & each batch can have a deadline for all its items.
+ * 3.b. Item which misses its deadline is reported as timed out immediately & its worker is interrupted. If the stage ignores the
+ * interruption (Like a hung provider call), the worker is retired & replaced, so that the stage keeps its capacity.
+ * 3.c. Item waiting for room in the next stage still misses its batch deadline & gets cancelled, without waiting for the room.
+ * <p>
+ * 4. Output.
+ * 4.a. Listener - Gets called on worker threads, every item ends in exactly one of completed, failed, timed out or cancelled.
+ * 4.b. A full queue blocks the stage before it (Backpressure), hence a slow stage never buffers more than its queue capacity.
+ *
+ * @param <T> Type of item.
+ * @author Vasanth
+ */
+public class StagedPipeline<T> {
+
+    public static final long NO_DEADLINE = 0L;
+
+    // How often a worker waiting on a full next stage checks its item's deadline & cancellation.
+    private static final long HAND_OFF_POLL_MILLIS = 50L;
+
+    private String name;
+    private int queueCapacity;
+    private Listener<T> listener;
+    private List<StageRunner> stageRunners = new ArrayList<>();
+    private AtomicInteger inFlightCount = new AtomicInteger();
+    private BlockingQueue<Item<T>> pendingItems = new LinkedBlockingQueue<>();
+    // Items submitted & not yet finished, by their value - Used to cancel a single item.
+    private Map<T, Item<T>> inFlightItems = Collections.synchronizedMap(new IdentityHashMap<T, Item<T>>());
+    private Thread feederThread;
+    private ScheduledExecutorService watchdogExecutor;
+    private volatile int generation;
+    private volatile boolean isShutdown;
+    private boolean isStarted;
+
+    /**
+     * Stage.
+     *
+     * @param <T> Type of item.
+     */
+    public interface Stage<T> {
+
+        /**
+         * Used to process the item, it is passed to the next stage once this returns.
+         * <p>
+         * 1. Should check for thread interruption while doing long work.
+         *
+         * @param item Item.
+         * @throws Exception If processing failed, item is then reported as failed.
+         */
+        void process(T item) throws Exception;
+
+    }
+
+    /**
+     * Listener.
+     *
+     * @param <T> Type of item.
+     */
+    public interface Listener<T> {
+
+        /**
+         * Gets called once item completed a stage.
+         *
+         * @param item      Item.
+         * @param stageName Stage name.
+         */
+        void onStageCompleted(T item, String stageName);
+
+        /**
+         * Gets called once item completed all stages.
+         *
+         * @param item Item.
+         */
+        void onItemCompleted(T item);
+
+        /**
+         * Gets called if a stage failed to process the item.
+         *
+         * @param item      Item.
+         * @param stageName Stage name.
+         * @param exception Failure.
+         */
+        void onItemFailed(T item, String stageName, Exception exception);
+
+        /**
+         * Gets called if item missed its stage or batch deadline.
+         *
+         * @param item      Item.
+         * @param stageName Stage in which the deadline expired.
+         */
+        void onItemTimedOut(T item, String stageName);
+
+        /**
+         * Gets called if item was cancelled.
+         *
+         * @param item Item.
+         */
+        void onItemCancelled(T item);
+
+        /**
+         * Gets called whenever there are no more items in the pipeline.
+         */
+        void onIdle();
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name          Pipeline name, used for thread names.
+     * @param queueCapacity Capacity of each stage's input queue.
+     * @param listener      Listener.
+     */
+    public StagedPipeline(final String name, final int queueCapacity, final Listener<T> listener) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.listener = listener;
+    }
+
+    /**
+     * Used to add a stage.
+     *
+     * @param stageName      Stage name.
+     * @param workerCount    Number of items processed in parallel by this stage.
+     * @param deadlineMillis Deadline for a single item in this stage, or {@link #NO_DEADLINE}.
+     * @param stage          Stage.
+     */
+    public synchronized void addStage(final String stageName, final int workerCount, final long deadlineMillis, final Stage<T> stage) {
+        if (isStarted) {
+            throw new IllegalStateException("Stages must be added before start");
+        }
+        stageRunners.add(new StageRunner(stageRunners.size(), stageName, workerCount, deadlineMillis, stage));
+    }
+
+    /**
+     * Used to start the workers.
+     */
+    public synchronized void start() {
+        if (isStarted) {
+            return;
+        }
+        isStarted = true;
+        watchdogExecutor = Executors.newSingleThreadScheduledExecutor(newThreadFactory(name + "-watchdog"));
+        for (StageRunner stageRunner : stageRunners) {
+            for (int i = 0; i < stageRunner.workerCount; i++) {
+                stageRunner.startWorker();
+            }
+        }
+        feederThread = newThreadFactory(name + "-feeder").newThread(new Runnable() {
+            @Override
+            public void run() {
+                feed();
+            }
+        });
+        feederThread.start();
+    }
+
+    /**
+     * Used to submit a batch of items.
+     * <p>
+     * 1. Items are fed to the first stage from the feeder thread, hence this never blocks.
+     *
+     * @param items               Items.
+     * @param batchDeadlineMillis Deadline for all the items of this batch, or {@link #NO_DEADLINE}.
+     */
+    public void submitAll(final List<T> items, final long batchDeadlineMillis) {
+        if (!isStarted || isShutdown) {
+            throw new IllegalStateException("Pipeline is not running");
+        }
+        long batchDeadlineAtNanos = batchDeadlineMillis > NO_DEADLINE
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDeadlineMillis) : Long.MAX_VALUE;
+        inFlightCount.addAndGet(items.size());
+        for (T value : items) {
+            Item<T> item = new Item<>(value, generation, batchDeadlineAtNanos);
+            inFlightItems.put(value, item);
+            pendingItems.add(item);
+        }
+    }
+
+    /**
+     * Used to cancel all items submitted so far.
+     * <p>
+     * 1. Queued items are dropped, items being processed are interrupted & reported as cancelled immediately.
+     */
+    public void cancelAll() {
+        generation++;
+        for (StageRunner stageRunner : stageRunners) {
+            for (Worker worker : stageRunner.getWorkers()) {
+                Item<T> item = worker.getCurrentItem();
+                if (item != null && item.generation != generation) {
+                    abandon(stageRunner, worker, item, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Used to cancel a single item.
+     * <p>
+     * 1. Queued item is dropped once it reaches a worker, item being processed is interrupted - Either way it is reported as
+     * cancelled right away.
+     * 2. Does nothing if item already finished.
+     *
+     * @param value Item, as submitted.
+     */
+    public void cancel(final T value) {
+        Item<T> item = inFlightItems.get(value);
+        if (item == null) {
+            return;
+        }
+        item.isCancelled = true;
+        for (StageRunner stageRunner : stageRunners) {
+            for (Worker worker : stageRunner.getWorkers()) {
+                if (worker.getCurrentItem() == item) {
+                    abandon(stageRunner, worker, item, false);
+                    return;
+                }
+            }
+        }
+        cancelItem(item);
+    }
+
+    /**
+     * Used to change how many items a stage processes in parallel, at most its worker count.
+     * <p>
+     * 1. Workers over the limit finish their current item & then wait, until the limit is raised again.
+     *
+     * @param stageName   Stage name.
+     * @param parallelism Number of items processed in parallel, at least 1.
+     */
+    public void setStageParallelism(final String stageName, final int parallelism) {
+        for (StageRunner stageRunner : stageRunners) {
+            if (stageRunner.stageName.equals(stageName)) {
+                stageRunner.setParallelism(Math.max(1, Math.min(parallelism, stageRunner.workerCount)));
+            }
+        }
+    }
+
+    /**
+     * Used to stop the workers, pipeline can't be used afterwards.
+     */
+    public void shutdown() {
+        isShutdown = true;
+        if (feederThread != null) {
+            feederThread.interrupt();
+        }
+        for (StageRunner stageRunner : stageRunners) {
+            for (Worker worker : stageRunner.getWorkers()) {
+                worker.thread.interrupt();
+            }
+        }
+        if (watchdogExecutor != null) {
+            watchdogExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Used to get number of items in the pipeline.
+     *
+     * @return Number of items submitted & not yet completed, failed, timed out or cancelled.
+     */
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to move submitted items to the first stage - Blocks while the first stage is full.
+     */
+    private void feed() {
+        BlockingQueue<Item<T>> firstQueue = stageRunners.get(0).queue;
+        while (!isShutdown) {
+            Item<T> item;
+            try {
+                item = pendingItems.take();
+            } catch (InterruptedException interruptedException) {
+                continue;
+            }
+            if (item.generation != generation || item.isCancelled) {
+                cancelItem(item);
+                continue;
+            }
+            try {
+                firstQueue.put(item);
+            } catch (InterruptedException interruptedException) {
+                cancelItem(item);
+            }
+        }
+    }
+
+    private void finishItem(final Item<T> item) {
+        synchronized (inFlightItems) {
+            if (inFlightItems.get(item.value) == item) {
+                inFlightItems.remove(item.value);
+            }
+        }
+        if (inFlightCount.decrementAndGet() == 0) {
+            listener.onIdle();
+        }
+    }
+
+    private void cancelItem(final Item<T> item) {
+        if (item.isFinished.compareAndSet(false, true)) {
+            listener.onItemCancelled(item.value);
+            finishItem(item);
+        }
+    }
+
+    private void timeOutItem(final Item<T> item, final String stageName) {
+        if (item.isFinished.compareAndSet(false, true)) {
+            listener.onItemTimedOut(item.value, stageName);
+            finishItem(item);
+        }
+    }
+
+    /**
+     * Used to give up on an item being processed - Report it right away & replace its worker in case it doesn't return.
+     */
+    private void abandon(final StageRunner stageRunner, final Worker worker, final Item<T> item, final boolean isTimedOut) {
+        synchronized (worker) {
+            if (worker.currentItem != item || worker.isRetired) {
+                return;
+            }
+            worker.isRetired = true;
+            worker.thread.interrupt();
+        }
+        worker.releasePermitOnce();
+        if (!isShutdown) {
+            stageRunner.startWorker();
+        }
+        if (isTimedOut) {
+            timeOutItem(item, stageRunner.stageName);
+        } else {
+            cancelItem(item);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(final String threadName) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Item with its batch info.
+     */
+    private static class Item<T> {
+
+        private T value;
+        private int generation;
+        private long batchDeadlineAtNanos;
+        private volatile boolean isCancelled;
+        private AtomicBoolean isFinished = new AtomicBoolean(false);
+
+        Item(final T value, final int generation, final long batchDeadlineAtNanos) {
+            this.value = value;
+            this.generation = generation;
+            this.batchDeadlineAtNanos = batchDeadlineAtNanos;
+        }
+    }
+
+    /**
+     * Stage with its queue & workers.
+     */
+    private class StageRunner {
+
+        private int index;
+        private String stageName;
+        private int workerCount;
+        private long deadlineMillis;
+        private Stage<T> stage;
+        private BlockingQueue<Item<T>> queue;
+        private List<Worker> workers = new ArrayList<>();
+        private final Object permitLock = new Object();
+        private int parallelism;
+        private int permitCount;
+
+        StageRunner(final int index, final String stageName, final int workerCount, final long deadlineMillis, final Stage<T> stage) {
+            this.index = index;
+            this.stageName = stageName;
+            this.workerCount = workerCount;
+            this.deadlineMillis = deadlineMillis;
+            this.stage = stage;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.parallelism = workerCount;
+        }
+
+        void setParallelism(final int parallelism) {
+            synchronized (permitLock) {
+                this.parallelism = parallelism;
+                permitLock.notifyAll();
+            }
+        }
+
+        /**
+         * Used to wait till worker is allowed to process, as per stage parallelism.
+         */
+        void acquirePermit() throws InterruptedException {
+            synchronized (permitLock) {
+                while (permitCount >= parallelism) {
+                    permitLock.wait();
+                }
+                permitCount++;
+            }
+        }
+
+        void releasePermit() {
+            synchronized (permitLock) {
+                permitCount--;
+                permitLock.notifyAll();
+            }
+        }
+
+        synchronized void startWorker() {
+            Worker worker = new Worker(this);
+            worker.thread = newThreadFactory(name + "-" + stageName).newThread(worker);
+            workers.add(worker);
+            worker.thread.start();
+        }
+
+        synchronized void removeWorker(final Worker worker) {
+            workers.remove(worker);
+        }
+
+        synchronized List<Worker> getWorkers() {
+            return new ArrayList<>(workers);
+        }
+
+        StageRunner getNext() {
+            return index + 1 < stageRunners.size() ? stageRunners.get(index + 1) : null;
+        }
+    }
+
+    /**
+     * Worker of a stage.
+     */
+    private class Worker implements Runnable {
+
+        private StageRunner stageRunner;
+        private Thread thread;
+        private Item<T> currentItem;
+        private boolean isRetired;
+        private boolean hasPermit;
+
+        Worker(final StageRunner stageRunner) {
+            this.stageRunner = stageRunner;
+        }
+
+        synchronized Item<T> getCurrentItem() {
+            return currentItem;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isShutdown && !isRetiredSafely()) {
+                    Item<T> item;
+                    try {
+                        stageRunner.acquirePermit();
+                        setHasPermit(true);
+                        item = stageRunner.queue.take();
+                    } catch (InterruptedException interruptedException) {
+                        releasePermitOnce();
+                        continue;
+                    }
+                    processItem(item);
+                    releasePermitOnce();
+                }
+            } finally {
+                releasePermitOnce();
+                stageRunner.removeWorker(this);
+            }
+        }
+
+        private synchronized boolean isRetiredSafely() {
+            return isRetired;
+        }
+
+        private synchronized void setHasPermit(final boolean hasPermit) {
+            this.hasPermit = hasPermit;
+        }
+
+        /**
+         * Used to release permit, once - Retired worker's permit is released when it is retired, so that its replacement can run.
+         */
+        void releasePermitOnce() {
+            boolean isReleased;
+            synchronized (this) {
+                isReleased = hasPermit;
+                hasPermit = false;
+            }
+            if (isReleased) {
+                stageRunner.releasePermit();
+            }
+        }
+
+        private void processItem(final Item<T> item) {
+            if (item.generation != generation || item.isCancelled) {
+                cancelItem(item);
+                return;
+            }
+            long nowNanos = System.nanoTime();
+            if (nowNanos >= item.batchDeadlineAtNanos) {
+                timeOutItem(item, stageRunner.stageName);
+                return;
+            }
+
+            // Watchdog - Abandons the item once its deadline expires.
+            long deadlineAtNanos = item.batchDeadlineAtNanos;
+            if (stageRunner.deadlineMillis > NO_DEADLINE) {
+                deadlineAtNanos = Math.min(deadlineAtNanos, nowNanos + TimeUnit.MILLISECONDS.toNanos(stageRunner.deadlineMillis));
+            }
+            synchronized (this) {
+                currentItem = item;
+            }
+            // Item cancelled before it was visible as current item.
+            if (item.isCancelled) {
+                synchronized (this) {
+                    currentItem = null;
+                }
+                cancelItem(item);
+                return;
+            }
+            ScheduledFuture<?> watchdog = null;
+            if (deadlineAtNanos != Long.MAX_VALUE) {
+                watchdog = watchdogExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        abandon(stageRunner, Worker.this, item, true);
+                    }
+                }, deadlineAtNanos - nowNanos, TimeUnit.NANOSECONDS);
+            }
+
+            Exception failure = null;
+            boolean isAbandoned;
+            try {
+                stageRunner.stage.process(item.value);
+            } catch (Exception exception) {
+                failure = exception;
+            } finally {
+                if (watchdog != null) {
+                    watchdog.cancel(false);
+                }
+                synchronized (this) {
+                    currentItem = null;
+                    isAbandoned = isRetired;
+                    // Clear interruption meant for this item, so that it doesn't affect the next item.
+                    Thread.interrupted();
+                }
+            }
+
+            // Already reported as timed out or cancelled - Or about to be, abandon interrupts before it reports, hence the
+            // failure caused by the interruption is not the item's outcome.
+            if (isAbandoned || item.isFinished.get()) {
+                return;
+            }
+            if (item.generation != generation || item.isCancelled) {
+                cancelItem(item);
+                return;
+            }
+            if (failure != null) {
+                if (item.isFinished.compareAndSet(false, true)) {
+                    listener.onItemFailed(item.value, stageRunner.stageName, failure);
+                    finishItem(item);
+                }
+                return;
+            }
+
+            listener.onStageCompleted(item.value, stageRunner.stageName);
+            StageRunner nextStageRunner = stageRunner.getNext();
+            if (nextStageRunner == null) {
+                if (item.isFinished.compareAndSet(false, true)) {
+                    listener.onItemCompleted(item.value);
+                    finishItem(item);
+                }
+                return;
+            }
+            try {
+                handOff(nextStageRunner, item);
+            } catch (InterruptedException interruptedException) {
+                cancelItem(item);
+            }
+        }
+
+        /**
+         * Used to pass item to the next stage - Waits while its queue is full, but gives up on the item once it is cancelled or
+         * misses its batch deadline, since item is no longer current (Watchdog & cancel don't see it) while it waits.
+         */
+        private void handOff(final StageRunner nextStageRunner, final Item<T> item) throws InterruptedException {
+            while (!nextStageRunner.queue.offer(item, HAND_OFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (item.generation != generation || item.isCancelled || isShutdown) {
+                    cancelItem(item);
+                    return;
+                }
+                if (System.nanoTime() >= item.batchDeadlineAtNanos) {
+                    timeOutItem(item, stageRunner.stageName);
+                    return;
+                }
+            }
+        }
+    }
+}
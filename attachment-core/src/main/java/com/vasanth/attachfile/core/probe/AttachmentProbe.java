@@ -0,0 +1,310 @@
+package com.vasanth.attachfile.core.probe;
+
+import com.vasanth.attachfile.core.image.ImageBoundsParser;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentProbeResult;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.util.MimeTypeSniffer;
+import com.vasanth.attachfile.core.util.ProgressListener;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Attachment Probe.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to read the content of an attachment source once & tee its bytes to several consumers (Like byte counter,
+ * fingerprint, mimeType sniffer & image bounds parser), instead of opening the content once per consumer - For cloud sources each
+ * open is a network fetch.
+ * <p>
+ * 2. Methods.
+ * 2.a. probe - Used to fill in attachment detail (size, mimeType), fingerprint & image dimensions from a single read.
+ * 2.b. addConsumer / run - Used to tee the content to custom consumers.
+ * <p>
+ * 3. Early Stop.
+ * 3.a. Each consumer stops on its own once it has what it needs (Like sniffer after the header), reading stops once every consumer
+ * has stopped - Hence a probe which doesn't need size or fingerprint reads only the header of the content.
+ * <p>
+ * 4. Note.
+ * 4.a. Reads the content, hence call it in separate thread. Reading stops if the calling thread is interrupted.
+ * 4.b. Content is not opened at all if no consumer is added.
+ * 4.c. For sources backed by a real file, size comes from the channel without reading.
+ *
+ * @author Vasanth
+ */
+public class AttachmentProbe {
+
+    // What to probe.
+    public static final int PROBE_SIZE = 1;
+    public static final int PROBE_MIME_TYPE = 1 << 1;
+    public static final int PROBE_FINGERPRINT = 1 << 2;
+    public static final int PROBE_BOUNDS = 1 << 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Progress is notified at most once per this many bytes, same as AttachmentResolver.
+    private static final long PROGRESS_NOTIFY_INTERVAL_BYTES = 64 * 1024;
+
+    private List<Consumer> consumers = new ArrayList<>();
+
+    /**
+     * Consumer - Gets content bytes in order, on the thread which runs the probe.
+     */
+    public interface Consumer {
+
+        /**
+         * Gets called with next bytes of the content.
+         *
+         * @param bytes  Bytes, valid only during this call.
+         * @param offset Offset in bytes.
+         * @param length Number of bytes.
+         * @return TRUE if consumer needs more bytes, FALSE once it is done - It is not called again afterwards.
+         */
+        boolean consume(byte[] bytes, int offset, int length);
+
+        /**
+         * Gets called once content ended, only if consumer still needed more bytes.
+         */
+        void onEnd();
+
+    }
+
+    /**
+     * Used to probe the source for all it can tell, querying its metadata first.
+     *
+     * @param attachmentSource      Attachment source.
+     * @param isFingerprintRequired TRUE if fingerprint is needed, it reads the whole content.
+     * @param progressListener      Listener to be notified with bytes read, can be NULL.
+     * @return Probe result.
+     * @throws IOException If source couldn't be read.
+     * @see #probe(AttachmentSource, AttachmentDetail, int, ProgressListener)
+     */
+    public static AttachmentProbeResult probe(final AttachmentSource attachmentSource, final boolean isFingerprintRequired,
+                                              final ProgressListener progressListener) throws IOException {
+        int probeFlags = PROBE_SIZE | PROBE_MIME_TYPE | PROBE_BOUNDS | (isFingerprintRequired ? PROBE_FINGERPRINT : 0);
+        return probe(attachmentSource, attachmentSource.queryMetadata(), probeFlags, progressListener);
+    }
+
+    /**
+     * Used to probe the source.
+     * <p>
+     * 1. PROBE_SIZE - Size is counted, only if it is not known.
+     * 2. PROBE_MIME_TYPE - MimeType is sniffed from the header, only if it is not known.
+     * 3. PROBE_FINGERPRINT - Fingerprint is computed (See {@link SegmentedDigest}), it reads the whole content.
+     * 4. PROBE_BOUNDS - Image bounds are parsed, only if mimeType is not known or is an image.
+     * 5. All of them come from the same single read.
+     *
+     * @param attachmentSource Attachment source.
+     * @param attachmentDetail Metadata of the source (Like from {@link AttachmentSource#queryMetadata()}), size & mimeType are
+     *                         filled in.
+     * @param probeFlags       What to probe, PROBE_* flags combined.
+     * @param progressListener Listener to be notified with bytes read, can be NULL.
+     * @return Probe result, holding the given attachment detail.
+     * @throws IOException If source couldn't be read.
+     */
+    public static AttachmentProbeResult probe(final AttachmentSource attachmentSource, final AttachmentDetail attachmentDetail,
+                                              final int probeFlags, final ProgressListener progressListener) throws IOException {
+        AttachmentProbe attachmentProbe = new AttachmentProbe();
+
+        ByteCountConsumer byteCountConsumer = null;
+        if ((probeFlags & PROBE_SIZE) != 0 && attachmentDetail.getSize() <= 0) {
+            byteCountConsumer = new ByteCountConsumer();
+            attachmentProbe.addConsumer(byteCountConsumer);
+        }
+        MimeTypeConsumer mimeTypeConsumer = null;
+        if ((probeFlags & PROBE_MIME_TYPE) != 0 && attachmentDetail.getMimeType() == null) {
+            mimeTypeConsumer = new MimeTypeConsumer();
+            attachmentProbe.addConsumer(mimeTypeConsumer);
+        }
+        FingerprintConsumer fingerprintConsumer = null;
+        if ((probeFlags & PROBE_FINGERPRINT) != 0) {
+            fingerprintConsumer = new FingerprintConsumer();
+            attachmentProbe.addConsumer(fingerprintConsumer);
+        }
+        ImageBoundsParser imageBoundsParser = null;
+        if ((probeFlags & PROBE_BOUNDS) != 0 && (attachmentDetail.getMimeType() == null || isImage(attachmentDetail.getMimeType()))) {
+            imageBoundsParser = new ImageBoundsParser();
+            attachmentProbe.addConsumer(imageBoundsParser);
+        }
+
+        long bytesRead = attachmentProbe.run(attachmentSource, progressListener);
+
+        AttachmentProbeResult attachmentProbeResult = new AttachmentProbeResult(attachmentDetail);
+        attachmentProbeResult.setBytesRead(bytesRead);
+        if (byteCountConsumer != null) {
+            attachmentDetail.setSize(byteCountConsumer.byteCount);
+        }
+        if (mimeTypeConsumer != null) {
+            attachmentDetail.setMimeType(mimeTypeConsumer.mimeType);
+        }
+        if (fingerprintConsumer != null) {
+            attachmentProbeResult.setFingerprint(fingerprintConsumer.segmentedDigest.finish());
+        }
+        if (imageBoundsParser != null && imageBoundsParser.isFound() && isImage(attachmentDetail.getMimeType())) {
+            attachmentProbeResult.setWidth(imageBoundsParser.getWidth());
+            attachmentProbeResult.setHeight(imageBoundsParser.getHeight());
+        }
+        return attachmentProbeResult;
+    }
+
+    /**
+     * Used to add a consumer, before {@link #run}.
+     *
+     * @param consumer Consumer.
+     * @return This probe.
+     */
+    public AttachmentProbe addConsumer(final Consumer consumer) {
+        consumers.add(consumer);
+        return this;
+    }
+
+    /**
+     * Used to read the content once, teeing it to all consumers until each of them stopped or content ended.
+     * <p>
+     * 1. Sources backed by a real file are read through their channel, others through their stream.
+     *
+     * @param attachmentSource Attachment source.
+     * @param progressListener Listener to be notified with bytes read, can be NULL.
+     * @return Number of bytes read.
+     * @throws IOException If source couldn't be read.
+     */
+    public long run(final AttachmentSource attachmentSource, final ProgressListener progressListener) throws IOException {
+        List<Consumer> activeConsumers = new ArrayList<>(consumers);
+        if (activeConsumers.isEmpty()) {
+            return 0L;
+        }
+
+        FileChannel fileChannel = attachmentSource.openFileChannel();
+        InputStream inputStream = null;
+        if (fileChannel == null) {
+            inputStream = attachmentSource.openInputStream();
+            if (inputStream == null) {
+                throw new IOException("Unable to open " + attachmentSource.getLocation());
+            }
+        } else {
+            // File backed - Size is known without reading.
+            Iterator<Consumer> iterator = activeConsumers.iterator();
+            while (iterator.hasNext()) {
+                Consumer consumer = iterator.next();
+                if (consumer instanceof ByteCountConsumer) {
+                    ((ByteCountConsumer) consumer).byteCount = fileChannel.size();
+                    iterator.remove();
+                }
+            }
+        }
+        try {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            long bytesRead = 0L;
+            long lastNotifiedCount = 0L;
+            int read;
+            while (!activeConsumers.isEmpty()
+                    && (read = fileChannel != null ? fileChannel.read(ByteBuffer.wrap(bytes)) : inputStream.read(bytes)) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while reading attachment content");
+                }
+                Iterator<Consumer> iterator = activeConsumers.iterator();
+                while (iterator.hasNext()) {
+                    if (!iterator.next().consume(bytes, 0, read)) {
+                        iterator.remove();
+                    }
+                }
+                bytesRead += read;
+                if (progressListener != null && bytesRead - lastNotifiedCount >= PROGRESS_NOTIFY_INTERVAL_BYTES) {
+                    lastNotifiedCount = bytesRead;
+                    progressListener.onProgress(bytesRead);
+                }
+            }
+            for (Consumer consumer : activeConsumers) {
+                consumer.onEnd();
+            }
+            if (progressListener != null) {
+                progressListener.onProgress(bytesRead);
+            }
+            return bytesRead;
+        } finally {
+            if (fileChannel != null) {
+                fileChannel.close();
+            } else {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static boolean isImage(final String mimeType) {
+        return mimeType != null && mimeType.startsWith("image/");
+    }
+
+    /**
+     * Byte count consumer - Counts bytes till end of content.
+     */
+    private static class ByteCountConsumer implements Consumer {
+
+        private long byteCount;
+
+        @Override
+        public boolean consume(final byte[] bytes, final int offset, final int length) {
+            byteCount += length;
+            return true;
+        }
+
+        @Override
+        public void onEnd() {
+        }
+    }
+
+    /**
+     * MimeType consumer - Sniffs mimeType once it has the header (See {@link MimeTypeSniffer}).
+     */
+    private static class MimeTypeConsumer implements Consumer {
+
+        private byte[] header = new byte[MimeTypeSniffer.HEADER_SIZE];
+        private int length;
+        private String mimeType;
+
+        @Override
+        public boolean consume(final byte[] bytes, final int offset, final int count) {
+            int copied = Math.min(count, header.length - length);
+            System.arraycopy(bytes, offset, header, length, copied);
+            length += copied;
+            if (length < header.length) {
+                return true;
+            }
+            mimeType = MimeTypeSniffer.sniff(header, length);
+            return false;
+        }
+
+        @Override
+        public void onEnd() {
+            mimeType = MimeTypeSniffer.sniff(header, length);
+        }
+    }
+
+    /**
+     * Fingerprint consumer - Hashes bytes till end of content (See {@link SegmentedDigest}).
+     */
+    private static class FingerprintConsumer implements Consumer {
+
+        private SegmentedDigest segmentedDigest = new SegmentedDigest();
+
+        @Override
+        public boolean consume(final byte[] bytes, final int offset, final int length) {
+            segmentedDigest.update(bytes, offset, length);
+            return true;
+        }
+
+        @Override
+        public void onEnd() {
+        }
+    }
+}
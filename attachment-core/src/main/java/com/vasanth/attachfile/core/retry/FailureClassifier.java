@@ -0,0 +1,118 @@
+package com.vasanth.attachfile.core.retry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Failure Classifier.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to classify why reading an attachment failed, so that only failures which may go away on their own are retried.
+ * <p>
+ * 2. Failure Types.
+ * 2.a. FAILURE_TYPE_TRANSIENT - I/O error, like a network hiccup of a cloud provider or a provider process which died, worth retrying.
+ * 2.b. FAILURE_TYPE_PERMISSION - We are not allowed to read the attachment (Anymore).
+ * 2.c. FAILURE_TYPE_NOT_FOUND - Attachment doesn't exist (Anymore).
+ * 2.d. FAILURE_TYPE_INTERRUPTED - Reading was interrupted, like when its deadline expired or it was cancelled.
+ * 2.e. FAILURE_TYPE_PERMANENT - Anything else, like a provider returning broken data.
+ * <p>
+ * 3. Note.
+ * 3.a. Wrapped exceptions (Like ExecutionException) are classified by their cause.
+ * 3.b. Android ContentResolver reports a permission denial & a dead provider as FileNotFoundException too, hence those are told
+ * apart by message.
+ *
+ * @author Vasanth
+ */
+public class FailureClassifier {
+
+    public static final int FAILURE_TYPE_TRANSIENT = 1;
+    public static final int FAILURE_TYPE_PERMISSION = 2;
+    public static final int FAILURE_TYPE_NOT_FOUND = 3;
+    public static final int FAILURE_TYPE_INTERRUPTED = 4;
+    public static final int FAILURE_TYPE_PERMANENT = 5;
+
+    // Number of failure types, for arrays indexed by failure type.
+    static final int FAILURE_TYPE_COUNT = 6;
+
+    private static final String[] PERMISSION_DENIED_MESSAGES = {"permission", "eacces", "eperm"};
+    private static final String[] TRANSIENT_NOT_FOUND_MESSAGES = {"dead content provider"};
+
+    /**
+     * Used to classify failure.
+     *
+     * @param throwable Failure.
+     * @return One of FAILURE_TYPE_*.
+     */
+    public static int classify(final Throwable throwable) {
+        Throwable failure = throwable;
+        while ((failure instanceof ExecutionException || isWrapper(failure)) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        if (failure instanceof InterruptedException
+                || (failure instanceof InterruptedIOException && !(failure instanceof SocketTimeoutException))) {
+            return FAILURE_TYPE_INTERRUPTED;
+        }
+        if (failure instanceof SecurityException) {
+            return FAILURE_TYPE_PERMISSION;
+        }
+        if (failure instanceof FileNotFoundException) {
+            String message = failure.getMessage() != null ? failure.getMessage().toLowerCase(Locale.ROOT) : "";
+            if (containsAny(message, PERMISSION_DENIED_MESSAGES)) {
+                return FAILURE_TYPE_PERMISSION;
+            }
+            if (containsAny(message, TRANSIENT_NOT_FOUND_MESSAGES)) {
+                return FAILURE_TYPE_TRANSIENT;
+            }
+            return FAILURE_TYPE_NOT_FOUND;
+        }
+        if (failure instanceof IOException) {
+            return FAILURE_TYPE_TRANSIENT;
+        }
+        return FAILURE_TYPE_PERMANENT;
+    }
+
+    /**
+     * @param failureType One of FAILURE_TYPE_*.
+     * @return Name of failure type, for logs.
+     */
+    public static String getName(final int failureType) {
+        switch (failureType) {
+            case FAILURE_TYPE_TRANSIENT:
+                return "transient";
+
+            case FAILURE_TYPE_PERMISSION:
+                return "permission";
+
+            case FAILURE_TYPE_NOT_FOUND:
+                return "notFound";
+
+            case FAILURE_TYPE_INTERRUPTED:
+                return "interrupted";
+
+            default:
+                return "permanent";
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    // Plain RuntimeException with a cause only carries a checked exception, like one thrown inside a callback.
+    private static boolean isWrapper(final Throwable throwable) {
+        return throwable != null && throwable.getClass() == RuntimeException.class;
+    }
+
+    private static boolean containsAny(final String message, final String[] values) {
+        for (String value : values) {
+            if (message.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package com.vasanth.attachfile.core.retry;
+
+/**
+ * Retry Metrics.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to count operations run through {@link RetryPolicy}, their retries & outcomes, for monitoring.
+ * <p>
+ * 2. Counts.
+ * 2.a. Operation count - Operations run, whatever their outcome.
+ * 2.b. Retry count - Attempts made after a transient failure.
+ * 2.c. Succeeded / Succeeded after retry count - Operations which succeeded, at any attempt / after at least one retry.
+ * 2.d. Failed count - Operations which failed, Exhausted count - Of them, ones which still failed transiently at their last attempt.
+ * 2.e. Failure count per failure type - Every failed attempt, including retried ones.
+ * <p>
+ * 3. Note.
+ * 3.a. Methods are thread safe.
+ *
+ * @author Vasanth
+ */
+public class RetryMetrics {
+
+    private long operationCount;
+    private long retryCount;
+    private long succeededCount;
+    private long succeededAfterRetryCount;
+    private long failedCount;
+    private long exhaustedCount;
+    private long[] failureCounts = new long[FailureClassifier.FAILURE_TYPE_COUNT];
+
+    /**
+     * Gets called by RetryPolicy.
+     */
+    synchronized void onAttemptFailed(final int failureType) {
+        failureCounts[failureType]++;
+    }
+
+    synchronized void onRetry() {
+        retryCount++;
+    }
+
+    synchronized void onSucceeded(final int attemptCount) {
+        operationCount++;
+        succeededCount++;
+        if (attemptCount > 1) {
+            succeededAfterRetryCount++;
+        }
+    }
+
+    synchronized void onFailed(final boolean isExhausted) {
+        operationCount++;
+        failedCount++;
+        if (isExhausted) {
+            exhaustedCount++;
+        }
+    }
+
+    /**
+     * Getter's.
+     */
+    public synchronized long getOperationCount() {
+        return operationCount;
+    }
+
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    public synchronized long getSucceededCount() {
+        return succeededCount;
+    }
+
+    public synchronized long getSucceededAfterRetryCount() {
+        return succeededAfterRetryCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized long getExhaustedCount() {
+        return exhaustedCount;
+    }
+
+    /**
+     * @param failureType One of FailureClassifier.FAILURE_TYPE_*.
+     * @return Number of failed attempts of the type.
+     */
+    public synchronized long getFailureCount(final int failureType) {
+        return failureCounts[failureType];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder failures = new StringBuilder();
+        for (int failureType = 1; failureType < failureCounts.length; failureType++) {
+            if (failureCounts[failureType] > 0) {
+                failures.append(failures.length() > 0 ? ", " : "").append(FailureClassifier.getName(failureType)).append('=')
+                        .append(failureCounts[failureType]);
+            }
+        }
+        return "RetryMetrics{" +
+                "operationCount=" + operationCount +
+                ", retryCount=" + retryCount +
+                ", succeededCount=" + succeededCount +
+                ", succeededAfterRetryCount=" + succeededAfterRetryCount +
+                ", failedCount=" + failedCount +
+                ", exhaustedCount=" + exhaustedCount +
+                ", failures={" + failures + '}' +
+                '}';
+    }
+}
@@ -0,0 +1,127 @@
+package com.vasanth.attachfile.core.retry;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Retry Policy.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to run an operation, retrying it with jittered exponential backoff when it fails transiently
+ * (See {@link FailureClassifier}) - Permission, not found & other failures are not retried.
+ * <p>
+ * 2. Methods.
+ * 2.a. execute - Used to run the operation.
+ * 2.b. getDelayMillis - Used to get delay before a retry.
+ * <p>
+ * 3. Note.
+ * 3.a. Delay before retry "n" is random between half & full of baseDelay * 2^(n - 1), capped at maxDelay - So that uri's which
+ * failed together (Like all files of a cloud provider) don't retry together.
+ * 3.b. Operation is not retried once the calling thread is interrupted (Like when its deadline expires), waiting for the next attempt
+ * stops too.
+ * 3.c. Operation is retried as a whole, it is up to the operation to reuse what it got in previous attempts.
+ *
+ * @author Vasanth
+ */
+public class RetryPolicy {
+
+    // Policy which runs the operation once.
+    public static final RetryPolicy NO_RETRY = new RetryPolicy(1, 0, 0);
+
+    private static final Random RANDOM = new Random();
+
+    private int maxAttempts;
+    private long baseDelayMillis;
+    private long maxDelayMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts     Max number of attempts, including the first one.
+     * @param baseDelayMillis Delay before first retry.
+     * @param maxDelayMillis  Max delay before a retry.
+     */
+    public RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Used to run the operation, retrying it on transient failure.
+     *
+     * @param operation    Operation.
+     * @param retryMetrics Metrics to be updated, can be NULL.
+     * @param <V>          Result type.
+     * @return Result of the operation.
+     * @throws Exception Failure of the last attempt.
+     */
+    public <V> V execute(final Callable<V> operation, final RetryMetrics retryMetrics) throws Exception {
+        int attempt = 1;
+        while (true) {
+            try {
+                V result = operation.call();
+                if (retryMetrics != null) {
+                    retryMetrics.onSucceeded(attempt);
+                }
+                return result;
+            } catch (Exception exp) {
+                int failureType = FailureClassifier.classify(exp);
+                if (retryMetrics != null) {
+                    retryMetrics.onAttemptFailed(failureType);
+                }
+                boolean isTransient = failureType == FailureClassifier.FAILURE_TYPE_TRANSIENT;
+                if (!isTransient || attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+                    if (retryMetrics != null) {
+                        retryMetrics.onFailed(isTransient && attempt >= maxAttempts);
+                    }
+                    throw exp;
+                }
+                try {
+                    Thread.sleep(getDelayMillis(attempt));
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    if (retryMetrics != null) {
+                        retryMetrics.onFailed(false);
+                    }
+                    throw exp;
+                }
+                if (retryMetrics != null) {
+                    retryMetrics.onRetry();
+                }
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Used to get delay before a retry.
+     *
+     * @param retry Retry number, starting from 1.
+     * @return Delay in milliseconds.
+     */
+    public long getDelayMillis(final int retry) {
+        long delayMillis = baseDelayMillis;
+        for (int i = 1; i < retry && delayMillis < maxDelayMillis; i++) {
+            delayMillis *= 2;
+        }
+        delayMillis = Math.min(delayMillis, maxDelayMillis);
+        long halfDelayMillis = delayMillis / 2;
+        return halfDelayMillis + (long) (RANDOM.nextDouble() * (delayMillis - halfDelayMillis));
+    }
+
+    /**
+     * Getter's.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+}
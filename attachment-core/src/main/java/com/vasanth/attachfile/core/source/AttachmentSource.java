@@ -0,0 +1,60 @@
+package com.vasanth.attachfile.core.source;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Attachment Source.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Abstraction over where the attachment content lives, so that resolution, size, fingerprint & quota logic
+ * runs identically on Android (ContentResolver backed) & on the JVM (java.nio.file.Path backed).
+ * <p>
+ * 2. Methods.
+ * 2.a. getLocation - Used to get location of the source (Like uri or path), used for logs & as identifier.
+ * 2.b. queryMetadata - Used to get metadata (name, declared size & mimeType) without reading the content.
+ * 2.c. openInputStream - Used to read the content.
+ * 2.d. openFileChannel - Used to read the content through a FileChannel, if the source is backed by a real file.
+ * <p>
+ * 3. Note.
+ * 3.a. Methods may block for a long time (Like cloud files), hence call them in separate thread.
+ *
+ * @author Vasanth
+ */
+public interface AttachmentSource {
+
+    /**
+     * Used to get location of the source.
+     *
+     * @return Location (Like uri or path).
+     */
+    String getLocation();
+
+    /**
+     * Used to get metadata of the source without reading its content.
+     *
+     * @return Attachment detail, whose size is {@link AttachmentDetail#UNKNOWN_SIZE} (or 0 for some providers) if it is not known.
+     * @throws IOException If metadata couldn't be read.
+     */
+    AttachmentDetail queryMetadata() throws IOException;
+
+    /**
+     * Used to open the content.
+     *
+     * @return Input stream, caller must close it.
+     * @throws IOException If content couldn't be opened.
+     */
+    InputStream openInputStream() throws IOException;
+
+    /**
+     * Used to open the content as FileChannel.
+     *
+     * @return File channel (caller must close it) or NULL if the source is not backed by a real file.
+     * @throws IOException If content couldn't be opened.
+     */
+    FileChannel openFileChannel() throws IOException;
+
+}
@@ -0,0 +1,70 @@
+package com.vasanth.attachfile.core.source;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.util.FileDetailUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Path Attachment Source.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Attachment source backed by a java.nio.file.Path, used on JVM hosts (CI benchmarks, backend ingest workers).
+ * <p>
+ * 2. Note.
+ * 2.a. java.nio.file is not available on Android below API 26, hence don't use this class from the app.
+ *
+ * @author Vasanth
+ */
+public class PathAttachmentSource implements AttachmentSource {
+
+    private Path path;
+
+    /**
+     * Constructor.
+     *
+     * @param path Path of the attachment file.
+     */
+    public PathAttachmentSource(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public String getLocation() {
+        return path.toString();
+    }
+
+    @Override
+    public AttachmentDetail queryMetadata() throws IOException {
+        String fileName = path.getFileName() != null ? path.getFileName().toString() : null;
+        long fileSize = Files.size(path);
+        String fileMimeType = Files.probeContentType(path);
+        if (fileMimeType == null) {
+            fileMimeType = FileDetailUtil.getMimeTypeFromExtension(FileDetailUtil.getFileExtension(fileName));
+        }
+        return new AttachmentDetail(fileName, fileSize, fileMimeType);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return Channels.newInputStream(openFileChannel());
+    }
+
+    @Override
+    public FileChannel openFileChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Getter's.
+     */
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,586 @@
+package com.vasanth.attachfile.core.store;
+
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.util.ProgressListener;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Content Addressable Store.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to keep attachment content on disk once per distinct content, keyed by its SHA-256 (Content hash) - So that the
+ * same photo attached to several drafts, or reached through several uri's, is stored once.
+ * 1.b. Blobs are referenced by name per owner (Like attachment uri per draft), a blob is kept while any reference points to it.
+ * 1.c. Unreferenced blobs are kept as a cache within byteBudget & evicted least recently used first.
+ * <p>
+ * 2. Methods.
+ * 2.a. open - Used to read the store back on startup.
+ * 2.b. put / putFile - Used to add content, by copying a source or by moving in an already written file.
+ * 2.c. addReference / removeReference / removeOwner - Used to reference blobs & release them.
+ * 2.d. getReference / getFile - Used to find content of a reference & its blob file.
+ * <p>
+ * 3. Layout.
+ * 3.a. blobs/<contentHash> - Blob content, written through a temporary file & renamed, hence a blob is never partial.
+ * 3.b. manifest - Blobs (Raw hash & size, least recently used first) & references, with a checksum - Written through a temporary
+ * file which is synced & renamed, like {@link com.vasanth.attachfile.core.draft.AttachmentDraftJournal}.
+ * <p>
+ * 4. Note.
+ * 4.a. Startup reads the manifest & lists the blob directory once, without opening blobs - Blobs missing from the manifest (Added
+ * just before process death) are kept unreferenced & manifest entries without blob are dropped. Without a readable manifest blobs
+ * are kept unreferenced.
+ * 4.b. Store doesn't look into blob content, hence a blob may hold it encrypted - Content hash is then the hash of the plaintext,
+ * given by the caller (See {@link #putFile(File, String)}).
+ * 4.c. Methods are thread safe. They read & write disk, hence call them in separate thread.
+ * 4.d. Blob just added isn't evicted by its own put, even if the store is over budget with referenced blobs - So that it can be
+ * referenced right after.
+ *
+ * @author Vasanth
+ */
+public class ContentAddressableStore {
+
+    private static final int MAGIC = 0x41434153;
+    private static final int VERSION = 1;
+    private static final String BLOB_DIRECTORY_NAME = "blobs";
+    private static final String MANIFEST_FILE_NAME = "manifest";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int HASH_SIZE = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private File blobDirectory;
+    private File manifestFile;
+    private long byteBudget;
+    // Blobs by content hash, in access order - Least recently used first.
+    private LinkedHashMap<String, Blob> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    // Content hash of each reference, by owner & reference name.
+    private Map<String, Map<String, String>> references = new HashMap<>();
+    private long totalBytes;
+    private long evictedBytes;
+
+    /**
+     * Blob.
+     */
+    private static class Blob {
+
+        private long size;
+        private int referenceCount;
+
+        Blob(final long size) {
+            this.size = size;
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    private ContentAddressableStore(final File directory, final long byteBudget) {
+        this.blobDirectory = new File(directory, BLOB_DIRECTORY_NAME);
+        this.manifestFile = new File(directory, MANIFEST_FILE_NAME);
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Used to read the store back (See note 4.a), creating it if it doesn't exist.
+     *
+     * @param directory  Directory of the store.
+     * @param byteBudget Max bytes of blobs - Only unreferenced blobs are evicted, hence referenced ones may exceed it.
+     * @return Store.
+     * @throws IOException If directory couldn't be created.
+     */
+    public static ContentAddressableStore open(final File directory, final long byteBudget) throws IOException {
+        ContentAddressableStore contentAddressableStore = new ContentAddressableStore(directory, byteBudget);
+        if (!contentAddressableStore.blobDirectory.isDirectory() && !contentAddressableStore.blobDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + contentAddressableStore.blobDirectory);
+        }
+        synchronized (contentAddressableStore) {
+            contentAddressableStore.load();
+            contentAddressableStore.evict();
+        }
+        return contentAddressableStore;
+    }
+
+    /**
+     * Used to add content by copying a source, unreferenced till {@link #addReference(String, String, String)}.
+     * <p>
+     * 1. Copy is discarded if blob with the same content already exists.
+     *
+     * @param attachmentSource Attachment source.
+     * @param progressListener Listener to be notified with bytes copied, can be NULL.
+     * @return Content hash.
+     * @throws IOException If source couldn't be read or blob couldn't be written.
+     */
+    public String put(final AttachmentSource attachmentSource, final ProgressListener progressListener) throws IOException {
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream == null) {
+            throw new IOException("Unable to open " + attachmentSource.getLocation());
+        }
+        File tempFile = new File(blobDirectory, Thread.currentThread().getId() + "." + System.nanoTime() + TEMP_FILE_SUFFIX);
+        MessageDigest messageDigest = newDigest();
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        boolean isWritten = false;
+        try {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            long copiedSize = 0;
+            int read;
+            while ((read = inputStream.read(bytes)) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while storing attachment content");
+                }
+                messageDigest.update(bytes, 0, read);
+                outputStream.write(bytes, 0, read);
+                copiedSize += read;
+                if (progressListener != null) {
+                    progressListener.onProgress(copiedSize);
+                }
+            }
+            outputStream.getFD().sync();
+            isWritten = true;
+        } finally {
+            inputStream.close();
+            outputStream.close();
+            if (!isWritten) {
+                tempFile.delete();
+            }
+        }
+        String contentHash = SegmentedDigest.toHex(messageDigest.digest());
+        putFile(tempFile, contentHash);
+        return contentHash;
+    }
+
+    /**
+     * Used to add content by moving in an already written file (Like a staged file), unreferenced till
+     * {@link #addReference(String, String, String)}.
+     * <p>
+     * 1. File is deleted if blob with the same content already exists.
+     *
+     * @param file        File, must be on the same file system as the store.
+     * @param contentHash Content hash (SHA-256, hex) of the content the file holds - Caller is trusted on it.
+     * @throws IOException If file couldn't be moved in.
+     */
+    public synchronized void putFile(final File file, final String contentHash) throws IOException {
+        File blobFile = getBlobFile(contentHash);
+        Blob blob = blobs.get(contentHash);
+        if (blob != null && blobFile.exists()) {
+            file.delete();
+            return;
+        }
+        long size = file.length();
+        if (!file.renameTo(blobFile)) {
+            file.delete();
+            throw new IOException("Unable to move " + file + " to " + blobFile);
+        }
+        if (blob != null) {
+            totalBytes -= blob.size;
+            blob.size = size;
+        } else {
+            blobs.put(contentHash, new Blob(size));
+        }
+        totalBytes += size;
+        writeManifest();
+        evict(contentHash);
+    }
+
+    /**
+     * Used to point a reference of an owner at a blob, replacing what it pointed at.
+     *
+     * @param ownerId       Owner (Like draft id).
+     * @param name          Reference name, unique within owner (Like attachment uri).
+     * @param contentHash   Content hash of the blob.
+     * @throws IOException If blob is not in the store or manifest couldn't be written.
+     */
+    public synchronized void addReference(final String ownerId, final String name, final String contentHash) throws IOException {
+        Blob blob = blobs.get(contentHash);
+        if (blob == null) {
+            throw new IOException("No blob " + contentHash);
+        }
+        Map<String, String> ownerReferences = references.get(ownerId);
+        if (ownerReferences == null) {
+            ownerReferences = new HashMap<>();
+            references.put(ownerId, ownerReferences);
+        }
+        String previousContentHash = ownerReferences.put(name, contentHash);
+        if (contentHash.equals(previousContentHash)) {
+            return;
+        }
+        blob.referenceCount++;
+        release(previousContentHash);
+        writeManifest();
+        evict();
+    }
+
+    /**
+     * Used to remove a reference of an owner - Its blob becomes evictable once nothing else references it.
+     *
+     * @param ownerId Owner.
+     * @param name    Reference name.
+     * @throws IOException If manifest couldn't be written.
+     */
+    public synchronized void removeReference(final String ownerId, final String name) throws IOException {
+        Map<String, String> ownerReferences = references.get(ownerId);
+        String contentHash = ownerReferences != null ? ownerReferences.remove(name) : null;
+        if (contentHash == null) {
+            return;
+        }
+        if (ownerReferences.isEmpty()) {
+            references.remove(ownerId);
+        }
+        release(contentHash);
+        writeManifest();
+        evict();
+    }
+
+    /**
+     * Used to remove all references of an owner (Like a discarded draft).
+     *
+     * @param ownerId Owner.
+     * @throws IOException If manifest couldn't be written.
+     */
+    public synchronized void removeOwner(final String ownerId) throws IOException {
+        Map<String, String> ownerReferences = references.remove(ownerId);
+        if (ownerReferences == null) {
+            return;
+        }
+        for (String contentHash : ownerReferences.values()) {
+            release(contentHash);
+        }
+        writeManifest();
+        evict();
+    }
+
+    /**
+     * Used to get content hash a reference points at.
+     *
+     * @param ownerId Owner.
+     * @param name    Reference name.
+     * @return Content hash, NULL if there is no such reference.
+     */
+    public synchronized String getReference(final String ownerId, final String name) {
+        Map<String, String> ownerReferences = references.get(ownerId);
+        return ownerReferences != null ? ownerReferences.get(name) : null;
+    }
+
+    /**
+     * Used to get blob file of a content, marking it as recently used.
+     *
+     * @param contentHash Content hash, can be NULL.
+     * @return Blob file, NULL if content is not in the store.
+     */
+    public synchronized File getFile(final String contentHash) {
+        if (contentHash == null || blobs.get(contentHash) == null) {
+            return null;
+        }
+        return getBlobFile(contentHash);
+    }
+
+    /**
+     * Used to get number of references pointing at a blob.
+     *
+     * @param contentHash Content hash.
+     * @return Reference count, 0 if blob is unreferenced or not in the store.
+     */
+    public synchronized int getReferenceCount(final String contentHash) {
+        Blob blob = blobs.get(contentHash);
+        return blob != null ? blob.referenceCount : 0;
+    }
+
+    /**
+     * Used to compute content hash of content, as expected by {@link #putFile(File, String)}.
+     *
+     * @param inputStream Content, closed once read.
+     * @return Content hash.
+     * @throws IOException If content couldn't be read.
+     */
+    public static String computeContentHash(final InputStream inputStream) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        try {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(bytes)) >= 0) {
+                messageDigest.update(bytes, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return SegmentedDigest.toHex(messageDigest.digest());
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private File getBlobFile(final String contentHash) {
+        return new File(blobDirectory, contentHash);
+    }
+
+    private void release(final String contentHash) {
+        Blob blob = contentHash != null ? blobs.get(contentHash) : null;
+        if (blob != null && blob.referenceCount > 0) {
+            blob.referenceCount--;
+        }
+    }
+
+    private void evict() throws IOException {
+        evict(null);
+    }
+
+    /**
+     * Used to evict unreferenced blobs, least recently used first, till store is within byte budget.
+     *
+     * @param keptContentHash Content hash of blob which is not evicted even if unreferenced (See note 4.d), can be NULL.
+     */
+    private void evict(final String keptContentHash) throws IOException {
+        boolean isEvicted = false;
+        Iterator<Map.Entry<String, Blob>> iterator = blobs.entrySet().iterator();
+        while (totalBytes > byteBudget && iterator.hasNext()) {
+            Map.Entry<String, Blob> entry = iterator.next();
+            if (entry.getValue().referenceCount > 0 || entry.getKey().equals(keptContentHash)) {
+                continue;
+            }
+            iterator.remove();
+            getBlobFile(entry.getKey()).delete();
+            totalBytes -= entry.getValue().size;
+            evictedBytes += entry.getValue().size;
+            isEvicted = true;
+        }
+        if (isEvicted) {
+            writeManifest();
+        }
+    }
+
+    /**
+     * Used to read manifest & reconcile it with blob directory (See note 4.a).
+     */
+    private void load() {
+        Set<String> blobFileNames = new HashSet<>();
+        String[] fileNames = blobDirectory.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.endsWith(TEMP_FILE_SUFFIX)) {
+                    // Left by a put which didn't complete.
+                    new File(blobDirectory, fileName).delete();
+                } else if (isContentHash(fileName)) {
+                    blobFileNames.add(fileName);
+                }
+            }
+        }
+
+        try {
+            readManifest(blobFileNames);
+        } catch (IOException exp) {
+            exp.printStackTrace();
+            blobs.clear();
+            references.clear();
+        }
+        totalBytes = 0;
+        for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+            blobFileNames.remove(entry.getKey());
+            totalBytes += entry.getValue().size;
+        }
+        // Blobs not in manifest - Oldest guess, hence first to be evicted.
+        if (!blobFileNames.isEmpty()) {
+            LinkedHashMap<String, Blob> loadedBlobs = new LinkedHashMap<>(16, 0.75f, true);
+            for (String blobFileName : blobFileNames) {
+                long size = getBlobFile(blobFileName).length();
+                loadedBlobs.put(blobFileName, new Blob(size));
+                totalBytes += size;
+            }
+            loadedBlobs.putAll(blobs);
+            blobs = loadedBlobs;
+        }
+    }
+
+    private void readManifest(final Set<String> blobFileNames) throws IOException {
+        FileInputStream fileInputStream;
+        try {
+            fileInputStream = new FileInputStream(manifestFile);
+        } catch (FileNotFoundException fileNotFoundException) {
+            return;
+        }
+        try {
+            CheckedInputStream checkedInputStream = new CheckedInputStream(new BufferedInputStream(fileInputStream), new CRC32());
+            DataInputStream inputStream = new DataInputStream(checkedInputStream);
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                throw new IOException("Unknown manifest format " + manifestFile);
+            }
+            // Fields are read before the checksum is, hence counts & indexes are checked against what the file can hold.
+            long remainingSize = manifestFile.length() - 12;
+            int blobCount = inputStream.readInt();
+            if (blobCount < 0 || blobCount > remainingSize / (HASH_SIZE + 8)) {
+                throw new IOException("Corrupt manifest " + manifestFile);
+            }
+            remainingSize -= blobCount * (long) (HASH_SIZE + 8);
+            List<String> contentHashes = new ArrayList<>(blobCount);
+            byte[] hash = new byte[HASH_SIZE];
+            for (int i = 0; i < blobCount; i++) {
+                inputStream.readFully(hash);
+                String contentHash = SegmentedDigest.toHex(hash);
+                long size = inputStream.readLong();
+                if (size < 0) {
+                    throw new IOException("Corrupt manifest " + manifestFile);
+                }
+                contentHashes.add(contentHash);
+                if (blobFileNames.contains(contentHash)) {
+                    blobs.put(contentHash, new Blob(size));
+                }
+            }
+            int referenceCount = inputStream.readInt();
+            // Reference is 2 names (At least their lengths) & a blob index.
+            if (referenceCount < 0 || referenceCount > remainingSize / 8) {
+                throw new IOException("Corrupt manifest " + manifestFile);
+            }
+            for (int i = 0; i < referenceCount; i++) {
+                String ownerId = inputStream.readUTF();
+                String name = inputStream.readUTF();
+                int blobIndex = inputStream.readInt();
+                if (blobIndex < 0 || blobIndex >= contentHashes.size()) {
+                    throw new IOException("Corrupt manifest " + manifestFile);
+                }
+                String contentHash = contentHashes.get(blobIndex);
+                Blob blob = blobs.get(contentHash);
+                if (blob == null) {
+                    continue;
+                }
+                Map<String, String> ownerReferences = references.get(ownerId);
+                if (ownerReferences == null) {
+                    ownerReferences = new HashMap<>();
+                    references.put(ownerId, ownerReferences);
+                }
+                ownerReferences.put(name, contentHash);
+                blob.referenceCount++;
+            }
+            long checksum = checkedInputStream.getChecksum().getValue();
+            if (inputStream.readLong() != checksum) {
+                throw new IOException("Corrupt manifest " + manifestFile);
+            }
+        } finally {
+            fileInputStream.close();
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        File tempFile = new File(manifestFile.getPath() + TEMP_FILE_SUFFIX);
+        FileOutputStream fileOutputStream = new FileOutputStream(tempFile);
+        boolean isWritten = false;
+        try {
+            CheckedOutputStream checkedOutputStream = new CheckedOutputStream(new BufferedOutputStream(fileOutputStream), new CRC32());
+            DataOutputStream outputStream = new DataOutputStream(checkedOutputStream);
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(blobs.size());
+            Map<String, Integer> blobIndexes = new HashMap<>();
+            for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+                blobIndexes.put(entry.getKey(), blobIndexes.size());
+                outputStream.write(fromHex(entry.getKey()));
+                outputStream.writeLong(entry.getValue().size);
+            }
+            int referenceCount = 0;
+            for (Map<String, String> ownerReferences : references.values()) {
+                referenceCount += ownerReferences.size();
+            }
+            outputStream.writeInt(referenceCount);
+            for (Map.Entry<String, Map<String, String>> ownerEntry : references.entrySet()) {
+                for (Map.Entry<String, String> referenceEntry : ownerEntry.getValue().entrySet()) {
+                    outputStream.writeUTF(ownerEntry.getKey());
+                    outputStream.writeUTF(referenceEntry.getKey());
+                    outputStream.writeInt(blobIndexes.get(referenceEntry.getValue()));
+                }
+            }
+            outputStream.flush();
+            long checksum = checkedOutputStream.getChecksum().getValue();
+            outputStream.writeLong(checksum);
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+            isWritten = true;
+        } finally {
+            fileOutputStream.close();
+            if (!isWritten) {
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(manifestFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to replace manifest " + manifestFile);
+        }
+    }
+
+    private static boolean isContentHash(final String name) {
+        if (name.length() != HASH_SIZE * 2) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] fromHex(final String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    /**
+     * Getter's.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getBlobCount() {
+        return blobs.size();
+    }
+
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ContentAddressableStore{" +
+                "blobCount=" + blobs.size() +
+                ", totalBytes=" + totalBytes +
+                ", byteBudget=" + byteBudget +
+                ", evictedBytes=" + evictedBytes +
+                '}';
+    }
+}
@@ -0,0 +1,312 @@
+package com.vasanth.attachfile.core.stream;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Demand Emitter.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to deliver items of a producer to a single subscriber on the subscriber's choice of thread, never more items than
+ * the subscriber requested (Demand based backpressure).
+ * <p>
+ * 2. Methods.
+ * 2.a. start - Used to notify subscriber of its subscription, before any item.
+ * 2.b. emit / complete / error - Used by the producer to push an item / end the stream, from any thread.
+ * 2.c. getUnmetDemand - Used by the producer to know how many more items the subscriber is ready for.
+ * 2.d. getSubscription - Used to get the subscription, same as given to subscriber.
+ * <p>
+ * 3. Subscription.
+ * 3.a. request - Subscriber asks for more items, items emitted beyond demand wait in a buffer.
+ * 3.b. cancel - Single handle to stop the stream, buffered items are dropped & nothing more is delivered.
+ * <p>
+ * 4. Note.
+ * 4.a. Subscriber is called serially, one call at a time, in emitted order - On the delivery executor.
+ * 4.b. Completion is delivered once buffered items are delivered, error is delivered right away dropping buffered items.
+ * 4.c. Producer should emit only as much as {@link #getUnmetDemand()}, so that buffer stays small - DemandListener tells it when
+ * demand grows.
+ *
+ * @param <T> Type of item.
+ * @author Vasanth
+ */
+public class DemandEmitter<T> {
+
+    private Executor deliveryExecutor;
+    private Subscriber<T> subscriber;
+    private DemandListener demandListener;
+    private final Object lock = new Object();
+    private Queue<T> bufferedItems = new ArrayDeque<>();
+    private long requestedCount;
+    private boolean isSubscribeDelivered;
+    private boolean isCompleted;
+    private Throwable error;
+    private boolean isTerminated;
+    private boolean isCancelled;
+    private boolean isDraining;
+    private Subscription subscription = new Subscription() {
+        @Override
+        public void request(final long count) {
+            onRequest(count);
+        }
+
+        @Override
+        public void cancel() {
+            onCancel();
+        }
+    };
+
+    /**
+     * Subscriber.
+     *
+     * @param <T> Type of item.
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * Gets called first, nothing is delivered until subscriber requests it.
+         *
+         * @param subscription Subscription, to request items & to cancel.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Gets called with next item, only as many times as requested.
+         *
+         * @param item Item.
+         */
+        void onNext(T item);
+
+        /**
+         * Gets called if stream failed, nothing is delivered afterwards.
+         *
+         * @param throwable Failure.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Gets called once all items are delivered, nothing is delivered afterwards.
+         */
+        void onComplete();
+
+    }
+
+    /**
+     * Subscription.
+     */
+    public interface Subscription {
+
+        /**
+         * Used to request more items.
+         *
+         * @param count Number of items, more than 0 - Long.MAX_VALUE for unbounded.
+         */
+        void request(long count);
+
+        /**
+         * Used to cancel the stream.
+         */
+        void cancel();
+
+    }
+
+    /**
+     * Demand Listener - Producer side, gets called on the thread which requested or cancelled.
+     */
+    public interface DemandListener {
+
+        /**
+         * Gets called once subscriber requested more items.
+         */
+        void onDemand();
+
+        /**
+         * Gets called once subscriber cancelled, producer should stop.
+         */
+        void onCancel();
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param deliveryExecutor Executor on which subscriber is called (Like main thread or a background executor).
+     * @param subscriber       Subscriber.
+     * @param demandListener   Demand listener.
+     */
+    public DemandEmitter(final Executor deliveryExecutor, final Subscriber<T> subscriber, final DemandListener demandListener) {
+        this.deliveryExecutor = deliveryExecutor;
+        this.subscriber = subscriber;
+        this.demandListener = demandListener;
+    }
+
+    /**
+     * Used to notify subscriber of its subscription.
+     */
+    public void start() {
+        scheduleDrain();
+    }
+
+    /**
+     * Used to push an item, it is delivered once subscriber requests it.
+     *
+     * @param item Item.
+     */
+    public void emit(final T item) {
+        synchronized (lock) {
+            if (isCancelled || isCompleted || error != null) {
+                return;
+            }
+            bufferedItems.add(item);
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Used to end the stream, once buffered items are delivered.
+     */
+    public void complete() {
+        synchronized (lock) {
+            if (isCancelled || error != null) {
+                return;
+            }
+            isCompleted = true;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Used to fail the stream.
+     *
+     * @param throwable Failure.
+     */
+    public void error(final Throwable throwable) {
+        synchronized (lock) {
+            if (isCancelled || isCompleted || error != null) {
+                return;
+            }
+            error = throwable;
+            bufferedItems.clear();
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Used to get how many more items subscriber is ready for.
+     *
+     * @return Requested & not yet emitted items, 0 once cancelled or ended.
+     */
+    public long getUnmetDemand() {
+        synchronized (lock) {
+            if (isCancelled || isCompleted || error != null) {
+                return 0L;
+            }
+            return Math.max(0L, requestedCount - bufferedItems.size());
+        }
+    }
+
+    /**
+     * @return Subscription, same as given to subscriber.
+     */
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * @return TRUE if subscriber cancelled.
+     */
+    public boolean isCancelled() {
+        synchronized (lock) {
+            return isCancelled;
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void onRequest(final long count) {
+        if (count <= 0) {
+            error(new IllegalArgumentException("Requested count must be more than 0, was " + count));
+            return;
+        }
+        synchronized (lock) {
+            if (isCancelled || isTerminated) {
+                return;
+            }
+            requestedCount = requestedCount + count < requestedCount ? Long.MAX_VALUE : requestedCount + count;
+        }
+        scheduleDrain();
+        demandListener.onDemand();
+    }
+
+    private void onCancel() {
+        synchronized (lock) {
+            if (isCancelled || isTerminated) {
+                return;
+            }
+            isCancelled = true;
+            bufferedItems.clear();
+        }
+        demandListener.onCancel();
+    }
+
+    private void scheduleDrain() {
+        synchronized (lock) {
+            if (isDraining) {
+                return;
+            }
+            isDraining = true;
+        }
+        deliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    /**
+     * Used to deliver whatever is deliverable, one call at a time - Only one drain runs at a time.
+     */
+    private void drain() {
+        while (true) {
+            T item = null;
+            boolean isSubscribe = false;
+            boolean isComplete = false;
+            Throwable failure = null;
+            synchronized (lock) {
+                if (!isSubscribeDelivered) {
+                    isSubscribeDelivered = true;
+                    isSubscribe = true;
+                } else if (isCancelled || isTerminated) {
+                    isDraining = false;
+                    return;
+                } else if (error != null) {
+                    isTerminated = true;
+                    failure = error;
+                } else if (requestedCount > 0 && !bufferedItems.isEmpty()) {
+                    item = bufferedItems.poll();
+                    if (requestedCount != Long.MAX_VALUE) {
+                        requestedCount--;
+                    }
+                } else if (isCompleted && bufferedItems.isEmpty()) {
+                    isTerminated = true;
+                    isComplete = true;
+                } else {
+                    isDraining = false;
+                    return;
+                }
+            }
+
+            if (isSubscribe) {
+                subscriber.onSubscribe(subscription);
+            } else if (failure != null) {
+                subscriber.onError(failure);
+            } else if (isComplete) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onNext(item);
+            }
+        }
+    }
+}
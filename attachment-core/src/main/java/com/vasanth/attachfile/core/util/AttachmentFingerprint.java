@@ -0,0 +1,87 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Attachment Fingerprint.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to compute content fingerprint of an attachment source (See {@link SegmentedDigest}).
+ * 1.b. Same content produces the same fingerprint, whichever source (Uri, Path) it is read from.
+ * <p>
+ * 2. Note.
+ * 2.a. Reads the whole content, hence call it in separate thread. Reading stops if the calling thread is interrupted.
+ * 2.b. Sources backed by a real file are hashed segment wise through memory mapped regions, without heap buffers.
+ * Use {@link ParallelSegmentHasher} to hash those segments in parallel.
+ *
+ * @author Vasanth
+ */
+public class AttachmentFingerprint {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Used to compute fingerprint of the source.
+     *
+     * @param attachmentSource Attachment source.
+     * @param progressListener Listener to be notified with bytes read, can be NULL.
+     * @return Fingerprint in lower case hex.
+     * @throws IOException If source couldn't be read.
+     */
+    public static String compute(final AttachmentSource attachmentSource, final ProgressListener progressListener) throws IOException {
+        SegmentedDigest segmentedDigest = new SegmentedDigest();
+
+        FileChannel fileChannel = attachmentSource.openFileChannel();
+        if (fileChannel != null) {
+            try {
+                long size = fileChannel.size();
+                for (long position = 0; position < size; position += SegmentedDigest.DEFAULT_SEGMENT_SIZE) {
+                    checkInterrupted();
+                    long length = Math.min(SegmentedDigest.DEFAULT_SEGMENT_SIZE, size - position);
+                    segmentedDigest.update(fileChannel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                    notifyProgress(progressListener, segmentedDigest.getLength());
+                }
+            } finally {
+                fileChannel.close();
+            }
+            return segmentedDigest.finish();
+        }
+
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream == null) {
+            throw new IOException("Unable to open " + attachmentSource.getLocation());
+        }
+        try {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(bytes)) >= 0) {
+                checkInterrupted();
+                segmentedDigest.update(bytes, 0, read);
+                notifyProgress(progressListener, segmentedDigest.getLength());
+            }
+        } finally {
+            inputStream.close();
+        }
+        return segmentedDigest.finish();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while reading attachment content");
+        }
+    }
+
+    private static void notifyProgress(final ProgressListener progressListener, final long bytesRead) {
+        if (progressListener != null) {
+            progressListener.onProgress(bytesRead);
+        }
+    }
+}
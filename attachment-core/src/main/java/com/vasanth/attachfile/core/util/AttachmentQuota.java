@@ -0,0 +1,132 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+
+/**
+ * Attachment Quota.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to limit number of attachments, size of a single attachment & total size of all attachments.
+ * <p>
+ * 2. Methods.
+ * 2.a. check - Used to check whether attachment can be added, without adding it.
+ * 2.b. reserve - Used to add attachment to quota, if it fits.
+ * 2.c. release - Used to remove attachment from quota.
+ * <p>
+ * 3. Note.
+ * 3.a. Attachments whose size is not known are counted as size "0".
+ * 3.b. Methods are thread safe.
+ *
+ * @author Vasanth
+ */
+public class AttachmentQuota {
+
+    // Used for limit which should not be checked.
+    public static final long NO_LIMIT = -1L;
+
+    // Returned when attachment fits in quota.
+    public static final int QUOTA_OK = 0;
+
+    // This error code will be returned - If adding attachment exceeds max attachment count.
+    public static final int QUOTA_ERROR_CODE_TOO_MANY_ATTACHMENTS = 2001;
+
+    // This error code will be returned - If attachment is larger than max attachment size.
+    public static final int QUOTA_ERROR_CODE_ATTACHMENT_TOO_LARGE = 2002;
+
+    // This error code will be returned - If adding attachment exceeds max total size.
+    public static final int QUOTA_ERROR_CODE_TOTAL_SIZE_EXCEEDED = 2003;
+
+    private long maxAttachmentCount;
+    private long maxAttachmentSize;
+    private long maxTotalSize;
+    private long attachmentCount;
+    private long totalSize;
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttachmentCount Max number of attachments, or {@link #NO_LIMIT}.
+     * @param maxAttachmentSize  Max size of a single attachment in bytes, or {@link #NO_LIMIT}.
+     * @param maxTotalSize       Max total size of all attachments in bytes, or {@link #NO_LIMIT}.
+     */
+    public AttachmentQuota(final long maxAttachmentCount, final long maxAttachmentSize, final long maxTotalSize) {
+        this.maxAttachmentCount = maxAttachmentCount;
+        this.maxAttachmentSize = maxAttachmentSize;
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * Used to check whether attachment can be added.
+     *
+     * @param attachmentDetail Attachment detail.
+     * @return {@link #QUOTA_OK} or one of the QUOTA_ERROR_CODE's.
+     */
+    public synchronized int check(final AttachmentDetail attachmentDetail) {
+        long size = getCountedSize(attachmentDetail);
+        if (maxAttachmentCount != NO_LIMIT && attachmentCount + 1 > maxAttachmentCount) {
+            return QUOTA_ERROR_CODE_TOO_MANY_ATTACHMENTS;
+        }
+        if (maxAttachmentSize != NO_LIMIT && size > maxAttachmentSize) {
+            return QUOTA_ERROR_CODE_ATTACHMENT_TOO_LARGE;
+        }
+        if (maxTotalSize != NO_LIMIT && totalSize + size > maxTotalSize) {
+            return QUOTA_ERROR_CODE_TOTAL_SIZE_EXCEEDED;
+        }
+        return QUOTA_OK;
+    }
+
+    /**
+     * Used to add attachment to quota, if it fits.
+     *
+     * @param attachmentDetail Attachment detail.
+     * @return {@link #QUOTA_OK} if attachment was added, else one of the QUOTA_ERROR_CODE's.
+     */
+    public synchronized int reserve(final AttachmentDetail attachmentDetail) {
+        int result = check(attachmentDetail);
+        if (result == QUOTA_OK) {
+            attachmentCount++;
+            totalSize += getCountedSize(attachmentDetail);
+        }
+        return result;
+    }
+
+    /**
+     * Used to remove attachment from quota.
+     *
+     * @param attachmentDetail Attachment detail, which was added through {@link #reserve(AttachmentDetail)}.
+     */
+    public synchronized void release(final AttachmentDetail attachmentDetail) {
+        attachmentCount = Math.max(0, attachmentCount - 1);
+        totalSize = Math.max(0, totalSize - getCountedSize(attachmentDetail));
+    }
+
+    /**
+     * Getter's.
+     */
+    public synchronized long getAttachmentCount() {
+        return attachmentCount;
+    }
+
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getMaxAttachmentCount() {
+        return maxAttachmentCount;
+    }
+
+    public long getMaxAttachmentSize() {
+        return maxAttachmentSize;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static long getCountedSize(final AttachmentDetail attachmentDetail) {
+        return attachmentDetail != null && attachmentDetail.getSize() > 0 ? attachmentDetail.getSize() : 0L;
+    }
+}
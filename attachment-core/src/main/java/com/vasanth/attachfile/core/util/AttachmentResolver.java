@@ -0,0 +1,197 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentProbeResult;
+import com.vasanth.attachfile.core.probe.AttachmentProbe;
+import com.vasanth.attachfile.core.retry.RetryMetrics;
+import com.vasanth.attachfile.core.retry.RetryPolicy;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * Attachment Resolver.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to resolve attachment detail (name, size, mimeType) from an attachment source.
+ * <p>
+ * 2. Methods.
+ * 2.a. resolve - Used to resolve attachment detail from source, optionally retrying each step on transient failure.
+ * 2.b. getContentSize - Used to get size of the source by its content.
+ * 2.c. countBytes - Used to count bytes of a stream.
+ * <p>
+ * 3. Note.
+ * 3.a. For some sources we will get size as "0" - Like "Shared file in google drive" then in those cases we need to read the content
+ * to get actual size, which may take long time hence make sure to call these methods in separate thread.
+ * 3.b. Reading content stops if the calling thread is interrupted (Like when its deadline expires).
+ * 3.c. If source metadata can't tell the mimeType, it is sniffed from the content header (See {@link MimeTypeSniffer}).
+ *
+ * @author Vasanth
+ */
+public class AttachmentResolver {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Progress is notified at most once per this many bytes, so that listener doesn't flood the UI thread.
+    private static final long PROGRESS_NOTIFY_INTERVAL_BYTES = 64 * 1024;
+
+    /**
+     * Used to resolve attachment detail from source.
+     * <p>
+     * 1. Get name, declared size & mimeType from source metadata.
+     * 2. If declared size is not known - Then get size by its content.
+     * 3. If mimeType is not known - Then sniff it from content header.
+     * 4. Size & mimeType come from the same single read of the content (See {@link AttachmentProbe}).
+     *
+     * @param attachmentSource Attachment source.
+     * @param progressListener Listener to be notified with bytes read while reading content, can be NULL.
+     * @return Attachment detail.
+     * @throws IOException If source couldn't be read.
+     */
+    public static AttachmentDetail resolve(final AttachmentSource attachmentSource, final ProgressListener progressListener) throws IOException {
+        AttachmentDetail attachmentDetail = attachmentSource.queryMetadata();
+        if (attachmentDetail.getSize() <= 0 || attachmentDetail.getMimeType() == null) {
+            AttachmentProbe.probe(attachmentSource, attachmentDetail, AttachmentProbe.PROBE_SIZE | AttachmentProbe.PROBE_MIME_TYPE,
+                    progressListener);
+        }
+        return attachmentDetail;
+    }
+
+    /**
+     * Used to resolve attachment detail from source, retrying each step on transient failure.
+     * <p>
+     * 1. Steps which succeeded are not run again when a later step is retried, & content size counting resumes from the bytes
+     * already counted (See {@link ContentSizeCounter}).
+     * 2. If neither size nor mimeType is known, both come from a single read of the content (See {@link AttachmentProbe}), retried
+     * as one step.
+     *
+     * @param attachmentSource Attachment source.
+     * @param progressListener Listener to be notified with bytes read while reading content, can be NULL.
+     * @param retryPolicy      Retry policy.
+     * @param retryMetrics     Metrics to be updated, can be NULL.
+     * @return Attachment detail.
+     * @throws IOException If source couldn't be read.
+     */
+    public static AttachmentDetail resolve(final AttachmentSource attachmentSource, final ProgressListener progressListener,
+                                           final RetryPolicy retryPolicy, final RetryMetrics retryMetrics) throws IOException {
+        final AttachmentDetail attachmentDetail = execute(retryPolicy, retryMetrics, new Callable<AttachmentDetail>() {
+            @Override
+            public AttachmentDetail call() throws IOException {
+                return attachmentSource.queryMetadata();
+            }
+        });
+        if (attachmentDetail.getSize() <= 0 && attachmentDetail.getMimeType() == null) {
+            execute(retryPolicy, retryMetrics, new Callable<AttachmentProbeResult>() {
+                @Override
+                public AttachmentProbeResult call() throws IOException {
+                    return AttachmentProbe.probe(attachmentSource, attachmentDetail,
+                            AttachmentProbe.PROBE_SIZE | AttachmentProbe.PROBE_MIME_TYPE, progressListener);
+                }
+            });
+            return attachmentDetail;
+        }
+        if (attachmentDetail.getSize() <= 0) {
+            final ContentSizeCounter contentSizeCounter = new ContentSizeCounter();
+            attachmentDetail.setSize(execute(retryPolicy, retryMetrics, new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    return contentSizeCounter.count(attachmentSource, progressListener);
+                }
+            }));
+        }
+        if (attachmentDetail.getMimeType() == null) {
+            attachmentDetail.setMimeType(execute(retryPolicy, retryMetrics, new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return MimeTypeSniffer.sniff(attachmentSource);
+                }
+            }));
+        }
+        return attachmentDetail;
+    }
+
+    /**
+     * Used to get size of the source by its content.
+     * <p>
+     * 1. If source is backed by a real file, then we get size from its channel without reading.
+     * 2. Else we read the whole content & count its bytes.
+     *
+     * @param attachmentSource Attachment source.
+     * @param progressListener Listener to be notified with bytes read, can be NULL.
+     * @return Size in bytes.
+     * @throws IOException If source couldn't be read.
+     */
+    public static long getContentSize(final AttachmentSource attachmentSource, final ProgressListener progressListener) throws IOException {
+        FileChannel fileChannel = attachmentSource.openFileChannel();
+        if (fileChannel != null) {
+            try {
+                return fileChannel.size();
+            } finally {
+                fileChannel.close();
+            }
+        }
+
+        long contentSize = 0L;
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream != null) {
+            try {
+                contentSize = countBytes(inputStream, progressListener);
+            } finally {
+                inputStream.close();
+            }
+        }
+        return contentSize;
+    }
+
+    /**
+     * Used to count bytes of a stream.
+     *
+     * @param inputStream      Stream to be counted, it is not closed.
+     * @param progressListener Listener to be notified with bytes read, can be NULL.
+     * @return Number of bytes read till end of stream.
+     * @throws InterruptedIOException If the calling thread was interrupted while reading.
+     */
+    public static long countBytes(final InputStream inputStream, final ProgressListener progressListener) throws IOException {
+        long byteCount = 0L;
+        long lastNotifiedCount = 0L;
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(bytes)) >= 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while reading attachment content");
+            }
+            byteCount += read;
+            if (progressListener != null && byteCount - lastNotifiedCount >= PROGRESS_NOTIFY_INTERVAL_BYTES) {
+                lastNotifiedCount = byteCount;
+                progressListener.onProgress(byteCount);
+            }
+        }
+        if (progressListener != null) {
+            progressListener.onProgress(byteCount);
+        }
+        return byteCount;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to run step through retry policy, steps only throw IOException.
+     */
+    private static <V> V execute(final RetryPolicy retryPolicy, final RetryMetrics retryMetrics, final Callable<V> step)
+            throws IOException {
+        try {
+            return retryPolicy.execute(step, retryMetrics);
+        } catch (IOException ioException) {
+            throw ioException;
+        } catch (RuntimeException runtimeException) {
+            throw runtimeException;
+        } catch (Exception exp) {
+            throw new IOException(exp);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Attachment Stager.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to copy (stage) attachment content into app owned storage, so that it can be processed after the
+ * source grant is gone.
+ * <p>
+ * 2. Methods.
+ * 2.a. stage - Used to copy the source content into destination file.
+ * 2.b. stage (Resumable) - Used to copy the source content into destination file, resuming a copy which was interrupted.
+ * <p>
+ * 3. Note.
+ * 3.a. Sources backed by a real file are copied window by window through memory mapped regions, without heap buffers.
+ * 3.b. Content is written to a temporary file which is renamed to destination once complete, hence destination is either
+ * complete or absent.
+ * 3.c. Copying stops if the calling thread is interrupted.
+ * 3.d. Resumable copy keeps its temporary file when it stops & continues it from the last checkpoint - Checkpoint is only notified
+ * once the bytes before it are synced to disk, hence it is safe to journal (See {@link com.vasanth.attachfile.core.outbox.OutboxJournal}).
+ *
+ * @author Vasanth
+ */
+public class AttachmentStager {
+
+    private static final long MAPPED_WINDOW_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    // Resumable copy syncs & notifies checkpoint after this many bytes.
+    private static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;
+
+    /**
+     * Used to copy the source content into destination file.
+     *
+     * @param attachmentSource Attachment source.
+     * @param destinationFile  Destination file, replaced if it exists.
+     * @param progressListener Listener to be notified with bytes copied, can be NULL.
+     * @return Number of bytes copied.
+     * @throws IOException If source couldn't be read or destination couldn't be written.
+     */
+    public static long stage(final AttachmentSource attachmentSource, final File destinationFile,
+                             final ProgressListener progressListener) throws IOException {
+        return stage(attachmentSource, destinationFile, 0L, progressListener, false);
+    }
+
+    /**
+     * Used to copy the source content into destination file, resuming a copy which was interrupted.
+     * <p>
+     * 1. Copy starts over if there is nothing to resume (Temporary file is gone or shorter than checkpoint) or source content
+     * is shorter than checkpoint.
+     *
+     * @param attachmentSource   Attachment source, must be the same source across calls.
+     * @param destinationFile    Destination file, replaced if it exists.
+     * @param checkpoint         Checkpoint notified by the interrupted copy, 0 to start a new copy.
+     * @param checkpointListener Listener to be notified with bytes copied & synced to disk, can be NULL.
+     * @return Number of bytes copied, including the ones before checkpoint.
+     * @throws IOException If source couldn't be read or destination couldn't be written, temporary file is kept to resume.
+     */
+    public static long stage(final AttachmentSource attachmentSource, final File destinationFile, final long checkpoint,
+                             final ProgressListener checkpointListener) throws IOException {
+        return stage(attachmentSource, destinationFile, checkpoint, checkpointListener, true);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static long stage(final AttachmentSource attachmentSource, final File destinationFile, final long checkpoint,
+                              final ProgressListener progressListener, final boolean isResumable) throws IOException {
+        File tempFile = new File(destinationFile.getPath() + TEMP_FILE_SUFFIX);
+        long position = isResumable ? truncate(tempFile, checkpoint) : 0L;
+        FileOutputStream outputStream = new FileOutputStream(tempFile, position > 0);
+        long copiedSize;
+        boolean isStaged = false;
+        try {
+            Copy copy = new Copy(outputStream, progressListener, isResumable);
+            FileChannel sourceChannel = attachmentSource.openFileChannel();
+            if (sourceChannel != null) {
+                try {
+                    if (position > sourceChannel.size()) {
+                        position = restart(outputStream);
+                    }
+                    copiedSize = copyMapped(sourceChannel, outputStream.getChannel(), position, copy);
+                } finally {
+                    sourceChannel.close();
+                }
+            } else {
+                copiedSize = copyStream(attachmentSource, outputStream, position, copy);
+            }
+            outputStream.getFD().sync();
+            isStaged = true;
+        } finally {
+            outputStream.close();
+            if (!isStaged && !isResumable) {
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(destinationFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to move staged content to " + destinationFile);
+        }
+        return copiedSize;
+    }
+
+    /**
+     * Used to cut temporary file back to checkpoint - Bytes after it may not have reached disk.
+     *
+     * @return Position to resume from, 0 if there is nothing to resume.
+     */
+    private static long truncate(final File tempFile, final long checkpoint) throws IOException {
+        if (checkpoint <= 0 || tempFile.length() < checkpoint) {
+            return 0L;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        try {
+            randomAccessFile.setLength(checkpoint);
+        } finally {
+            randomAccessFile.close();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Used to start over - Source content changed since checkpoint.
+     */
+    private static long restart(final FileOutputStream outputStream) throws IOException {
+        outputStream.getChannel().truncate(0L);
+        return 0L;
+    }
+
+    private static long copyMapped(final FileChannel sourceChannel, final FileChannel destinationChannel, final long startPosition,
+                                   final Copy copy) throws IOException {
+        long size = sourceChannel.size();
+        long position = startPosition;
+        copy.start(position);
+        while (position < size) {
+            checkInterrupted();
+            long windowSize = Math.min(MAPPED_WINDOW_SIZE, size - position);
+            ByteBuffer window = sourceChannel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            while (window.hasRemaining()) {
+                destinationChannel.write(window);
+            }
+            position += windowSize;
+            copy.onCopied(position);
+        }
+        return position;
+    }
+
+    private static long copyStream(final AttachmentSource attachmentSource, final FileOutputStream outputStream, final long startPosition,
+                                   final Copy copy) throws IOException {
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream == null) {
+            throw new IOException("Unable to open " + attachmentSource.getLocation());
+        }
+        long copiedSize = startPosition;
+        try {
+            if (copiedSize > 0 && ContentSizeCounter.skip(inputStream, copiedSize) < copiedSize) {
+                inputStream.close();
+                inputStream = attachmentSource.openInputStream();
+                if (inputStream == null) {
+                    throw new IOException("Unable to open " + attachmentSource.getLocation());
+                }
+                copiedSize = restart(outputStream);
+            }
+            copy.start(copiedSize);
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(bytes)) >= 0) {
+                checkInterrupted();
+                outputStream.write(bytes, 0, read);
+                copiedSize += read;
+                copy.onCopied(copiedSize);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return copiedSize;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while staging attachment content");
+        }
+    }
+
+    /**
+     * Progress of a copy - Notified as is, or as checkpoints once synced to disk.
+     */
+    private static class Copy {
+
+        private FileOutputStream outputStream;
+        private ProgressListener progressListener;
+        private boolean isCheckpointing;
+        private long checkpoint;
+
+        Copy(final FileOutputStream outputStream, final ProgressListener progressListener, final boolean isCheckpointing) {
+            this.outputStream = outputStream;
+            this.progressListener = progressListener;
+            this.isCheckpointing = isCheckpointing;
+        }
+
+        void start(final long position) {
+            checkpoint = position;
+        }
+
+        void onCopied(final long position) throws IOException {
+            if (!isCheckpointing) {
+                if (progressListener != null) {
+                    progressListener.onProgress(position);
+                }
+                return;
+            }
+            if (position - checkpoint >= CHECKPOINT_INTERVAL) {
+                outputStream.getFD().sync();
+                checkpoint = position;
+                if (progressListener != null) {
+                    progressListener.onProgress(position);
+                }
+            }
+        }
+    }
+}
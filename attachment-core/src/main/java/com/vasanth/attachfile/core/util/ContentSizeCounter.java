@@ -0,0 +1,117 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Content Size Counter.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to get size of the source by its content (Like {@link AttachmentResolver#getContentSize}), remembering bytes
+ * counted so far - So that counting again after a failure (Like a retry) skips the bytes already counted instead of counting
+ * them again.
+ * <p>
+ * 2. Methods.
+ * 2.a. count - Used to count remaining bytes of the source, returns its total size.
+ * 2.b. getCountedBytes - Used to get bytes counted so far, across failed attempts.
+ * <p>
+ * 3. Note.
+ * 3.a. Bytes counted are remembered at the progress interval of {@link AttachmentResolver#countBytes}, so at most that many bytes
+ * are counted again.
+ * 3.b. Skipping is cheap for seekable streams (Like local files), others still read the skipped bytes but don't count or
+ * notify them again.
+ * 3.c. If content ends before the counted bytes (Content changed between attempts), counting starts over.
+ *
+ * @author Vasanth
+ */
+public class ContentSizeCounter {
+
+    private volatile long countedBytes;
+
+    /**
+     * Used to count remaining bytes of the source.
+     *
+     * @param attachmentSource Attachment source, must be the same source across calls.
+     * @param progressListener Listener to be notified with total bytes counted, can be NULL.
+     * @return Size in bytes.
+     * @throws IOException If source couldn't be read, bytes counted so far are kept for next call.
+     */
+    public long count(final AttachmentSource attachmentSource, final ProgressListener progressListener) throws IOException {
+        FileChannel fileChannel = attachmentSource.openFileChannel();
+        if (fileChannel != null) {
+            try {
+                countedBytes = fileChannel.size();
+                return countedBytes;
+            } finally {
+                fileChannel.close();
+            }
+        }
+
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream == null) {
+            return 0L;
+        }
+        try {
+            long skipped = skip(inputStream, countedBytes);
+            if (skipped < countedBytes) {
+                // Content ended before the bytes counted so far - Content changed, count it from the start.
+                inputStream.close();
+                inputStream = attachmentSource.openInputStream();
+                if (inputStream == null) {
+                    countedBytes = 0L;
+                    return 0L;
+                }
+                skipped = 0L;
+            }
+            final long skippedBytes = skipped;
+            countedBytes = skippedBytes;
+            long readBytes = AttachmentResolver.countBytes(inputStream, new ProgressListener() {
+                @Override
+                public void onProgress(final long bytesRead) {
+                    countedBytes = skippedBytes + bytesRead;
+                    if (progressListener != null) {
+                        progressListener.onProgress(countedBytes);
+                    }
+                }
+            });
+            countedBytes = skippedBytes + readBytes;
+            return countedBytes;
+        } finally {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * @return Bytes counted so far.
+     */
+    public long getCountedBytes() {
+        return countedBytes;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to skip bytes, returns number of bytes skipped - Less than asked only if content ended.
+     */
+    static long skip(final InputStream inputStream, final long byteCount) throws IOException {
+        long skippedBytes = 0L;
+        while (skippedBytes < byteCount) {
+            long skipped = inputStream.skip(byteCount - skippedBytes);
+            if (skipped <= 0) {
+                // Some streams skip nothing before end of content, tell end apart by reading.
+                if (inputStream.read() < 0) {
+                    break;
+                }
+                skipped = 1;
+            }
+            skippedBytes += skipped;
+        }
+        return skippedBytes;
+    }
+}
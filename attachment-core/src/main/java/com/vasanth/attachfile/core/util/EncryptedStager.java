@@ -0,0 +1,378 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.crypto.ChunkedCipher;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Encrypted Stager.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to copy (stage) attachment content into app owned storage encrypted at rest, as {@link ChunkedCipher} chunks - So
+ * that any chunk can later be decrypted on its own (See {@link com.vasanth.attachfile.core.crypto.EncryptedAttachmentReader}).
+ * <p>
+ * 2. Methods.
+ * 2.a. stage - Used to encrypt the source content into destination file.
+ * 2.b. stage (Resumable) - Used to encrypt the source content into destination file, resuming a copy which was interrupted.
+ * <p>
+ * 3. Throughput.
+ * 3.a. Chunks are read, encrypted & written as a pipeline - While the calling thread reads & writes, up to 2 chunks per core are
+ * encrypted on the given executor.
+ * 3.b. Each in flight chunk has its own direct plaintext & ciphertext buffers & Cipher, reused for all chunks of the copy - Hence
+ * no buffer is allocated per chunk & file backed sources are read straight into direct buffers.
+ * 3.c. Without executor (Like on single core devices) chunks are encrypted on the calling thread, reusing one buffer pair.
+ * <p>
+ * 4. Note.
+ * 4.a. Same guarantees as {@link AttachmentStager} - Destination is either complete or absent, copying stops if the calling thread
+ * is interrupted & resumable copy notifies checkpoint (In plaintext bytes, at chunk boundaries) only once synced to disk.
+ *
+ * @author Vasanth
+ */
+public class EncryptedStager {
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    // Resumable copy syncs & notifies checkpoint after this many plaintext bytes.
+    private static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;
+    private static final int IN_FLIGHT_CHUNKS_PER_CORE = 2;
+
+    /**
+     * Used to encrypt the source content into destination file.
+     *
+     * @param attachmentSource Attachment source.
+     * @param destinationFile  Destination file, replaced if it exists.
+     * @param secretKey        AES key.
+     * @param executorService  Executor to encrypt chunks in parallel on, NULL to encrypt on calling thread.
+     * @param progressListener Listener to be notified with plaintext bytes copied, can be NULL.
+     * @return Number of plaintext bytes copied.
+     * @throws IOException If source couldn't be read, encrypted or destination couldn't be written.
+     */
+    public static long stage(final AttachmentSource attachmentSource, final File destinationFile, final SecretKey secretKey,
+                             final ExecutorService executorService, final ProgressListener progressListener) throws IOException {
+        return stage(attachmentSource, destinationFile, 0L, secretKey, executorService, progressListener, false);
+    }
+
+    /**
+     * Used to encrypt the source content into destination file, resuming a copy which was interrupted.
+     * <p>
+     * 1. Copy resumes from the chunk before checkpoint, so that it can be encrypted again as the last chunk if content ends there.
+     * 2. Copy starts over if there is nothing to resume (Temporary file is gone, shorter than checkpoint or of another chunk size) or
+     * source content is shorter than checkpoint.
+     *
+     * @param attachmentSource   Attachment source, must be the same source across calls.
+     * @param destinationFile    Destination file, replaced if it exists.
+     * @param checkpoint         Checkpoint notified by the interrupted copy, 0 to start a new copy.
+     * @param secretKey          AES key, must be the same key across calls.
+     * @param executorService    Executor to encrypt chunks in parallel on, NULL to encrypt on calling thread.
+     * @param checkpointListener Listener to be notified with plaintext bytes copied & synced to disk, can be NULL.
+     * @return Number of plaintext bytes copied, including the ones before checkpoint.
+     * @throws IOException If source couldn't be read, encrypted or destination couldn't be written, temporary file is kept to resume.
+     */
+    public static long stage(final AttachmentSource attachmentSource, final File destinationFile, final long checkpoint,
+                             final SecretKey secretKey, final ExecutorService executorService,
+                             final ProgressListener checkpointListener) throws IOException {
+        return stage(attachmentSource, destinationFile, checkpoint, secretKey, executorService, checkpointListener, true);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static long stage(final AttachmentSource attachmentSource, final File destinationFile, final long checkpoint,
+                              final SecretKey secretKey, final ExecutorService executorService, final ProgressListener progressListener,
+                              final boolean isResumable) throws IOException {
+        int chunkSize = ChunkedCipher.DEFAULT_CHUNK_SIZE;
+        File tempFile = new File(destinationFile.getPath() + TEMP_FILE_SUFFIX);
+        long position = isResumable ? truncate(tempFile, checkpoint, chunkSize) : 0L;
+        FileOutputStream outputStream = new FileOutputStream(tempFile, position > 0);
+        long copiedSize;
+        boolean isStaged = false;
+        try {
+            Encryption encryption = new Encryption(secretKey, chunkSize, executorService, outputStream, progressListener, isResumable);
+            FileChannel sourceChannel = attachmentSource.openFileChannel();
+            if (sourceChannel != null) {
+                try {
+                    if (position > sourceChannel.size()) {
+                        position = restart(outputStream);
+                    }
+                    sourceChannel.position(position);
+                    copiedSize = encryption.run(sourceChannel, position);
+                } finally {
+                    sourceChannel.close();
+                }
+            } else {
+                InputStream inputStream = attachmentSource.openInputStream();
+                if (inputStream == null) {
+                    throw new IOException("Unable to open " + attachmentSource.getLocation());
+                }
+                try {
+                    if (position > 0 && ContentSizeCounter.skip(inputStream, position) < position) {
+                        inputStream.close();
+                        inputStream = attachmentSource.openInputStream();
+                        if (inputStream == null) {
+                            throw new IOException("Unable to open " + attachmentSource.getLocation());
+                        }
+                        position = restart(outputStream);
+                    }
+                    copiedSize = encryption.run(Channels.newChannel(inputStream), position);
+                } finally {
+                    inputStream.close();
+                }
+            }
+            outputStream.getFD().sync();
+            isStaged = true;
+        } catch (GeneralSecurityException generalSecurityException) {
+            throw new IOException("Unable to encrypt attachment content", generalSecurityException);
+        } finally {
+            outputStream.close();
+            if (!isStaged && !isResumable) {
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(destinationFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to move staged content to " + destinationFile);
+        }
+        return copiedSize;
+    }
+
+    /**
+     * Used to cut temporary file back to the chunk before checkpoint - Bytes after checkpoint may not have reached disk & the chunk
+     * before it was encrypted as not last, which it is if content ends at checkpoint.
+     *
+     * @return Plaintext position to resume from, 0 if there is nothing to resume.
+     */
+    private static long truncate(final File tempFile, final long checkpoint, final int chunkSize) throws IOException {
+        long resumePosition = checkpoint - chunkSize;
+        long encryptedResumePosition = ChunkedCipher.getChunkOffset(chunkSize, resumePosition / chunkSize);
+        if (resumePosition <= 0 || checkpoint % chunkSize != 0 || tempFile.length() < encryptedResumePosition) {
+            return 0L;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        try {
+            byte[] header = new byte[ChunkedCipher.HEADER_SIZE];
+            randomAccessFile.readFully(header);
+            if (ChunkedCipher.readHeader(header) != chunkSize) {
+                return 0L;
+            }
+            randomAccessFile.setLength(encryptedResumePosition);
+        } finally {
+            randomAccessFile.close();
+        }
+        return resumePosition;
+    }
+
+    /**
+     * Used to start over - Source content changed since checkpoint.
+     */
+    private static long restart(final FileOutputStream outputStream) throws IOException {
+        outputStream.getChannel().truncate(0L);
+        return 0L;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while staging attachment content");
+        }
+    }
+
+    /**
+     * Single encrypted copy - Reads chunks in order, encrypts them (In parallel if it has an executor) & writes them in order.
+     */
+    private static class Encryption {
+
+        private int chunkSize;
+        private ExecutorService executorService;
+        private FileOutputStream outputStream;
+        private FileChannel destinationChannel;
+        private ProgressListener progressListener;
+        private boolean isCheckpointing;
+        private ChunkedCipher headerCipher;
+        // Slots not in flight, ready to be read into.
+        private ArrayDeque<Slot> freeSlots = new ArrayDeque<>();
+        // Chunks being encrypted, in content order.
+        private ArrayDeque<Future<Slot>> inFlightChunks = new ArrayDeque<>();
+        private long checkpoint;
+
+        Encryption(final SecretKey secretKey, final int chunkSize, final ExecutorService executorService,
+                   final FileOutputStream outputStream, final ProgressListener progressListener, final boolean isCheckpointing)
+                throws GeneralSecurityException {
+            this.chunkSize = chunkSize;
+            this.executorService = executorService;
+            this.outputStream = outputStream;
+            this.destinationChannel = outputStream.getChannel();
+            this.progressListener = progressListener;
+            this.isCheckpointing = isCheckpointing;
+            this.headerCipher = new ChunkedCipher(secretKey, chunkSize);
+
+            // One spare slot, so that next chunk can be read while the last one is encrypted.
+            int slotCount = executorService != null ? Runtime.getRuntime().availableProcessors() * IN_FLIGHT_CHUNKS_PER_CORE + 1 : 2;
+            for (int i = 0; i < slotCount; i++) {
+                freeSlots.add(new Slot(new ChunkedCipher(secretKey, chunkSize), chunkSize));
+            }
+        }
+
+        /**
+         * Used to encrypt the channel from its current position (Plaintext position) till its end.
+         *
+         * @return Plaintext bytes copied.
+         */
+        long run(final ReadableByteChannel sourceChannel, final long startPosition) throws IOException, GeneralSecurityException {
+            try {
+                if (startPosition == 0) {
+                    write(ByteBuffer.wrap(headerCipher.getHeader()));
+                }
+                checkpoint = startPosition;
+                long position = startPosition;
+                long chunkIndex = startPosition / chunkSize;
+
+                // Chunk is only known to be last once the next read ends, hence each chunk waits for the next one to be read.
+                Slot pendingSlot = read(sourceChannel, nextFreeSlot());
+                while (true) {
+                    checkInterrupted();
+                    Slot nextSlot = nextFreeSlot();
+                    read(sourceChannel, nextSlot);
+                    boolean isLast = nextSlot.plaintext.limit() == 0;
+                    position += pendingSlot.plaintext.limit();
+                    submit(pendingSlot, chunkIndex++, isLast);
+                    if (isLast) {
+                        freeSlots.add(nextSlot);
+                        break;
+                    }
+                    pendingSlot = nextSlot;
+                }
+                while (!inFlightChunks.isEmpty()) {
+                    writeOldest();
+                }
+                return position;
+            } finally {
+                for (Future<Slot> future : inFlightChunks) {
+                    future.cancel(false);
+                }
+            }
+        }
+
+        private Slot nextFreeSlot() throws IOException, GeneralSecurityException {
+            while (freeSlots.isEmpty()) {
+                writeOldest();
+            }
+            return freeSlots.poll();
+        }
+
+        private Slot read(final ReadableByteChannel sourceChannel, final Slot slot) throws IOException {
+            slot.plaintext.clear();
+            while (slot.plaintext.hasRemaining() && sourceChannel.read(slot.plaintext) >= 0) {
+                checkInterrupted();
+            }
+            slot.plaintext.flip();
+            return slot;
+        }
+
+        private void submit(final Slot slot, final long chunkIndex, final boolean isLast) throws IOException, GeneralSecurityException {
+            slot.chunkIndex = chunkIndex;
+            slot.isLast = isLast;
+            slot.plaintextLength = slot.plaintext.limit();
+            if (executorService == null) {
+                write(slot.call());
+            } else {
+                inFlightChunks.add(executorService.submit(slot));
+            }
+        }
+
+        /**
+         * Used to wait for the oldest in flight chunk, write it & free its slot.
+         */
+        private void writeOldest() throws IOException, GeneralSecurityException {
+            Slot slot;
+            try {
+                slot = inFlightChunks.peek().get();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while staging attachment content");
+            } catch (ExecutionException executionException) {
+                Throwable cause = executionException.getCause();
+                if (cause instanceof GeneralSecurityException) {
+                    throw (GeneralSecurityException) cause;
+                }
+                throw new IOException("Failed to encrypt attachment content", cause);
+            }
+            inFlightChunks.poll();
+            write(slot);
+        }
+
+        /**
+         * Used to write encrypted chunk & free its slot.
+         */
+        private void write(final Slot slot) throws IOException {
+            write(slot.frame);
+            freeSlots.add(slot);
+            onCopied((slot.chunkIndex * chunkSize) + slot.plaintextLength);
+        }
+
+        private void write(final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                destinationChannel.write(buffer);
+            }
+        }
+
+        private void onCopied(final long position) throws IOException {
+            if (!isCheckpointing) {
+                if (progressListener != null) {
+                    progressListener.onProgress(position);
+                }
+                return;
+            }
+            if (position - checkpoint >= CHECKPOINT_INTERVAL) {
+                outputStream.getFD().sync();
+                checkpoint = position;
+                if (progressListener != null) {
+                    progressListener.onProgress(position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers & Cipher of one in flight chunk - Encrypts its plaintext into its frame, when called.
+     */
+    private static class Slot implements Callable<Slot> {
+
+        private ChunkedCipher chunkedCipher;
+        private ByteBuffer plaintext;
+        private ByteBuffer frame;
+        private long chunkIndex;
+        private boolean isLast;
+        private int plaintextLength;
+
+        Slot(final ChunkedCipher chunkedCipher, final int chunkSize) {
+            this.chunkedCipher = chunkedCipher;
+            this.plaintext = ByteBuffer.allocateDirect(chunkSize);
+            this.frame = ByteBuffer.allocateDirect(ChunkedCipher.getFrameSize(chunkSize));
+        }
+
+        @Override
+        public Slot call() throws GeneralSecurityException {
+            frame.clear();
+            chunkedCipher.encryptChunk(chunkIndex, isLast, plaintext, frame);
+            frame.flip();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.vasanth.attachfile.core.util;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * File Detail Util.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to provide platform independent utils about attachment file details.
+ * <p>
+ * 2. Methods.
+ * 2.a. getDisplayFileSize - Used to get displayable file size from file size in bytes.
+ * 2.b. getFileExtension - Used to get extension of a file name.
+ * 2.c. getMimeTypeFromExtension - Used to get mimeType for common file extensions, when platform can't tell it.
+ *
+ * @author Vasanth
+ */
+public class FileDetailUtil {
+
+    private static final Map<String, String> MIME_TYPES_BY_EXTENSION = new HashMap<>();
+
+    static {
+        MIME_TYPES_BY_EXTENSION.put("jpg", "image/jpeg");
+        MIME_TYPES_BY_EXTENSION.put("jpeg", "image/jpeg");
+        MIME_TYPES_BY_EXTENSION.put("png", "image/png");
+        MIME_TYPES_BY_EXTENSION.put("gif", "image/gif");
+        MIME_TYPES_BY_EXTENSION.put("webp", "image/webp");
+        MIME_TYPES_BY_EXTENSION.put("bmp", "image/bmp");
+        MIME_TYPES_BY_EXTENSION.put("mp4", "video/mp4");
+        MIME_TYPES_BY_EXTENSION.put("3gp", "video/3gpp");
+        MIME_TYPES_BY_EXTENSION.put("mp3", "audio/mpeg");
+        MIME_TYPES_BY_EXTENSION.put("pdf", "application/pdf");
+        MIME_TYPES_BY_EXTENSION.put("zip", "application/zip");
+        MIME_TYPES_BY_EXTENSION.put("txt", "text/plain");
+        MIME_TYPES_BY_EXTENSION.put("html", "text/html");
+        MIME_TYPES_BY_EXTENSION.put("json", "application/json");
+    }
+
+    /**
+     * Used to get display file size.
+     * <p>
+     * 1. Used to get displayable file size from file size in bytes.
+     *
+     * @param fileSizeInBytes File Size in Bytes.
+     * @return Display file size.
+     */
+    public static String getDisplayFileSize(final long fileSizeInBytes) {
+        String displayFileSize;
+        if (fileSizeInBytes >= 1048576) {// 1MB
+            displayFileSize = (fileSizeInBytes / 1048576) + " MB";
+        } else if (fileSizeInBytes >= 1024) {// 1KB
+            displayFileSize = (fileSizeInBytes / 1024) + " KB";
+        } else {
+            displayFileSize = fileSizeInBytes + " B";
+        }
+        return displayFileSize;
+    }
+
+    /**
+     * Gets the extension of a filename.
+     *
+     * @param fileName The filename to retrieve the extension of.
+     * @return The extension of the file or an empty string if none exists.
+     */
+    public static String getFileExtension(final String fileName) {
+        String fileExtension = "";
+        if (fileName != null) {
+            int lastIndexOfExtension = fileName.lastIndexOf('.');
+            int lastIndexOfSeparator = fileName.lastIndexOf('/');
+            int index = lastIndexOfSeparator > lastIndexOfExtension ? -1 : lastIndexOfExtension; // We can't have separator ('/') after extension '.'.
+            if (index != -1) {
+                fileExtension = fileName.substring(index + 1);
+            }
+        }
+        return fileExtension;
+    }
+
+    /**
+     * Used to get mimeType for common file extensions.
+     * <p>
+     * 1. Only a small table of common types, Android should prefer MimeTypeMap.
+     *
+     * @param fileExtension File extension (Without '.').
+     * @return MimeType or NULL if extension is not known.
+     */
+    public static String getMimeTypeFromExtension(final String fileExtension) {
+        if (fileExtension == null) {
+            return null;
+        }
+        return MIME_TYPES_BY_EXTENSION.get(fileExtension.toLowerCase(Locale.US));
+    }
+}
@@ -0,0 +1,70 @@
+package com.vasanth.attachfile.core.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hit Rate Metrics.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to count hits & misses of a lookup per key (Like provider thumbnails per uri authority), for monitoring & so
+ * that callers can skip work a key mostly misses or hits.
+ * <p>
+ * 2. Note.
+ * 2.a. Methods are thread safe.
+ *
+ * @author Vasanth
+ */
+public class HitRateMetrics {
+
+    // Hit & miss count of each key, sorted by key for stable logs.
+    private Map<String, long[]> counts = new TreeMap<>();
+
+    /**
+     * Used to count a hit or a miss.
+     *
+     * @param key   Key (Like uri authority).
+     * @param isHit TRUE if lookup hit.
+     */
+    public synchronized void record(final String key, final boolean isHit) {
+        long[] keyCounts = counts.get(key);
+        if (keyCounts == null) {
+            keyCounts = new long[2];
+            counts.put(key, keyCounts);
+        }
+        keyCounts[isHit ? 0 : 1]++;
+    }
+
+    /**
+     * Getter's.
+     */
+    public synchronized long getHitCount(final String key) {
+        long[] keyCounts = counts.get(key);
+        return keyCounts != null ? keyCounts[0] : 0L;
+    }
+
+    public synchronized long getMissCount(final String key) {
+        long[] keyCounts = counts.get(key);
+        return keyCounts != null ? keyCounts[1] : 0L;
+    }
+
+    /**
+     * @param key Key.
+     * @return Hits over lookups of the key, 0 if key was never looked up.
+     */
+    public synchronized double getHitRate(final String key) {
+        long[] keyCounts = counts.get(key);
+        return keyCounts != null ? (double) keyCounts[0] / (keyCounts[0] + keyCounts[1]) : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder rates = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            long[] keyCounts = entry.getValue();
+            rates.append(rates.length() > 0 ? ", " : "").append(entry.getKey()).append('=').append(keyCounts[0]).append('/')
+                    .append(keyCounts[0] + keyCounts[1]);
+        }
+        return "HitRateMetrics{" + rates + '}';
+    }
+}
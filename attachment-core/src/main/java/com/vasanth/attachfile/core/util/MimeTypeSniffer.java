@@ -0,0 +1,144 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MimeType Sniffer.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to detect mimeType of the content from its first few bytes (magic numbers), when the source can't tell it
+ * (Like file without extension).
+ * <p>
+ * 2. Methods.
+ * 2.a. sniff(AttachmentSource) - Used to read the header of the source & detect its mimeType.
+ * 2.b. sniff(byte[], int) - Used to detect mimeType from header bytes already read.
+ * <p>
+ * 3. Note.
+ * 3.a. For sources backed by a real file, header is read through a memory mapped region, without opening a stream.
+ *
+ * @author Vasanth
+ */
+public class MimeTypeSniffer {
+
+    // Number of header bytes needed to detect all the known types.
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Used to read the header of the source & detect its mimeType.
+     *
+     * @param attachmentSource Attachment source.
+     * @return MimeType or NULL if type is not known.
+     * @throws IOException If source couldn't be read.
+     */
+    public static String sniff(final AttachmentSource attachmentSource) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+
+        FileChannel fileChannel = attachmentSource.openFileChannel();
+        if (fileChannel != null) {
+            try {
+                long mappedSize = Math.min(fileChannel.size(), HEADER_SIZE);
+                if (mappedSize > 0) {
+                    ByteBuffer mappedHeader = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, mappedSize);
+                    length = mappedHeader.remaining();
+                    mappedHeader.get(header, 0, length);
+                }
+            } finally {
+                fileChannel.close();
+            }
+            return sniff(header, length);
+        }
+
+        InputStream inputStream = attachmentSource.openInputStream();
+        if (inputStream != null) {
+            try {
+                int read;
+                while (length < HEADER_SIZE && (read = inputStream.read(header, length, HEADER_SIZE - length)) >= 0) {
+                    length += read;
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        return sniff(header, length);
+    }
+
+    /**
+     * Used to detect mimeType from header bytes.
+     *
+     * @param header Header bytes, starting from the first byte of the content.
+     * @param length Number of valid bytes in header.
+     * @return MimeType or NULL if type is not known.
+     */
+    public static String sniff(final byte[] header, final int length) {
+        if (startsWith(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(header, length, 0, 'R', 'I', 'F', 'F')) {
+            if (startsWith(header, length, 8, 'W', 'E', 'B', 'P')) {
+                return "image/webp";
+            }
+            if (startsWith(header, length, 8, 'W', 'A', 'V', 'E')) {
+                return "audio/x-wav";
+            }
+            return null;
+        }
+        if (startsWith(header, length, 0, 'B', 'M') && length >= 6) {
+            return "image/bmp";
+        }
+        if (startsWith(header, length, 0, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        if (startsWith(header, length, 0, 'P', 'K', 0x03, 0x04) || startsWith(header, length, 0, 'P', 'K', 0x05, 0x06)) {
+            return "application/zip";
+        }
+        if (startsWith(header, length, 4, 'f', 't', 'y', 'p')) {
+            if (startsWith(header, length, 8, '3', 'g', 'p')) {
+                return "video/3gpp";
+            }
+            if (startsWith(header, length, 8, 'h', 'e', 'i', 'c') || startsWith(header, length, 8, 'm', 'i', 'f', '1')) {
+                return "image/heic";
+            }
+            if (startsWith(header, length, 8, 'M', '4', 'A', ' ')) {
+                return "audio/mp4";
+            }
+            return "video/mp4";
+        }
+        if (startsWith(header, length, 0, 'I', 'D', '3') || (length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xE0) == 0xE0)) {
+            return "audio/mpeg";
+        }
+        if (startsWith(header, length, 0, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        }
+        if (startsWith(header, length, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        return null;
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static boolean startsWith(final byte[] header, final int length, final int offset, final int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
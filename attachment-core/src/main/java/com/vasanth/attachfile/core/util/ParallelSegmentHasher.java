@@ -0,0 +1,187 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.AttachmentSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel Segment Hasher.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Computes the {@link SegmentedDigest} fingerprint of a file by hashing its segments in parallel on a fork-join pool.
+ * 1.b. Each segment is read through its own memory mapped region, hence no heap buffers are used.
+ * <p>
+ * 2. Note.
+ * 2.a. Produces the same fingerprint as {@link AttachmentFingerprint#compute}.
+ * 2.b. ForkJoinPool is available on Android only from API 21, hence don't load this class below it.
+ * 2.c. Hashing stops if the calling thread is interrupted.
+ *
+ * @author Vasanth
+ */
+public class ParallelSegmentHasher {
+
+    private static ForkJoinPool defaultPool;
+
+    /**
+     * Used to get the pool shared by all hashing, sized to number of cores.
+     *
+     * @return Fork-join pool.
+     */
+    public static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Used to compute the fingerprint of the source.
+     * <p>
+     * 1. If source is backed by a real file, its segments are hashed in parallel.
+     * 2. Else falls back to sequential {@link AttachmentFingerprint#compute}.
+     *
+     * @param attachmentSource Attachment source.
+     * @param forkJoinPool     Pool to hash segments on.
+     * @param progressListener Listener to be notified with bytes hashed, can be NULL.
+     * @return Fingerprint in lower case hex.
+     * @throws IOException If source couldn't be read.
+     */
+    public static String hash(final AttachmentSource attachmentSource, final ForkJoinPool forkJoinPool,
+                              final ProgressListener progressListener) throws IOException {
+        FileChannel fileChannel = attachmentSource.openFileChannel();
+        if (fileChannel == null) {
+            return AttachmentFingerprint.compute(attachmentSource, progressListener);
+        }
+        try {
+            return hash(fileChannel, forkJoinPool, progressListener);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Used to compute the fingerprint of the file.
+     *
+     * @param fileChannel      File channel, it is not closed.
+     * @param forkJoinPool     Pool to hash segments on.
+     * @param progressListener Listener to be notified with bytes hashed (From pool threads), can be NULL.
+     * @return Fingerprint in lower case hex.
+     * @throws IOException If file couldn't be read.
+     */
+    public static String hash(final FileChannel fileChannel, final ForkJoinPool forkJoinPool,
+                              final ProgressListener progressListener) throws IOException {
+        long size = fileChannel.size();
+        int segmentSize = SegmentedDigest.DEFAULT_SEGMENT_SIZE;
+        int segmentCount = size == 0 ? 1 : (int) ((size + segmentSize - 1) / segmentSize);
+        byte[][] segmentDigests = new byte[segmentCount][];
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        HashSegmentsTask hashSegmentsTask = new HashSegmentsTask(fileChannel, size, segmentSize, 0, segmentCount, segmentDigests,
+                cancelled, new AtomicLong(), progressListener);
+        Future<Void> future = forkJoinPool.submit(hashSegmentsTask);
+        try {
+            future.get();
+        } catch (InterruptedException interruptedException) {
+            cancelled.set(true);
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing attachment content");
+        } catch (ExecutionException executionException) {
+            Throwable cause = executionException.getCause();
+            if (cause instanceof SegmentReadException) {
+                throw ((SegmentReadException) cause).getIOException();
+            }
+            throw new IOException("Failed to hash attachment content", cause);
+        }
+        return SegmentedDigest.combine(Arrays.asList(segmentDigests), size);
+    }
+
+    /**
+     * Hashes segments [from, to) - Splits in halves until a single segment is left.
+     */
+    private static class HashSegmentsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private FileChannel fileChannel;
+        private long size;
+        private int segmentSize;
+        private int from;
+        private int to;
+        private byte[][] segmentDigests;
+        private AtomicBoolean cancelled;
+        private AtomicLong bytesHashed;
+        private ProgressListener progressListener;
+
+        HashSegmentsTask(final FileChannel fileChannel, final long size, final int segmentSize, final int from, final int to,
+                         final byte[][] segmentDigests, final AtomicBoolean cancelled, final AtomicLong bytesHashed,
+                         final ProgressListener progressListener) {
+            this.fileChannel = fileChannel;
+            this.size = size;
+            this.segmentSize = segmentSize;
+            this.from = from;
+            this.to = to;
+            this.segmentDigests = segmentDigests;
+            this.cancelled = cancelled;
+            this.bytesHashed = bytesHashed;
+            this.progressListener = progressListener;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.get()) {
+                return;
+            }
+            if (to - from <= 1) {
+                hashSegment(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new HashSegmentsTask(fileChannel, size, segmentSize, from, middle, segmentDigests, cancelled, bytesHashed, progressListener),
+                    new HashSegmentsTask(fileChannel, size, segmentSize, middle, to, segmentDigests, cancelled, bytesHashed, progressListener));
+        }
+
+        private void hashSegment(final int index) {
+            long position = (long) index * segmentSize;
+            long length = Math.min(segmentSize, size - position);
+            try {
+                ByteBuffer segment = length > 0
+                        ? fileChannel.map(FileChannel.MapMode.READ_ONLY, position, length)
+                        : ByteBuffer.allocate(0);
+                segmentDigests[index] = SegmentedDigest.digestSegment(segment);
+            } catch (IOException ioException) {
+                throw new SegmentReadException(ioException);
+            }
+            long hashed = bytesHashed.addAndGet(length);
+            if (progressListener != null) {
+                progressListener.onProgress(hashed);
+            }
+        }
+    }
+
+    /**
+     * Carries IOException of a segment out of the fork-join task.
+     */
+    private static class SegmentReadException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        SegmentReadException(final IOException ioException) {
+            super(ioException);
+        }
+
+        IOException getIOException() {
+            return (IOException) getCause();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.vasanth.attachfile.core.util;
+
+/**
+ * Progress Listener.
+ * <p>
+ * 1. Used to notify number of bytes processed so far, while reading attachment content.
+ * 2. Gets called in the thread which reads the content.
+ *
+ * @author Vasanth
+ */
+public interface ProgressListener {
+
+    /**
+     * Gets called while reading attachment content.
+     *
+     * @param bytesRead Number of bytes read so far.
+     */
+    void onProgress(final long bytesRead);
+
+}
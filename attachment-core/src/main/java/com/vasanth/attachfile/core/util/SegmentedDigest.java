@@ -0,0 +1,182 @@
+package com.vasanth.attachfile.core.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Segmented Digest.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Computes SHA-256 fingerprint of content as a two level hash - Content is split in fixed size segments, each segment is hashed
+ * & the root hash is computed over segment hashes followed by the content length.
+ * 1.b. Because segments are hashed independently, a large file can be hashed segment wise in parallel & still produce the
+ * same fingerprint as a sequential stream read.
+ * <p>
+ * 2. Methods.
+ * 2.a. update - Used to add content bytes, in order.
+ * 2.b. finish - Used to get the fingerprint (Lower case hex).
+ * 2.c. digestSegment / combine - Used to compute the same fingerprint from independently hashed segments.
+ *
+ * @author Vasanth
+ */
+public class SegmentedDigest {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private int segmentSize;
+    private MessageDigest segmentDigest;
+    private MessageDigest rootDigest;
+    private long segmentFill;
+    private long totalLength;
+
+    /**
+     * Constructor.
+     */
+    public SegmentedDigest() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param segmentSize Segment size in bytes, fingerprints are only comparable when computed with the same segment size.
+     */
+    public SegmentedDigest(final int segmentSize) {
+        this.segmentSize = segmentSize;
+        this.segmentDigest = newDigest();
+        this.rootDigest = newDigest();
+    }
+
+    /**
+     * Used to add content bytes.
+     *
+     * @param bytes  Bytes.
+     * @param offset Offset in bytes.
+     * @param length Number of bytes to add.
+     */
+    public void update(final byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int count = (int) Math.min(length, segmentSize - segmentFill);
+            segmentDigest.update(bytes, offset, count);
+            offset += count;
+            length -= count;
+            onSegmentBytesAdded(count);
+        }
+    }
+
+    /**
+     * Used to add content bytes from buffer's position till its limit, buffer's position is moved to its limit.
+     *
+     * @param buffer Buffer.
+     */
+    public void update(final ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            int count = (int) Math.min(buffer.remaining(), segmentSize - segmentFill);
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + count);
+            segmentDigest.update(buffer);
+            buffer.limit(limit);
+            onSegmentBytesAdded(count);
+        }
+    }
+
+    /**
+     * Used to get the fingerprint.
+     * <p>
+     * 1. Digest can't be used after this call.
+     *
+     * @return Fingerprint in lower case hex.
+     */
+    public String finish() {
+        if (segmentFill > 0 || totalLength == 0) {
+            rootDigest.update(segmentDigest.digest());
+        }
+        rootDigest.update(toBytes(totalLength));
+        return toHex(rootDigest.digest());
+    }
+
+    /**
+     * Used to get number of bytes added so far.
+     *
+     * @return Number of bytes.
+     */
+    public long getLength() {
+        return totalLength;
+    }
+
+    /**
+     * Used to hash a single segment.
+     *
+     * @param segment Segment bytes from position till limit, must be a full segment except for the last one.
+     * @return Segment hash.
+     */
+    public static byte[] digestSegment(final ByteBuffer segment) {
+        MessageDigest digest = newDigest();
+        digest.update(segment);
+        return digest.digest();
+    }
+
+    /**
+     * Used to compute fingerprint from independently hashed segments.
+     *
+     * @param segmentDigests Segment hashes in content order, for empty content it must hold the hash of an empty segment.
+     * @param length         Content length.
+     * @return Fingerprint in lower case hex, same as computed by {@link #finish()}.
+     */
+    public static String combine(final List<byte[]> segmentDigests, final long length) {
+        MessageDigest digest = newDigest();
+        for (byte[] segmentDigest : segmentDigests) {
+            digest.update(segmentDigest);
+        }
+        digest.update(toBytes(length));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Used to convert bytes to lower case hex.
+     *
+     * @param bytes Bytes.
+     * @return Hex string.
+     */
+    public static String toHex(final byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void onSegmentBytesAdded(final int count) {
+        segmentFill += count;
+        totalLength += count;
+        if (segmentFill == segmentSize) {
+            rootDigest.update(segmentDigest.digest());
+            segmentFill = 0;
+        }
+    }
+
+    private static byte[] toBytes(final long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (value >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(ALGORITHM + " is not available", noSuchAlgorithmException);
+        }
+    }
+}
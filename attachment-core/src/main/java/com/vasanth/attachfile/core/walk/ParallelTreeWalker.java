@@ -0,0 +1,328 @@
+package com.vasanth.attachfile.core.walk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel Tree Walker.
+ * <p>
+ * 1. Responsibility.
+ * 1.a. Class used to walk a tree of directories & files (Like a document tree), listing sibling directories in parallel on a bounded
+ * pool, and to stream the files found to the listener as each directory is listed.
+ * <p>
+ * 2. Methods.
+ * 2.a. walk - Used to start walking from the root directory.
+ * 2.b. cancel - Used to stop walking.
+ * <p>
+ * 3. Limits.
+ * 3.a. Max Depth - Directories deeper than this are not listed, root is at depth 0.
+ * 3.b. Max File Count & Max Total Size - Walk stops once either is reached, the file which would exceed it is not reported.
+ * <p>
+ * 4. Output.
+ * 4.a. Listener - Gets called on walker threads, files of a directory are reported together, walk finishes with a summary.
+ *
+ * @param <T> Type of node (Directory or File).
+ * @author Vasanth
+ */
+public class ParallelTreeWalker<T> {
+
+    public static final long NO_LIMIT = -1L;
+
+    private TreeSource<T> treeSource;
+    private int parallelism;
+    private int maxDepth;
+    private long maxFileCount;
+    private long maxTotalSize;
+    private Listener<T> listener;
+
+    private ExecutorService executorService;
+    private AtomicInteger pendingDirectoryCount = new AtomicInteger();
+    private AtomicBoolean isStopped = new AtomicBoolean(false);
+    private AtomicBoolean isFinished = new AtomicBoolean(false);
+    private volatile boolean isCancelled;
+    private boolean isLimitReached;
+    private long fileCount;
+    private long directoryCount;
+    private long totalSize;
+    private long failedDirectoryCount;
+
+    /**
+     * Tree Source.
+     *
+     * @param <T> Type of node.
+     */
+    public interface TreeSource<T> {
+
+        /**
+         * Used to list children of a directory, along with the details needed to tell directories, files & their size apart.
+         *
+         * @param directory Directory.
+         * @return Children.
+         * @throws IOException If directory couldn't be listed.
+         */
+        List<T> listChildren(T directory) throws IOException;
+
+        /**
+         * @param node Node.
+         * @return TRUE if node is a directory.
+         */
+        boolean isDirectory(T node);
+
+        /**
+         * @param node File node.
+         * @return Size of file in bytes, or a negative value if not known.
+         */
+        long getSize(T node);
+
+    }
+
+    /**
+     * Listener.
+     *
+     * @param <T> Type of node.
+     */
+    public interface Listener<T> {
+
+        /**
+         * Gets called with the files found in a directory.
+         *
+         * @param files Files.
+         */
+        void onFilesFound(List<T> files);
+
+        /**
+         * Gets called if a directory couldn't be listed, walk continues with other directories.
+         *
+         * @param directory Directory.
+         * @param exception Failure.
+         */
+        void onDirectoryFailed(T directory, IOException exception);
+
+        /**
+         * Gets called once walk is finished, stopped by a limit or cancelled.
+         *
+         * @param walkSummary Summary.
+         */
+        void onWalkFinished(WalkSummary walkSummary);
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param treeSource   Tree source.
+     * @param parallelism  Max number of directories listed in parallel.
+     * @param maxDepth     Max depth of directories listed, or {@link #NO_LIMIT}.
+     * @param maxFileCount Max number of files reported, or {@link #NO_LIMIT}.
+     * @param maxTotalSize Max total size of files reported, or {@link #NO_LIMIT}.
+     * @param listener     Listener.
+     */
+    public ParallelTreeWalker(final TreeSource<T> treeSource, final int parallelism, final int maxDepth, final long maxFileCount,
+                              final long maxTotalSize, final Listener<T> listener) {
+        this.treeSource = treeSource;
+        this.parallelism = parallelism;
+        this.maxDepth = maxDepth;
+        this.maxFileCount = maxFileCount;
+        this.maxTotalSize = maxTotalSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Used to start walking from the root directory, returns immediately.
+     *
+     * @param rootDirectory Root directory.
+     */
+    public void walk(final T rootDirectory) {
+        if (executorService != null) {
+            throw new IllegalStateException("Walker can only be used once");
+        }
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "tree-walker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executorService = threadPoolExecutor;
+        submitDirectory(rootDirectory, 0);
+    }
+
+    /**
+     * Used to stop walking, directories being listed are interrupted.
+     */
+    public void cancel() {
+        isCancelled = true;
+        isStopped.set(true);
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        finish();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private void submitDirectory(final T directory, final int depth) {
+        pendingDirectoryCount.incrementAndGet();
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        listDirectory(directory, depth);
+                    } finally {
+                        if (pendingDirectoryCount.decrementAndGet() == 0) {
+                            finish();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            // Walker is cancelled.
+            pendingDirectoryCount.decrementAndGet();
+        }
+    }
+
+    private void listDirectory(final T directory, final int depth) {
+        if (isStopped.get()) {
+            return;
+        }
+        List<T> children;
+        try {
+            children = treeSource.listChildren(directory);
+        } catch (IOException exception) {
+            synchronized (this) {
+                failedDirectoryCount++;
+            }
+            if (!isStopped.get()) {
+                listener.onDirectoryFailed(directory, exception);
+            }
+            return;
+        }
+        synchronized (this) {
+            directoryCount++;
+        }
+
+        List<T> files = new ArrayList<>();
+        for (T child : children) {
+            if (isStopped.get()) {
+                break;
+            }
+            if (treeSource.isDirectory(child)) {
+                if (maxDepth == NO_LIMIT || depth + 1 <= maxDepth) {
+                    submitDirectory(child, depth + 1);
+                }
+            } else if (acceptFile(child)) {
+                files.add(child);
+            }
+        }
+        if (!files.isEmpty() && !isCancelled) {
+            listener.onFilesFound(files);
+        }
+    }
+
+    /**
+     * Used to count file against limits.
+     *
+     * @return TRUE if file is within limits, else walk is stopped.
+     */
+    private synchronized boolean acceptFile(final T file) {
+        long size = Math.max(0L, treeSource.getSize(file));
+        if ((maxFileCount != NO_LIMIT && fileCount + 1 > maxFileCount)
+                || (maxTotalSize != NO_LIMIT && totalSize + size > maxTotalSize)) {
+            isLimitReached = true;
+            isStopped.set(true);
+            return false;
+        }
+        fileCount++;
+        totalSize += size;
+        return true;
+    }
+
+    private void finish() {
+        if (isFinished.compareAndSet(false, true)) {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+            WalkSummary walkSummary;
+            synchronized (this) {
+                walkSummary = new WalkSummary(fileCount, directoryCount, totalSize, failedDirectoryCount, isLimitReached, isCancelled);
+            }
+            listener.onWalkFinished(walkSummary);
+        }
+    }
+
+    /**
+     * Walk Summary.
+     */
+    public static class WalkSummary {
+
+        private long fileCount;
+        private long directoryCount;
+        private long totalSize;
+        private long failedDirectoryCount;
+        private boolean isLimitReached;
+        private boolean isCancelled;
+
+        WalkSummary(final long fileCount, final long directoryCount, final long totalSize, final long failedDirectoryCount,
+                    final boolean isLimitReached, final boolean isCancelled) {
+            this.fileCount = fileCount;
+            this.directoryCount = directoryCount;
+            this.totalSize = totalSize;
+            this.failedDirectoryCount = failedDirectoryCount;
+            this.isLimitReached = isLimitReached;
+            this.isCancelled = isCancelled;
+        }
+
+        /**
+         * Getter's.
+         */
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        public long getDirectoryCount() {
+            return directoryCount;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public long getFailedDirectoryCount() {
+            return failedDirectoryCount;
+        }
+
+        public boolean isLimitReached() {
+            return isLimitReached;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        @Override
+        public String toString() {
+            return "WalkSummary{" +
+                    "fileCount=" + fileCount +
+                    ", directoryCount=" + directoryCount +
+                    ", totalSize=" + totalSize +
+                    ", failedDirectoryCount=" + failedDirectoryCount +
+                    ", isLimitReached=" + isLimitReached +
+                    ", isCancelled=" + isCancelled +
+                    '}';
+        }
+    }
+}
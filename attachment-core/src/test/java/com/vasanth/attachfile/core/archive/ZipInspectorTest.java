@@ -0,0 +1,686 @@
+package com.vasanth.attachfile.core.archive;
+
+import com.vasanth.attachfile.core.model.ZipArchiveEntry;
+import com.vasanth.attachfile.core.model.ZipInspection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link ZipInspector}, against archives written by ZipOutputStream & hand crafted ones.
+ *
+ * @author Vasanth
+ */
+public class ZipInspectorTest {
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Target of the last ZipOutputStream created.
+    private ByteArrayOutputStream zipOutputBytes;
+
+    @Test
+    public void inspect_regularArchive_channelAndStreamAgree() throws IOException {
+        ZipOutputStream zipOutputStream = newZipOutputStream();
+        zipOutputStream.putNextEntry(new ZipEntry("folder/"));
+        putEntry(zipOutputStream, "folder/text.txt", createText(10000), ZipEntry.DEFLATED);
+        putEntry(zipOutputStream, "random.bin", createRandom(3000, 1), ZipEntry.STORED);
+        for (int i = 0; i < 120; i++) {
+            putEntry(zipOutputStream, "file" + i + ".txt", createText(100 + i), ZipEntry.DEFLATED);
+        }
+        byte[] archive = finish(zipOutputStream);
+
+        ZipInspection zipInspection = inspectChannel(archive);
+        assertTrue(zipInspection.isComplete());
+        assertTrue(zipInspection.isCentralDirectoryRead());
+        assertFalse(zipInspection.isZipBomb());
+        assertEquals(123, zipInspection.getEntryCount());
+        assertEquals(1, zipInspection.getDirectoryCount());
+        assertEquals(3, zipInspection.getPageOffsets().length);
+        List<ZipArchiveEntry> firstPage = readEntryPage(archive, zipInspection, 0);
+        assertEquals(ZipInspector.PAGE_SIZE, firstPage.size());
+        assertEquals("folder/", firstPage.get(0).getName());
+        assertTrue(firstPage.get(0).isDirectory());
+        assertEquals(10000, firstPage.get(1).getSize());
+        assertEquals(ZipArchiveEntry.METHOD_DEFLATED, firstPage.get(1).getCompressionMethod());
+        assertEquals(3000, firstPage.get(2).getCompressedSize());
+        assertEquals(23, readEntryPage(archive, zipInspection, 2).size());
+        assertEquals("file119.txt", readEntryPage(archive, zipInspection, 2).get(22).getName());
+        assertTrue(readEntryPage(archive, zipInspection, 3).isEmpty());
+
+        // Deflated entries of ZipOutputStream have data descriptors - Stream scan inflates them to find their sizes.
+        ZipInspection scanInspection = ZipInspector.inspect(new ByteArrayInputStream(archive));
+        assertTrue(scanInspection.isComplete());
+        assertFalse(scanInspection.isCentralDirectoryRead());
+        assertEquals(zipInspection.getEntryCount(), scanInspection.getEntryCount());
+        assertEquals(zipInspection.getDirectoryCount(), scanInspection.getDirectoryCount());
+        assertEquals(zipInspection.getTotalSize(), scanInspection.getTotalSize());
+        assertEquals(zipInspection.getTotalCompressedSize(), scanInspection.getTotalCompressedSize());
+        assertEquals(names(readEntryPage(archive, zipInspection, 1)), names(ZipInspector.readEntryPage(null, scanInspection, 1)));
+    }
+
+    @Test
+    public void inspect_commentHoldingSignature_findsRealEndOfCentralDirectory() throws IOException {
+        ZipOutputStream zipOutputStream = newZipOutputStream();
+        putEntry(zipOutputStream, "a.txt", createText(500), ZipEntry.DEFLATED);
+        putEntry(zipOutputStream, "b.txt", createText(700), ZipEntry.DEFLATED);
+        // Longest comment, holding what looks like end of central directory records.
+        StringBuilder comment = new StringBuilder();
+        while (comment.length() < 0xFFFF - 30) {
+            comment.append("PK\u0005\u0006\u0000\u0000\u0000\u0000\u0001\u0000\u0001\u0000");
+        }
+        comment.setLength(0xFFFF);
+        zipOutputStream.setComment(comment.toString());
+        byte[] archive = finish(zipOutputStream);
+
+        ZipInspection zipInspection = inspectChannel(archive);
+        assertEquals(2, zipInspection.getEntryCount());
+        assertEquals(Arrays.asList("a.txt", "b.txt"), names(readEntryPage(archive, zipInspection, 0)));
+
+        // Bytes appended after the archive (Comment length doesn't cover them).
+        byte[] trailedArchive = concat(finish(newZipWith("a.txt", createText(500))), createRandom(100, 2));
+        assertEquals(1, inspectChannel(trailedArchive).getEntryCount());
+    }
+
+    @Test
+    public void inspect_prefixedArchive_shiftsRecordedOffsets() throws IOException {
+        // Like a self extracting archive, which didn't adjust offsets for its stub.
+        byte[] archive = concat(createRandom(10000, 3), finish(newZipWith("a.txt", createText(5000))));
+        ZipInspection zipInspection = inspectChannel(archive);
+        assertTrue(zipInspection.isComplete());
+        assertFalse(zipInspection.isZipBomb());
+        assertEquals(Arrays.asList("a.txt"), names(readEntryPage(archive, zipInspection, 0)));
+
+        // Hand crafted, with several entries & a stored one.
+        ZipBuilder zipBuilder = new ZipBuilder().prefix(createRandom(70000, 4));
+        zipBuilder.addEntry("stored.bin", ZipArchiveEntry.METHOD_STORED, createRandom(2000, 5), 2000, 0, false);
+        zipBuilder.addEntry("deflated.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(4000)), 4000, 0, false);
+        archive = zipBuilder.build(new byte[0], false);
+        zipInspection = inspectChannel(archive);
+        assertFalse(zipInspection.isZipBomb());
+        assertEquals(6000, zipInspection.getTotalSize());
+        assertEquals(Arrays.asList("stored.bin", "deflated.txt"), names(readEntryPage(archive, zipInspection, 0)));
+
+        // Stream scan can't skip the stub.
+        assertStreamRejected(archive, ZipException.class);
+    }
+
+    @Test
+    public void inspect_zip64Records_readEntryCountAndSizes() throws IOException {
+        ZipBuilder zipBuilder = new ZipBuilder();
+        byte[] data = deflate(createText(20000));
+        zipBuilder.addEntry("huge.bin", ZipArchiveEntry.METHOD_DEFLATED, data, 5000000000L, 0, true);
+        zipBuilder.addEntry("small.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(300)), 300, 0, false);
+        byte[] archive = zipBuilder.build(new byte[0], true);
+
+        ZipInspection zipInspection = inspectChannel(archive);
+        assertEquals(2, zipInspection.getEntryCount());
+        List<ZipArchiveEntry> page = readEntryPage(archive, zipInspection, 0);
+        assertEquals(5000000000L, page.get(0).getSize());
+        assertEquals(data.length, page.get(0).getCompressedSize());
+        assertEquals(5000000300L, zipInspection.getTotalSize());
+        // Claims 5GB out of a few KB.
+        assertTrue(zipInspection.isZipBomb());
+
+        ZipInspection scanInspection = ZipInspector.inspect(new ByteArrayInputStream(archive));
+        assertTrue(scanInspection.isComplete());
+        assertEquals(5000000000L, scanInspection.getScannedEntries().get(0).getSize());
+        assertEquals(data.length, scanInspection.getScannedEntries().get(0).getCompressedSize());
+    }
+
+    @Test
+    public void inspect_zip64ArchiveOfZipOutputStream_hasAllEntries() throws IOException {
+        // 0xFFFF entries or more don't fit end of central directory record - ZIP64 one holds the count.
+        ZipOutputStream zipOutputStream = newZipOutputStream();
+        zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
+        int entryCount = 0xFFFF + 10;
+        for (int i = 0; i < entryCount; i++) {
+            zipOutputStream.putNextEntry(new ZipEntry(i + "/"));
+        }
+        byte[] archive = finish(zipOutputStream);
+
+        ZipInspection zipInspection = inspectChannel(archive);
+        assertEquals(entryCount, zipInspection.getEntryCount());
+        assertEquals(entryCount, zipInspection.getDirectoryCount());
+        int lastPage = (entryCount - 1) / ZipInspector.PAGE_SIZE;
+        List<ZipArchiveEntry> page = readEntryPage(archive, zipInspection, lastPage);
+        assertEquals((entryCount - 1) + "/", page.get(page.size() - 1).getName());
+    }
+
+    @Test
+    public void inspect_stream_dataDescriptorEntries() throws IOException {
+        ZipBuilder zipBuilder = new ZipBuilder();
+        zipBuilder.addEntry("signed.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(3000)), 3000, FLAG_DATA_DESCRIPTOR,
+                false);
+        zipBuilder.dataDescriptorSignature = false;
+        zipBuilder.addEntry("unsigned.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(4000)), 4000, FLAG_DATA_DESCRIPTOR,
+                false);
+        zipBuilder.addEntry("empty.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(new byte[0]), 0, FLAG_DATA_DESCRIPTOR, false);
+        zipBuilder.addEntry("after.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(10)), 10, 0, false);
+        byte[] archive = zipBuilder.build(new byte[0], false);
+
+        ZipInspection scanInspection = ZipInspector.inspect(new ByteArrayInputStream(archive));
+        assertTrue(scanInspection.isComplete());
+        assertEquals(Arrays.asList("signed.txt", "unsigned.txt", "empty.txt", "after.txt"), names(scanInspection.getScannedEntries()));
+        assertEquals(3000, scanInspection.getScannedEntries().get(0).getSize());
+        assertEquals(4000, scanInspection.getScannedEntries().get(1).getSize());
+        assertEquals(0, scanInspection.getScannedEntries().get(2).getSize());
+        assertEquals(7010, scanInspection.getTotalSize());
+        assertEquals(inspectChannel(archive).getTotalCompressedSize(), scanInspection.getTotalCompressedSize());
+
+        // Stored entry with data descriptor can't be skipped - Scan stops there.
+        zipBuilder = new ZipBuilder();
+        zipBuilder.addEntry("first.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(100)), 100, FLAG_DATA_DESCRIPTOR, false);
+        zipBuilder.addEntry("stored.bin", ZipArchiveEntry.METHOD_STORED, createRandom(500, 6), 500, FLAG_DATA_DESCRIPTOR, false);
+        zipBuilder.addEntry("last.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(100)), 100, 0, false);
+        scanInspection = ZipInspector.inspect(new ByteArrayInputStream(zipBuilder.build(new byte[0], false)));
+        assertFalse(scanInspection.isComplete());
+        assertEquals(Arrays.asList("first.txt"), names(scanInspection.getScannedEntries()));
+    }
+
+    @Test
+    public void inspect_overlappingEntries_flaggedAsBomb() throws IOException {
+        // Every entry points at the same compressed data, each with an unsuspicious ratio.
+        byte[] data = deflate(createRandom(50000, 7));
+        ZipBuilder zipBuilder = new ZipBuilder();
+        long offset = zipBuilder.addEntry("0.bin", ZipArchiveEntry.METHOD_DEFLATED, data, 50000, 0, false);
+        for (int i = 1; i < 100; i++) {
+            zipBuilder.addCentralRecord(i + ".bin", ZipArchiveEntry.METHOD_DEFLATED, data.length, 50000, 0, offset, new byte[0]);
+        }
+        byte[] archive = zipBuilder.build(new byte[0], false);
+
+        ZipInspection zipInspection = inspectChannel(archive);
+        assertEquals(100, zipInspection.getEntryCount());
+        assertTrue(zipInspection.isZipBomb());
+
+        // Same entries, each with its own data.
+        zipBuilder = new ZipBuilder();
+        for (int i = 0; i < 100; i++) {
+            zipBuilder.addEntry(i + ".bin", ZipArchiveEntry.METHOD_DEFLATED, data, 50000, 0, false);
+        }
+        assertFalse(inspectChannel(zipBuilder.build(new byte[0], false)).isZipBomb());
+    }
+
+    @Test
+    public void inspect_compressionRatioBomb_isFlagged() throws IOException {
+        byte[] archive = finish(newZipWith("zeros.bin", new byte[20 * 1024 * 1024]));
+        assertTrue(inspectChannel(archive).isZipBomb());
+        // Scan stops inflating once the ratio is a bomb's.
+        ZipInspection scanInspection = ZipInspector.inspect(new ByteArrayInputStream(archive));
+        assertTrue(scanInspection.isZipBomb());
+        assertFalse(scanInspection.isComplete());
+        assertTrue(scanInspection.getScannedEntries().get(0).getSize() < 20 * 1024 * 1024);
+
+        // Ratio spread over many entries, none of which is a bomb by itself.
+        ZipOutputStream zipOutputStream = newZipOutputStream();
+        for (int i = 0; i < 20; i++) {
+            putEntry(zipOutputStream, i + ".bin", new byte[1024 * 1024], ZipEntry.DEFLATED);
+        }
+        archive = finish(zipOutputStream);
+        assertTrue(inspectChannel(archive).isZipBomb());
+        assertTrue(ZipInspector.inspect(new ByteArrayInputStream(archive)).isZipBomb());
+
+        // High ratio, but small.
+        assertFalse(inspectChannel(finish(newZipWith("zeros.bin", new byte[1024 * 1024]))).isZipBomb());
+    }
+
+    @Test
+    public void inspect_truncatedArchive_failsCleanlyOrStopsEarly() throws IOException {
+        byte[] archive = finish(newZipWith("a.txt", createRandom(20000, 8)));
+        // End of central directory cut off.
+        assertChannelRejected(Arrays.copyOf(archive, archive.length - 10));
+        assertChannelRejected(Arrays.copyOf(archive, archive.length / 2));
+        assertChannelRejected(new byte[0]);
+
+        // Stream ends within entry data.
+        assertStreamRejected(Arrays.copyOf(archive, archive.length / 2), EOFException.class);
+        // Stream ends at an entry boundary, like a download cut short.
+        ZipBuilder zipBuilder = new ZipBuilder();
+        zipBuilder.addEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(1000)), 1000, 0, false);
+        byte[] partialArchive = zipBuilder.getLocalBytes();
+        zipBuilder.addEntry("b.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(1000)), 1000, 0, false);
+        ZipInspection scanInspection = ZipInspector.inspect(new ByteArrayInputStream(partialArchive));
+        assertFalse(scanInspection.isComplete());
+        assertEquals(1, scanInspection.getEntryCount());
+    }
+
+    @Test
+    public void inspect_maliciousCentralDirectory_throwsZipException() throws IOException {
+        byte[] data = deflate(createText(1000));
+
+        // More entries than central directory can hold.
+        ZipBuilder zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.entryCountOverride = 0xFFFF;
+        assertChannelRejected(zipBuilder.build(new byte[0], false));
+
+        // Central directory larger than what is in front of end record.
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.centralDirectorySizeOverride = 1000000;
+        assertChannelRejected(zipBuilder.build(new byte[0], false));
+
+        // Name running past central directory.
+        zipBuilder = new ZipBuilder();
+        zipBuilder.addLocalEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data, 1000, 0, false);
+        zipBuilder.nameLengthOverride = 60000;
+        zipBuilder.addCentralRecord("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data.length, 1000, 0, 0, new byte[0]);
+        assertChannelRejected(zipBuilder.build(new byte[0], false));
+
+        // ZIP64 sizes without ZIP64 extra, & with a short one.
+        zipBuilder = new ZipBuilder();
+        zipBuilder.addLocalEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data, 1000, 0, false);
+        zipBuilder.addCentralRecord("a.txt", ZipArchiveEntry.METHOD_DEFLATED, ZIP64_MAGIC, ZIP64_MAGIC, 0, 0, new byte[0]);
+        assertChannelRejected(zipBuilder.build(new byte[0], false));
+        zipBuilder = new ZipBuilder();
+        zipBuilder.addLocalEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data, 1000, 0, false);
+        zipBuilder.addCentralRecord("a.txt", ZipArchiveEntry.METHOD_DEFLATED, ZIP64_MAGIC, ZIP64_MAGIC, 0, 0,
+                extra(1, new byte[10]));
+        assertChannelRejected(zipBuilder.build(new byte[0], false));
+        // Negative ZIP64 size.
+        zipBuilder = new ZipBuilder();
+        zipBuilder.addLocalEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data, 1000, 0, false);
+        zipBuilder.addCentralRecord("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data.length, ZIP64_MAGIC, 0, 0,
+                extra(1, littleEndian(8).putLong(-5L).array()));
+        assertChannelRejected(zipBuilder.build(new byte[0], false));
+    }
+
+    @Test
+    public void inspect_maliciousZip64EndRecord_throwsZipException() throws IOException {
+        byte[] data = deflate(createText(1000));
+
+        // Entry count which overflows when checked against central directory size.
+        ZipBuilder zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.entryCountOverride = Long.MAX_VALUE / 23;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.entryCountOverride = Long.MIN_VALUE;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+
+        // Negative & huge central directory offsets.
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.centralDirectoryOffsetOverride = -100L;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.centralDirectoryOffsetOverride = Long.MAX_VALUE;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.centralDirectorySizeOverride = Long.MIN_VALUE;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+
+        // Locator pointing at nothing.
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.zip64EndPositionOverride = Long.MAX_VALUE - 10;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+        zipBuilder = newSingleEntryBuilder(data);
+        zipBuilder.zip64EndPositionOverride = 0L;
+        assertChannelRejected(zipBuilder.build(new byte[0], true));
+    }
+
+    @Test
+    public void inspect_maliciousLocalHeaders_failsCleanlyOrStopsEarly() throws IOException {
+        assertStreamRejected(createRandom(1000, 9), ZipException.class);
+        // Nothing at all reads like a download cut short.
+        ZipInspection emptyInspection = ZipInspector.inspect(new ByteArrayInputStream(new byte[0]));
+        assertFalse(emptyInspection.isComplete());
+        assertEquals(0, emptyInspection.getEntryCount());
+
+        // Garbage where deflated data of a data descriptor entry should be.
+        ZipBuilder zipBuilder = new ZipBuilder();
+        zipBuilder.addEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, createRandom(5000, 10), 5000, FLAG_DATA_DESCRIPTOR, false);
+        assertStreamRejected(zipBuilder.build(new byte[0], false), ZipException.class);
+
+        // ZIP64 sizes with a short extra.
+        zipBuilder = new ZipBuilder();
+        zipBuilder.localExtraOverride = extra(1, new byte[8]);
+        zipBuilder.addEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(100)), 100, 0, true);
+        assertStreamRejected(zipBuilder.build(new byte[0], false), ZipException.class);
+
+        // Claims more compressed data than scan reads, & than a long holds - Scan stops.
+        long[] compressedSizes = {Long.MAX_VALUE, -2L, 100L * 1024 * 1024};
+        for (long compressedSize : compressedSizes) {
+            zipBuilder = new ZipBuilder();
+            zipBuilder.addEntry("first.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(100)), 100, 0, false);
+            zipBuilder.localExtraOverride = extra(1, littleEndian(16).putLong(100L).putLong(compressedSize).array());
+            zipBuilder.addEntry("huge.bin", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(100)), 100, 0, true);
+            ZipInspection scanInspection = ZipInspector.inspect(new ByteArrayInputStream(zipBuilder.build(new byte[0], false)));
+            assertFalse(scanInspection.isComplete());
+            assertEquals(Arrays.asList("first.txt"), names(scanInspection.getScannedEntries()));
+        }
+    }
+
+    @Test
+    public void inspect_corruptedArchives_neverThrowUncheckedExceptions() throws IOException {
+        ZipBuilder zipBuilder = new ZipBuilder();
+        zipBuilder.addEntry("folder/", ZipArchiveEntry.METHOD_STORED, new byte[0], 0, 0, false);
+        zipBuilder.addEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(2000)), 2000, FLAG_DATA_DESCRIPTOR, false);
+        zipBuilder.addEntry("huge.bin", ZipArchiveEntry.METHOD_DEFLATED, deflate(createText(500)), 500, 0, true);
+        zipBuilder.addEntry("b.bin", ZipArchiveEntry.METHOD_STORED, createRandom(300, 11), 300, 0, false);
+        byte[] archive = zipBuilder.build("comment".getBytes("UTF-8"), true);
+
+        Random random = new Random(12);
+        File file = temporaryFolder.newFile();
+        for (int i = 0; i < 3000; i++) {
+            byte[] corrupted = archive.clone();
+            int flipCount = 1 + random.nextInt(4);
+            for (int flip = 0; flip < flipCount; flip++) {
+                // Mostly headers & records, where corruption matters most.
+                int position = random.nextBoolean() ? random.nextInt(corrupted.length)
+                        : corrupted.length - 1 - random.nextInt(Math.min(corrupted.length, 300));
+                corrupted[position] = (byte) random.nextInt(256);
+            }
+            if (random.nextInt(10) == 0) {
+                corrupted = Arrays.copyOf(corrupted, random.nextInt(corrupted.length));
+            }
+            writeFile(file, corrupted);
+            try {
+                FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                try {
+                    ZipInspection zipInspection = ZipInspector.inspect(fileChannel);
+                    for (int page = 0; page < zipInspection.getPageOffsets().length; page++) {
+                        ZipInspector.readEntryPage(fileChannel, zipInspection, page);
+                    }
+                } finally {
+                    fileChannel.close();
+                }
+            } catch (IOException exp) {
+                // Failed cleanly.
+            } catch (RuntimeException exp) {
+                throw new AssertionError("Channel inspection of corruption " + i + " threw " + exp, exp);
+            }
+            try {
+                ZipInspector.inspect(new ByteArrayInputStream(corrupted));
+            } catch (IOException exp) {
+                // Failed cleanly.
+            } catch (RuntimeException exp) {
+                throw new AssertionError("Stream inspection of corruption " + i + " threw " + exp, exp);
+            }
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private ZipInspection inspectChannel(final byte[] archive) throws IOException {
+        File file = temporaryFolder.newFile();
+        writeFile(file, archive);
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return ZipInspector.inspect(fileChannel);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    private List<ZipArchiveEntry> readEntryPage(final byte[] archive, final ZipInspection zipInspection, final int pageIndex)
+            throws IOException {
+        File file = temporaryFolder.newFile();
+        writeFile(file, archive);
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return ZipInspector.readEntryPage(fileChannel, zipInspection, pageIndex);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    private void assertChannelRejected(final byte[] archive) throws IOException {
+        try {
+            inspectChannel(archive);
+            fail("Expected ZipException");
+        } catch (ZipException exp) {
+            // Expected.
+        }
+    }
+
+    private static void assertStreamRejected(final byte[] archive, final Class<? extends IOException> exceptionClass) {
+        try {
+            ZipInspector.inspect(new ByteArrayInputStream(archive));
+            fail("Expected " + exceptionClass.getSimpleName());
+        } catch (IOException exp) {
+            assertTrue(exp.toString(), exceptionClass.isInstance(exp));
+        }
+    }
+
+    private static ZipBuilder newSingleEntryBuilder(final byte[] data) throws IOException {
+        ZipBuilder zipBuilder = new ZipBuilder();
+        zipBuilder.addEntry("a.txt", ZipArchiveEntry.METHOD_DEFLATED, data, 1000, 0, false);
+        return zipBuilder;
+    }
+
+    private ZipOutputStream newZipOutputStream() {
+        zipOutputBytes = new ByteArrayOutputStream();
+        return new ZipOutputStream(zipOutputBytes);
+    }
+
+    private ZipOutputStream newZipWith(final String name, final byte[] content) throws IOException {
+        ZipOutputStream zipOutputStream = newZipOutputStream();
+        putEntry(zipOutputStream, name, content, ZipEntry.DEFLATED);
+        return zipOutputStream;
+    }
+
+    private static void putEntry(final ZipOutputStream zipOutputStream, final String name, final byte[] content, final int method)
+            throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc32 = new CRC32();
+            crc32.update(content);
+            zipEntry.setSize(content.length);
+            zipEntry.setCompressedSize(content.length);
+            zipEntry.setCrc(crc32.getValue());
+        }
+        zipOutputStream.putNextEntry(zipEntry);
+        zipOutputStream.write(content);
+        zipOutputStream.closeEntry();
+    }
+
+    /**
+     * Used to finish archive of {@link #newZipOutputStream()} & get its bytes.
+     */
+    private byte[] finish(final ZipOutputStream zipOutputStream) throws IOException {
+        zipOutputStream.finish();
+        return zipOutputBytes.toByteArray();
+    }
+
+    private static byte[] createText(final int size) {
+        byte[] text = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            text[i] = (byte) ('a' + random.nextInt(6));
+        }
+        return text;
+    }
+
+    private static byte[] createRandom(final int size, final long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] deflate(final byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            outputStream.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static List<String> names(final List<ZipArchiveEntry> zipArchiveEntries) {
+        String[] names = new String[zipArchiveEntries.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = zipArchiveEntries.get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+
+    private static ByteBuffer littleEndian(final int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] extra(final int headerId, final byte[] data) {
+        return littleEndian(4 + data.length).putShort((short) headerId).putShort((short) data.length).put(data).array();
+    }
+
+    private static void writeFile(final File file, final byte[] bytes) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(bytes);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Writes archives byte by byte, so that records can hold what ZipOutputStream never writes.
+     */
+    private static class ZipBuilder {
+
+        private ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        private ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        private int prefixSize;
+        private int entryCount;
+        private boolean dataDescriptorSignature = true;
+        // Overrides of what gets written, -1 (NULL for arrays) to write the real value.
+        private byte[] localExtraOverride;
+        private int nameLengthOverride = -1;
+        private long entryCountOverride = -1;
+        private long centralDirectorySizeOverride = -1;
+        private long centralDirectoryOffsetOverride = -1;
+        private long zip64EndPositionOverride = -1;
+
+        ZipBuilder prefix(final byte[] bytes) {
+            archive.write(bytes, 0, bytes.length);
+            prefixSize = bytes.length;
+            return this;
+        }
+
+        /**
+         * Used to add local entry & its central directory record.
+         *
+         * @return Offset of local header, as recorded in archive.
+         */
+        long addEntry(final String name, final int method, final byte[] data, final long size, final int flags, final boolean isZip64)
+                throws IOException {
+            long offset = addLocalEntry(name, method, data, size, flags, isZip64);
+            byte[] extra = isZip64 ? extra(1, littleEndian(16).putLong(size).putLong(data.length).array()) : new byte[0];
+            addCentralRecord(name, method, isZip64 ? ZIP64_MAGIC : data.length, isZip64 ? ZIP64_MAGIC : size, flags, offset, extra);
+            return offset;
+        }
+
+        long addLocalEntry(final String name, final int method, final byte[] data, final long size, final int flags,
+                           final boolean isZip64) throws IOException {
+            long offset = archive.size() - prefixSize;
+            boolean isDataDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+            byte[] nameBytes = name.getBytes("UTF-8");
+            byte[] extra = localExtraOverride;
+            localExtraOverride = null;
+            if (extra == null) {
+                extra = isZip64 ? extra(1, littleEndian(16).putLong(size).putLong(data.length).array()) : new byte[0];
+            }
+            long localCompressedSize = isZip64 ? ZIP64_MAGIC : isDataDescriptor ? 0 : data.length;
+            long localSize = isZip64 ? ZIP64_MAGIC : isDataDescriptor ? 0 : size;
+            ByteBuffer header = littleEndian(30);
+            header.putInt(0x04034b50).putShort((short) 20).putShort((short) flags).putShort((short) method).putInt(0).putInt(0)
+                    .putInt((int) localCompressedSize).putInt((int) localSize).putShort((short) nameBytes.length)
+                    .putShort((short) extra.length);
+            archive.write(header.array());
+            archive.write(nameBytes);
+            archive.write(extra);
+            archive.write(data);
+            if (isDataDescriptor) {
+                if (dataDescriptorSignature) {
+                    archive.write(littleEndian(4).putInt(0x08074b50).array());
+                }
+                archive.write(littleEndian(12).putInt(0).putInt(data.length).putInt((int) size).array());
+            }
+            return offset;
+        }
+
+        void addCentralRecord(final String name, final int method, final long compressedSize, final long size, final int flags,
+                              final long offset, final byte[] extra) throws IOException {
+            byte[] nameBytes = name.getBytes("UTF-8");
+            ByteBuffer header = littleEndian(46);
+            header.putInt(0x02014b50).putShort((short) 20).putShort((short) 20).putShort((short) flags).putShort((short) method)
+                    .putInt(0).putInt(0).putInt((int) compressedSize).putInt((int) size)
+                    .putShort((short) (nameLengthOverride >= 0 ? nameLengthOverride : nameBytes.length))
+                    .putShort((short) extra.length).putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putInt((int) offset);
+            centralDirectory.write(header.array());
+            centralDirectory.write(nameBytes);
+            centralDirectory.write(extra);
+            entryCount++;
+        }
+
+        /**
+         * @return Bytes of local entries written so far, without central directory.
+         */
+        byte[] getLocalBytes() {
+            return archive.toByteArray();
+        }
+
+        byte[] build(final byte[] comment, final boolean isZip64) throws IOException {
+            long centralDirectoryOffset = archive.size() - prefixSize;
+            archive.write(centralDirectory.toByteArray());
+            long count = entryCountOverride != -1 ? entryCountOverride : entryCount;
+            long centralDirectorySize = centralDirectorySizeOverride != -1 ? centralDirectorySizeOverride : centralDirectory.size();
+            long recordedOffset = centralDirectoryOffsetOverride != -1 ? centralDirectoryOffsetOverride : centralDirectoryOffset;
+            if (isZip64) {
+                long zip64EndPosition = archive.size();
+                ByteBuffer zip64End = littleEndian(56);
+                zip64End.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                        .putLong(count).putLong(count).putLong(centralDirectorySize).putLong(recordedOffset);
+                archive.write(zip64End.array());
+                ByteBuffer locator = littleEndian(20);
+                locator.putInt(0x07064b50).putInt(0)
+                        .putLong(zip64EndPositionOverride != -1 ? zip64EndPositionOverride : zip64EndPosition).putInt(1);
+                archive.write(locator.array());
+            }
+            ByteBuffer end = littleEndian(22);
+            end.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) (isZip64 ? 0xFFFF : count)).putShort((short) (isZip64 ? 0xFFFF : count))
+                    .putInt((int) (isZip64 ? ZIP64_MAGIC : centralDirectorySize))
+                    .putInt((int) (isZip64 ? ZIP64_MAGIC : recordedOffset)).putShort((short) comment.length);
+            archive.write(end.array());
+            archive.write(comment);
+            return archive.toByteArray();
+        }
+    }
+}
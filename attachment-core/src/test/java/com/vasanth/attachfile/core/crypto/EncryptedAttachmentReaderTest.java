@@ -0,0 +1,290 @@
+package com.vasanth.attachfile.core.crypto;
+
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+import com.vasanth.attachfile.core.util.EncryptedStager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link EncryptedAttachmentReader} & {@link ChunkedCipher} format.
+ *
+ * @author Vasanth
+ */
+public class EncryptedAttachmentReaderTest {
+
+    private static final int CHUNK_SIZE = ChunkedCipher.DEFAULT_CHUNK_SIZE;
+    private static final int FRAME_SIZE = ChunkedCipher.getFrameSize(CHUNK_SIZE);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SecretKey secretKey;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        secretKey = createKey();
+    }
+
+    @Test
+    public void roundTrip_emptyContent_hasOneEmptyChunk() throws IOException {
+        File encryptedFile = encrypt(new byte[0]);
+        assertEquals(ChunkedCipher.HEADER_SIZE + ChunkedCipher.NONCE_SIZE + ChunkedCipher.TAG_SIZE, encryptedFile.length());
+
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, secretKey);
+        assertEquals(0L, reader.getSize());
+        assertEquals(1L, reader.getChunkCount());
+        assertEquals(0, reader.readChunk(0, ByteBuffer.allocate(CHUNK_SIZE)));
+        assertArrayEquals(new byte[0], readAll(reader.openInputStream(0L)));
+    }
+
+    @Test
+    public void roundTrip_contentSizesAroundChunkBoundaries() throws IOException {
+        int[] sizes = {1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 2 * CHUNK_SIZE, 2 * CHUNK_SIZE + CHUNK_SIZE / 2};
+        for (int size : sizes) {
+            byte[] content = createContent(size);
+            File encryptedFile = encrypt(content);
+            long chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            assertEquals(ChunkedCipher.HEADER_SIZE + chunkCount * (ChunkedCipher.NONCE_SIZE + ChunkedCipher.TAG_SIZE) + size,
+                    encryptedFile.length());
+            assertEquals(size, ChunkedCipher.getPlaintextSize(CHUNK_SIZE, encryptedFile.length()));
+
+            EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, secretKey);
+            assertEquals(size, reader.getSize());
+            assertEquals(chunkCount, reader.getChunkCount());
+            assertArrayEquals("Size " + size, content, readAll(reader.openInputStream(0L)));
+        }
+    }
+
+    @Test
+    public void readChunk_randomAccess() throws IOException {
+        byte[] content = createContent(3 * CHUNK_SIZE + 10);
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encrypt(content), secretKey);
+        ByteBuffer plaintext = ByteBuffer.allocate(CHUNK_SIZE);
+
+        assertEquals(10, reader.readChunk(3, plaintext));
+        assertArrayEquals(Arrays.copyOfRange(content, 3 * CHUNK_SIZE, content.length), Arrays.copyOf(plaintext.array(), 10));
+        plaintext.clear();
+        assertEquals(CHUNK_SIZE, reader.readChunk(1, plaintext));
+        assertArrayEquals(Arrays.copyOfRange(content, CHUNK_SIZE, 2 * CHUNK_SIZE), plaintext.array());
+        reader.close();
+
+        // Stream from the middle of a chunk.
+        reader = new EncryptedAttachmentReader(encrypt(content), secretKey);
+        int position = CHUNK_SIZE + 123;
+        assertArrayEquals(Arrays.copyOfRange(content, position, content.length), readAll(reader.openInputStream(position)));
+    }
+
+    @Test
+    public void truncatedAtChunkBoundary_isRejected() throws IOException {
+        // Last (Partial) chunk dropped - Chunk before it wasn't encrypted as last.
+        File encryptedFile = encrypt(createContent(2 * CHUNK_SIZE + 100));
+        truncate(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 2));
+        assertNotAuthentic(encryptedFile, 1);
+
+        // Content of exact chunks, last full chunk dropped.
+        encryptedFile = encrypt(createContent(2 * CHUNK_SIZE));
+        truncate(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 1));
+        assertNotAuthentic(encryptedFile, 0);
+    }
+
+    @Test
+    public void truncatedInsideChunkFraming_failsToOpen() throws IOException {
+        File encryptedFile = encrypt(createContent(CHUNK_SIZE + 100));
+        truncate(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 1) + ChunkedCipher.NONCE_SIZE);
+        assertNotOpened(encryptedFile);
+
+        // Header only.
+        truncate(encryptedFile, ChunkedCipher.HEADER_SIZE);
+        assertNotOpened(encryptedFile);
+    }
+
+    @Test
+    public void reorderedChunks_areRejected() throws IOException {
+        File encryptedFile = encrypt(createContent(3 * CHUNK_SIZE));
+        byte[] first = readRange(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 0), FRAME_SIZE);
+        byte[] second = readRange(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 1), FRAME_SIZE);
+        writeRange(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 0), second);
+        writeRange(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 1), first);
+
+        assertNotAuthentic(encryptedFile, 0);
+        assertNotAuthentic(encryptedFile, 1);
+        // Untouched chunk is still readable.
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, secretKey);
+        assertEquals(CHUNK_SIZE, reader.readChunk(2, ByteBuffer.allocate(CHUNK_SIZE)));
+        reader.close();
+    }
+
+    @Test
+    public void tamperedTagOrCiphertext_isRejected() throws IOException {
+        File encryptedFile = encrypt(createContent(CHUNK_SIZE + 100));
+        // Last byte of first chunk's tag.
+        flipByte(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 1) - 1);
+        assertNotAuthentic(encryptedFile, 0);
+
+        encryptedFile = encrypt(createContent(CHUNK_SIZE + 100));
+        flipByte(encryptedFile, ChunkedCipher.getChunkOffset(CHUNK_SIZE, 1) + ChunkedCipher.NONCE_SIZE + 5);
+        assertNotAuthentic(encryptedFile, 1);
+
+        // Stream never returns bytes of a tampered chunk.
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, secretKey);
+        InputStream inputStream = reader.openInputStream(CHUNK_SIZE);
+        try {
+            inputStream.read(new byte[16]);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void wrongKey_isRejected() throws Exception {
+        File encryptedFile = encrypt(createContent(100));
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, createKey());
+        try {
+            reader.readChunk(0, ByteBuffer.allocate(CHUNK_SIZE));
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void notEncryptedFile_isDetected() throws IOException {
+        File plainFile = temporaryFolder.newFile();
+        writeFile(plainFile, createContent(1000));
+        assertFalse(ChunkedCipher.isEncrypted(plainFile));
+        assertTrue(ChunkedCipher.isEncrypted(encrypt(new byte[0])));
+        assertNotOpened(plainFile);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static SecretKey createKey() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        return keyGenerator.generateKey();
+    }
+
+    private static byte[] createContent(final int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private File encrypt(final byte[] content) throws IOException {
+        File plainFile = temporaryFolder.newFile();
+        writeFile(plainFile, content);
+        File encryptedFile = new File(temporaryFolder.getRoot(), plainFile.getName() + ".enc");
+        EncryptedStager.stage(new PathAttachmentSource(plainFile.toPath()), encryptedFile, secretKey, null, null);
+        return encryptedFile;
+    }
+
+    private void assertNotAuthentic(final File encryptedFile, final long chunkIndex) throws IOException {
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, secretKey);
+        try {
+            reader.readChunk(chunkIndex, ByteBuffer.allocate(CHUNK_SIZE));
+            fail("Expected chunk " + chunkIndex + " to be rejected");
+        } catch (IOException exp) {
+            // Expected.
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void assertNotOpened(final File file) {
+        try {
+            new EncryptedAttachmentReader(file, secretKey).close();
+            fail("Expected " + file + " to be rejected");
+        } catch (IOException exp) {
+            // Expected.
+        }
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        try {
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void writeFile(final File file, final byte[] content) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void truncate(final File file, final long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static byte[] readRange(final File file, final long position, final int length) throws IOException {
+        byte[] bytes = new byte[length];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.seek(position);
+            randomAccessFile.readFully(bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+        return bytes;
+    }
+
+    private static void writeRange(final File file, final long position, final byte[] bytes) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(position);
+            randomAccessFile.write(bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void flipByte(final File file, final long position) throws IOException {
+        byte[] bytes = readRange(file, position, 1);
+        bytes[0] ^= 0x01;
+        writeRange(file, position, bytes);
+    }
+}
@@ -0,0 +1,204 @@
+package com.vasanth.attachfile.core.dedup;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link ContentChunker}.
+ *
+ * @author Vasanth
+ */
+public class ContentChunkerTest {
+
+    private static final int MIN_SIZE = 1024;
+    private static final int AVG_SIZE = 4096;
+    private static final int MAX_SIZE = 16384;
+
+    @Test
+    public void chunks_stayWithinSizeBounds_andClusterAroundAvgSize() throws IOException {
+        byte[] content = createContent(4 * 1024 * 1024, 1);
+        List<byte[]> chunks = chunk(content, content.length);
+
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            int length = chunks.get(i).length;
+            assertTrue("Chunk " + i + " of " + length, length >= MIN_SIZE && length <= MAX_SIZE);
+        }
+        assertTrue(chunks.get(chunks.size() - 1).length <= MAX_SIZE);
+        // Nothing is hashed before min size, hence mean is a bit above avg size.
+        int meanSize = content.length / chunks.size();
+        assertTrue("Mean " + meanSize, meanSize >= AVG_SIZE && meanSize <= AVG_SIZE + MIN_SIZE * 2);
+        assertArrayEquals(content, concat(chunks));
+    }
+
+    @Test
+    public void contentWithoutBoundary_isCutAtMaxSize() throws IOException {
+        List<byte[]> chunks = chunk(new byte[3 * MAX_SIZE + 10], 8192);
+        assertEquals(4, chunks.size());
+        assertEquals(MAX_SIZE, chunks.get(0).length);
+        assertEquals(MAX_SIZE, chunks.get(2).length);
+        assertEquals(10, chunks.get(3).length);
+    }
+
+    @Test
+    public void boundaries_dependOnContentOnly_notOnPushedSizes() throws IOException {
+        byte[] content = createContent(512 * 1024, 2);
+        List<Integer> expected = lengths(chunk(content, content.length));
+        assertEquals(expected, lengths(chunk(content, 1)));
+        assertEquals(expected, lengths(chunk(content, 1000)));
+        assertEquals(expected, lengths(chunk(content, MIN_SIZE)));
+    }
+
+    @Test
+    public void boundaries_areStableAcrossVersions() throws IOException {
+        // Dedup against chunks stored by an older version relies on these never changing (See note 4.a of ContentChunker).
+        byte[] content = new byte[1024 * 1024];
+        new Random(42).nextBytes(content);
+        List<Integer> lengths = lengths(chunk(content, content.length));
+        assertEquals(207, lengths.size());
+        assertEquals(Arrays.asList(6664, 4124, 9883, 1974, 4313, 10140, 6428, 10780), lengths.subList(0, 8));
+    }
+
+    @Test
+    public void insertNearStart_shiftsLaterBoundariesByInsertSize() throws IOException {
+        byte[] content = createContent(2 * 1024 * 1024, 3);
+        int insertAt = 100;
+        byte[] insert = createContent(37, 4);
+        byte[] editedContent = new byte[content.length + insert.length];
+        System.arraycopy(content, 0, editedContent, 0, insertAt);
+        System.arraycopy(insert, 0, editedContent, insertAt, insert.length);
+        System.arraycopy(content, insertAt, editedContent, insertAt + insert.length, content.length - insertAt);
+
+        List<byte[]> chunks = chunk(content, content.length);
+        List<byte[]> editedChunks = chunk(editedContent, editedContent.length);
+        List<Long> shiftedBoundaries = new ArrayList<>();
+        for (long boundary : boundaries(chunks)) {
+            shiftedBoundaries.add(boundary + insert.length);
+        }
+        List<Long> editedBoundaries = boundaries(editedChunks);
+        // Boundaries past the first two chunks are found again, only moved by the insert.
+        assertEquals(shiftedBoundaries.subList(2, shiftedBoundaries.size()),
+                editedBoundaries.subList(editedBoundaries.size() - (shiftedBoundaries.size() - 2), editedBoundaries.size()));
+
+        Set<String> chunkKeys = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            chunkKeys.add(Arrays.toString(chunk));
+        }
+        int changedChunkCount = 0;
+        for (byte[] editedChunk : editedChunks) {
+            if (!chunkKeys.contains(Arrays.toString(editedChunk))) {
+                changedChunkCount++;
+            }
+        }
+        assertTrue("Changed " + changedChunkCount, changedChunkCount <= 2);
+    }
+
+    @Test
+    public void finish_emitsShortLastChunk_andResetsForNextContent() throws IOException {
+        assertEquals(0, chunk(new byte[0], 1).size());
+        List<byte[]> chunks = chunk(createContent(MIN_SIZE / 2, 5), 100);
+        assertEquals(1, chunks.size());
+        assertEquals(MIN_SIZE / 2, chunks.get(0).length);
+
+        // Same chunker, second content chunks as if on its own.
+        final List<byte[]> recorded = new ArrayList<>();
+        ContentChunker contentChunker = new ContentChunker(new RecordingListener(recorded), MIN_SIZE, AVG_SIZE, MAX_SIZE);
+        byte[] content = createContent(64 * 1024, 6);
+        contentChunker.update(createContent(3000, 7), 0, 3000);
+        contentChunker.finish();
+        recorded.clear();
+        contentChunker.update(content, 0, content.length);
+        contentChunker.finish();
+        assertEquals(lengths(chunk(content, content.length)), lengths(recorded));
+    }
+
+    @Test
+    public void constructor_invalidSizes_throws() {
+        int[][] invalidSizes = {{0, 4096, 16384}, {1024, 3000, 16384}, {8192, 4096, 16384}, {1024, 4096, 2048}};
+        for (int[] sizes : invalidSizes) {
+            try {
+                new ContentChunker(new RecordingListener(new ArrayList<byte[]>()), sizes[0], sizes[1], sizes[2]);
+                fail("Expected IllegalArgumentException for " + Arrays.toString(sizes));
+            } catch (IllegalArgumentException exp) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static byte[] createContent(final int size, final long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Used to chunk content, pushing it pushSize bytes at a time.
+     */
+    private static List<byte[]> chunk(final byte[] content, final int pushSize) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        ContentChunker contentChunker = new ContentChunker(new RecordingListener(chunks), MIN_SIZE, AVG_SIZE, MAX_SIZE);
+        for (int offset = 0; offset < content.length; offset += pushSize) {
+            contentChunker.update(content, offset, Math.min(pushSize, content.length - offset));
+        }
+        contentChunker.finish();
+        return chunks;
+    }
+
+    private static List<Integer> lengths(final List<byte[]> chunks) {
+        List<Integer> lengths = new ArrayList<>();
+        for (byte[] chunk : chunks) {
+            lengths.add(chunk.length);
+        }
+        return lengths;
+    }
+
+    private static List<Long> boundaries(final List<byte[]> chunks) {
+        List<Long> boundaries = new ArrayList<>();
+        long offset = 0;
+        for (byte[] chunk : chunks) {
+            offset += chunk.length;
+            boundaries.add(offset);
+        }
+        return boundaries;
+    }
+
+    private static byte[] concat(final List<byte[]> chunks) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            outputStream.write(chunk, 0, chunk.length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Listener which copies each chunk, as chunk bytes are valid only during the call.
+     */
+    private static class RecordingListener implements ContentChunker.ChunkListener {
+
+        private List<byte[]> chunks;
+
+        RecordingListener(final List<byte[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void onChunk(byte[] bytes, int offset, int length) {
+            chunks.add(Arrays.copyOfRange(bytes, offset, offset + length));
+        }
+    }
+}
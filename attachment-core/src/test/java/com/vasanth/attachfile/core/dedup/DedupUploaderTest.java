@@ -0,0 +1,176 @@
+package com.vasanth.attachfile.core.dedup;
+
+import com.vasanth.attachfile.core.model.ContentChunk;
+import com.vasanth.attachfile.core.model.DedupUploadResult;
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+import com.vasanth.attachfile.core.util.ProgressListener;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link DedupUploader} with {@link LocalChunkStore}.
+ *
+ * @author Vasanth
+ */
+public class DedupUploaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LocalChunkStore localChunkStore;
+
+    @Before
+    public void setUp() throws IOException {
+        localChunkStore = new LocalChunkStore(temporaryFolder.newFolder("store"));
+    }
+
+    @Test
+    public void upload_manifestRoundTrip_readsBackContent() throws IOException {
+        byte[] content = createContent(6 * 1024 * 1024 + 123, 1);
+        final List<Long> progress = new ArrayList<>();
+        DedupUploadResult dedupUploadResult = upload(content, new ProgressListener() {
+            @Override
+            public void onProgress(long bytesRead) {
+                progress.add(bytesRead);
+            }
+        });
+
+        assertEquals(content.length, dedupUploadResult.getTotalBytes());
+        assertEquals(content.length, dedupUploadResult.getUploadedBytes());
+        assertEquals(dedupUploadResult.getContentChunks().size(), dedupUploadResult.getUploadedChunkCount());
+        assertEquals(dedupUploadResult.getContentChunks().size(), localChunkStore.getChunkCount());
+        assertEquals(Long.valueOf(content.length), progress.get(progress.size() - 1));
+        // Chunks cover the content, back to back.
+        long offset = 0;
+        for (ContentChunk contentChunk : dedupUploadResult.getContentChunks()) {
+            assertEquals(offset, contentChunk.getOffset());
+            offset += contentChunk.getLength();
+        }
+        assertEquals(content.length, offset);
+        assertArrayEquals(content, readContent(dedupUploadResult.getContentId()));
+    }
+
+    @Test
+    public void upload_sameContentAgain_sendsNothing() throws IOException {
+        byte[] content = createContent(3 * 1024 * 1024, 2);
+        DedupUploadResult first = upload(content, null);
+        DedupUploadResult second = upload(content, null);
+
+        assertEquals(first.getContentId(), second.getContentId());
+        assertEquals(0L, second.getUploadedBytes());
+        assertEquals(0, second.getUploadedChunkCount());
+        assertEquals(1.0, second.getDedupRatio(), 0.0);
+        assertEquals(content.length, second.getSavedBytes());
+    }
+
+    @Test
+    public void upload_editedCopy_sendsOnlyEditedChunks() throws IOException {
+        byte[] content = createContent(8 * 1024 * 1024, 3);
+        byte[] editedContent = new byte[content.length + 100];
+        int insertAt = content.length / 2;
+        System.arraycopy(content, 0, editedContent, 0, insertAt);
+        System.arraycopy(createContent(100, 4), 0, editedContent, insertAt, 100);
+        System.arraycopy(content, insertAt, editedContent, insertAt + 100, content.length - insertAt);
+
+        DedupUploadResult first = upload(content, null);
+        DedupUploadResult edited = upload(editedContent, null);
+
+        assertNotEquals(first.getContentId(), edited.getContentId());
+        assertTrue("Sent " + edited.getUploadedChunkCount(), edited.getUploadedChunkCount() <= 2);
+        assertTrue(edited.getUploadedBytes() <= 2 * ContentChunker.DEFAULT_MAX_SIZE);
+        assertArrayEquals(editedContent, readContent(edited.getContentId()));
+        assertArrayEquals(content, readContent(first.getContentId()));
+    }
+
+    @Test
+    public void upload_chunkRepeatedWithinContent_isSentOnce() throws IOException {
+        // No boundary in zeros, hence every chunk is the same max size chunk.
+        byte[] content = new byte[10 * ContentChunker.DEFAULT_MAX_SIZE];
+        DedupUploadResult dedupUploadResult = upload(content, null);
+
+        assertEquals(10, dedupUploadResult.getContentChunks().size());
+        assertEquals(1, dedupUploadResult.getUploadedChunkCount());
+        assertEquals(ContentChunker.DEFAULT_MAX_SIZE, dedupUploadResult.getUploadedBytes());
+        assertArrayEquals(content, readContent(dedupUploadResult.getContentId()));
+    }
+
+    @Test
+    public void upload_emptyContent_hasEmptyManifest() throws IOException {
+        DedupUploadResult dedupUploadResult = upload(new byte[0], null);
+        assertTrue(dedupUploadResult.getContentChunks().isEmpty());
+        assertEquals(0.0, dedupUploadResult.getDedupRatio(), 0.0);
+        assertArrayEquals(new byte[0], readContent(dedupUploadResult.getContentId()));
+    }
+
+    @Test
+    public void localChunkStore_rejectsMismatchedChunkAndMissingChunk() throws IOException {
+        byte[] chunk = createContent(1000, 5);
+        try {
+            localChunkStore.putChunk("00", chunk, 0, chunk.length);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertEquals(0, localChunkStore.getChunkCount());
+        try {
+            localChunkStore.putManifest(Collections.singletonList(new ContentChunk(0L, 1000, "00")));
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static byte[] createContent(final int size, final long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private DedupUploadResult upload(final byte[] content, final ProgressListener progressListener) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return DedupUploader.upload(new PathAttachmentSource(file.toPath()), localChunkStore, progressListener);
+    }
+
+    private byte[] readContent(final String contentId) throws IOException {
+        InputStream inputStream = localChunkStore.openContent(contentId);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        try {
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+}
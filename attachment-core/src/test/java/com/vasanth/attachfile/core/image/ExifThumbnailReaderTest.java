@@ -0,0 +1,258 @@
+package com.vasanth.attachfile.core.image;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link ExifThumbnailReader}.
+ *
+ * @author Vasanth
+ */
+public class ExifThumbnailReaderTest {
+
+    // TIFF offset where thumbnail starts in EXIF built by createExif - Right after IFD1.
+    private static final int THUMBNAIL_OFFSET = 56;
+
+    @Test
+    public void read_intelAndMotorolaByteOrder_findsThumbnailAndOrientation() throws IOException {
+        byte[] thumbnail = createThumbnail(300);
+        ByteOrder[] byteOrders = {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN};
+        for (ByteOrder byteOrder : byteOrders) {
+            byte[] exif = createExif(byteOrder, ExifThumbnail.ORIENTATION_ROTATE_90, thumbnail, THUMBNAIL_OFFSET, thumbnail.length);
+            ExifThumbnail exifThumbnail = read(createJpeg(true, exif));
+
+            assertNotNull(exifThumbnail);
+            assertEquals(ExifThumbnail.ORIENTATION_ROTATE_90, exifThumbnail.getOrientation());
+            assertTrue(exifThumbnail.hasThumbnail());
+            assertArrayEquals(thumbnail, exifThumbnail.getThumbnailBytes());
+        }
+    }
+
+    @Test
+    public void read_jpegWithoutApp1_returnsNull() throws IOException {
+        assertNull(read(createJpeg(true, null)));
+        // Not a JPEG, or empty.
+        assertNull(read(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}));
+        assertNull(read(new byte[0]));
+        // APP1 which is not EXIF (Like XMP).
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        writeSegment(outputStream, 0xE1, "http://ns.adobe.com/xap/1.0/\u0000<x:xmpmeta/>".getBytes());
+        writeSegment(outputStream, 0xDA, new byte[10]);
+        assertNull(read(outputStream.toByteArray()));
+    }
+
+    @Test
+    public void read_thumbnailOutsideSegment_hasOrientationOnly() throws IOException {
+        byte[] thumbnail = createThumbnail(300);
+        int[][] offsetAndLengths = {
+                // Runs one byte past the segment.
+                {THUMBNAIL_OFFSET, thumbnail.length + 1},
+                // Starts past the segment.
+                {THUMBNAIL_OFFSET + thumbnail.length + 10, 10},
+                // Beyond int range once added to the segment offset.
+                {-1, thumbnail.length},
+                {THUMBNAIL_OFFSET, -1},
+                // Not at the thumbnail's SOI, or without offset.
+                {THUMBNAIL_OFFSET + 1, thumbnail.length - 1},
+                {0, thumbnail.length},
+        };
+        for (int[] offsetAndLength : offsetAndLengths) {
+            byte[] exif = createExif(ByteOrder.BIG_ENDIAN, ExifThumbnail.ORIENTATION_ROTATE_180, thumbnail, offsetAndLength[0],
+                    offsetAndLength[1]);
+            ExifThumbnail exifThumbnail = read(createJpeg(false, exif));
+
+            String message = Arrays.toString(offsetAndLength);
+            assertNotNull(message, exifThumbnail);
+            assertFalse(message, exifThumbnail.hasThumbnail());
+            assertEquals(message, ExifThumbnail.ORIENTATION_ROTATE_180, exifThumbnail.getOrientation());
+        }
+    }
+
+    @Test
+    public void read_app1PastMaxHeaderSize_returnsNullWithinMaxHeaderSize() throws IOException {
+        byte[] thumbnail = createThumbnail(300);
+        byte[] exif = createExif(ByteOrder.LITTLE_ENDIAN, ExifThumbnail.ORIENTATION_ROTATE_90, thumbnail, THUMBNAIL_OFFSET,
+                thumbnail.length);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        // Comment segments push APP1 past MAX_HEADER_SIZE, only its marker & length fit.
+        writeSegment(outputStream, 0xFE, new byte[0xFFFF - 2]);
+        writeSegment(outputStream, 0xFE, new byte[0xFFFF - 2]);
+        writeSegment(outputStream, 0xFE, new byte[ExifThumbnailReader.MAX_HEADER_SIZE - outputStream.size() - 8]);
+        writeSegment(outputStream, 0xE1, exif);
+        writeSegment(outputStream, 0xDA, new byte[10]);
+        byte[] jpeg = outputStream.toByteArray();
+
+        CountingInputStream inputStream = new CountingInputStream(new ByteArrayInputStream(jpeg));
+        assertNull(ExifThumbnailReader.read(inputStream));
+        assertTrue(inputStream.count <= ExifThumbnailReader.MAX_HEADER_SIZE);
+
+        // APP1 after a single largest comment segment still fits.
+        outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        writeSegment(outputStream, 0xFE, new byte[0xFFFF - 2]);
+        writeSegment(outputStream, 0xE1, exif);
+        assertTrue(read(outputStream.toByteArray()).hasThumbnail());
+    }
+
+    @Test
+    public void read_orientation_onlyValidValuesAreKept() throws IOException {
+        int[] orientations = {ExifThumbnail.ORIENTATION_NORMAL, ExifThumbnail.ORIENTATION_TRANSPOSE, ExifThumbnail.ORIENTATION_ROTATE_270};
+        for (int orientation : orientations) {
+            byte[] exif = createExif(ByteOrder.LITTLE_ENDIAN, orientation, null, 0, 0);
+            ExifThumbnail exifThumbnail = read(createJpeg(true, exif));
+            assertEquals(orientation, exifThumbnail.getOrientation());
+            // No IFD1.
+            assertFalse(exifThumbnail.hasThumbnail());
+        }
+        int[] invalidOrientations = {0, 9, 0xFFFF};
+        for (int orientation : invalidOrientations) {
+            byte[] exif = createExif(ByteOrder.BIG_ENDIAN, orientation, null, 0, 0);
+            assertEquals(ExifThumbnail.ORIENTATION_NORMAL, read(createJpeg(true, exif)).getOrientation());
+        }
+    }
+
+    @Test
+    public void read_malformedExif_returnsNull() throws IOException {
+        byte[] exif = createExif(ByteOrder.LITTLE_ENDIAN, ExifThumbnail.ORIENTATION_ROTATE_90, null, 0, 0);
+        // Unknown byte order, TIFF magic other than 42 & IFD0 beyond the segment.
+        byte[] badByteOrder = exif.clone();
+        badByteOrder[6] = 'X';
+        assertNull(read(createJpeg(true, badByteOrder)));
+        byte[] badMagic = exif.clone();
+        badMagic[8] = 43;
+        assertNull(read(createJpeg(true, badMagic)));
+        byte[] badIfd0Offset = exif.clone();
+        badIfd0Offset[13] = 0x7F;
+        assertNull(read(createJpeg(true, badIfd0Offset)));
+        // Only identifier & byte order.
+        assertNull(read(createJpeg(true, Arrays.copyOf(exif, 8))));
+
+        // Stream ends within APP1.
+        byte[] jpeg = createJpeg(true, exif);
+        assertNull(read(Arrays.copyOf(jpeg, 30)));
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static ExifThumbnail read(final byte[] content) throws IOException {
+        return ExifThumbnailReader.read(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Used to create EXIF segment payload - IFD0 with orientation, followed by IFD1 with thumbnail offset & length (If there is a
+     * thumbnail) & the thumbnail at THUMBNAIL_OFFSET.
+     */
+    private static byte[] createExif(final ByteOrder byteOrder, final int orientation, final byte[] thumbnail, final int thumbnailOffset,
+                                     final int thumbnailLength) {
+        int thumbnailSize = thumbnail != null ? thumbnail.length : 0;
+        ByteBuffer tiff = ByteBuffer.allocate(THUMBNAIL_OFFSET + thumbnailSize).order(byteOrder);
+        tiff.put(byteOrder == ByteOrder.LITTLE_ENDIAN ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        tiff.putShort((short) 42).putInt(8);
+        // IFD0 - Orientation (SHORT), then offset of IFD1.
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(thumbnail != null ? 26 : 0);
+        if (thumbnail != null) {
+            // IFD1 - Thumbnail offset & length (LONG), then no next IFD.
+            tiff.putShort((short) 2);
+            tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(thumbnailOffset);
+            tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnailLength);
+            tiff.putInt(0);
+            tiff.put(thumbnail);
+        }
+
+        byte[] exif = new byte[6 + tiff.position()];
+        System.arraycopy("Exif\u0000\u0000".getBytes(), 0, exif, 0, 6);
+        System.arraycopy(tiff.array(), 0, exif, 6, tiff.position());
+        return exif;
+    }
+
+    /**
+     * Used to create JPEG with optional JFIF segment, EXIF segment (If not NULL), frame header & image data.
+     */
+    private static byte[] createJpeg(final boolean hasJfif, final byte[] exif) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        if (hasJfif) {
+            writeSegment(outputStream, 0xE0, "JFIF\u0000\u0001\u0001\u0000\u0000\u0001\u0000\u0001\u0000\u0000".getBytes());
+        }
+        if (exif != null) {
+            writeSegment(outputStream, 0xE1, exif);
+        }
+        writeSegment(outputStream, 0xC0, new byte[]{8, 0x0B, (byte) 0xD0, 0x0F, (byte) 0xC0, 1, 1, 0x11, 0});
+        writeSegment(outputStream, 0xDA, new byte[8]);
+        outputStream.write(new byte[1000], 0, 1000);
+        write(outputStream, 0xFF, 0xD9);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] createThumbnail(final int size) {
+        byte[] thumbnail = new byte[size];
+        for (int i = 0; i < size; i++) {
+            thumbnail[i] = (byte) i;
+        }
+        thumbnail[0] = (byte) 0xFF;
+        thumbnail[1] = (byte) 0xD8;
+        thumbnail[size - 2] = (byte) 0xFF;
+        thumbnail[size - 1] = (byte) 0xD9;
+        return thumbnail;
+    }
+
+    private static void writeSegment(final ByteArrayOutputStream outputStream, final int marker, final byte[] payload) {
+        int length = payload.length + 2;
+        write(outputStream, 0xFF, marker, length >> 8, length & 0xFF);
+        outputStream.write(payload, 0, payload.length);
+    }
+
+    private static void write(final ByteArrayOutputStream outputStream, final int... values) {
+        for (int value : values) {
+            outputStream.write(value);
+        }
+    }
+
+    /**
+     * Stream which counts bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(final InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            count += Math.max(read, 0);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.vasanth.attachfile.core.image;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link ImageBoundsParser}.
+ *
+ * @author Vasanth
+ */
+public class ImageBoundsParserTest {
+
+    @Test
+    public void consume_jpegWithFrameHeaderAfterAppSegments_findsBounds() {
+        byte[] jpeg = createJpeg(4032, 3024, 60000);
+        // Pushed at once, a byte at a time & in uneven chunks - Bounds don't depend on how content is split.
+        int[] chunkSizes = {jpeg.length, 1, 7, 4096};
+        for (int chunkSize : chunkSizes) {
+            ImageBoundsParser imageBoundsParser = new ImageBoundsParser();
+            int offset = 0;
+            boolean needsMore = true;
+            while (needsMore && offset < jpeg.length) {
+                int length = Math.min(chunkSize, jpeg.length - offset);
+                needsMore = imageBoundsParser.consume(jpeg, offset, length);
+                offset += length;
+            }
+            assertFalse(needsMore);
+            assertTrue(imageBoundsParser.isFound());
+            assertEquals(4032, imageBoundsParser.getWidth());
+            assertEquals(3024, imageBoundsParser.getHeight());
+            // Stops at the frame header, image data after it is not pushed.
+            assertTrue(chunkSize == jpeg.length || offset <= indexOfFrameHeader(jpeg) + chunkSize + 19);
+        }
+    }
+
+    @Test
+    public void consume_jpegWithFillBytesAndProgressiveFrame_findsBounds() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        // DHT shares the SOF range, but is not a frame header.
+        writeSegment(outputStream, 0xC4, new byte[30]);
+        write(outputStream, 0xFF, 0xFF, 0xFF);
+        writeSegment(outputStream, 0xC2, frameHeader(640, 480));
+        writeSegment(outputStream, 0xDA, new byte[10]);
+
+        ImageBoundsParser imageBoundsParser = parse(outputStream.toByteArray());
+        assertEquals(640, imageBoundsParser.getWidth());
+        assertEquals(480, imageBoundsParser.getHeight());
+    }
+
+    @Test
+    public void consume_jpegWithoutFrameHeader_isNotFound() {
+        // Image data before any frame header.
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        writeSegment(outputStream, 0xE0, new byte[14]);
+        writeSegment(outputStream, 0xDA, new byte[10]);
+        assertFalse(parse(outputStream.toByteArray()).isFound());
+
+        // Truncated within APP1 & within the frame header.
+        byte[] jpeg = createJpeg(100, 200, 5000);
+        assertFalse(parse(Arrays.copyOf(jpeg, 3000)).isFound());
+        assertFalse(parse(Arrays.copyOf(jpeg, indexOfFrameHeader(jpeg) + 6)).isFound());
+
+        // Segment length shorter than its own length field.
+        assertFalse(parse(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x00, 0x01, 0x00, 0x00}).isFound());
+    }
+
+    @Test
+    public void consume_png_readsIhdr() {
+        ImageBoundsParser imageBoundsParser = parse(createPng(1920, 1080));
+        assertTrue(imageBoundsParser.isFound());
+        assertEquals(1920, imageBoundsParser.getWidth());
+        assertEquals(1080, imageBoundsParser.getHeight());
+    }
+
+    @Test
+    public void consume_gifBmpAndWebp_readHeader() {
+        byte[] gif = {'G', 'I', 'F', '8', '9', 'a', 0x40, 0x01, (byte) 0xF0, 0x00};
+        ImageBoundsParser imageBoundsParser = parse(gif);
+        assertEquals(320, imageBoundsParser.getWidth());
+        assertEquals(240, imageBoundsParser.getHeight());
+
+        byte[] bmp = new byte[54];
+        bmp[0] = 'B';
+        bmp[1] = 'M';
+        bmp[14] = 40;
+        bmp[18] = 100;
+        // Top down bitmap, negative height.
+        bmp[22] = (byte) 0xCE;
+        bmp[23] = (byte) 0xFF;
+        bmp[24] = (byte) 0xFF;
+        bmp[25] = (byte) 0xFF;
+        imageBoundsParser = parse(bmp);
+        assertEquals(100, imageBoundsParser.getWidth());
+        assertEquals(50, imageBoundsParser.getHeight());
+
+        byte[] webp = new byte[30];
+        System.arraycopy("RIFF".getBytes(), 0, webp, 0, 4);
+        System.arraycopy("WEBPVP8X".getBytes(), 0, webp, 8, 8);
+        // Canvas size minus 1, 24 bit little endian.
+        webp[24] = (byte) 0xFF;
+        webp[25] = 0x03;
+        webp[27] = (byte) 0xFF;
+        webp[28] = 0x02;
+        imageBoundsParser = parse(webp);
+        assertEquals(1024, imageBoundsParser.getWidth());
+        assertEquals(768, imageBoundsParser.getHeight());
+    }
+
+    @Test
+    public void consume_truncatedOrUnknownHeader_isNotFound() {
+        byte[] png = createPng(1920, 1080);
+        // IHDR cut off.
+        assertFalse(parse(Arrays.copyOf(png, 20)).isFound());
+        assertFalse(parse(new byte[0]).isFound());
+        assertFalse(parse(new byte[]{(byte) 0xFF}).isFound());
+        assertFalse(parse("%PDF-1.7 not an image at all".getBytes()).isFound());
+        // Zero size.
+        assertFalse(parse(createPng(0, 1080)).isFound());
+    }
+
+    @Test
+    public void consume_afterDone_isNotCalledAgain() {
+        ImageBoundsParser imageBoundsParser = new ImageBoundsParser();
+        byte[] png = createPng(10, 20);
+        assertFalse(imageBoundsParser.consume(png, 0, png.length));
+        assertFalse(imageBoundsParser.consume(png, 0, png.length));
+        assertEquals(10, imageBoundsParser.getWidth());
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to push content in one go, ending it if parser still needs more.
+     */
+    private static ImageBoundsParser parse(final byte[] content) {
+        ImageBoundsParser imageBoundsParser = new ImageBoundsParser();
+        if (imageBoundsParser.consume(content, 0, content.length)) {
+            imageBoundsParser.onEnd();
+        }
+        return imageBoundsParser;
+    }
+
+    /**
+     * Used to create JPEG with JFIF & EXIF (Of the given size) segments, quantization table, frame header & scan.
+     */
+    private static byte[] createJpeg(final int width, final int height, final int exifSize) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0xFF, 0xD8);
+        writeSegment(outputStream, 0xE0, "JFIF\u0000\u0001\u0001\u0000\u0000\u0001\u0000\u0001\u0000\u0000".getBytes());
+        byte[] exif = new byte[exifSize];
+        System.arraycopy("Exif\u0000\u0000".getBytes(), 0, exif, 0, 6);
+        // Payload full of what looks like markers.
+        Arrays.fill(exif, 6, exif.length, (byte) 0xFF);
+        writeSegment(outputStream, 0xE1, exif);
+        writeSegment(outputStream, 0xDB, new byte[65]);
+        writeSegment(outputStream, 0xC0, frameHeader(width, height));
+        writeSegment(outputStream, 0xDA, new byte[12]);
+        outputStream.write(new byte[20000], 0, 20000);
+        write(outputStream, 0xFF, 0xD9);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] createPng(final int width, final int height) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        write(outputStream, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13, 'I', 'H', 'D', 'R');
+        write(outputStream, width >>> 24, (width >> 16) & 0xFF, (width >> 8) & 0xFF, width & 0xFF);
+        write(outputStream, height >>> 24, (height >> 16) & 0xFF, (height >> 8) & 0xFF, height & 0xFF);
+        write(outputStream, 8, 6, 0, 0, 0, 0, 0, 0, 0);
+        outputStream.write(new byte[100], 0, 100);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Precision, height, width & 3 components.
+     */
+    private static byte[] frameHeader(final int width, final int height) {
+        return new byte[]{8, (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 3,
+                1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1};
+    }
+
+    private static int indexOfFrameHeader(final byte[] jpeg) {
+        for (int i = jpeg.length - 2; i >= 0; i--) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == 0xC0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeSegment(final ByteArrayOutputStream outputStream, final int marker, final byte[] payload) {
+        int length = payload.length + 2;
+        write(outputStream, 0xFF, marker, length >> 8, length & 0xFF);
+        outputStream.write(payload, 0, payload.length);
+    }
+
+    private static void write(final ByteArrayOutputStream outputStream, final int... values) {
+        for (int value : values) {
+            outputStream.write(value);
+        }
+    }
+}
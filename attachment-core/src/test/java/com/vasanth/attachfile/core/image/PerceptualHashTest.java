@@ -0,0 +1,77 @@
+package com.vasanth.attachfile.core.image;
+
+import com.vasanth.attachfile.core.index.NearDuplicateIndex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link PerceptualHash}.
+ *
+ * @author Vasanth
+ */
+public class PerceptualHashTest {
+
+    @Test
+    public void compute_sameImageAtOtherResolution_isWithinNearDuplicateDistance() {
+        long hash = PerceptualHash.compute(render(360, 320, 0), 360, 320);
+        int[][] sizes = {{180, 160}, {90, 80}, {641, 479}, {97, 113}};
+        for (int[] size : sizes) {
+            int distance = NearDuplicateIndex.distance(hash, PerceptualHash.compute(render(size[0], size[1], 0), size[0], size[1]));
+            assertTrue(size[0] + "x" + size[1] + " distance " + distance, distance <= 4);
+        }
+    }
+
+    @Test
+    public void compute_brighterImage_hasSameHash() {
+        long hash = PerceptualHash.compute(render(180, 160, 0), 180, 160);
+        assertEquals(hash, PerceptualHash.compute(render(180, 160, 40), 180, 160));
+    }
+
+    @Test
+    public void compute_differentImage_isFar() {
+        long hash = PerceptualHash.compute(render(180, 160, 0), 180, 160);
+        int[] mirrored = render(180, 160, 0);
+        for (int y = 0; y < 160; y++) {
+            for (int x = 0; x < 90; x++) {
+                int pixel = mirrored[y * 180 + x];
+                mirrored[y * 180 + x] = mirrored[y * 180 + 179 - x];
+                mirrored[y * 180 + 179 - x] = pixel;
+            }
+        }
+        assertTrue(NearDuplicateIndex.distance(hash, PerceptualHash.compute(mirrored, 180, 160)) > 16);
+    }
+
+    @Test
+    public void compute_flatOrTinyImage_hashesOnlyItsGradients() {
+        int[] blank = new int[50 * 40];
+        Arrays.fill(blank, 0xFFFFFFFF);
+        assertEquals(0L, PerceptualHash.compute(blank, 50, 40));
+        assertEquals(0L, PerceptualHash.compute(new int[]{0xFF336699}, 1, 1));
+        // Smaller than the grid - Cells without pixels take their neighbour, bright to dark gradient of the first row is kept.
+        long hash = PerceptualHash.compute(new int[]{0xFFFFFFFF, 0xFF000000, 0xFFFFFFFF, 0xFF000000}, 2, 2);
+        assertEquals(1L << 60, hash & 0xFF00000000000000L);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static int[] render(final int width, final int height, final int brightness) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double u = (x + 0.5) / width;
+                double v = (y + 0.5) / height;
+                int luminance = (int) (100 + 80 * Math.sin(7 * u + 3 * v) * Math.cos(5 * v - 2 * u)) + brightness;
+                int red = Math.min(255, luminance + 20);
+                int blue = Math.max(0, luminance - 20);
+                pixels[y * width + x] = 0xFF000000 | (red << 16) | (luminance << 8) | blue;
+            }
+        }
+        return pixels;
+    }
+}
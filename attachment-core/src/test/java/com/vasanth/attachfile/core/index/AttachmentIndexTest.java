@@ -0,0 +1,143 @@
+package com.vasanth.attachfile.core.index;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link AttachmentIndex}.
+ *
+ * @author Vasanth
+ */
+public class AttachmentIndexTest {
+
+    private AttachmentIndex<String> attachmentIndex;
+
+    @Before
+    public void setUp() {
+        attachmentIndex = new AttachmentIndex<>();
+        attachmentIndex.add("a", new AttachmentDetail("Report.pdf", 300, "application/pdf"));
+        attachmentIndex.add("b", new AttachmentDetail("beach.jpg", 100, "image/jpeg"));
+        attachmentIndex.add("c", new AttachmentDetail("Clip.mp4", 200, "video/mp4"));
+    }
+
+    @Test
+    public void update_sizeChange_reordersSizeViewAndTotal() {
+        AttachmentDetail attachmentDetail = new AttachmentDetail("beach.jpg", 100, "image/jpeg");
+        attachmentIndex.add("b", attachmentDetail);
+        attachmentDetail.setSize(500);
+
+        // Index keeps its copy till updated.
+        assertEquals(Arrays.asList("b", "c", "a"), attachmentIndex.getSorted(AttachmentIndex.SORT_BY_SIZE, true));
+        assertTrue(attachmentIndex.update("b", attachmentDetail));
+        assertEquals(Arrays.asList("c", "a", "b"), attachmentIndex.getSorted(AttachmentIndex.SORT_BY_SIZE, true));
+        assertEquals(Arrays.asList("b", "a", "c"), attachmentIndex.getSorted(AttachmentIndex.SORT_BY_SIZE, false));
+        assertEquals(1000, attachmentIndex.getTotalSize());
+        assertEquals(3, attachmentIndex.size());
+    }
+
+    @Test
+    public void update_typeChange_movesCategoryCountAndTypeView() {
+        assertTrue(attachmentIndex.update("c", new AttachmentDetail("Clip.mp4", 200, null)));
+
+        assertEquals(0, attachmentIndex.getCategoryCount("video"));
+        assertEquals(1, attachmentIndex.getCategoryCount(AttachmentIndex.CATEGORY_UNKNOWN));
+        assertFalse(attachmentIndex.getCategoryCounts().containsKey("video"));
+        // Unknown type sorts last.
+        assertEquals(Arrays.asList("a", "b", "c"), attachmentIndex.getSorted(AttachmentIndex.SORT_BY_TYPE, true));
+    }
+
+    @Test
+    public void update_nameChange_reindexesNameViewAndGrams() {
+        assertTrue(attachmentIndex.update("a", new AttachmentDetail("Agenda.pdf", 300, "application/pdf")));
+
+        assertEquals(Arrays.asList("a", "b", "c"), attachmentIndex.getSorted(AttachmentIndex.SORT_BY_NAME, true));
+        assertEquals(Collections.emptyList(), attachmentIndex.findByName("report"));
+        assertEquals(Collections.emptyList(), attachmentIndex.findByNamePrefix("rep"));
+        assertEquals(Collections.singletonList("a"), attachmentIndex.findByName("GEND"));
+        assertEquals(Collections.singletonList("a"), attachmentIndex.findByNamePrefix("ag"));
+        // Added order is kept.
+        assertEquals(Arrays.asList("a", "b", "c"), toList(attachmentIndex));
+    }
+
+    @Test
+    public void update_itemNotInIndex_isNotAdded() {
+        assertFalse(attachmentIndex.update("d", new AttachmentDetail("d.txt", 1, "text/plain")));
+        assertFalse(attachmentIndex.contains("d"));
+        assertEquals(3, attachmentIndex.size());
+    }
+
+    @Test
+    public void findByName_queryShorterThanGram_scansAllNames() {
+        attachmentIndex.add("d", new AttachmentDetail("ab", 1, "text/plain"));
+
+        assertEquals(Arrays.asList("d", "b"), attachmentIndex.findByName("b"));
+        assertEquals(Arrays.asList("d"), attachmentIndex.findByName("AB"));
+        assertEquals(Arrays.asList("c"), attachmentIndex.findByName("p4"));
+        // Empty query matches all, in name order.
+        assertEquals(Arrays.asList("d", "b", "c", "a"), attachmentIndex.findByName(""));
+        assertEquals(Collections.emptyList(), attachmentIndex.findByName("zz"));
+    }
+
+    @Test
+    public void findByName_queryOfGrams_matchesSubstringOnly() {
+        attachmentIndex.add("d", new AttachmentDetail("port-repo.txt", 1, "text/plain"));
+
+        // Both names have every gram of "report", only one contains it.
+        assertEquals(Collections.singletonList("a"), attachmentIndex.findByName("report"));
+        assertEquals(Arrays.asList("d", "a"), attachmentIndex.findByName("por"));
+        assertEquals(Collections.emptyList(), attachmentIndex.findByName("xyz"));
+    }
+
+    @Test
+    public void remove_updatesAggregates() {
+        attachmentIndex.add("d", new AttachmentDetail("unknown.bin", -1, null));
+        assertEquals(600, attachmentIndex.getTotalSize());
+
+        assertTrue(attachmentIndex.remove("a"));
+        assertTrue(attachmentIndex.remove("d"));
+        assertFalse(attachmentIndex.remove("a"));
+
+        assertEquals(300, attachmentIndex.getTotalSize());
+        assertEquals(2, attachmentIndex.size());
+        assertEquals(0, attachmentIndex.getCategoryCount("application"));
+        assertEquals(0, attachmentIndex.getCategoryCount(AttachmentIndex.CATEGORY_UNKNOWN));
+        assertEquals(2, attachmentIndex.getCategoryCounts().size());
+        assertEquals(Collections.emptyList(), attachmentIndex.findByName("report"));
+
+        assertTrue(attachmentIndex.remove("b"));
+        assertTrue(attachmentIndex.remove("c"));
+        assertTrue(attachmentIndex.isEmpty());
+        assertEquals(0, attachmentIndex.getTotalSize());
+        assertTrue(attachmentIndex.getCategoryCounts().isEmpty());
+    }
+
+    @Test
+    public void getCategory_usesPartBeforeSlash() {
+        assertEquals("image", AttachmentIndex.getCategory("IMAGE/PNG"));
+        assertEquals("application", AttachmentIndex.getCategory("application"));
+        assertEquals(AttachmentIndex.CATEGORY_UNKNOWN, AttachmentIndex.getCategory(""));
+        assertEquals(AttachmentIndex.CATEGORY_UNKNOWN, AttachmentIndex.getCategory(null));
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static List<String> toList(final Iterable<String> items) {
+        List<String> list = new ArrayList<>();
+        for (String item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+}
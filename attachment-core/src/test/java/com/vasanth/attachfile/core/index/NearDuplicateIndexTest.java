@@ -0,0 +1,161 @@
+package com.vasanth.attachfile.core.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link NearDuplicateIndex}.
+ *
+ * @author Vasanth
+ */
+public class NearDuplicateIndexTest {
+
+    private static final long HASH = 0x5A3C_96F0_0FF1_E2D4L;
+
+    @Test
+    public void find_hashAtMaxDistance_isFoundAndOneBitFurther_isNot() {
+        for (int maxDistance = 0; maxDistance <= 16; maxDistance++) {
+            NearDuplicateIndex<String> nearDuplicateIndex = new NearDuplicateIndex<>();
+            // Bits spread over every substring - Least bits per substring, the pigeonhole worst case.
+            nearDuplicateIndex.add(flipSpreadBits(HASH, maxDistance), "at");
+            nearDuplicateIndex.add(flipSpreadBits(HASH, maxDistance + 1), "above");
+
+            List<NearDuplicateIndex.Match<String>> matches = nearDuplicateIndex.find(HASH, maxDistance);
+            assertEquals("maxDistance " + maxDistance, 1, matches.size());
+            assertEquals("at", matches.get(0).getValue());
+            assertEquals(maxDistance, matches.get(0).getDistance());
+            assertEquals(flipSpreadBits(HASH, maxDistance), matches.get(0).getHash());
+        }
+    }
+
+    @Test
+    public void remove_value_isNotFoundAnymore() {
+        NearDuplicateIndex<String> nearDuplicateIndex = new NearDuplicateIndex<>();
+        assertFalse(nearDuplicateIndex.remove("missing"));
+        nearDuplicateIndex.add(HASH, "first");
+        nearDuplicateIndex.add(HASH ^ 1L, "second");
+        assertEquals(2, nearDuplicateIndex.size());
+
+        assertTrue(nearDuplicateIndex.remove("first"));
+        assertFalse(nearDuplicateIndex.remove("first"));
+        assertEquals(1, nearDuplicateIndex.size());
+        List<NearDuplicateIndex.Match<String>> matches = nearDuplicateIndex.find(HASH, 4);
+        assertEquals(1, matches.size());
+        assertEquals("second", matches.get(0).getValue());
+
+        assertTrue(nearDuplicateIndex.remove("second"));
+        assertEquals(0, nearDuplicateIndex.size());
+        assertTrue(nearDuplicateIndex.find(HASH, 64).isEmpty());
+        // Index is usable again once emptied.
+        nearDuplicateIndex.add(HASH, "third");
+        assertEquals("third", nearDuplicateIndex.find(HASH, 0).get(0).getValue());
+    }
+
+    @Test
+    public void add_indexedValue_replacesItsHash() {
+        NearDuplicateIndex<String> nearDuplicateIndex = new NearDuplicateIndex<>();
+        nearDuplicateIndex.add(HASH, "value");
+        nearDuplicateIndex.add(~HASH, "value");
+
+        assertEquals(1, nearDuplicateIndex.size());
+        assertTrue(nearDuplicateIndex.find(HASH, 8).isEmpty());
+        assertEquals(0, nearDuplicateIndex.find(~HASH, 0).get(0).getDistance());
+    }
+
+    @Test
+    public void find_randomHashes_matchesLinearScan() {
+        Random random = new Random(47L);
+        NearDuplicateIndex<Integer> nearDuplicateIndex = new NearDuplicateIndex<>();
+        Map<Integer, Long> hashes = new HashMap<>();
+        // Clusters of near hashes, so that finds have matches at every distance, among unrelated random hashes.
+        List<Long> clusterHashes = new ArrayList<>();
+        for (int value = 0; value < 5000; value++) {
+            long hash;
+            if (value % 2 == 0 || clusterHashes.isEmpty()) {
+                hash = random.nextLong();
+                clusterHashes.add(hash);
+            } else {
+                hash = flipRandomBits(clusterHashes.get(random.nextInt(clusterHashes.size())), random.nextInt(20), random);
+            }
+            nearDuplicateIndex.add(hash, value);
+            hashes.put(value, hash);
+        }
+        // Removed values are not found either.
+        for (int value = 0; value < 5000; value += 7) {
+            nearDuplicateIndex.remove(value);
+            hashes.remove(value);
+        }
+
+        for (int query = 0; query < 300; query++) {
+            long hash = flipRandomBits(clusterHashes.get(random.nextInt(clusterHashes.size())), random.nextInt(8), random);
+            int maxDistance = random.nextInt(17);
+            Map<Integer, Integer> expectedDistances = new HashMap<>();
+            for (Map.Entry<Integer, Long> entry : hashes.entrySet()) {
+                int distance = Long.bitCount(entry.getValue() ^ hash);
+                if (distance <= maxDistance) {
+                    expectedDistances.put(entry.getKey(), distance);
+                }
+            }
+
+            List<NearDuplicateIndex.Match<Integer>> matches = nearDuplicateIndex.find(hash, maxDistance);
+            Map<Integer, Integer> distances = new HashMap<>();
+            int previousDistance = 0;
+            for (NearDuplicateIndex.Match<Integer> match : matches) {
+                assertTrue("Nearest first", match.getDistance() >= previousDistance);
+                previousDistance = match.getDistance();
+                distances.put(match.getValue(), match.getDistance());
+            }
+            assertEquals("Each value once", matches.size(), distances.size());
+            assertEquals("Query " + query + " maxDistance " + maxDistance, expectedDistances, distances);
+        }
+    }
+
+    @Test
+    public void find_nearDuplicateDistance_comparesFractionOfHashes() {
+        Random random = new Random(8L);
+        NearDuplicateIndex<Integer> nearDuplicateIndex = new NearDuplicateIndex<>();
+        for (int value = 0; value < 10000; value++) {
+            nearDuplicateIndex.add(random.nextLong(), value);
+        }
+        for (int query = 0; query < 100; query++) {
+            nearDuplicateIndex.find(random.nextLong(), 8);
+        }
+        // Linear scan compares all 10,000 per find.
+        assertTrue(nearDuplicateIndex.getComparedCount() / 100 < 1000);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static long flipSpreadBits(final long hash, final int bitCount) {
+        long flipped = hash;
+        // Bit i goes to substring i % 5, at its own position within it - Spreads bits evenly over the substrings.
+        int[] substringShifts = {0, 13, 26, 39, 52};
+        for (int i = 0; i < bitCount; i++) {
+            flipped ^= 1L << (substringShifts[i % 5] + i / 5);
+        }
+        return flipped;
+    }
+
+    private static long flipRandomBits(final long hash, final int bitCount, final Random random) {
+        long flipped = hash;
+        int flippedCount = 0;
+        while (flippedCount < bitCount) {
+            long bit = 1L << random.nextInt(64);
+            if (((flipped ^ hash) & bit) == 0) {
+                flipped ^= bit;
+                flippedCount++;
+            }
+        }
+        return flipped;
+    }
+}
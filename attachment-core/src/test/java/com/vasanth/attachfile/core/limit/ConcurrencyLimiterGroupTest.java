@@ -0,0 +1,60 @@
+package com.vasanth.attachfile.core.limit;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link ConcurrencyLimiterGroup}.
+ *
+ * @author Vasanth
+ */
+public class ConcurrencyLimiterGroupTest {
+
+    @Test
+    public void getLimiter_isCreatedOncePerKey() {
+        ConcurrencyLimiterGroup concurrencyLimiterGroup = new ConcurrencyLimiterGroup(4, 1, 8);
+        ConcurrencyLimiter limiter = concurrencyLimiterGroup.getLimiter("com.provider");
+        assertSame(limiter, concurrencyLimiterGroup.getLimiter("com.provider"));
+        assertEquals(4, limiter.getLimit());
+        // No key shares the default limiter.
+        assertSame(concurrencyLimiterGroup.getLimiter(null), concurrencyLimiterGroup.getLimiter(null));
+
+        concurrencyLimiterGroup.getLimiter("a.provider");
+        assertEquals(Arrays.asList("", "a.provider", "com.provider"),
+                new ArrayList<>(concurrencyLimiterGroup.getLimiters().keySet()));
+    }
+
+    @Test
+    public void failureOfOneKey_decreasesOnlyItsLimit() throws Exception {
+        ConcurrencyLimiterGroup concurrencyLimiterGroup = new ConcurrencyLimiterGroup(4, 1, 8);
+        try {
+            concurrencyLimiterGroup.execute("slow.provider", new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    throw new IOException("Throttled");
+                }
+            }, false);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertEquals("ok", concurrencyLimiterGroup.execute("fast.provider", new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }, false));
+
+        assertEquals(2, concurrencyLimiterGroup.getLimiter("slow.provider").getLimit());
+        assertEquals(4, concurrencyLimiterGroup.getLimiter("fast.provider").getLimit());
+        assertEquals(0L, concurrencyLimiterGroup.getLimiters().get("fast.provider").getDecreaseCount());
+    }
+}
@@ -0,0 +1,288 @@
+package com.vasanth.attachfile.core.limit;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link ConcurrencyLimiter}.
+ *
+ * @author Vasanth
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final long AWAIT_SECONDS = 5L;
+
+    private static final Callable<Void> SUCCEEDING_OPERATION = new Callable<Void>() {
+        @Override
+        public Void call() {
+            return null;
+        }
+    };
+
+    @Test
+    public void constructor_clampsLimits() {
+        assertEquals(5, new ConcurrencyLimiter(100, 1, 5).getLimit());
+        assertEquals(1, new ConcurrencyLimiter(0, 0, 5).getLimit());
+        // Max below min is raised to min.
+        assertEquals(3, new ConcurrencyLimiter(1, 3, 2).getLimit());
+    }
+
+    @Test
+    public void success_whileLimitIsFilled_increasesAdditively() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(1, 1, 10);
+        concurrencyLimiter.execute(SUCCEEDING_OPERATION, false);
+        assertEquals(2, concurrencyLimiter.getLimit());
+
+        // Limit 2 grows by 1 / 2 per success which filled it - Only the first of each pair of parallel operations fills it.
+        runInParallel(concurrencyLimiter, 2);
+        assertEquals(2, concurrencyLimiter.getLimit());
+        runInParallel(concurrencyLimiter, 2);
+        assertEquals(2, concurrencyLimiter.getLimit());
+        runInParallel(concurrencyLimiter, 2);
+        assertEquals(3, concurrencyLimiter.getLimit());
+        assertEquals(0L, concurrencyLimiter.getDecreaseCount());
+    }
+
+    @Test
+    public void success_whileLimitIsNotFilled_doesNotIncrease() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(4, 1, 10);
+        for (int i = 0; i < 100; i++) {
+            concurrencyLimiter.execute(SUCCEEDING_OPERATION, false);
+        }
+        assertEquals(4, concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    public void success_neverIncreasesAboveMaxLimit() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(2, 1, 3);
+        for (int i = 0; i < 10; i++) {
+            runInParallel(concurrencyLimiter, concurrencyLimiter.getLimit());
+        }
+        assertEquals(3, concurrencyLimiter.getLimit());
+    }
+
+    @Test
+    public void transientFailureOrTimeout_decreasesMultiplicativelyDownToMinLimit() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(8, 2, 10);
+        executeFailing(concurrencyLimiter, new IOException("Throttled"));
+        assertEquals(4, concurrencyLimiter.getLimit());
+        executeFailing(concurrencyLimiter, new SocketTimeoutException("Timed out"));
+        assertEquals(2, concurrencyLimiter.getLimit());
+        executeFailing(concurrencyLimiter, new IOException("Throttled"));
+        assertEquals(2, concurrencyLimiter.getLimit());
+        assertEquals(3L, concurrencyLimiter.getDecreaseCount());
+        assertEquals(0, concurrencyLimiter.getInFlightCount());
+    }
+
+    @Test
+    public void nonTransientFailure_doesNotDecrease() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(8, 1, 10);
+        executeFailing(concurrencyLimiter, new FileNotFoundException("No such file"));
+        executeFailing(concurrencyLimiter, new IllegalStateException("Broken data"));
+        executeFailing(concurrencyLimiter, new SecurityException("Permission denied"));
+        assertEquals(8, concurrencyLimiter.getLimit());
+        assertEquals(0L, concurrencyLimiter.getDecreaseCount());
+    }
+
+    @Test
+    public void burstOfFailures_startedBeforeDecrease_decreasesOnce() throws Exception {
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(8, 1, 10);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(startThread(concurrencyLimiter, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    releaseLatch.await();
+                    throw new IOException("Throttled");
+                }
+            }, null));
+        }
+        awaitInFlightCount(concurrencyLimiter, 4);
+        releaseLatch.countDown();
+        joinAll(threads);
+
+        assertEquals(4, concurrencyLimiter.getLimit());
+        assertEquals(1L, concurrencyLimiter.getDecreaseCount());
+    }
+
+    @Test
+    public void slowSampledOperation_decreasesLimit() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(8, 1, 10);
+        concurrencyLimiter.execute(SUCCEEDING_OPERATION, true);
+        assertTrue(concurrencyLimiter.getBaselineLatencyNanos() > 0);
+
+        // Slow but not sampled, like reading a large file.
+        concurrencyLimiter.execute(new SleepingOperation(100L), false);
+        assertEquals(8, concurrencyLimiter.getLimit());
+        concurrencyLimiter.execute(new SleepingOperation(100L), true);
+        assertEquals(4, concurrencyLimiter.getLimit());
+        assertEquals(1L, concurrencyLimiter.getDecreaseCount());
+    }
+
+    @Test
+    public void limitGrowth_releasesAllAcquirersItHasRoomFor() throws Exception {
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(1, 1, 10);
+        CountDownLatch firstLatch = new CountDownLatch(1);
+        final CountDownLatch waitingLatch = new CountDownLatch(1);
+        Thread first = startThread(concurrencyLimiter, new LatchOperation(firstLatch), null);
+        awaitInFlightCount(concurrencyLimiter, 1);
+        List<Thread> waiting = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            waiting.add(startThread(concurrencyLimiter, new LatchOperation(waitingLatch), null));
+        }
+        awaitQueueDepth(concurrencyLimiter, 2);
+
+        // First fills limit 1, its success grows it to 2 - Both waiting acquirers run together.
+        firstLatch.countDown();
+        first.join();
+        awaitInFlightCount(concurrencyLimiter, 2);
+        assertEquals(2, concurrencyLimiter.getLimit());
+        assertEquals(0, concurrencyLimiter.getQueueDepth());
+        waitingLatch.countDown();
+        joinAll(waiting);
+        assertEquals(0, concurrencyLimiter.getInFlightCount());
+    }
+
+    @Test
+    public void interruptedAcquirer_leavesQueue() throws Exception {
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(1, 1, 1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        Thread holder = startThread(concurrencyLimiter, new LatchOperation(releaseLatch), null);
+        awaitInFlightCount(concurrencyLimiter, 1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread waiting = startThread(concurrencyLimiter, SUCCEEDING_OPERATION, failure);
+        awaitQueueDepth(concurrencyLimiter, 1);
+
+        waiting.interrupt();
+        waiting.join();
+        assertTrue(failure.get() instanceof InterruptedException);
+        assertEquals(0, concurrencyLimiter.getQueueDepth());
+        assertEquals(1, concurrencyLimiter.getInFlightCount());
+        releaseLatch.countDown();
+        holder.join();
+        assertEquals(0, concurrencyLimiter.getInFlightCount());
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static void executeFailing(final ConcurrencyLimiter concurrencyLimiter, final Exception failure) throws Exception {
+        try {
+            concurrencyLimiter.execute(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    throw failure;
+                }
+            }, false);
+            fail("Expected " + failure);
+        } catch (Exception exp) {
+            assertEquals(failure, exp);
+        }
+    }
+
+    /**
+     * Used to run operations which are all in flight at once, hence fill a limit of that many.
+     */
+    private static void runInParallel(final ConcurrencyLimiter concurrencyLimiter, final int count) throws Exception {
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            threads.add(startThread(concurrencyLimiter, new LatchOperation(releaseLatch), null));
+        }
+        awaitInFlightCount(concurrencyLimiter, count);
+        releaseLatch.countDown();
+        joinAll(threads);
+    }
+
+    private static Thread startThread(final ConcurrencyLimiter concurrencyLimiter, final Callable<Void> operation,
+                                      final AtomicReference<Exception> failure) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    concurrencyLimiter.execute(operation, false);
+                } catch (Exception exp) {
+                    if (failure != null) {
+                        failure.set(exp);
+                    }
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void joinAll(final List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(AWAIT_SECONDS));
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static void awaitInFlightCount(final ConcurrencyLimiter concurrencyLimiter, final int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_SECONDS);
+        while (concurrencyLimiter.getInFlightCount() != count) {
+            assertTrue("In flight count " + concurrencyLimiter.getInFlightCount(), System.nanoTime() < deadline);
+            Thread.sleep(1L);
+        }
+    }
+
+    private static void awaitQueueDepth(final ConcurrencyLimiter concurrencyLimiter, final int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_SECONDS);
+        while (concurrencyLimiter.getQueueDepth() != depth) {
+            assertTrue("Queue depth " + concurrencyLimiter.getQueueDepth(), System.nanoTime() < deadline);
+            Thread.sleep(1L);
+        }
+    }
+
+    /**
+     * Operation which succeeds once its latch is released.
+     */
+    private static class LatchOperation implements Callable<Void> {
+
+        private CountDownLatch releaseLatch;
+
+        LatchOperation(final CountDownLatch releaseLatch) {
+            this.releaseLatch = releaseLatch;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            assertTrue(releaseLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+            return null;
+        }
+    }
+
+    /**
+     * Operation which succeeds after sleeping.
+     */
+    private static class SleepingOperation implements Callable<Void> {
+
+        private long sleepMillis;
+
+        SleepingOperation(final long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            Thread.sleep(sleepMillis);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.vasanth.attachfile.core.outbox;
+
+import com.vasanth.attachfile.core.model.OutboxJob;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link OutboxJournal}.
+ *
+ * @author Vasanth
+ */
+public class OutboxJournalTest {
+
+    private static final long SYNC_INTERVAL_MILLIS = 60000L;
+    private static final int MAX_UNSYNCED_RECORD_COUNT = 256;
+    // Header is magic, version & next job id.
+    private static final int HEADER_SIZE = 16;
+    // Checkpoint record is type, job id & checkpoint - Framed by its length & checksum.
+    private static final int CHECKPOINT_RECORD_SIZE = 4 + 17 + 4;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(temporaryFolder.getRoot(), "outbox.journal");
+    }
+
+    @Test
+    public void open_missingJournal_isCreatedEmpty() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        assertTrue(outboxJournal.getPendingJobs().isEmpty());
+        outboxJournal.close();
+        assertEquals(HEADER_SIZE, journalFile.length());
+    }
+
+    @Test
+    public void reopen_replaysPendingJobsWithLatestCheckpoint() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        OutboxJob first = outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://a", "/staged/a");
+        OutboxJob second = outboxJournal.enqueue(OutboxJob.JOB_TYPE_UPLOAD, "content://b", null);
+        OutboxJob third = outboxJournal.enqueue(OutboxJob.JOB_TYPE_TRANSFORM, "content://c", "/staged/c");
+        outboxJournal.checkpoint(first, 100L);
+        outboxJournal.checkpoint(first, 4096L);
+        outboxJournal.complete(second);
+        outboxJournal.checkpoint(third, 7L);
+        outboxJournal.cancel(third);
+        // Ended job's checkpoint is ignored.
+        outboxJournal.checkpoint(third, 8L);
+        outboxJournal.close();
+
+        outboxJournal = openJournal();
+        List<OutboxJob> pendingJobs = outboxJournal.getPendingJobs();
+        assertEquals(1, pendingJobs.size());
+        OutboxJob replayedJob = pendingJobs.get(0);
+        assertEquals(first.getId(), replayedJob.getId());
+        assertEquals(OutboxJob.JOB_TYPE_STAGE, replayedJob.getJobType());
+        assertEquals("content://a", replayedJob.getLocation());
+        assertEquals("/staged/a", replayedJob.getTarget());
+        assertEquals(4096L, replayedJob.getCheckpoint());
+
+        // Ids of ended jobs are not reused.
+        OutboxJob fourth = outboxJournal.enqueue(OutboxJob.JOB_TYPE_UPLOAD, "content://d", null);
+        assertEquals(third.getId() + 1, fourth.getId());
+        outboxJournal.close();
+    }
+
+    @Test
+    public void reopen_tornTail_isTruncatedAndJournalStaysAppendable() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        OutboxJob job = outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://a", null);
+        outboxJournal.checkpoint(job, 10L);
+        outboxJournal.checkpoint(job, 20L);
+        outboxJournal.close();
+        long validLength = journalFile.length() - CHECKPOINT_RECORD_SIZE;
+        // Crash in the middle of the last record.
+        truncate(journalFile.length() - 5);
+
+        outboxJournal = openJournal();
+        assertEquals(validLength, journalFile.length());
+        assertEquals(10L, outboxJournal.getPendingJobs().get(0).getCheckpoint());
+        outboxJournal.checkpoint(outboxJournal.getPendingJobs().get(0), 30L);
+        outboxJournal.close();
+
+        outboxJournal = openJournal();
+        assertEquals(30L, outboxJournal.getPendingJobs().get(0).getCheckpoint());
+        outboxJournal.close();
+    }
+
+    @Test
+    public void reopen_checksumMismatch_dropsRecordAndEverythingAfter() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        OutboxJob job = outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://a", null);
+        outboxJournal.checkpoint(job, 10L);
+        long corruptRecordAt = journalFile.length();
+        outboxJournal.checkpoint(job, 20L);
+        outboxJournal.checkpoint(job, 30L);
+        outboxJournal.close();
+        // Flip last byte of checkpoint value of the 20 record.
+        flipByte(corruptRecordAt + 4 + 16);
+
+        outboxJournal = openJournal();
+        assertEquals(10L, outboxJournal.getPendingJobs().get(0).getCheckpoint());
+        assertEquals(corruptRecordAt, journalFile.length());
+        outboxJournal.close();
+    }
+
+    @Test
+    public void reopen_corruptRecordLength_stopsReplay() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://a", null);
+        long corruptRecordAt = journalFile.length();
+        outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://b", null);
+        outboxJournal.close();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+        try {
+            randomAccessFile.seek(corruptRecordAt);
+            randomAccessFile.writeInt(Integer.MAX_VALUE);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        outboxJournal = openJournal();
+        assertEquals(1, outboxJournal.getPendingJobs().size());
+        assertEquals("content://a", outboxJournal.getPendingJobs().get(0).getLocation());
+        outboxJournal.close();
+    }
+
+    @Test
+    public void open_unknownFormat_throws() throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(journalFile);
+        try {
+            outputStream.write(new byte[HEADER_SIZE * 2]);
+        } finally {
+            outputStream.close();
+        }
+        try {
+            openJournal();
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void compact_rewritesPendingJobsOnly() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        long lastJobId = fillAndEndAllButOne(outboxJournal);
+        OutboxJob pendingJob = outboxJournal.getPendingJobs().get(0);
+        outboxJournal.close();
+
+        // Header & the pending job's enqueue record, nothing left of the others.
+        assertTrue(journalFile.length() < HEADER_SIZE + 100);
+        assertFalse(new File(journalFile.getPath() + ".tmp").exists());
+        outboxJournal = openJournal();
+        assertEquals(1, outboxJournal.getPendingJobs().size());
+        assertEquals(pendingJob.getId(), outboxJournal.getPendingJobs().get(0).getId());
+        assertEquals(5L, outboxJournal.getPendingJobs().get(0).getCheckpoint());
+        assertEquals(lastJobId + 1, outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://next", null).getId());
+        outboxJournal.close();
+    }
+
+    @Test
+    public void compact_failure_keepsAppendingToJournal() throws IOException {
+        OutboxJournal outboxJournal = openJournal();
+        // Temporary file can't be created, as its path is taken by a folder.
+        File tempFolder = new File(journalFile.getPath() + ".tmp");
+        assertTrue(tempFolder.mkdir());
+        assertTrue(new File(tempFolder, "file").createNewFile());
+
+        long lastJobId = fillAndEndAllButOne(outboxJournal);
+        OutboxJob nextJob = outboxJournal.enqueue(OutboxJob.JOB_TYPE_UPLOAD, "content://next", null);
+        outboxJournal.complete(outboxJournal.getPendingJobs().get(0));
+        outboxJournal.close();
+
+        outboxJournal = openJournal();
+        assertEquals(1, outboxJournal.getPendingJobs().size());
+        assertEquals(nextJob.getId(), outboxJournal.getPendingJobs().get(0).getId());
+        assertEquals(lastJobId + 1, nextJob.getId());
+        assertNull(outboxJournal.getPendingJobs().get(0).getTarget());
+        outboxJournal.close();
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private OutboxJournal openJournal() throws IOException {
+        return new OutboxJournal(journalFile, SYNC_INTERVAL_MILLIS, MAX_UNSYNCED_RECORD_COUNT);
+    }
+
+    /**
+     * Used to enqueue enough jobs to trigger compaction & end all but the first one, which gets checkpoint 5 - Journal then has
+     * 1024 records (Compaction threshold), reached by the last complete.
+     *
+     * @return Id of the last job enqueued.
+     */
+    private static long fillAndEndAllButOne(final OutboxJournal outboxJournal) throws IOException {
+        OutboxJob firstJob = outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://first", "/staged/first");
+        outboxJournal.checkpoint(firstJob, 5L);
+        long lastJobId = firstJob.getId();
+        for (int i = 0; i < 511; i++) {
+            OutboxJob outboxJob = outboxJournal.enqueue(OutboxJob.JOB_TYPE_STAGE, "content://" + i, "/staged/" + i);
+            outboxJournal.complete(outboxJob);
+            lastJobId = outboxJob.getId();
+        }
+        return lastJobId;
+    }
+
+    private void truncate(final long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void flipByte(final long position) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+        try {
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
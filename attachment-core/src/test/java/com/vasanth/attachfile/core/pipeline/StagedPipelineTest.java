@@ -0,0 +1,318 @@
+package com.vasanth.attachfile.core.pipeline;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link StagedPipeline}.
+ *
+ * @author Vasanth
+ */
+public class StagedPipelineTest {
+
+    private static final long AWAIT_SECONDS = 5L;
+
+    private StagedPipeline<String> stagedPipeline;
+
+    @After
+    public void tearDown() {
+        if (stagedPipeline != null) {
+            stagedPipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void stageDeadline_workerIgnoringInterruption_isRetiredAndReplaced() throws Exception {
+        final CountDownLatch hungLatch = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(2);
+        stagedPipeline = new StagedPipeline<>("test", 4, listener);
+        stagedPipeline.addStage("hang", 1, 100L, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+                if (item.equals("hung")) {
+                    // Like a provider call which ignores interruption.
+                    while (hungLatch.getCount() > 0) {
+                        try {
+                            hungLatch.await();
+                        } catch (InterruptedException interruptedException) {
+                            // Ignored.
+                        }
+                    }
+                }
+            }
+        });
+        stagedPipeline.start();
+        stagedPipeline.submitAll(Arrays.asList("hung", "next"), StagedPipeline.NO_DEADLINE);
+
+        // Single worker is still stuck in "hung", hence "next" completes only on a replacement worker.
+        assertTrue(listener.terminalLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("timedOut:hang", listener.getTerminal("hung"));
+        assertEquals("completed", listener.getTerminal("next"));
+        assertTrue(listener.idleLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, stagedPipeline.getInFlightCount());
+        hungLatch.countDown();
+    }
+
+    @Test
+    public void everyItem_getsExactlyOneTerminalCallback() throws Exception {
+        int itemCount = 200;
+        RecordingListener listener = new RecordingListener(itemCount);
+        stagedPipeline = new StagedPipeline<>("test", 2, listener);
+        stagedPipeline.addStage("first", 3, 50L, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+                int number = Integer.parseInt(item);
+                if (number % 5 == 0) {
+                    throw new IllegalStateException("Failed " + item);
+                }
+                if (number % 7 == 0) {
+                    Thread.sleep(200L);
+                }
+            }
+        });
+        stagedPipeline.addStage("second", 2, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+                Thread.sleep(1L);
+            }
+        });
+        stagedPipeline.start();
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            items.add(String.valueOf(i));
+        }
+        stagedPipeline.submitAll(items, StagedPipeline.NO_DEADLINE);
+        // Cancel some items, wherever they are by then.
+        for (int i = 3; i < itemCount; i += 11) {
+            stagedPipeline.cancel(items.get(i));
+        }
+
+        assertTrue(listener.terminalLatch.await(AWAIT_SECONDS * 4, TimeUnit.SECONDS));
+        // Late duplicate callbacks, if any, would land after the latch.
+        Thread.sleep(300L);
+        assertEquals(itemCount, listener.terminals.size());
+        assertEquals(0, listener.duplicateCount.get());
+        assertTrue(listener.idleLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, stagedPipeline.getInFlightCount());
+        for (int i = 0; i < itemCount; i++) {
+            String terminal = listener.getTerminal(String.valueOf(i));
+            if (i % 5 == 0 && i % 11 != 3) {
+                assertEquals("failed:first", terminal);
+            } else if (i % 7 == 0 && i % 11 != 3) {
+                assertEquals("timedOut:first", terminal);
+            }
+        }
+    }
+
+    @Test
+    public void itemWaitingOnFullNextStage_missesBatchDeadlineWithoutWaitingForRoom() throws Exception {
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(1);
+        stagedPipeline = new StagedPipeline<>("test", 1, listener);
+        stagedPipeline.addStage("first", 1, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+            }
+        });
+        stagedPipeline.addStage("second", 1, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+                blockLatch.await();
+            }
+        });
+        stagedPipeline.start();
+        // "a" blocks second stage & "b" fills its queue.
+        stagedPipeline.submitAll(Arrays.asList("a", "b"), StagedPipeline.NO_DEADLINE);
+        Thread.sleep(200L);
+        // "c" can't be handed to second stage, till its deadline.
+        stagedPipeline.submitAll(Collections.singletonList("c"), 200L);
+
+        assertTrue(listener.terminalLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("timedOut:first", listener.getTerminal("c"));
+        blockLatch.countDown();
+    }
+
+    @Test
+    public void cancelAll_dropsItemWaitingOnFullNextStage() throws Exception {
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(3);
+        stagedPipeline = new StagedPipeline<>("test", 1, listener);
+        stagedPipeline.addStage("first", 1, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+            }
+        });
+        stagedPipeline.addStage("second", 1, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+                blockLatch.await();
+            }
+        });
+        stagedPipeline.start();
+        stagedPipeline.submitAll(Arrays.asList("a", "b", "c"), StagedPipeline.NO_DEADLINE);
+        Thread.sleep(200L);
+        stagedPipeline.cancelAll();
+
+        // "a" is interrupted, "b" is dropped once it reaches a worker & "c" gives up waiting.
+        assertTrue(listener.terminalLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("cancelled", listener.getTerminal("a"));
+        assertEquals("cancelled", listener.getTerminal("b"));
+        assertEquals("cancelled", listener.getTerminal("c"));
+        assertTrue(listener.idleLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, stagedPipeline.getInFlightCount());
+        blockLatch.countDown();
+    }
+
+    @Test
+    public void handOffToFullNextStage_timesOutOnceDeadlinePasses() throws Exception {
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(1);
+        stagedPipeline = newBlockingPipeline(listener, blockLatch);
+        stagedPipeline.submitAll(Arrays.asList("a", "b"), StagedPipeline.NO_DEADLINE);
+        Thread.sleep(200L);
+        stagedPipeline.submitAll(Collections.singletonList("c"), 400L);
+
+        // Still waiting for room before its deadline.
+        Thread.sleep(150L);
+        assertNull(listener.getTerminal("c"));
+        assertTrue(listener.terminalLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("timedOut:first", listener.getTerminal("c"));
+
+        // Room after the deadline doesn't pass it on, nor report it again.
+        blockLatch.countDown();
+        assertTrue(listener.idleLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("timedOut:first", listener.getTerminal("c"));
+        assertEquals("completed", listener.getTerminal("b"));
+        assertEquals(0, listener.duplicateCount.get());
+        assertFalse(listener.stageCompletions.contains("c:second"));
+    }
+
+    @Test
+    public void cancelAll_whileWaitingOnHandOff_neverCompletesItem() throws Exception {
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(3);
+        stagedPipeline = newBlockingPipeline(listener, blockLatch);
+        stagedPipeline.submitAll(Arrays.asList("a", "b", "c"), StagedPipeline.NO_DEADLINE);
+        Thread.sleep(200L);
+        stagedPipeline.cancelAll();
+
+        // "c" is dropped from its hand-off, before next stage has room.
+        assertTrue(listener.terminalLatch.await(AWAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("cancelled", listener.getTerminal("c"));
+        blockLatch.countDown();
+        stagedPipeline.submitAll(Collections.singletonList("d"), StagedPipeline.NO_DEADLINE);
+        assertTrue(listener.awaitTerminal("d"));
+        assertEquals("completed", listener.getTerminal("d"));
+        Thread.sleep(200L);
+
+        assertEquals("cancelled", listener.getTerminal("c"));
+        assertEquals(0, listener.duplicateCount.get());
+        assertFalse(listener.stageCompletions.contains("c:second"));
+        assertEquals(0, stagedPipeline.getInFlightCount());
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to create a started pipeline, whose second stage blocks till the latch is released - With queue capacity 1, the first
+     * item blocks second stage, the second fills its queue & the third waits in first stage's hand-off.
+     */
+    private static StagedPipeline<String> newBlockingPipeline(final RecordingListener listener, final CountDownLatch blockLatch) {
+        StagedPipeline<String> stagedPipeline = new StagedPipeline<>("test", 1, listener);
+        stagedPipeline.addStage("first", 1, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+            }
+        });
+        stagedPipeline.addStage("second", 1, StagedPipeline.NO_DEADLINE, new StagedPipeline.Stage<String>() {
+            @Override
+            public void process(String item) throws Exception {
+                blockLatch.await();
+            }
+        });
+        stagedPipeline.start();
+        return stagedPipeline;
+    }
+
+    /**
+     * Listener which records terminal callback of each item.
+     */
+    private static class RecordingListener implements StagedPipeline.Listener<String> {
+
+        private Map<String, String> terminals = new ConcurrentHashMap<>();
+        private AtomicInteger duplicateCount = new AtomicInteger();
+        private CountDownLatch terminalLatch;
+        private CountDownLatch idleLatch = new CountDownLatch(1);
+        // Item & stage name of each completed stage, like "a:first".
+        private List<String> stageCompletions = Collections.synchronizedList(new ArrayList<String>());
+
+        RecordingListener(final int itemCount) {
+            this.terminalLatch = new CountDownLatch(itemCount);
+        }
+
+        String getTerminal(final String item) {
+            return terminals.get(item);
+        }
+
+        boolean awaitTerminal(final String item) throws InterruptedException {
+            long deadlineAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(AWAIT_SECONDS);
+            while (getTerminal(item) == null && System.currentTimeMillis() < deadlineAtMillis) {
+                Thread.sleep(10L);
+            }
+            return getTerminal(item) != null;
+        }
+
+        private void onTerminal(final String item, final String terminal) {
+            if (terminals.put(item, terminal) != null) {
+                duplicateCount.incrementAndGet();
+            }
+            terminalLatch.countDown();
+        }
+
+        @Override
+        public void onStageCompleted(String item, String stageName) {
+            stageCompletions.add(item + ":" + stageName);
+        }
+
+        @Override
+        public void onItemCompleted(String item) {
+            onTerminal(item, "completed");
+        }
+
+        @Override
+        public void onItemFailed(String item, String stageName, Exception exception) {
+            onTerminal(item, "failed:" + stageName);
+        }
+
+        @Override
+        public void onItemTimedOut(String item, String stageName) {
+            onTerminal(item, "timedOut:" + stageName);
+        }
+
+        @Override
+        public void onItemCancelled(String item) {
+            onTerminal(item, "cancelled");
+        }
+
+        @Override
+        public void onIdle() {
+            idleLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.vasanth.attachfile.core.probe;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.model.AttachmentProbeResult;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+import com.vasanth.attachfile.core.util.SegmentedDigest;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link AttachmentProbe}.
+ *
+ * @author Vasanth
+ */
+public class AttachmentProbeTest {
+
+    // Read buffer of the probe.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONTENT_SIZE = 1024 * 1024 + 123;
+    private static final int ALL_PROBES = AttachmentProbe.PROBE_SIZE | AttachmentProbe.PROBE_MIME_TYPE
+            | AttachmentProbe.PROBE_FINGERPRINT | AttachmentProbe.PROBE_BOUNDS;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void probe_fileAndStreamSource_agree() throws IOException {
+        byte[] content = createPngContent();
+        File file = writeFile(content);
+        StreamSource streamSource = new StreamSource(content);
+
+        AttachmentProbeResult fileResult = AttachmentProbe.probe(new PathAttachmentSource(file.toPath()),
+                new AttachmentDetail("a.png", AttachmentDetail.UNKNOWN_SIZE, null), ALL_PROBES, null);
+        AttachmentProbeResult streamResult = AttachmentProbe.probe(streamSource,
+                new AttachmentDetail("a.png", AttachmentDetail.UNKNOWN_SIZE, null), ALL_PROBES, null);
+
+        assertEquals(CONTENT_SIZE, fileResult.getAttachmentDetail().getSize());
+        assertEquals(CONTENT_SIZE, streamResult.getAttachmentDetail().getSize());
+        assertEquals("image/png", fileResult.getAttachmentDetail().getMimeType());
+        assertEquals("image/png", streamResult.getAttachmentDetail().getMimeType());
+        assertEquals(fingerprint(content), fileResult.getFingerprint());
+        assertEquals(fingerprint(content), streamResult.getFingerprint());
+        assertEquals(1920, fileResult.getWidth());
+        assertEquals(1080, streamResult.getHeight());
+        // Whole content read once.
+        assertEquals(CONTENT_SIZE, fileResult.getBytesRead());
+        assertEquals(CONTENT_SIZE, streamResult.getBytesRead());
+        assertEquals(CONTENT_SIZE, streamSource.readBytes);
+        assertEquals(1, streamSource.openCount);
+    }
+
+    @Test
+    public void probe_headerOnly_readsFirstBuffer() throws IOException {
+        StreamSource streamSource = new StreamSource(createPngContent());
+        // Size is known, fingerprint not needed - Only mimeType & bounds, both from the header.
+        AttachmentProbeResult attachmentProbeResult = AttachmentProbe.probe(streamSource,
+                new AttachmentDetail("a", CONTENT_SIZE, null), ALL_PROBES & ~AttachmentProbe.PROBE_FINGERPRINT, null);
+
+        assertEquals("image/png", attachmentProbeResult.getAttachmentDetail().getMimeType());
+        assertTrue(attachmentProbeResult.hasDimensions());
+        assertNull(attachmentProbeResult.getFingerprint());
+        assertEquals(BUFFER_SIZE, attachmentProbeResult.getBytesRead());
+        assertEquals(BUFFER_SIZE, streamSource.readBytes);
+    }
+
+    @Test
+    public void probe_fileSourceSizeOnly_readsNothing() throws IOException {
+        File file = writeFile(createPngContent());
+        AttachmentProbeResult attachmentProbeResult = AttachmentProbe.probe(new PathAttachmentSource(file.toPath()),
+                new AttachmentDetail("a", 0L, "image/png"), AttachmentProbe.PROBE_SIZE, null);
+        // Size from the channel.
+        assertEquals(CONTENT_SIZE, attachmentProbeResult.getAttachmentDetail().getSize());
+        assertEquals(0L, attachmentProbeResult.getBytesRead());
+
+        // Size & mimeType - Size from the channel, only the header is read for the mimeType.
+        attachmentProbeResult = AttachmentProbe.probe(new PathAttachmentSource(file.toPath()),
+                new AttachmentDetail("a", AttachmentDetail.UNKNOWN_SIZE, null),
+                AttachmentProbe.PROBE_SIZE | AttachmentProbe.PROBE_MIME_TYPE, null);
+        assertEquals(CONTENT_SIZE, attachmentProbeResult.getAttachmentDetail().getSize());
+        assertEquals("image/png", attachmentProbeResult.getAttachmentDetail().getMimeType());
+        assertEquals(BUFFER_SIZE, attachmentProbeResult.getBytesRead());
+    }
+
+    @Test
+    public void probe_knownMimeTypeNotImage_skipsBounds() throws IOException {
+        StreamSource streamSource = new StreamSource(createPngContent());
+        AttachmentProbeResult attachmentProbeResult = AttachmentProbe.probe(streamSource,
+                new AttachmentDetail("a", CONTENT_SIZE, "application/pdf"), ALL_PROBES & ~AttachmentProbe.PROBE_FINGERPRINT, null);
+        assertFalse(attachmentProbeResult.hasDimensions());
+        assertEquals("application/pdf", attachmentProbeResult.getAttachmentDetail().getMimeType());
+        // Nothing to probe, content is not opened.
+        assertEquals(0, streamSource.openCount);
+    }
+
+    @Test
+    public void run_consumers_stopOnTheirOwnOrGetEnd() throws IOException {
+        StreamSource streamSource = new StreamSource(new byte[3 * BUFFER_SIZE + 10]);
+        RecordingConsumer stopsAfterFirst = new RecordingConsumer(1);
+        RecordingConsumer readsAll = new RecordingConsumer(Integer.MAX_VALUE);
+        long bytesRead = new AttachmentProbe().addConsumer(stopsAfterFirst).addConsumer(readsAll).run(streamSource, null);
+
+        assertEquals(3 * BUFFER_SIZE + 10, bytesRead);
+        assertEquals(1, stopsAfterFirst.consumeCount);
+        assertFalse(stopsAfterFirst.isEnded);
+        assertEquals(3 * BUFFER_SIZE + 10, readsAll.consumedBytes);
+        assertTrue(readsAll.isEnded);
+    }
+
+    @Test
+    public void run_interruptedThread_stopsReading() throws IOException {
+        StreamSource streamSource = new StreamSource(new byte[CONTENT_SIZE]);
+        Thread.currentThread().interrupt();
+        try {
+            new AttachmentProbe().addConsumer(new RecordingConsumer(Integer.MAX_VALUE)).run(streamSource, null);
+            fail("Expected InterruptedIOException");
+        } catch (InterruptedIOException exp) {
+            // Expected.
+        }
+        assertTrue(streamSource.readBytes <= BUFFER_SIZE);
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to create PNG of 1920x1080 followed by random bytes, CONTENT_SIZE in all.
+     */
+    private static byte[] createPngContent() {
+        byte[] content = new byte[CONTENT_SIZE];
+        new Random(41).nextBytes(content);
+        byte[] header = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13, 'I', 'H', 'D', 'R',
+                0, 0, 0x07, (byte) 0x80, 0, 0, 0x04, 0x38, 8, 6, 0, 0, 0};
+        System.arraycopy(header, 0, content, 0, header.length);
+        return content;
+    }
+
+    private static String fingerprint(final byte[] content) {
+        SegmentedDigest segmentedDigest = new SegmentedDigest();
+        segmentedDigest.update(content, 0, content.length);
+        return segmentedDigest.finish();
+    }
+
+    private File writeFile(final byte[] content) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Source without file, which counts bytes read through its streams.
+     */
+    private static class StreamSource implements AttachmentSource {
+
+        private byte[] content;
+        private int openCount;
+        private long readBytes;
+
+        StreamSource(final byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public String getLocation() {
+            return "stream://test";
+        }
+
+        @Override
+        public AttachmentDetail queryMetadata() throws IOException {
+            return new AttachmentDetail("test", AttachmentDetail.UNKNOWN_SIZE, null);
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            openCount++;
+            return new FilterInputStream(new ByteArrayInputStream(content)) {
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    readBytes += Math.max(read, 0);
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public FileChannel openFileChannel() throws IOException {
+            return null;
+        }
+    }
+
+    /**
+     * Consumer which needs a number of calls & records what it got.
+     */
+    private static class RecordingConsumer implements AttachmentProbe.Consumer {
+
+        private int neededCount;
+        private int consumeCount;
+        private long consumedBytes;
+        private boolean isEnded;
+
+        RecordingConsumer(final int neededCount) {
+            this.neededCount = neededCount;
+        }
+
+        @Override
+        public boolean consume(byte[] bytes, int offset, int length) {
+            consumeCount++;
+            consumedBytes += length;
+            return consumeCount < neededCount;
+        }
+
+        @Override
+        public void onEnd() {
+            isEnded = true;
+        }
+    }
+}
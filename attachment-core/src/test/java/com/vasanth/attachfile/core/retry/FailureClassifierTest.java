@@ -0,0 +1,79 @@
+package com.vasanth.attachfile.core.retry;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of {@link FailureClassifier}.
+ *
+ * @author Vasanth
+ */
+public class FailureClassifierTest {
+
+    @Test
+    public void classify_ioFailures_areTransient() {
+        assertEquals(FailureClassifier.FAILURE_TYPE_TRANSIENT, FailureClassifier.classify(new IOException("Connection reset")));
+        // Timeout is an InterruptedIOException, but not an interruption.
+        assertEquals(FailureClassifier.FAILURE_TYPE_TRANSIENT, FailureClassifier.classify(new SocketTimeoutException("Read timed out")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_TRANSIENT,
+                FailureClassifier.classify(new FileNotFoundException("Dead content provider: com.example.cloud")));
+    }
+
+    @Test
+    public void classify_permissionFailures_areNotTransient() {
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMISSION, FailureClassifier.classify(new SecurityException("Permission Denial")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMISSION,
+                FailureClassifier.classify(new FileNotFoundException("Permission Denial: opening provider")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMISSION,
+                FailureClassifier.classify(new FileNotFoundException("/sdcard/a.jpg: open failed: EACCES (Permission denied)")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMISSION,
+                FailureClassifier.classify(new FileNotFoundException("/sdcard/a.jpg: open failed: EPERM")));
+    }
+
+    @Test
+    public void classify_notFoundFailures_areNotTransient() {
+        assertEquals(FailureClassifier.FAILURE_TYPE_NOT_FOUND,
+                FailureClassifier.classify(new FileNotFoundException("/sdcard/a.jpg: open failed: ENOENT (No such file or directory)")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_NOT_FOUND, FailureClassifier.classify(new FileNotFoundException()));
+    }
+
+    @Test
+    public void classify_interruptions_areInterrupted() {
+        assertEquals(FailureClassifier.FAILURE_TYPE_INTERRUPTED, FailureClassifier.classify(new InterruptedException()));
+        assertEquals(FailureClassifier.FAILURE_TYPE_INTERRUPTED, FailureClassifier.classify(new InterruptedIOException()));
+    }
+
+    @Test
+    public void classify_otherFailures_arePermanent() {
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMANENT, FailureClassifier.classify(new IllegalStateException("Broken data")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMANENT, FailureClassifier.classify(new NullPointerException()));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMANENT, FailureClassifier.classify(new RuntimeException("No cause")));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMANENT, FailureClassifier.classify(new ExecutionException(null)));
+    }
+
+    @Test
+    public void classify_wrappedFailures_areClassifiedByCause() {
+        assertEquals(FailureClassifier.FAILURE_TYPE_TRANSIENT, FailureClassifier.classify(new ExecutionException(new IOException())));
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMISSION, FailureClassifier.classify(new RuntimeException(new SecurityException())));
+        assertEquals(FailureClassifier.FAILURE_TYPE_NOT_FOUND,
+                FailureClassifier.classify(new ExecutionException(new RuntimeException(new FileNotFoundException("missing")))));
+        // Only plain RuntimeException is a wrapper, subclasses carry a failure of their own.
+        assertEquals(FailureClassifier.FAILURE_TYPE_PERMANENT, FailureClassifier.classify(new IllegalStateException(new IOException())));
+    }
+
+    @Test
+    public void getName_namesEveryFailureType() {
+        assertEquals("transient", FailureClassifier.getName(FailureClassifier.FAILURE_TYPE_TRANSIENT));
+        assertEquals("permission", FailureClassifier.getName(FailureClassifier.FAILURE_TYPE_PERMISSION));
+        assertEquals("notFound", FailureClassifier.getName(FailureClassifier.FAILURE_TYPE_NOT_FOUND));
+        assertEquals("interrupted", FailureClassifier.getName(FailureClassifier.FAILURE_TYPE_INTERRUPTED));
+        assertEquals("permanent", FailureClassifier.getName(FailureClassifier.FAILURE_TYPE_PERMANENT));
+    }
+}
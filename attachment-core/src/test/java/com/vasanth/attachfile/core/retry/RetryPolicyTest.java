@@ -0,0 +1,205 @@
+package com.vasanth.attachfile.core.retry;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link RetryPolicy} & the {@link RetryMetrics} it updates.
+ *
+ * @author Vasanth
+ */
+public class RetryPolicyTest {
+
+    // Short delays, so that retries don't slow tests down.
+    private static final RetryPolicy FAST_POLICY = new RetryPolicy(4, 2L, 8L);
+
+    @After
+    public void tearDown() {
+        // Clear interruption left by a test, so that it doesn't leak into the next one.
+        Thread.interrupted();
+    }
+
+    @Test
+    public void execute_transientFailures_areRetriedTillSuccess() throws Exception {
+        FailingOperation operation = new FailingOperation(2, new IOException("Connection reset"));
+        RetryMetrics retryMetrics = new RetryMetrics();
+
+        assertEquals("result", FAST_POLICY.execute(operation, retryMetrics));
+        assertEquals(3, operation.callCount.get());
+        assertEquals(1, retryMetrics.getOperationCount());
+        assertEquals(2, retryMetrics.getRetryCount());
+        assertEquals(1, retryMetrics.getSucceededCount());
+        assertEquals(1, retryMetrics.getSucceededAfterRetryCount());
+        assertEquals(0, retryMetrics.getFailedCount());
+        assertEquals(2, retryMetrics.getFailureCount(FailureClassifier.FAILURE_TYPE_TRANSIENT));
+    }
+
+    @Test
+    public void execute_transientFailures_stopAtMaxAttempts() throws Exception {
+        FailingOperation operation = new FailingOperation(Integer.MAX_VALUE, null);
+        RetryMetrics retryMetrics = new RetryMetrics();
+
+        try {
+            FAST_POLICY.execute(operation, retryMetrics);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Failure of the last attempt.
+            assertSame(operation.lastFailure, exp);
+        }
+        assertEquals(FAST_POLICY.getMaxAttempts(), operation.callCount.get());
+        assertEquals(1, retryMetrics.getOperationCount());
+        assertEquals(3, retryMetrics.getRetryCount());
+        assertEquals(1, retryMetrics.getFailedCount());
+        assertEquals(1, retryMetrics.getExhaustedCount());
+        assertEquals(4, retryMetrics.getFailureCount(FailureClassifier.FAILURE_TYPE_TRANSIENT));
+        assertTrue(retryMetrics.toString().contains("failures={transient=4}"));
+    }
+
+    @Test
+    public void execute_notTransientFailures_areNotRetried() throws Exception {
+        Exception[] failures = {new SecurityException("Permission Denial"), new FileNotFoundException("ENOENT"),
+                new IllegalStateException("Broken data"), new InterruptedIOException()};
+        RetryMetrics retryMetrics = new RetryMetrics();
+        for (Exception failure : failures) {
+            FailingOperation operation = new FailingOperation(Integer.MAX_VALUE, failure);
+            try {
+                FAST_POLICY.execute(operation, retryMetrics);
+                fail("Expected " + failure);
+            } catch (Exception exp) {
+                assertSame(failure, exp);
+            }
+            assertEquals(1, operation.callCount.get());
+        }
+        assertEquals(4, retryMetrics.getFailedCount());
+        assertEquals(0, retryMetrics.getExhaustedCount());
+        assertEquals(0, retryMetrics.getRetryCount());
+        assertEquals(1, retryMetrics.getFailureCount(FailureClassifier.FAILURE_TYPE_PERMISSION));
+        assertEquals(1, retryMetrics.getFailureCount(FailureClassifier.FAILURE_TYPE_NOT_FOUND));
+        assertEquals(1, retryMetrics.getFailureCount(FailureClassifier.FAILURE_TYPE_PERMANENT));
+        assertEquals(1, retryMetrics.getFailureCount(FailureClassifier.FAILURE_TYPE_INTERRUPTED));
+    }
+
+    @Test
+    public void execute_noRetryPolicyOrMetrics_runsOnce() throws Exception {
+        FailingOperation operation = new FailingOperation(Integer.MAX_VALUE, null);
+        try {
+            RetryPolicy.NO_RETRY.execute(operation, null);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertEquals(1, operation.callCount.get());
+        assertEquals(1, new RetryPolicy(0, 10L, 10L).getMaxAttempts());
+    }
+
+    @Test
+    public void execute_interruptedThread_isNotRetried() throws Exception {
+        FailingOperation operation = new FailingOperation(Integer.MAX_VALUE, null);
+        RetryMetrics retryMetrics = new RetryMetrics();
+        Thread.currentThread().interrupt();
+        try {
+            FAST_POLICY.execute(operation, retryMetrics);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertTrue(Thread.currentThread().isInterrupted());
+        assertEquals(1, operation.callCount.get());
+        assertEquals(1, retryMetrics.getFailedCount());
+        assertEquals(0, retryMetrics.getExhaustedCount());
+    }
+
+    @Test
+    public void execute_interruptedWhileWaitingToRetry_stopsRightAway() throws Exception {
+        final RetryPolicy slowPolicy = new RetryPolicy(3, 60000L, 60000L);
+        final FailingOperation operation = new FailingOperation(Integer.MAX_VALUE, null);
+        final RetryMetrics retryMetrics = new RetryMetrics();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicReference<Boolean> isInterrupted = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    slowPolicy.execute(operation, retryMetrics);
+                } catch (Exception exp) {
+                    failure.set(exp);
+                }
+                isInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        thread.start();
+        while (operation.callCount.get() == 0) {
+            Thread.sleep(5L);
+        }
+        // Like a deadline expiring or the item being cancelled.
+        thread.interrupt();
+        thread.join(5000L);
+
+        assertFalse(thread.isAlive());
+        assertSame(operation.lastFailure, failure.get());
+        assertTrue(isInterrupted.get());
+        assertEquals(1, operation.callCount.get());
+        assertEquals(0, retryMetrics.getRetryCount());
+        assertEquals(1, retryMetrics.getFailedCount());
+        assertEquals(0, retryMetrics.getExhaustedCount());
+    }
+
+    @Test
+    public void getDelayMillis_staysWithinJitterBounds() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, 100L, 1000L);
+        // Delay doubles per retry from base delay, capped at max delay - Jitter takes it down to half at most.
+        long[] fullDelays = {100L, 200L, 400L, 800L, 1000L, 1000L};
+        for (int retry = 1; retry <= 40; retry++) {
+            long fullDelay = fullDelays[Math.min(retry, fullDelays.length) - 1];
+            long minDelay = Long.MAX_VALUE;
+            long maxDelay = 0L;
+            for (int sample = 0; sample < 500; sample++) {
+                long delayMillis = retryPolicy.getDelayMillis(retry);
+                assertTrue("Retry " + retry + " delay " + delayMillis, delayMillis >= fullDelay / 2 && delayMillis <= fullDelay);
+                minDelay = Math.min(minDelay, delayMillis);
+                maxDelay = Math.max(maxDelay, delayMillis);
+            }
+            // Jittered, not a fixed delay.
+            assertTrue(maxDelay - minDelay > fullDelay / 4);
+        }
+        assertEquals(0L, RetryPolicy.NO_RETRY.getDelayMillis(1));
+    }
+
+    /**
+     * Operation which fails transiently (Or with the given failure) a number of times before it succeeds.
+     */
+    private static class FailingOperation implements Callable<String> {
+
+        private int failureCount;
+        private Exception failure;
+        private AtomicInteger callCount = new AtomicInteger();
+        private volatile Exception lastFailure;
+
+        FailingOperation(final int failureCount, final Exception failure) {
+            this.failureCount = failureCount;
+            this.failure = failure;
+        }
+
+        @Override
+        public String call() throws Exception {
+            if (callCount.incrementAndGet() <= failureCount) {
+                lastFailure = failure != null ? failure : new IOException("Attempt " + callCount.get() + " failed");
+                throw lastFailure;
+            }
+            return "result";
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.vasanth.attachfile.core.store;
+
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link ContentAddressableStore}.
+ *
+ * @author Vasanth
+ */
+public class ContentAddressableStoreTest {
+
+    private static final int BLOB_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File storeDirectory;
+
+    @Before
+    public void setUp() {
+        storeDirectory = new File(temporaryFolder.getRoot(), "store");
+    }
+
+    @Test
+    public void put_sameContentTwice_isStoredOnce() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 10 * BLOB_SIZE);
+        byte[] content = createContent(1);
+        String contentHash = put(contentAddressableStore, content);
+
+        File stagedFile = writeFile(content);
+        contentAddressableStore.putFile(stagedFile, contentHash);
+        assertFalse(stagedFile.exists());
+        assertEquals(contentHash, put(contentAddressableStore, content));
+        assertEquals(1, contentAddressableStore.getBlobCount());
+        assertEquals(BLOB_SIZE, contentAddressableStore.getTotalBytes());
+        assertEquals(contentHash, ContentAddressableStore.computeContentHash(new ByteArrayInputStream(content)));
+        assertEquals(BLOB_SIZE, contentAddressableStore.getFile(contentHash).length());
+    }
+
+    @Test
+    public void references_areCountedPerOwnerAndName() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 10 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        String second = put(contentAddressableStore, createContent(2));
+
+        contentAddressableStore.addReference("draft1", "content://a", first);
+        contentAddressableStore.addReference("draft1", "content://b", first);
+        contentAddressableStore.addReference("draft2", "content://a", first);
+        // Same reference again doesn't count twice.
+        contentAddressableStore.addReference("draft2", "content://a", first);
+        assertEquals(3, contentAddressableStore.getReferenceCount(first));
+
+        // Pointing a reference elsewhere releases what it pointed at.
+        contentAddressableStore.addReference("draft1", "content://b", second);
+        assertEquals(2, contentAddressableStore.getReferenceCount(first));
+        assertEquals(1, contentAddressableStore.getReferenceCount(second));
+        assertEquals(second, contentAddressableStore.getReference("draft1", "content://b"));
+
+        contentAddressableStore.removeReference("draft2", "content://a");
+        contentAddressableStore.removeReference("draft2", "content://a");
+        assertEquals(1, contentAddressableStore.getReferenceCount(first));
+        contentAddressableStore.removeOwner("draft1");
+        assertEquals(0, contentAddressableStore.getReferenceCount(first));
+        assertEquals(0, contentAddressableStore.getReferenceCount(second));
+        assertNull(contentAddressableStore.getReference("draft1", "content://a"));
+        // Unreferenced blobs stay while within budget.
+        assertEquals(2, contentAddressableStore.getBlobCount());
+    }
+
+    @Test
+    public void addReference_blobNotInStore_throws() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 10 * BLOB_SIZE);
+        try {
+            contentAddressableStore.addReference("draft1", "content://a", hash(createContent(1)));
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertNull(contentAddressableStore.getReference("draft1", "content://a"));
+    }
+
+    @Test
+    public void evict_overBudget_dropsLeastRecentlyUsedFirst() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        String second = put(contentAddressableStore, createContent(2));
+        String third = put(contentAddressableStore, createContent(3));
+        // Reading it makes first the most recently used.
+        assertNotNull(contentAddressableStore.getFile(first));
+
+        String fourth = put(contentAddressableStore, createContent(4));
+        assertNull(contentAddressableStore.getFile(second));
+        assertFalse(new File(new File(storeDirectory, "blobs"), second).exists());
+        String fifth = put(contentAddressableStore, createContent(5));
+        assertNull(contentAddressableStore.getFile(third));
+        assertNotNull(contentAddressableStore.getFile(first));
+        assertNotNull(contentAddressableStore.getFile(fourth));
+        assertNotNull(contentAddressableStore.getFile(fifth));
+        assertEquals(3 * BLOB_SIZE, contentAddressableStore.getTotalBytes());
+        assertEquals(2 * BLOB_SIZE, contentAddressableStore.getEvictedBytes());
+    }
+
+    @Test
+    public void evict_keepsReferencedBlobs_evenOverBudget() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 2 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        contentAddressableStore.addReference("draft1", "content://a", first);
+        String second = put(contentAddressableStore, createContent(2));
+        contentAddressableStore.addReference("draft1", "content://b", second);
+
+        // Just added blob can be referenced, though only referenced blobs are older.
+        String third = put(contentAddressableStore, createContent(3));
+        contentAddressableStore.addReference("draft1", "content://c", third);
+        assertEquals(3 * BLOB_SIZE, contentAddressableStore.getTotalBytes());
+        assertEquals(0L, contentAddressableStore.getEvictedBytes());
+
+        // Released blob is evicted once store is over budget.
+        contentAddressableStore.removeReference("draft1", "content://a");
+        assertNull(contentAddressableStore.getFile(first));
+        assertNotNull(contentAddressableStore.getFile(second));
+        assertNotNull(contentAddressableStore.getFile(third));
+        assertEquals(2 * BLOB_SIZE, contentAddressableStore.getTotalBytes());
+    }
+
+    @Test
+    public void reopen_restoresReferencesAndLruOrder() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        String second = put(contentAddressableStore, createContent(2));
+        String third = put(contentAddressableStore, createContent(3));
+        // Manifest keeps order as of its last write - Reads alone don't write it.
+        contentAddressableStore.getFile(first);
+        contentAddressableStore.addReference("draft1", "content://c", third);
+
+        contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        assertEquals(3, contentAddressableStore.getBlobCount());
+        assertEquals(3 * BLOB_SIZE, contentAddressableStore.getTotalBytes());
+        assertEquals(third, contentAddressableStore.getReference("draft1", "content://c"));
+        assertEquals(1, contentAddressableStore.getReferenceCount(third));
+        put(contentAddressableStore, createContent(4));
+        assertNull(contentAddressableStore.getFile(second));
+        assertNotNull(contentAddressableStore.getFile(first));
+    }
+
+    @Test
+    public void reopen_afterCrash_reconcilesManifestWithBlobs() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        String second = put(contentAddressableStore, createContent(2));
+        contentAddressableStore.addReference("draft1", "content://a", first);
+        contentAddressableStore.addReference("draft1", "content://b", second);
+        File blobDirectory = new File(storeDirectory, "blobs");
+        // Died after writing a blob, before writing manifest - And in the middle of another put.
+        byte[] orphanContent = createContent(3);
+        String orphan = hash(orphanContent);
+        assertTrue(writeFile(orphanContent).renameTo(new File(blobDirectory, orphan)));
+        File partialFile = new File(blobDirectory, "12.34.tmp");
+        assertTrue(partialFile.createNewFile());
+        // Blob gone from disk, like cleared by the user.
+        assertTrue(new File(blobDirectory, second).delete());
+
+        contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        assertFalse(partialFile.exists());
+        assertEquals(2, contentAddressableStore.getBlobCount());
+        assertEquals(2 * BLOB_SIZE, contentAddressableStore.getTotalBytes());
+        assertEquals(1, contentAddressableStore.getReferenceCount(first));
+        assertEquals(0, contentAddressableStore.getReferenceCount(orphan));
+        assertNull(contentAddressableStore.getReference("draft1", "content://b"));
+        assertNull(contentAddressableStore.getFile(second));
+
+        // Orphan is the first to be evicted.
+        put(contentAddressableStore, createContent(4));
+        put(contentAddressableStore, createContent(5));
+        assertNull(contentAddressableStore.getFile(orphan));
+        assertNotNull(contentAddressableStore.getFile(first));
+    }
+
+    @Test
+    public void reopen_corruptManifest_keepsBlobsUnreferenced() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        contentAddressableStore.addReference("draft1", "content://a", first);
+        // Flip a byte of the first blob hash.
+        RandomAccessFile randomAccessFile = new RandomAccessFile(new File(storeDirectory, "manifest"), "rw");
+        try {
+            randomAccessFile.seek(20);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(20);
+            randomAccessFile.write(value ^ 0xFF);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertReopenedUnreferenced(first);
+    }
+
+    @Test
+    public void reopen_corruptBlobCount_keepsBlobsUnreferenced() throws IOException {
+        int[] blobCounts = {Integer.MIN_VALUE + 1, -1, 2, Integer.MAX_VALUE};
+        for (int blobCount : blobCounts) {
+            ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+            String first = put(contentAddressableStore, createContent(1));
+            contentAddressableStore.addReference("draft1", "content://a", first);
+            // Blob count follows magic & version.
+            writeManifestInt(8, blobCount);
+
+            assertReopenedUnreferenced(first);
+        }
+    }
+
+    @Test
+    public void reopen_corruptReferenceIndex_keepsBlobsUnreferenced() throws IOException {
+        int[] blobIndexes = {0x00800000, 1, -1, Integer.MIN_VALUE};
+        for (int blobIndex : blobIndexes) {
+            ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+            String first = put(contentAddressableStore, createContent(1));
+            contentAddressableStore.addReference("draft1", "content://a", first);
+            // Header, 1 blob (Hash & size), reference count, owner & name (Each UTF-8 with length) then blob index.
+            writeManifestInt(12 + 40 + 4 + (2 + "draft1".length()) + (2 + "content://a".length()), blobIndex);
+
+            assertReopenedUnreferenced(first);
+        }
+    }
+
+    @Test
+    public void open_smallerBudget_evictsUnreferencedBlobs() throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        String first = put(contentAddressableStore, createContent(1));
+        String second = put(contentAddressableStore, createContent(2));
+        contentAddressableStore.addReference("draft1", "content://a", first);
+
+        contentAddressableStore = ContentAddressableStore.open(storeDirectory, BLOB_SIZE / 2);
+        assertNotNull(contentAddressableStore.getFile(first));
+        assertNull(contentAddressableStore.getFile(second));
+        assertEquals(BLOB_SIZE, contentAddressableStore.getTotalBytes());
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static byte[] createContent(final long seed) {
+        byte[] content = new byte[BLOB_SIZE];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Used to reopen store & check that the blob is kept, without its reference "content://a" of "draft1".
+     */
+    private void assertReopenedUnreferenced(final String contentHash) throws IOException {
+        ContentAddressableStore contentAddressableStore = ContentAddressableStore.open(storeDirectory, 3 * BLOB_SIZE);
+        assertEquals(1, contentAddressableStore.getBlobCount());
+        assertNotNull(contentAddressableStore.getFile(contentHash));
+        assertEquals(0, contentAddressableStore.getReferenceCount(contentHash));
+        assertNull(contentAddressableStore.getReference("draft1", "content://a"));
+    }
+
+    private void writeManifestInt(final long position, final int value) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(new File(storeDirectory, "manifest"), "rw");
+        try {
+            randomAccessFile.seek(position);
+            randomAccessFile.writeInt(value);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static String hash(final byte[] content) throws IOException {
+        return ContentAddressableStore.computeContentHash(new ByteArrayInputStream(content));
+    }
+
+    private String put(final ContentAddressableStore contentAddressableStore, final byte[] content) throws IOException {
+        return contentAddressableStore.put(new PathAttachmentSource(writeFile(content).toPath()), null);
+    }
+
+    private File writeFile(final byte[] content) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
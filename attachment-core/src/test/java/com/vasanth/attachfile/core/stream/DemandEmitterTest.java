@@ -0,0 +1,295 @@
+package com.vasanth.attachfile.core.stream;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link DemandEmitter}.
+ *
+ * @author Vasanth
+ */
+public class DemandEmitterTest {
+
+    // Runs deliveries on the calling thread.
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Test
+    public void items_areDeliveredOnlyAsRequested() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        RecordingDemandListener demandListener = new RecordingDemandListener();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, demandListener);
+        demandEmitter.start();
+        for (int i = 0; i < 10; i++) {
+            demandEmitter.emit(i);
+        }
+        assertTrue(subscriber.items.isEmpty());
+
+        subscriber.subscription.request(3);
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.items);
+        assertEquals(0L, demandEmitter.getUnmetDemand());
+        subscriber.subscription.request(2);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.items);
+        assertEquals(2, demandListener.demandCount.get());
+
+        // Demand beyond buffered items is unmet, producer may emit that many.
+        subscriber.subscription.request(8);
+        assertEquals(10, subscriber.items.size());
+        assertEquals(3L, demandEmitter.getUnmetDemand());
+        demandEmitter.emit(10);
+        assertEquals(11, subscriber.items.size());
+        assertEquals(2L, demandEmitter.getUnmetDemand());
+    }
+
+    @Test
+    public void complete_isDeliveredAfterBufferedItems() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, new RecordingDemandListener());
+        demandEmitter.start();
+        demandEmitter.emit(1);
+        demandEmitter.emit(2);
+        demandEmitter.complete();
+        // Emitted after complete, dropped.
+        demandEmitter.emit(3);
+        assertFalse(subscriber.isCompleted);
+
+        subscriber.subscription.request(1);
+        assertEquals(Collections.singletonList(1), subscriber.items);
+        assertFalse(subscriber.isCompleted);
+        subscriber.subscription.request(5);
+        assertEquals(Arrays.asList(1, 2), subscriber.items);
+        assertTrue(subscriber.isCompleted);
+        assertEquals(1, subscriber.terminalCount.get());
+        assertEquals(0L, demandEmitter.getUnmetDemand());
+    }
+
+    @Test
+    public void complete_withNothingBuffered_needsNoDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, new RecordingDemandListener());
+        demandEmitter.start();
+        demandEmitter.complete();
+        assertTrue(subscriber.isCompleted);
+    }
+
+    @Test
+    public void error_isDeliveredRightAwayDroppingBufferedItems() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, new RecordingDemandListener());
+        demandEmitter.start();
+        demandEmitter.emit(1);
+        IllegalStateException failure = new IllegalStateException("Failed");
+        demandEmitter.error(failure);
+        demandEmitter.complete();
+
+        assertEquals(failure, subscriber.error);
+        assertTrue(subscriber.items.isEmpty());
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.items.isEmpty());
+        assertFalse(subscriber.isCompleted);
+        assertEquals(1, subscriber.terminalCount.get());
+    }
+
+    @Test
+    public void cancel_dropsBufferedItemsAndStopsDelivery() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        RecordingDemandListener demandListener = new RecordingDemandListener();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, demandListener);
+        demandEmitter.start();
+        demandEmitter.emit(1);
+        demandEmitter.emit(2);
+        subscriber.subscription.request(1);
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.cancel();
+        assertTrue(demandEmitter.isCancelled());
+        assertEquals(1, demandListener.cancelCount.get());
+        subscriber.subscription.request(5);
+        demandEmitter.emit(3);
+        demandEmitter.complete();
+
+        assertEquals(Collections.singletonList(1), subscriber.items);
+        assertFalse(subscriber.isCompleted);
+        assertNull(subscriber.error);
+        assertEquals(0L, demandEmitter.getUnmetDemand());
+        // Demand after cancel isn't reported to producer.
+        assertEquals(1, demandListener.demandCount.get());
+    }
+
+    @Test
+    public void request_notPositive_failsStream() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, new RecordingDemandListener());
+        demandEmitter.start();
+        demandEmitter.emit(1);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.items.isEmpty());
+    }
+
+    @Test
+    public void request_overflow_isUnbounded() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(DIRECT_EXECUTOR, subscriber, new RecordingDemandListener());
+        demandEmitter.start();
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            demandEmitter.emit(i);
+        }
+        assertEquals(100, subscriber.items.size());
+        assertEquals(Long.MAX_VALUE, demandEmitter.getUnmetDemand());
+    }
+
+    @Test
+    public void concurrentProducer_neverExceedsDemand_andDeliversSerially() throws Exception {
+        final int itemCount = 5000;
+        ExecutorService deliveryExecutor = Executors.newFixedThreadPool(4);
+        final AtomicLong requested = new AtomicLong();
+        final AtomicInteger delivered = new AtomicInteger();
+        final AtomicInteger concurrentCalls = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final CountDownLatch completedLatch = new CountDownLatch(1);
+        final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        final Object demandLock = new Object();
+
+        DemandEmitter.Subscriber<Integer> subscriber = new DemandEmitter.Subscriber<Integer>() {
+            private DemandEmitter.Subscription subscription;
+
+            @Override
+            public void onSubscribe(DemandEmitter.Subscription subscription) {
+                this.subscription = subscription;
+                requested.addAndGet(2);
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                if (concurrentCalls.incrementAndGet() != 1 || delivered.incrementAndGet() > requested.get()) {
+                    violations.incrementAndGet();
+                }
+                items.add(item);
+                concurrentCalls.decrementAndGet();
+                requested.incrementAndGet();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                violations.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                completedLatch.countDown();
+            }
+        };
+        DemandEmitter.DemandListener demandListener = new DemandEmitter.DemandListener() {
+            @Override
+            public void onDemand() {
+                synchronized (demandLock) {
+                    demandLock.notifyAll();
+                }
+            }
+
+            @Override
+            public void onCancel() {
+            }
+        };
+        DemandEmitter<Integer> demandEmitter = new DemandEmitter<>(deliveryExecutor, subscriber, demandListener);
+        demandEmitter.start();
+
+        // Producer emits only as much as unmet demand.
+        for (int i = 0; i < itemCount; i++) {
+            synchronized (demandLock) {
+                while (demandEmitter.getUnmetDemand() == 0) {
+                    demandLock.wait(10L);
+                }
+            }
+            demandEmitter.emit(i);
+        }
+        demandEmitter.complete();
+
+        assertTrue(completedLatch.await(10, TimeUnit.SECONDS));
+        deliveryExecutor.shutdown();
+        assertEquals(0, violations.get());
+        assertEquals(itemCount, items.size());
+        for (int i = 0; i < itemCount; i++) {
+            assertEquals(Integer.valueOf(i), items.get(i));
+        }
+    }
+
+    /**
+     * Subscriber which records what it is delivered, requests nothing by itself.
+     */
+    private static class RecordingSubscriber implements DemandEmitter.Subscriber<Integer> {
+
+        private DemandEmitter.Subscription subscription;
+        private List<Integer> items = new ArrayList<>();
+        private boolean isCompleted;
+        private Throwable error;
+        private AtomicInteger terminalCount = new AtomicInteger();
+
+        @Override
+        public void onSubscribe(DemandEmitter.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminalCount.incrementAndGet();
+        }
+
+        @Override
+        public void onComplete() {
+            isCompleted = true;
+            terminalCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Demand listener which counts its calls.
+     */
+    private static class RecordingDemandListener implements DemandEmitter.DemandListener {
+
+        private AtomicInteger demandCount = new AtomicInteger();
+        private AtomicInteger cancelCount = new AtomicInteger();
+
+        @Override
+        public void onDemand() {
+            demandCount.incrementAndGet();
+        }
+
+        @Override
+        public void onCancel() {
+            cancelCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link ContentSizeCounter}.
+ *
+ * @author Vasanth
+ */
+public class ContentSizeCounterTest {
+
+    // Progress interval of AttachmentResolver.countBytes, bytes counted are remembered at it.
+    private static final int PROGRESS_INTERVAL = 64 * 1024;
+    private static final int CONTENT_SIZE = 400000;
+    private static final int FAIL_AFTER = 300000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void count_afterFailure_skipsBytesCountedBefore() throws IOException {
+        StreamSource streamSource = new StreamSource(new byte[CONTENT_SIZE], FAIL_AFTER);
+        ContentSizeCounter contentSizeCounter = new ContentSizeCounter();
+        try {
+            contentSizeCounter.count(streamSource, null);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        long countedBytes = contentSizeCounter.getCountedBytes();
+        assertEquals(FAIL_AFTER / PROGRESS_INTERVAL * PROGRESS_INTERVAL, countedBytes);
+
+        streamSource.failAfter = -1;
+        RecordingListener listener = new RecordingListener();
+        assertEquals(CONTENT_SIZE, contentSizeCounter.count(streamSource, listener));
+        assertEquals(CONTENT_SIZE, contentSizeCounter.getCountedBytes());
+        // Progress goes on from bytes counted before & only bytes after them are read again.
+        assertTrue(listener.progress.get(0) > countedBytes);
+        assertEquals(CONTENT_SIZE, (long) listener.progress.get(listener.progress.size() - 1));
+        assertEquals(CONTENT_SIZE - countedBytes, streamSource.lastReadBytes);
+        assertEquals(2, streamSource.openCount);
+    }
+
+    @Test
+    public void count_contentShorterThanCounted_countsFromStart() throws IOException {
+        StreamSource streamSource = new StreamSource(new byte[CONTENT_SIZE], FAIL_AFTER);
+        ContentSizeCounter contentSizeCounter = new ContentSizeCounter();
+        try {
+            contentSizeCounter.count(streamSource, null);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+
+        // Content changed between attempts.
+        streamSource.content = new byte[1000];
+        streamSource.failAfter = -1;
+        assertEquals(1000, contentSizeCounter.count(streamSource, null));
+        assertEquals(1000, contentSizeCounter.getCountedBytes());
+        assertEquals(3, streamSource.openCount);
+    }
+
+    @Test
+    public void count_fileSource_usesChannelSize() throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(new byte[12345]);
+        } finally {
+            outputStream.close();
+        }
+        ContentSizeCounter contentSizeCounter = new ContentSizeCounter();
+        assertEquals(12345, contentSizeCounter.count(new PathAttachmentSource(file.toPath()), null));
+        assertEquals(12345, contentSizeCounter.getCountedBytes());
+    }
+
+    @Test
+    public void skip_streamSkippingNothing_readsThrough() throws IOException {
+        // Skips nothing, like some provider streams.
+        InputStream inputStream = new FilterInputStream(new ByteArrayInputStream(new byte[5])) {
+            @Override
+            public long skip(long count) {
+                return 0L;
+            }
+        };
+        assertEquals(3, ContentSizeCounter.skip(inputStream, 3));
+        assertEquals(2, ContentSizeCounter.skip(inputStream, 10));
+        assertEquals(0, ContentSizeCounter.skip(inputStream, 0));
+    }
+
+    /**
+     * Source without file, which fails once failAfter bytes are read (-1 to never fail).
+     */
+    private static class StreamSource implements AttachmentSource {
+
+        private byte[] content;
+        private int failAfter;
+        private int openCount;
+        // Bytes read (Not skipped) through the last stream opened.
+        private long lastReadBytes;
+
+        StreamSource(final byte[] content, final int failAfter) {
+            this.content = content;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public String getLocation() {
+            return "stream://test";
+        }
+
+        @Override
+        public AttachmentDetail queryMetadata() throws IOException {
+            return new AttachmentDetail("test", AttachmentDetail.UNKNOWN_SIZE, null);
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            openCount++;
+            lastReadBytes = 0L;
+            return new FilterInputStream(new ByteArrayInputStream(content)) {
+                private int position;
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    if (failAfter >= 0 && position >= failAfter) {
+                        throw new IOException("Source failed at " + position);
+                    }
+                    int read = super.read(buffer, offset, failAfter >= 0 ? Math.min(length, failAfter - position) : length);
+                    position += Math.max(read, 0);
+                    lastReadBytes += Math.max(read, 0);
+                    return read;
+                }
+
+                @Override
+                public long skip(long count) throws IOException {
+                    long skipped = super.skip(count);
+                    position += skipped;
+                    return skipped;
+                }
+            };
+        }
+
+        @Override
+        public FileChannel openFileChannel() throws IOException {
+            return null;
+        }
+    }
+
+    /**
+     * Listener which records progress.
+     */
+    private static class RecordingListener implements ProgressListener {
+
+        private List<Long> progress = new ArrayList<>();
+
+        @Override
+        public void onProgress(long bytesRead) {
+            progress.add(bytesRead);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.crypto.ChunkedCipher;
+import com.vasanth.attachfile.core.crypto.EncryptedAttachmentReader;
+import com.vasanth.attachfile.core.model.AttachmentDetail;
+import com.vasanth.attachfile.core.source.AttachmentSource;
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of {@link EncryptedStager}.
+ *
+ * @author Vasanth
+ */
+public class EncryptedStagerTest {
+
+    private static final int CHUNK_SIZE = ChunkedCipher.DEFAULT_CHUNK_SIZE;
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SecretKey secretKey;
+    private ExecutorService executorService;
+    private File destinationFile;
+    private File tempFile;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        secretKey = keyGenerator.generateKey();
+        executorService = Executors.newFixedThreadPool(4);
+        destinationFile = new File(temporaryFolder.getRoot(), "staged.enc");
+        tempFile = new File(destinationFile.getPath() + ".tmp");
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void stage_fileAndStreamSources_withAndWithoutExecutor_decryptToContent() throws IOException {
+        byte[] content = createContent(3 * CHUNK_SIZE + 17);
+        File contentFile = writeContentFile(content);
+        AttachmentSource[] attachmentSources = {new PathAttachmentSource(contentFile.toPath()), new StreamSource(content, -1)};
+        for (AttachmentSource attachmentSource : attachmentSources) {
+            assertEquals(content.length, EncryptedStager.stage(attachmentSource, destinationFile, secretKey, null, null));
+            assertArrayEquals(content, decrypt(destinationFile));
+            assertEquals(content.length, EncryptedStager.stage(attachmentSource, destinationFile, secretKey, executorService, null));
+            assertArrayEquals(content, decrypt(destinationFile));
+            assertFalse(tempFile.exists());
+        }
+    }
+
+    @Test
+    public void stage_emptyAndExactChunkContent() throws IOException {
+        int[] sizes = {0, CHUNK_SIZE, 4 * CHUNK_SIZE};
+        for (int size : sizes) {
+            byte[] content = createContent(size);
+            assertEquals(size, EncryptedStager.stage(new StreamSource(content, -1), destinationFile, secretKey, executorService, null));
+            // Empty content is a single empty chunk.
+            long chunkCount = Math.max(1, size / CHUNK_SIZE);
+            assertEquals(ChunkedCipher.HEADER_SIZE + chunkCount * (ChunkedCipher.NONCE_SIZE + ChunkedCipher.TAG_SIZE) + size,
+                    destinationFile.length());
+            assertArrayEquals(content, decrypt(destinationFile));
+        }
+    }
+
+    @Test
+    public void stage_failure_deletesTemporaryFile() throws IOException {
+        byte[] content = createContent(2 * CHUNK_SIZE);
+        try {
+            EncryptedStager.stage(new StreamSource(content, CHUNK_SIZE + 1), destinationFile, secretKey, null, null);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertFalse(tempFile.exists());
+        assertFalse(destinationFile.exists());
+    }
+
+    @Test
+    public void resumableStage_failure_resumesFromLastCheckpoint() throws IOException {
+        byte[] content = createContent(10 * MB + 100);
+        RecordingListener checkpointListener = new RecordingListener();
+        try {
+            EncryptedStager.stage(new StreamSource(content, 9 * MB), destinationFile, 0L, secretKey, executorService,
+                    checkpointListener);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertEquals(Arrays.asList(4L * MB, 8L * MB), checkpointListener.checkpoints);
+        assertTrue(tempFile.exists());
+        assertFalse(destinationFile.exists());
+        byte[] firstFrame = readFirstFrame(tempFile);
+
+        checkpointListener = new RecordingListener();
+        StreamSource resumedSource = new StreamSource(content, -1);
+        assertEquals(content.length, EncryptedStager.stage(resumedSource, destinationFile, 8L * MB, secretKey, executorService,
+                checkpointListener));
+        assertArrayEquals(content, decrypt(destinationFile));
+        assertFalse(tempFile.exists());
+        // Chunks before checkpoint weren't encrypted again (Nonce is random per encryption).
+        assertArrayEquals(firstFrame, readFirstFrame(destinationFile));
+        assertEquals(1, resumedSource.openCount);
+    }
+
+    @Test
+    public void resumableStage_checkpointAtChunkBeforeEnd_encryptsItAgainAsLast() throws IOException {
+        byte[] content = createContent(8 * MB);
+        File contentFile = writeContentFile(content);
+        RecordingListener checkpointListener = new RecordingListener();
+        EncryptedStager.stage(new PathAttachmentSource(contentFile.toPath()), destinationFile, 0L, secretKey, null, checkpointListener);
+        // Staged copy is back as temporary file, as if it crashed before move.
+        assertTrue(destinationFile.renameTo(tempFile));
+        assertEquals(Arrays.asList(4L * MB, 8L * MB), checkpointListener.checkpoints);
+
+        assertEquals(content.length, EncryptedStager.stage(new PathAttachmentSource(contentFile.toPath()), destinationFile, 8L * MB,
+                secretKey, null, null));
+        assertEquals(ChunkedCipher.getChunkOffset(CHUNK_SIZE, content.length / CHUNK_SIZE), destinationFile.length());
+        assertArrayEquals(content, decrypt(destinationFile));
+    }
+
+    @Test
+    public void resumableStage_nothingToResume_startsOver() throws IOException {
+        byte[] content = createContent(6 * MB);
+
+        // Temporary file is gone.
+        assertEquals(content.length, EncryptedStager.stage(new StreamSource(content, -1), destinationFile, 4L * MB, secretKey,
+                null, null));
+        assertArrayEquals(content, decrypt(destinationFile));
+
+        // Checkpoint isn't at a chunk boundary.
+        failResumableStage(content, 5 * MB);
+        assertEquals(content.length, EncryptedStager.stage(new StreamSource(content, -1), destinationFile, 4L * MB + 1, secretKey,
+                null, null));
+        assertArrayEquals(content, decrypt(destinationFile));
+
+        // Temporary file was written with another chunk size.
+        failResumableStage(content, 5 * MB);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        try {
+            randomAccessFile.seek(8);
+            randomAccessFile.writeInt(CHUNK_SIZE * 2);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertEquals(content.length, EncryptedStager.stage(new StreamSource(content, -1), destinationFile, 4L * MB, secretKey,
+                null, null));
+        assertArrayEquals(content, decrypt(destinationFile));
+    }
+
+    @Test
+    public void resumableStage_sourceShorterThanCheckpoint_startsOver() throws IOException {
+        byte[] content = createContent(6 * MB);
+        byte[] shorterContent = Arrays.copyOf(content, 3 * MB + 5);
+
+        // Stream source.
+        failResumableStage(content, 5 * MB);
+        StreamSource streamSource = new StreamSource(shorterContent, -1);
+        assertEquals(shorterContent.length, EncryptedStager.stage(streamSource, destinationFile, 4L * MB, secretKey, executorService,
+                null));
+        assertArrayEquals(shorterContent, decrypt(destinationFile));
+        assertEquals(2, streamSource.openCount);
+
+        // File source.
+        failResumableStage(content, 5 * MB);
+        File contentFile = writeContentFile(shorterContent);
+        assertEquals(shorterContent.length, EncryptedStager.stage(new PathAttachmentSource(contentFile.toPath()), destinationFile,
+                4L * MB, secretKey, executorService, null));
+        assertArrayEquals(shorterContent, decrypt(destinationFile));
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static byte[] createContent(final int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private File writeContentFile(final byte[] content) throws IOException {
+        File contentFile = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(contentFile);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return contentFile;
+    }
+
+    /**
+     * Used to leave a temporary file with checkpoint 4MB, by failing the resumable copy after the given bytes.
+     */
+    private void failResumableStage(final byte[] content, final int failAfter) {
+        try {
+            EncryptedStager.stage(new StreamSource(content, failAfter), destinationFile, 0L, secretKey, null, null);
+            fail("Expected IOException");
+        } catch (IOException exp) {
+            // Expected.
+        }
+        assertTrue(tempFile.exists());
+    }
+
+    private byte[] decrypt(final File encryptedFile) throws IOException {
+        EncryptedAttachmentReader reader = new EncryptedAttachmentReader(encryptedFile, secretKey);
+        InputStream inputStream = reader.openInputStream(0L);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        try {
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] readFirstFrame(final File encryptedFile) throws IOException {
+        byte[] frame = new byte[ChunkedCipher.getFrameSize(CHUNK_SIZE)];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(encryptedFile, "r");
+        try {
+            randomAccessFile.seek(ChunkedCipher.HEADER_SIZE);
+            randomAccessFile.readFully(frame);
+        } finally {
+            randomAccessFile.close();
+        }
+        return frame;
+    }
+
+    /**
+     * Source not backed by a file (Like a content provider stream), optionally failing after some bytes.
+     */
+    private static class StreamSource implements AttachmentSource {
+
+        private byte[] content;
+        private int failAfter;
+        private int openCount;
+
+        StreamSource(final byte[] content, final int failAfter) {
+            this.content = content;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public String getLocation() {
+            return "stream://test";
+        }
+
+        @Override
+        public AttachmentDetail queryMetadata() throws IOException {
+            return new AttachmentDetail("test", content.length, null);
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            openCount++;
+            return new FilterInputStream(new ByteArrayInputStream(content)) {
+                private int position;
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    if (failAfter >= 0 && position >= failAfter) {
+                        throw new IOException("Source failed at " + position);
+                    }
+                    int read = super.read(buffer, offset, failAfter >= 0 ? Math.min(length, failAfter - position) : length);
+                    position += Math.max(read, 0);
+                    return read;
+                }
+
+                @Override
+                public long skip(long count) throws IOException {
+                    long skipped = super.skip(count);
+                    position += skipped;
+                    return skipped;
+                }
+            };
+        }
+
+        @Override
+        public FileChannel openFileChannel() throws IOException {
+            return null;
+        }
+    }
+
+    /**
+     * Listener which records checkpoints.
+     */
+    private static class RecordingListener implements ProgressListener {
+
+        private List<Long> checkpoints = new ArrayList<>();
+
+        @Override
+        public void onProgress(long bytesRead) {
+            checkpoints.add(bytesRead);
+        }
+    }
+}
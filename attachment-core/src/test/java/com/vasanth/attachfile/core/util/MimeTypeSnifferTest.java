@@ -0,0 +1,85 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests of {@link MimeTypeSniffer}.
+ *
+ * @author Vasanth
+ */
+public class MimeTypeSnifferTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sniff_knownHeaders_detectsType() {
+        assertEquals("image/png", sniff(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13, 'I', 'H', 'D', 'R'));
+        assertEquals("image/jpeg", sniff(0xFF, 0xD8, 0xFF, 0xE0, 0, 16, 'J', 'F', 'I', 'F'));
+        assertEquals("image/jpeg", sniff(0xFF, 0xD8, 0xFF, 0xE1, 0x12, 0x34, 'E', 'x', 'i', 'f'));
+        assertEquals("image/gif", sniff('G', 'I', 'F', '8', '7', 'a'));
+        assertEquals("image/gif", sniff('G', 'I', 'F', '8', '9', 'a'));
+        assertEquals("application/pdf", sniff('%', 'P', 'D', 'F', '-', '1', '.', '7'));
+        assertEquals("image/webp", sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'));
+        assertEquals("application/zip", sniff('P', 'K', 0x03, 0x04));
+        assertEquals("image/heic", sniff(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'h', 'e', 'i', 'c'));
+        assertEquals("video/mp4", sniff(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm'));
+    }
+
+    @Test
+    public void sniff_shortOrUnknownHeader_isNull() {
+        // Prefixes of known signatures.
+        assertNull(sniff(0x89, 'P', 'N', 'G'));
+        assertNull(sniff(0xFF, 0xD8));
+        assertNull(sniff('%', 'P', 'D', 'F'));
+        assertNull(sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'A', 'V', 'I', ' '));
+        assertNull(sniff('h', 'e', 'l', 'l', 'o'));
+        assertNull(sniff());
+        // Bytes beyond length are not looked at.
+        byte[] header = {'%', 'P', 'D', 'F', '-'};
+        assertNull(MimeTypeSniffer.sniff(header, 4));
+    }
+
+    @Test
+    public void sniff_source_readsHeader() throws IOException {
+        File pdfFile = writeFile(new byte[]{'%', 'P', 'D', 'F', '-', '1', '.', '4', '\n', '%', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        assertEquals("application/pdf", MimeTypeSniffer.sniff(new PathAttachmentSource(pdfFile.toPath())));
+        // Shorter than HEADER_SIZE.
+        File gifFile = writeFile(new byte[]{'G', 'I', 'F', '8', '9', 'a'});
+        assertEquals("image/gif", MimeTypeSniffer.sniff(new PathAttachmentSource(gifFile.toPath())));
+        assertNull(MimeTypeSniffer.sniff(new PathAttachmentSource(writeFile(new byte[0]).toPath())));
+    }
+
+    /**
+     * Helper Methods.
+     */
+    private static String sniff(final int... values) {
+        byte[] header = new byte[MimeTypeSniffer.HEADER_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            header[i] = (byte) values[i];
+        }
+        return MimeTypeSniffer.sniff(header, values.length);
+    }
+
+    private File writeFile(final byte[] content) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+package com.vasanth.attachfile.core.util;
+
+import com.vasanth.attachfile.core.source.PathAttachmentSource;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Unit tests of {@link ParallelSegmentHasher}, against the streaming {@link SegmentedDigest}.
+ *
+ * @author Vasanth
+ */
+public class ParallelSegmentHasherTest {
+
+    private static final int SEGMENT_SIZE = SegmentedDigest.DEFAULT_SEGMENT_SIZE;
+
+    private static ForkJoinPool forkJoinPool;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        forkJoinPool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        forkJoinPool.shutdown();
+    }
+
+    @Test
+    public void hash_matchesStreamingDigest_aroundSegmentBoundaries() throws IOException {
+        int[] sizes = {0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE + 12345};
+        for (int size : sizes) {
+            byte[] content = createContent(size);
+            File file = writeFile(content);
+            FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                AtomicLong lastProgress = new AtomicLong(-1L);
+                String fingerprint = ParallelSegmentHasher.hash(fileChannel, forkJoinPool, newProgressListener(lastProgress));
+                assertEquals("Size " + size, streamingDigest(content, 65536 + 7), fingerprint);
+                assertEquals("Size " + size, size, lastProgress.get());
+            } finally {
+                fileChannel.close();
+            }
+            // Sequential fallback & source entry point agree too.
+            assertEquals("Size " + size, streamingDigest(content, 1000003),
+                    ParallelSegmentHasher.hash(new PathAttachmentSource(file.toPath()), forkJoinPool, null));
+            assertEquals("Size " + size, streamingDigest(content, 8192),
+                    AttachmentFingerprint.compute(new PathAttachmentSource(file.toPath()), null));
+        }
+    }
+
+    @Test
+    public void hash_differsByContentAndLength() throws IOException {
+        byte[] content = createContent(SEGMENT_SIZE + 1);
+        String fingerprint = hashFile(content);
+        content[SEGMENT_SIZE] ^= 1;
+        assertNotEquals(fingerprint, hashFile(content));
+        // Same segment bytes, one zero byte longer.
+        assertNotEquals(hashFile(new byte[10]), hashFile(new byte[11]));
+    }
+
+    /**
+     * Helper Methods.
+     */
+    /**
+     * Used to compute fingerprint the way a stream read does, pushing content in chunks of the given size.
+     */
+    private static String streamingDigest(final byte[] content, final int chunkSize) {
+        SegmentedDigest segmentedDigest = new SegmentedDigest();
+        for (int offset = 0; offset < content.length; offset += chunkSize) {
+            segmentedDigest.update(content, offset, Math.min(chunkSize, content.length - offset));
+        }
+        return segmentedDigest.finish();
+    }
+
+    private String hashFile(final byte[] content) throws IOException {
+        FileChannel fileChannel = FileChannel.open(writeFile(content).toPath(), StandardOpenOption.READ);
+        try {
+            return ParallelSegmentHasher.hash(fileChannel, forkJoinPool, null);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    private static ProgressListener newProgressListener(final AtomicLong lastProgress) {
+        return new ProgressListener() {
+            @Override
+            public void onProgress(long bytesRead) {
+                // Segments finish in any order, bytes hashed only grows.
+                synchronized (lastProgress) {
+                    lastProgress.set(Math.max(lastProgress.get(), bytesRead));
+                }
+            }
+        };
+    }
+
+    private static byte[] createContent(final int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private File writeFile(final byte[] content) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}